@@ -0,0 +1,103 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.Optimizely;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.event.EventHandler;
+import com.optimizely.ab.event.NoopEventHandler;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the time to the first decision of a new {@link Optimizely} instance, when its config is parsed
+ * from the JSON datafile and when it's loaded from a {@link CompiledConfigSnapshot}.
+ * <p>
+ * Single shot measurements in separate forks are the closest to the cold start of a short-lived process, the average
+ * time shows the steady state cost of each path.
+ */
+@BenchmarkMode({Mode.SingleShotTime, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(5)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class CompiledConfigSnapshotBenchmark {
+
+    private EventHandler eventHandler = new NoopEventHandler();
+
+    @Param({"10", "25", "50"})
+    private int numExperiments;
+
+    private String datafile;
+    private File snapshot;
+
+    @Setup
+    @SuppressFBWarnings(value="OBL_UNSATISFIED_OBLIGATION_EXCEPTION_EDGE", justification="stream is safely closed")
+    public void setup() throws IOException, ConfigParseException {
+        Properties properties = new Properties();
+        InputStream propertiesStream = getClass().getResourceAsStream("/benchmark.properties");
+        properties.load(propertiesStream);
+        propertiesStream.close();
+
+        String datafilePathTemplate = properties.getProperty("datafilePathTemplate");
+        String datafilePath = String.format(datafilePathTemplate, numExperiments);
+        datafile = BenchmarkUtils.getProfilingDatafile(datafilePath);
+
+        snapshot = File.createTempFile("optimizely-config", ".bin");
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(datafile).build(), datafile, snapshot);
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public Variation measureFirstDecisionFromDatafile() {
+        Optimizely optimizely = Optimizely.builder(datafile, eventHandler).build();
+        return optimizely.getVariation("testExperiment2", "optimizely_user");
+    }
+
+    @Benchmark
+    public Variation measureFirstDecisionFromSnapshot() {
+        Optimizely optimizely = Optimizely.builder(datafile, eventHandler)
+                .withCompiledSnapshot(snapshot)
+                .build();
+        return optimizely.getVariation("testExperiment2", "optimizely_user");
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing {@link Condition#evaluate} with {@link CompiledCondition}s over the audience conditions of
+ * an experiment of the v4 test datafile, an or of its typed audiences, compiled by {@link CompiledAudiences} as
+ * decisions compile them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class AudienceConditionBenchmark {
+
+    private ProjectConfig projectConfig;
+    private Map<String, Object> attributes;
+
+    private Experiment experiment;
+    private CompiledAudiences compiledAudiences;
+    private Condition condition;
+    private CompiledCondition methodHandleCondition;
+    private CompiledCondition interpretedCondition;
+
+    @Setup
+    public void setUp() throws IOException {
+        projectConfig = ProjectConfigTestUtils.validProjectConfigV4();
+
+        experiment = projectConfig.getExperimentKeyMapping().get("typed_audience_experiment");
+        compiledAudiences = new CompiledAudiences(projectConfig);
+        condition = experiment.getAudienceConditions();
+        methodHandleCondition = compiledAudiences.getAudienceConditions(experiment);
+        interpretedCondition = CompiledCondition.interpret(condition);
+
+        // evaluates every audience, as none of them match
+        attributes = new HashMap<String, Object>();
+        attributes.put("house", "Ravenclaw");
+        attributes.put("nationality", "Canadian");
+        attributes.put("booleanKey", false);
+        attributes.put("integerKey", 0);
+        attributes.put("doubleKey", 100.5);
+    }
+
+    @Benchmark
+    public Boolean measureConditionEvaluate() {
+        return condition.evaluate(projectConfig, attributes);
+    }
+
+    @Benchmark
+    public int measureMethodHandleCondition() {
+        return methodHandleCondition.evaluate(projectConfig, attributes);
+    }
+
+    @Benchmark
+    public int measureInterpretedCondition() {
+        return interpretedCondition.evaluate(projectConfig, attributes);
+    }
+
+    @Benchmark
+    public int measureCompiledAudiences() {
+        return compiledAudiences.getAudienceConditions(experiment).evaluate(projectConfig, attributes);
+    }
+}
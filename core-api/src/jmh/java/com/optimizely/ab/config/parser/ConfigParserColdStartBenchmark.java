@@ -0,0 +1,77 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the first parse of a datafile in a new JVM, including creating the parser, for the built-in parser
+ * and the json library based ones. Each fork measures a single cold parse.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@State(Scope.Benchmark)
+public class ConfigParserColdStartBenchmark {
+
+    @Param({"BUILT_IN", "JACKSON", "GSON", "JSON_SIMPLE", "JSON"})
+    private String parser;
+
+    private String datafile;
+
+    @Setup
+    public void setUp() throws IOException {
+        datafile = ProjectConfigTestUtils.validConfigJsonV4();
+    }
+
+    @Benchmark
+    public ProjectConfig firstParse() throws ConfigParseException {
+        return createParser().parseProjectConfig(datafile);
+    }
+
+    private ConfigParser createParser() {
+        switch (parser) {
+            case "JACKSON":
+                return new JacksonConfigParser();
+            case "GSON":
+                return new GsonConfigParser();
+            case "JSON_SIMPLE":
+                return new JsonSimpleConfigParser();
+            case "JSON":
+                return new JsonConfigParser();
+            default:
+                return new BuiltInConfigParser();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@link GsonConfigParser} on generated datafiles of 1 MB to 20 MB, in each of its modes.
+ * Run with {@code -prof gc} to compare the allocation of the two modes as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgs = {"-Xmx2g"})
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class GsonConfigParserSizeBenchmark {
+
+    @Param({"1", "5", "10", "20"})
+    private int datafileMegabytes;
+
+    @Param({"TREE", "STREAMING"})
+    private GsonConfigParser.Mode mode;
+
+    private GsonConfigParser parser;
+    private String datafile;
+
+    @Setup
+    public void setUp() {
+        parser = new GsonConfigParser(mode);
+
+        // generated datafiles grow linearly with their experiments, so size one and scale it
+        int sampleExperiments = 1000;
+        int sampleLength = ProjectConfigTestUtils.generatedConfigJson(sampleExperiments).length();
+        long targetLength = datafileMegabytes * 1024L * 1024L;
+        datafile = ProjectConfigTestUtils.generatedConfigJson((int) (targetLength * sampleExperiments / sampleLength));
+    }
+
+    @Benchmark
+    public ProjectConfig parse() throws ConfigParseException {
+        return parser.parseProjectConfig(datafile);
+    }
+}
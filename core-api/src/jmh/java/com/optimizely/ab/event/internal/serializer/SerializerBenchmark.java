@@ -0,0 +1,110 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event.internal.serializer;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils;
+import com.optimizely.ab.event.LogEvent;
+import com.optimizely.ab.event.internal.EventFactory;
+import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.event.internal.payload.Visitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of serializing an event batch into the bytes of a request body, through a string and straight into
+ * a reused buffer, for each serializer. Run with {@code -prof gc} for the allocation per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"JACKSON", "GSON", "JSON_SIMPLE", "JSON"})
+    private String serializerName;
+
+    @Param({"1", "50"})
+    private int visitors;
+
+    private Serializer serializer;
+    private EventBatch eventBatch;
+    private final SerializationBuffer buffer = new SerializationBuffer(4096);
+
+    @Setup
+    public void setUp() throws IOException {
+        serializer = createSerializer();
+
+        ProjectConfig projectConfig = ProjectConfigTestUtils.validProjectConfigV4();
+        Experiment experiment = projectConfig.getExperiments().get(0);
+        EventFactory eventFactory = new EventFactory();
+        List<Visitor> batchVisitors = new ArrayList<Visitor>(visitors);
+        for (int i = 0; i < visitors; i++) {
+            LogEvent impression = eventFactory.createImpressionEvent(projectConfig, experiment,
+                    experiment.getVariations().get(0), "user" + i, Collections.<String, String>emptyMap());
+            eventBatch = impression.getEventBatch();
+            batchVisitors.addAll(eventBatch.getVisitors());
+        }
+        eventBatch.setVisitors(batchVisitors);
+    }
+
+    @Benchmark
+    public byte[] serializeThroughString() {
+        return serializer.serialize(eventBatch).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public int serializeToBuffer() throws IOException {
+        buffer.reset();
+        serializer.serialize(eventBatch, buffer);
+        return buffer.size();
+    }
+
+    private Serializer createSerializer() {
+        switch (serializerName) {
+            case "GSON":
+                return new GsonSerializer();
+            case "JSON_SIMPLE":
+                return new JsonSimpleSerializer();
+            case "JSON":
+                return new JsonSerializer();
+            default:
+                return new JacksonSerializer();
+        }
+    }
+}
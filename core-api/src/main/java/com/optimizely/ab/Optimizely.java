@@ -24,11 +24,16 @@ import com.optimizely.ab.config.Attribute;
 import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.FeatureFlag;
+import com.optimizely.ab.config.ForcedVariations;
 import com.optimizely.ab.config.LiveVariable;
 import com.optimizely.ab.config.LiveVariableUsageInstance;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.AttributesSnapshot;
+import com.optimizely.ab.config.audience.AudienceResultCache;
+import com.optimizely.ab.config.audience.CompiledAudiences;
 import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.error.NoOpErrorHandler;
 import com.optimizely.ab.event.EventHandler;
@@ -36,18 +41,23 @@ import com.optimizely.ab.event.LogEvent;
 import com.optimizely.ab.event.internal.BuildVersionInfo;
 import com.optimizely.ab.event.internal.EventFactory;
 import com.optimizely.ab.event.internal.payload.EventBatch.ClientEngine;
+import com.optimizely.ab.internal.ReservedEventKey;
 import com.optimizely.ab.notification.NotificationCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Top-level container class for Optimizely functionality.
@@ -79,26 +89,36 @@ public class Optimizely {
 
     private static final Logger logger = LoggerFactory.getLogger(Optimizely.class);
 
-    @VisibleForTesting DecisionService decisionService;
     @VisibleForTesting final EventFactory eventFactory;
-    @VisibleForTesting ProjectConfig projectConfig;
     @VisibleForTesting final EventHandler eventHandler;
     @VisibleForTesting final ErrorHandler errorHandler;
-    private boolean isValid;
+    private final AtomicReference<ConfigSnapshot> current = new AtomicReference<ConfigSnapshot>();
+    @Nullable private final DecisionService customDecisionService;
+    private volatile boolean isValid;
     public final NotificationCenter notificationCenter = new NotificationCenter();
 
     @Nullable private final UserProfileService userProfileService;
+    @VisibleForTesting @Nullable final AudienceResultCache audienceResultCache;
+    private final ForcedVariations forcedVariations = new ForcedVariations();
+    private final boolean compileAudienceConditions;
 
     private Optimizely(@Nonnull EventHandler eventHandler,
                        @Nonnull EventFactory eventFactory,
                        @Nonnull ErrorHandler errorHandler,
                        @Nullable DecisionService decisionService,
-                       @Nullable UserProfileService userProfileService) {
-        this.decisionService = decisionService;
+                       @Nullable UserProfileService userProfileService,
+                       @Nullable AudienceResultCache audienceResultCache,
+                       int maxForcedVariationUsers,
+                       long forcedVariationTtlMillis,
+                       boolean compileAudienceConditions) {
+        this.customDecisionService = decisionService;
         this.eventHandler = eventHandler;
         this.eventFactory = eventFactory;
         this.errorHandler = errorHandler;
         this.userProfileService = userProfileService;
+        this.audienceResultCache = audienceResultCache;
+        this.forcedVariations.setLimits(maxForcedVariationUsers, forcedVariationTtlMillis, TimeUnit.MILLISECONDS);
+        this.compileAudienceConditions = compileAudienceConditions;
     }
 
     /**
@@ -107,10 +127,16 @@ public class Optimizely {
      */
     @VisibleForTesting
     void initialize(@Nonnull String datafile, @Nullable ProjectConfig projectConfig) {
+        initialize(datafile, projectConfig, null);
+    }
+
+    private void initialize(@Nonnull String datafile, @Nullable ProjectConfig projectConfig,
+                            @Nullable File compiledSnapshot) {
         if (projectConfig == null) {
             try {
                 projectConfig = new ProjectConfig.Builder()
                         .withDatafile(datafile)
+                        .withCompiledSnapshot(compiledSnapshot)
                         .build();
                 isValid = true;
                 logger.info("Datafile is valid");
@@ -123,11 +149,70 @@ public class Optimizely {
             isValid = true;
         }
 
-        this.projectConfig = projectConfig;
+        current.set(createSnapshot(projectConfig));
+    }
+
+    /**
+     * Parses a new datafile and makes it the project config used by all subsequent calls.
+     * <p>
+     * The datafile is parsed and the decision structures are built on the calling thread, then published in a
+     * single atomic swap, so calls in flight are never blocked and keep using the config they started with. Entities
+     * that didn't change since the current config are reused rather than rebuilt.
+     *
+     * @param datafile the new datafile
+     * @throws ConfigParseException if the datafile can't be parsed, in which case the current config is kept
+     */
+    public void updateDatafile(@Nonnull String datafile) throws ConfigParseException {
+        updateProjectConfig(new ProjectConfig.Builder()
+                .withDatafile(datafile)
+                .withPreviousConfig(getProjectConfig())
+                .build());
+    }
+
+    /**
+     * Makes the given project config the one used by all subsequent calls.
+     * <p>
+     * Forced variations are kept by this client rather than in its project configs, so they apply to the new config
+     * for the experiments and variations that still exist in it, including ones set while the config is replaced.
+     * The given config is not modified.
+     *
+     * @param projectConfig the new project config
+     * @throws IllegalStateException if the client was built with a custom decision service, which stays bound to the
+     * project config it was created with
+     */
+    public void updateProjectConfig(@Nonnull ProjectConfig projectConfig) {
+        if (customDecisionService != null) {
+            throw new IllegalStateException("project config can't be updated with a custom decision service");
+        }
+
+        current.set(createSnapshot(projectConfig));
+
+        isValid = true;
+        logger.info("Updated project config to revision \"{}\".", projectConfig.getRevision());
+    }
+
+    private ConfigSnapshot createSnapshot(@Nullable ProjectConfig projectConfig) {
+        if (customDecisionService != null && projectConfig != null) {
+            // a custom decision service looks forced variations up in its project config
+            return new ConfigSnapshot(projectConfig, customDecisionService,
+                    projectConfig.getOverrideIndex().getForcedVariations());
+        }
+
+        DecisionService decisionService = customDecisionService;
         if (decisionService == null) {
             Bucketer bucketer = new Bucketer(projectConfig);
-            decisionService = new DecisionService(bucketer, errorHandler, projectConfig, userProfileService);
+            decisionService = new DecisionService(bucketer, errorHandler, projectConfig, userProfileService,
+                    forcedVariations, compiledAudiences(projectConfig));
         }
+
+        return new ConfigSnapshot(projectConfig, decisionService, forcedVariations);
+    }
+
+    /**
+     * @return a new holder for the compiled audience conditions of a project config, or null to interpret them
+     */
+    private @Nullable CompiledAudiences compiledAudiences(@Nullable ProjectConfig projectConfig) {
+        return compileAudienceConditions && projectConfig != null ? new CompiledAudiences(projectConfig) : null;
     }
 
     /**
@@ -167,16 +252,16 @@ public class Optimizely {
             return null;
         }
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ConfigSnapshot snapshot = current.get();
 
-        Experiment experiment = currentConfig.getExperimentForKey(experimentKey, errorHandler);
+        Experiment experiment = snapshot.projectConfig.getExperimentForKey(experimentKey, errorHandler);
         if (experiment == null) {
             // if we're unable to retrieve the associated experiment, return null
             logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experimentKey);
             return null;
         }
 
-        return activate(currentConfig, experiment, userId, attributes);
+        return activate(snapshot, experiment, userId, attributes);
     }
 
     public @Nullable
@@ -190,13 +275,11 @@ public class Optimizely {
                        @Nonnull String userId,
                        @Nonnull Map<String, ?> attributes) {
 
-        ProjectConfig currentConfig = getProjectConfig();
-
-        return activate(currentConfig, experiment, userId, attributes);
+        return activate(current.get(), experiment, userId, attributes);
     }
 
     private @Nullable
-    Variation activate(@Nonnull ProjectConfig projectConfig,
+    Variation activate(@Nonnull ConfigSnapshot snapshot,
                        @Nonnull Experiment experiment,
                        @Nonnull String userId,
                        @Nonnull Map<String, ?> attributes) {
@@ -211,13 +294,13 @@ public class Optimizely {
         }
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
         // bucket the user to the given experiment and dispatch an impression event
-        Variation variation = decisionService.getVariation(experiment, userId, copiedAttributes);
+        Variation variation = snapshot.decisionService.getVariation(experiment, userId, copiedAttributes);
         if (variation == null) {
             logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experiment.getKey());
             return null;
         }
 
-        sendImpression(projectConfig, experiment, userId, copiedAttributes, variation);
+        sendImpression(snapshot.projectConfig, experiment, userId, copiedAttributes, variation);
 
         return variation;
     }
@@ -249,7 +332,7 @@ public class Optimizely {
             }
 
             notificationCenter.sendNotifications(NotificationCenter.NotificationType.Activate, experiment, userId,
-                    filteredAttributes, variation, impressionEvent);
+                    listenerAttributes(filteredAttributes), variation, impressionEvent);
         } else {
             logger.info("Experiment has \"Launched\" status so not dispatching event during activation.");
         }
@@ -288,7 +371,8 @@ public class Optimizely {
             return;
         }
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ConfigSnapshot snapshot = current.get();
+        ProjectConfig currentConfig = snapshot.projectConfig;
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
 
         EventType eventType = currentConfig.getEventTypeForName(eventName, errorHandler);
@@ -302,24 +386,29 @@ public class Optimizely {
             logger.warn("Event tags is null when non-null was expected. Defaulting to an empty event tags map.");
         }
 
-        List<Experiment> experimentsForEvent = projectConfig.getExperimentsForEventKey(eventName);
-        Map<Experiment, Variation> experimentVariationMap = new HashMap<Experiment, Variation>(experimentsForEvent.size());
-        for (Experiment experiment : experimentsForEvent) {
-            if (experiment.isRunning()) {
-                Variation variation = decisionService.getVariation(experiment, userId, copiedAttributes);
-                if (variation != null) {
-                    experimentVariationMap.put(experiment, variation);
+        List<Experiment> experimentsForEvent = currentConfig.getRunningExperimentsForEventKey(eventName);
+        if (logger.isInfoEnabled()) {
+            for (Experiment experiment : currentConfig.getExperimentsForEventKey(eventName)) {
+                if (!experiment.isRunning()) {
+                    logger.info(
+                            "Not tracking event \"{}\" for experiment \"{}\" because experiment has status \"Launched\".",
+                            eventType.getKey(), experiment.getKey());
                 }
-            } else {
-                logger.info(
-                        "Not tracking event \"{}\" for experiment \"{}\" because experiment has status \"Launched\".",
-                        eventType.getKey(), experiment.getKey());
+            }
+        }
+
+        Map<Experiment, Variation> experimentVariationMap = new HashMap<Experiment, Variation>(experimentsForEvent.size());
+        for (int i = 0; i < experimentsForEvent.size(); i++) {
+            Experiment experiment = experimentsForEvent.get(i);
+            Variation variation = snapshot.decisionService.getVariation(experiment, userId, copiedAttributes);
+            if (variation != null) {
+                experimentVariationMap.put(experiment, variation);
             }
         }
 
         // create the conversion event request parameters, then dispatch
         LogEvent conversionEvent = eventFactory.createConversionEvent(
-                projectConfig,
+                currentConfig,
                 experimentVariationMap,
                 userId,
                 eventType.getId(),
@@ -347,7 +436,7 @@ public class Optimizely {
         }
 
         notificationCenter.sendNotifications(NotificationCenter.NotificationType.Track, eventName, userId,
-                copiedAttributes, eventTags, conversionEvent);
+                listenerAttributes(copiedAttributes), eventTags, conversionEvent);
     }
 
     //======== FeatureFlag APIs ========//
@@ -394,19 +483,32 @@ public class Optimizely {
             logger.warn("The userId parameter must be nonnull.");
             return false;
         }
-        FeatureFlag featureFlag = projectConfig.getFeatureKeyMapping().get(featureKey);
+        ConfigSnapshot snapshot = current.get();
+        FeatureFlag featureFlag = snapshot.projectConfig.getFeatureKeyMapping().get(featureKey);
         if (featureFlag == null) {
             logger.info("No feature flag was found for key \"{}\".", featureKey);
             return false;
         }
 
-        Map<String, ?> copiedAttributes = copyAttributes(attributes);
-        FeatureDecision featureDecision = decisionService.getVariationForFeature(featureFlag, userId, copiedAttributes);
+        return isFeatureEnabled(snapshot, featureFlag, userId, copyAttributes(attributes));
+    }
+
+    /**
+     * Determines whether a boolean feature is enabled against the given snapshot, sending an impression event if the
+     * user is bucketed into an experiment using the feature.
+     */
+    private boolean isFeatureEnabled(@Nonnull ConfigSnapshot snapshot,
+                                     @Nonnull FeatureFlag featureFlag,
+                                     @Nonnull String userId,
+                                     @Nonnull Map<String, ?> copiedAttributes) {
+        String featureKey = featureFlag.getKey();
+        FeatureDecision featureDecision = snapshot.decisionService.getVariationForFeature(featureFlag, userId,
+                copiedAttributes);
 
         if (featureDecision.variation != null) {
             if (featureDecision.decisionSource.equals(FeatureDecision.DecisionSource.EXPERIMENT)) {
                 sendImpression(
-                        projectConfig,
+                        snapshot.projectConfig,
                         featureDecision.experiment,
                         userId,
                         copiedAttributes,
@@ -628,7 +730,8 @@ public class Optimizely {
             logger.warn("The userId parameter must be nonnull.");
             return null;
         }
-        FeatureFlag featureFlag = projectConfig.getFeatureKeyMapping().get(featureKey);
+        ConfigSnapshot snapshot = current.get();
+        FeatureFlag featureFlag = snapshot.projectConfig.getFeatureKeyMapping().get(featureKey);
         if (featureFlag == null) {
             logger.info("No feature flag was found for key \"{}\".", featureKey);
             return null;
@@ -649,7 +752,8 @@ public class Optimizely {
 
         String variableValue = variable.getDefaultValue();
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
-        FeatureDecision featureDecision = decisionService.getVariationForFeature(featureFlag, userId, copiedAttributes);
+        FeatureDecision featureDecision = snapshot.decisionService.getVariationForFeature(featureFlag, userId,
+                copiedAttributes);
         if (featureDecision.variation != null) {
             LiveVariableUsageInstance liveVariableUsageInstance =
                     featureDecision.variation.getVariableIdToLiveVariableUsageInstanceMap().get(variable.getId());
@@ -687,11 +791,12 @@ public class Optimizely {
             return enabledFeaturesList;
         }
 
+        // every flag is decided against the same config, even if it's replaced meanwhile
+        ConfigSnapshot snapshot = current.get();
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
-        for (FeatureFlag featureFlag : projectConfig.getFeatureFlags()){
-            String featureKey = featureFlag.getKey();
-            if(isFeatureEnabled(featureKey, userId, copiedAttributes))
-                enabledFeaturesList.add(featureKey);
+        for (FeatureFlag featureFlag : snapshot.projectConfig.getFeatureFlags()){
+            if(isFeatureEnabled(snapshot, featureFlag, userId, copiedAttributes))
+                enabledFeaturesList.add(featureFlag.getKey());
         }
 
         return enabledFeaturesList;
@@ -712,7 +817,7 @@ public class Optimizely {
                            @Nonnull Map<String, ?> attributes) throws UnknownExperimentException {
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
 
-        return decisionService.getVariation(experiment, userId, copiedAttributes);
+        return current.get().decisionService.getVariation(experiment, userId, copiedAttributes);
     }
 
     public @Nullable
@@ -740,15 +845,15 @@ public class Optimizely {
             return null;
         }
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ConfigSnapshot snapshot = current.get();
 
-        Experiment experiment = currentConfig.getExperimentForKey(experimentKey, errorHandler);
+        Experiment experiment = snapshot.projectConfig.getExperimentForKey(experimentKey, errorHandler);
         if (experiment == null) {
             // if we're unable to retrieve the associated experiment, return null
             return null;
         }
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
-        return decisionService.getVariation(experiment, userId, copiedAttributes);
+        return snapshot.decisionService.getVariation(experiment, userId, copiedAttributes);
     }
 
     /**
@@ -771,13 +876,14 @@ public class Optimizely {
             return false;
         }
 
-        return projectConfig.setForcedVariation(experimentKey, userId, variationKey);
+        ConfigSnapshot snapshot = current.get();
+        return snapshot.projectConfig.setForcedVariation(experimentKey, userId, variationKey,
+                snapshot.forcedVariations);
     }
 
     /**
      * Gets the forced variation for a given user and experiment.
-     * This method just calls into the {@link com.optimizely.ab.config.ProjectConfig#getForcedVariation(String, String)}
-     * method of the same signature.
+     * Forced variations are kept by this client and apply to every project config it is updated to.
      *
      * @param experimentKey The key for the experiment.
      * @param userId The user ID to be used for bucketing.
@@ -792,14 +898,20 @@ public class Optimizely {
             return null;
         }
 
-        return projectConfig.getForcedVariation(experimentKey, userId);
+        ConfigSnapshot snapshot = current.get();
+        return snapshot.projectConfig.getForcedVariation(experimentKey, userId, snapshot.forcedVariations);
     }
 
     /**
      * @return the current {@link ProjectConfig} instance.
      */
     public @Nonnull ProjectConfig getProjectConfig() {
-        return projectConfig;
+        return current.get().projectConfig;
+    }
+
+    @VisibleForTesting
+    DecisionService getDecisionService() {
+        return current.get().decisionService;
     }
 
     @Nullable
@@ -807,6 +919,120 @@ public class Optimizely {
         return userProfileService;
     }
 
+    //======== warm-up ========//
+
+    /**
+     * Runs synthetic decisions, audience evaluations and event serializations against the current project config, so
+     * the classes and code paths the first requests need are loaded and compiled before those requests are served.
+     * <p>
+     * Every experiment and feature flag is decided for {@code iterations} synthetic users with attribute values of
+     * each type, and the impression and conversion events for their decisions are built and serialized. None of them
+     * are dispatched or sent to notification listeners, decisions aren't saved to the {@link UserProfileService} and
+     * audience results aren't added to the shared audience result cache.
+     * <p>
+     * The synthetic decisions are logged like any other, at the levels the SDK normally logs them at, and the warm-up
+     * is summarized in one info line once it's done. To keep them out of the logs, raise the level of the
+     * {@code com.optimizely.ab} loggers while warming up.
+     *
+     * @param iterations the number of synthetic users to decide for
+     * @return what was run and how long it took
+     */
+    public @Nonnull WarmUpResult warmUp(int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative");
+        }
+
+        long start = System.nanoTime();
+        if (!isValid) {
+            logger.error("Optimizely instance is not valid, failing warmUp call.");
+            return new WarmUpResult(0, 0, System.nanoTime() - start);
+        }
+
+        // loads the parser later datafile updates go through, which isn't when the config came from a snapshot
+        DefaultConfigParser.getInstance();
+
+        ProjectConfig projectConfig = current.get().projectConfig;
+        DecisionService decisionService = new DecisionService(new Bucketer(projectConfig), errorHandler,
+                projectConfig, null, null, compiledAudiences(projectConfig));
+        Map<String, ?> eventTags = warmUpEventTags();
+        int decisions = 0;
+        int events = 0;
+        for (int i = 0; i < iterations; i++) {
+            String userId = "optimizely-warm-up-" + i;
+            Map<String, ?> attributes = AttributesSnapshot.of(warmUpAttributes(projectConfig.getAttributes(), i));
+
+            for (Experiment experiment : projectConfig.getExperiments()) {
+                Variation variation = decisionService.getVariation(experiment, userId, attributes);
+                decisions++;
+                if (variation != null && experiment.isRunning()) {
+                    eventFactory.createImpressionEvent(projectConfig, experiment, variation, userId, attributes)
+                            .getBody();
+                    events++;
+                }
+            }
+
+            for (FeatureFlag featureFlag : projectConfig.getFeatureFlags()) {
+                decisionService.getVariationForFeature(featureFlag, userId, attributes);
+                decisions++;
+            }
+
+            for (EventType eventType : projectConfig.getEventTypes()) {
+                Map<Experiment, Variation> experimentVariationMap = new HashMap<Experiment, Variation>();
+                for (Experiment experiment : projectConfig.getRunningExperimentsForEventKey(eventType.getKey())) {
+                    Variation variation = decisionService.getVariation(experiment, userId, attributes);
+                    decisions++;
+                    if (variation != null) {
+                        experimentVariationMap.put(experiment, variation);
+                    }
+                }
+
+                LogEvent conversionEvent = eventFactory.createConversionEvent(projectConfig, experimentVariationMap,
+                        userId, eventType.getId(), eventType.getKey(), attributes, eventTags);
+                if (conversionEvent != null) {
+                    conversionEvent.getBody();
+                    events++;
+                }
+            }
+        }
+
+        WarmUpResult result = new WarmUpResult(decisions, events, System.nanoTime() - start);
+        logger.info("Warmed up with {} decisions and {} events in {} ms.", decisions, events,
+                result.getDuration(TimeUnit.MILLISECONDS));
+        return result;
+    }
+
+    /**
+     * Gives every attribute of the project config a value of one of the types conditions match against, rotating
+     * the types with the iteration so each attribute is evaluated with all of them.
+     */
+    private static Map<String, ?> warmUpAttributes(@Nonnull List<Attribute> attributes, int iteration) {
+        Map<String, Object> values = new HashMap<String, Object>(attributes.size());
+        for (int i = 0; i < attributes.size(); i++) {
+            String key = attributes.get(i).getKey();
+            switch ((iteration + i) % 4) {
+                case 0:
+                    values.put(key, "warm-up-" + iteration);
+                    break;
+                case 1:
+                    values.put(key, iteration);
+                    break;
+                case 2:
+                    values.put(key, iteration + 0.5);
+                    break;
+                default:
+                    values.put(key, iteration % 2 == 0);
+            }
+        }
+        return values;
+    }
+
+    private static Map<String, ?> warmUpEventTags() {
+        Map<String, Object> eventTags = new HashMap<String, Object>();
+        eventTags.put(ReservedEventKey.REVENUE.toString(), 100);
+        eventTags.put(ReservedEventKey.VALUE.toString(), 1.5);
+        return eventTags;
+    }
+
     //======== Helper methods ========//
     /**
      * Helper function to check that the provided userId is valid
@@ -824,12 +1050,24 @@ public class Optimizely {
     }
 
     /**
-     * Helper method which makes separate copy of attributesMap variable and returns it
+     * Helper method which makes separate copy of attributesMap variable and returns it.
+     * Attributes that are already a snapshot are returned as is, so nested calls share its cached lookups.
      *
      * @param attributes map to copy
      * @return copy of attributes
      */
     private Map<String, ?> copyAttributes(Map<String, ?> attributes) {
+        return AttributesSnapshot.of(attributes, audienceResultCache);
+    }
+
+    /**
+     * Helper method which makes a plain, mutable copy of the attributes for notification listeners, who were always
+     * handed one rather than the read-only snapshot decisions are made with.
+     *
+     * @param attributes map to copy
+     * @return copy of attributes
+     */
+    private static Map<String, ?> listenerAttributes(Map<String, ?> attributes) {
         Map<String, ?> copiedAttributes = null;
         if (attributes != null) {
             copiedAttributes = new HashMap<>(attributes);
@@ -837,6 +1075,26 @@ public class Optimizely {
         return copiedAttributes;
     }
 
+    /**
+     * A project config together with the decision service built for it and the forced variations it reads. Every
+     * call reads the current snapshot once, so the decision and the event it sends are always based on the same
+     * config.
+     */
+    @Immutable
+    static final class ConfigSnapshot {
+        @Nullable final ProjectConfig projectConfig;
+        @Nonnull final DecisionService decisionService;
+        @Nonnull final ForcedVariations forcedVariations;
+
+        ConfigSnapshot(@Nullable ProjectConfig projectConfig,
+                       @Nonnull DecisionService decisionService,
+                       @Nonnull ForcedVariations forcedVariations) {
+            this.projectConfig = projectConfig;
+            this.decisionService = decisionService;
+            this.forcedVariations = forcedVariations;
+        }
+    }
+
     //======== Builder ========//
 
     public static Builder builder(@Nonnull String datafile,
@@ -864,6 +1122,12 @@ public class Optimizely {
         private String clientVersion;
         private ProjectConfig projectConfig;
         private UserProfileService userProfileService;
+        private AudienceResultCache audienceResultCache;
+        private int maxForcedVariationUsers = ForcedVariations.UNBOUNDED;
+        private long forcedVariationTtlMillis = ForcedVariations.UNBOUNDED;
+        private File compiledSnapshot;
+        private int warmUpIterations;
+        private boolean compileAudienceConditions;
 
         public Builder(@Nonnull String datafile,
                        @Nonnull EventHandler eventHandler) {
@@ -891,6 +1155,73 @@ public class Optimizely {
             return this;
         }
 
+        /**
+         * Shares audience results between users with the same values for the attributes an audience references.
+         *
+         * @param maxSize the maximum number of audience results to keep
+         */
+        public Builder withAudienceResultCache(int maxSize) {
+            this.audienceResultCache = new AudienceResultCache(maxSize);
+            return this;
+        }
+
+        /**
+         * Bounds the forced variations set with {@link Optimizely#setForcedVariation(String, String, String)}.
+         * The limits don't apply with a custom decision service, which keeps forced variations in its project config.
+         *
+         * Users over the limit are evicted least recently set first, and each forced variation of a user expires on its
+         * own.
+         *
+         * @param maxUsers the maximum number of users to keep forced variations for, or 0 for no limit
+         * @param ttl how long a forced variation is kept after it was set, or 0 to keep it indefinitely
+         * @param unit the time unit of the ttl
+         */
+        public Builder withForcedVariationLimits(int maxUsers, long ttl, @Nonnull TimeUnit unit) {
+            if (maxUsers < 0 || ttl < 0) {
+                throw new IllegalArgumentException("forced variation limits must not be negative");
+            }
+            this.maxForcedVariationUsers = maxUsers;
+            this.forcedVariationTtlMillis = unit.toMillis(ttl);
+            return this;
+        }
+
+        /**
+         * Loads the compiled config from a snapshot file when it was compiled from the same datafile,
+         * instead of parsing the datafile. Otherwise the datafile is parsed and the snapshot is written for the next
+         * process to start.
+         *
+         * @param compiledSnapshot the snapshot file
+         * @see com.optimizely.ab.config.CompiledConfigSnapshot
+         */
+        public Builder withCompiledSnapshot(@Nonnull File compiledSnapshot) {
+            this.compiledSnapshot = compiledSnapshot;
+            return this;
+        }
+
+        /**
+         * Warms up the built instance with {@link Optimizely#warmUp(int)} before it's returned.
+         *
+         * @param iterations the number of synthetic users to decide for
+         */
+        public Builder withWarmUp(int iterations) {
+            if (iterations < 0) {
+                throw new IllegalArgumentException("warm-up iterations must not be negative");
+            }
+            this.warmUpIterations = iterations;
+            return this;
+        }
+
+        /**
+         * Compiles the audience conditions of experiments and rollout rules into method handle chains the first time
+         * they're evaluated, instead of interpreting their condition trees. Decisions are the same either way.
+         *
+         * @see com.optimizely.ab.config.audience.CompiledCondition
+         */
+        public Builder withCompiledAudienceConditions() {
+            this.compileAudienceConditions = true;
+            return this;
+        }
+
         public Builder withClientEngine(ClientEngine clientEngine) {
             this.clientEngine = clientEngine;
             return this;
@@ -932,11 +1263,18 @@ public class Optimizely {
 
             // Used for convenience while unit testing to override/mock bucketing. This interface is NOT public and should be refactored out.
             if (bucketer != null && decisionService == null) {
-                decisionService = new DecisionService(bucketer, errorHandler, projectConfig, userProfileService);
+                CompiledAudiences compiledAudiences = compileAudienceConditions && projectConfig != null
+                        ? new CompiledAudiences(projectConfig) : null;
+                decisionService = new DecisionService(bucketer, errorHandler, projectConfig, userProfileService,
+                        null, compiledAudiences);
             }
 
-            Optimizely optimizely = new Optimizely(eventHandler, eventFactory, errorHandler, decisionService, userProfileService);
-            optimizely.initialize(datafile, projectConfig);
+            Optimizely optimizely = new Optimizely(eventHandler, eventFactory, errorHandler, decisionService, userProfileService,
+                    audienceResultCache, maxForcedVariationUsers, forcedVariationTtlMillis, compileAudienceConditions);
+            optimizely.initialize(datafile, projectConfig, compiledSnapshot);
+            if (warmUpIterations > 0 && optimizely.isValid()) {
+                optimizely.warmUp(warmUpIterations);
+            }
             return optimizely;
         }
     }
@@ -0,0 +1,69 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link Optimizely#warmUp(int)} did, and how long it took.
+ */
+@Immutable
+public final class WarmUpResult {
+
+    private final int decisions;
+    private final int events;
+    private final long durationNanos;
+
+    WarmUpResult(int decisions, int events, long durationNanos) {
+        this.decisions = decisions;
+        this.events = events;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return the number of synthetic experiment and feature decisions that were made
+     */
+    public int getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return the number of impression and conversion events that were built and serialized
+     */
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * @param unit the time unit to return the duration in
+     * @return how long the warm-up took
+     */
+    public long getDuration(@Nonnull TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpResult{" +
+                "decisions=" + decisions +
+                ", events=" + events +
+                ", durationMillis=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                '}';
+    }
+}
@@ -18,10 +18,13 @@ package com.optimizely.ab.bucketing;
 import com.optimizely.ab.OptimizelyRuntimeException;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.FeatureFlag;
+import com.optimizely.ab.config.ForcedVariations;
+import com.optimizely.ab.config.OverrideIndex;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.Rollout;
 import com.optimizely.ab.config.Variation;
 import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.CompiledAudiences;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.internal.ExperimentUtils;
 import com.optimizely.ab.internal.ControlAttribute;
@@ -30,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -51,6 +55,8 @@ public class DecisionService {
     private final ErrorHandler errorHandler;
     private final ProjectConfig projectConfig;
     private final UserProfileService userProfileService;
+    private final ForcedVariations forcedVariations;
+    private final CompiledAudiences compiledAudiences;
     private static final Logger logger = LoggerFactory.getLogger(DecisionService.class);
 
     /**
@@ -64,10 +70,37 @@ public class DecisionService {
                            @Nonnull ErrorHandler errorHandler,
                            @Nullable ProjectConfig projectConfig,
                            @Nullable UserProfileService userProfileService) {
+        this(bucketer, errorHandler, projectConfig, userProfileService, null, null);
+    }
+
+    /**
+     * Initialize a decision service for the Optimizely client.
+     * @param bucketer Base bucketer to allocate new users to an experiment.
+     * @param errorHandler The error handler of the Optimizely client.
+     * @param projectConfig Optimizely Project Config representing the datafile.
+     * @param userProfileService UserProfileService implementation for storing user info.
+     * @param forcedVariations The forced variations to look up, or null to use the ones of the project config.
+     * @param compiledAudiences The compiled audience conditions of the project config, or null to interpret them.
+     */
+    public DecisionService(@Nonnull Bucketer bucketer,
+                           @Nonnull ErrorHandler errorHandler,
+                           @Nullable ProjectConfig projectConfig,
+                           @Nullable UserProfileService userProfileService,
+                           @Nullable ForcedVariations forcedVariations,
+                           @Nullable CompiledAudiences compiledAudiences) {
         this.bucketer = bucketer;
         this.errorHandler = errorHandler;
         this.projectConfig = projectConfig;
         this.userProfileService = userProfileService;
+        this.forcedVariations = forcedVariations;
+        this.compiledAudiences = compiledAudiences;
+    }
+
+    /**
+     * @return the compiled audience conditions decisions are made with, or null if they are interpreted
+     */
+    public @Nullable CompiledAudiences getCompiledAudiences() {
+        return compiledAudiences;
     }
 
     /**
@@ -87,10 +120,12 @@ public class DecisionService {
         }
 
         // look for forced bucketing first.
-        Variation variation = projectConfig.getForcedVariation(experiment.getKey(), userId);
+        Variation variation = forcedVariations == null
+                ? projectConfig.getForcedVariation(experiment.getKey(), userId)
+                : projectConfig.getForcedVariation(experiment.getKey(), userId, forcedVariations);
 
-        // check for whitelisting
-        if (variation == null) {
+        // check for whitelisting, skipped for the users the datafile doesn't whitelist, which is nearly all of them.
+        if (variation == null && projectConfig.getOverrideIndex().hasWhitelistedVariations(userId)) {
             variation = getWhitelistedVariation(experiment, userId);
         }
 
@@ -128,7 +163,7 @@ public class DecisionService {
             userProfile = new UserProfile(userId, new HashMap<String, Decision>());
         }
 
-        if (ExperimentUtils.isUserInExperiment(projectConfig, experiment, filteredAttributes)) {
+        if (ExperimentUtils.isUserInExperiment(projectConfig, experiment, filteredAttributes, compiledAudiences)) {
             String bucketingId = getBucketingId(userId, filteredAttributes);
             variation = bucketer.bucket(experiment, bucketingId);
 
@@ -158,8 +193,9 @@ public class DecisionService {
                                                            @Nonnull String userId,
                                                            @Nonnull Map<String, ?> filteredAttributes) {
         if (!featureFlag.getExperimentIds().isEmpty()) {
-            for (String experimentId : featureFlag.getExperimentIds()) {
-                Experiment experiment = projectConfig.getExperimentIdMapping().get(experimentId);
+            List<Experiment> experiments = projectConfig.getActiveExperimentsForFeature(featureFlag);
+            for (int i = 0; i < experiments.size(); i++) {
+                Experiment experiment = experiments.get(i);
                 Variation variation = this.getVariation(experiment, userId, filteredAttributes);
                 if (variation != null) {
                     return new FeatureDecision(experiment, variation,
@@ -212,7 +248,7 @@ public class DecisionService {
         for (int i = 0; i < rolloutRulesLength - 1; i++) {
             Experiment rolloutRule = rollout.getExperiments().get(i);
             Audience audience = projectConfig.getAudienceIdMapping().get(rolloutRule.getAudienceIds().get(0));
-            if (ExperimentUtils.isUserInExperiment(projectConfig, rolloutRule, filteredAttributes)) {
+            if (ExperimentUtils.isUserInExperiment(projectConfig, rolloutRule, filteredAttributes, compiledAudiences)) {
                 variation = bucketer.bucket(rolloutRule, bucketingId);
                 if (variation == null) {
                     break;
@@ -228,7 +264,7 @@ public class DecisionService {
 
         // get last rule which is the fall back rule
         Experiment finalRule = rollout.getExperiments().get(rolloutRulesLength - 1);
-        if (ExperimentUtils.isUserInExperiment(projectConfig, finalRule, filteredAttributes)) {
+        if (ExperimentUtils.isUserInExperiment(projectConfig, finalRule, filteredAttributes, compiledAudiences)) {
             variation = bucketer.bucket(finalRule, bucketingId);
             if (variation != null) {
                 return new FeatureDecision(finalRule, variation,
@@ -246,6 +282,16 @@ public class DecisionService {
      *      {@link Variation} the user is bucketed into if the user has a specified whitelisted variation.
      */
     @Nullable Variation getWhitelistedVariation(@Nonnull Experiment experiment, @Nonnull String userId) {
+        int variationIndex = projectConfig.getOverrideIndex().getWhitelistedVariationIndex(experiment, userId);
+        if (variationIndex >= 0) {
+            Variation forcedVariation = experiment.getVariations().get(variationIndex);
+            logger.info("User \"{}\" is forced in variation \"{}\".", userId, forcedVariation.getKey());
+            return forcedVariation;
+        } else if (variationIndex == OverrideIndex.NOT_WHITELISTED) {
+            return null;
+        }
+
+        // the experiment isn't from this config, or the user is whitelisted into a variation it doesn't have
         // if a user has a forced variation mapping, return the respective variation
         Map<String, String> userIdToVariationKeyMap = experiment.getUserIdToVariationKeyMap();
         if (userIdToVariationKeyMap.containsKey(userId)) {
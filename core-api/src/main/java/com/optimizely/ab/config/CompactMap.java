@@ -0,0 +1,272 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only map from string keys to entities, laid out as parallel key and value arrays.
+ * <p>
+ * Entries are numbered densely in insertion order, and that number is their position in the arrays. Maps of up to
+ * {@link #LINEAR_SCAN_LIMIT} entries, which is most of the per-experiment and per-variation maps of a datafile, are
+ * searched linearly. Larger maps add an open addressing table of entry numbers, so there are no per-entry nodes or
+ * boxed hashes as in a {@link java.util.HashMap}.
+ */
+@Immutable
+final class CompactMap<V> extends AbstractMap<String, V> {
+
+    static final int LINEAR_SCAN_LIMIT = 8;
+
+    /**
+     * Returned by {@link #indexOf(Object)} for keys that aren't in the map.
+     */
+    static final int NOT_FOUND = -1;
+
+    private static final CompactMap<Object> EMPTY = new CompactMap<Object>(new String[0], new Object[0], 0);
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] table;
+    private transient Set<Map.Entry<String, V>> entrySet;
+
+    private CompactMap(String[] keys, Object[] values, int size) {
+        this.keys = size == keys.length ? keys : Arrays.copyOf(keys, size);
+        this.values = size == values.length ? values : Arrays.copyOf(values, size);
+        this.table = size > LINEAR_SCAN_LIMIT ? buildTable(this.keys) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> CompactMap<V> empty() {
+        return (CompactMap<V>) EMPTY;
+    }
+
+    /**
+     * Copies a map. Iteration order follows the iteration order of the copied map.
+     */
+    static <V> CompactMap<V> copyOf(@Nonnull Map<String, ? extends V> map) {
+        if (map instanceof CompactMap) {
+            @SuppressWarnings("unchecked")
+            CompactMap<V> compactMap = (CompactMap<V>) map;
+            return compactMap;
+        }
+        if (map.isEmpty()) {
+            return empty();
+        }
+
+        Builder<V> builder = new Builder<V>(map.size());
+        for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return the dense number of the entry for the key, or {@link #NOT_FOUND}
+     */
+    int indexOf(@Nullable Object key) {
+        if (!(key instanceof String)) {
+            return NOT_FOUND;
+        }
+
+        if (table == null) {
+            return scan(keys, keys.length, key);
+        }
+
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index < 0) {
+                return NOT_FOUND;
+            }
+            String candidate = keys[index];
+            if (candidate == key || candidate.equals(key)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * @return the key of the entry with the given dense number
+     */
+    String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return the value of the entry with the given dense number
+     */
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != NOT_FOUND;
+    }
+
+    @Override
+    public V get(Object key) {
+        int index = indexOf(key);
+        return index == NOT_FOUND ? null : valueAt(index);
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        Set<Map.Entry<String, V>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, V>>() {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new Iterator<Map.Entry<String, V>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, V> next() {
+                            if (next >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int index = next++;
+                            return new SimpleImmutableEntry<String, V>(keys[index], valueAt(index));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+            this.entrySet = entrySet;
+        }
+
+        return entrySet;
+    }
+
+    private static int scan(String[] keys, int size, Object key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key || keys[i].equals(key)) {
+                return i;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    private static int[] buildTable(String[] keys) {
+        // a power of two at least twice the size keeps probe sequences short
+        int capacity = Integer.highestOneBit(keys.length * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+
+        return table;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Collects entries for a {@link CompactMap}. A key that is put again keeps its number and takes the new value,
+     * like it would in a {@link java.util.HashMap}.
+     */
+    static final class Builder<V> {
+        private String[] keys;
+        private Object[] values;
+        private int size;
+        private Set<String> seen;
+
+        Builder(int expectedSize) {
+            keys = new String[Math.max(expectedSize, 1)];
+            values = new Object[keys.length];
+        }
+
+        Builder<V> put(@Nonnull String key, V value) {
+            int index = size > LINEAR_SCAN_LIMIT ? indexOfLarge(key) : scan(keys, size, key);
+            if (index != NOT_FOUND) {
+                values[index] = value;
+                return this;
+            }
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        CompactMap<V> build() {
+            if (size == 0) {
+                return empty();
+            }
+
+            CompactMap<V> map = new CompactMap<V>(keys, values, size);
+            keys = null;
+            values = null;
+            return map;
+        }
+
+        // duplicate keys are rare, so larger maps only pay for a set of the keys while they are being built
+        private int indexOfLarge(String key) {
+            if (seen == null) {
+                seen = new HashSet<String>(Arrays.asList(keys).subList(0, size));
+            }
+            if (seen.add(key)) {
+                return NOT_FOUND;
+            }
+
+            return scan(keys, size, key);
+        }
+    }
+}
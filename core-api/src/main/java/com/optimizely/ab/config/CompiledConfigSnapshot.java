@@ -0,0 +1,567 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.EmptyCondition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.NullCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.UserAttribute;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.config.parser.ConfigParser;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled {@link ProjectConfig} stored in a versioned binary file, so short-lived processes can skip parsing the
+ * JSON datafile on startup.
+ * <p>
+ * {@link #open(File)} maps the file into memory and only reads its header. The config is materialized from the
+ * mapped file on the first call to {@link #getConfig()}, and its strings are decoded from the string table as the
+ * entities referring to them are built, so every entity referring to an id shares one instance.
+ * <p>
+ * {@link #load(File, String)} is the usual entry point: it uses the snapshot when it's in the current format and was
+ * compiled from the same datafile, and otherwise parses the datafile and writes a new snapshot for the next process.
+ * Snapshots are matched to datafiles by a SHA-256 digest of the datafile stored in their header, so a datafile edited
+ * without a new revision, or the datafile of another project or environment, is never answered with a stale config.
+ */
+@ThreadSafe
+public final class CompiledConfigSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledConfigSnapshot.class);
+
+    /**
+     * Version of the binary format. Snapshots of any other version are ignored.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    static final int MAGIC = 0x4F505443; // "OPTC"
+
+    static final int NULL_STRING = -1;
+
+    static final byte NULL = -1;
+    static final byte AND_CONDITION = 1;
+    static final byte OR_CONDITION = 2;
+    static final byte NOT_CONDITION = 3;
+    static final byte AUDIENCE_ID_CONDITION = 4;
+    static final byte USER_ATTRIBUTE = 5;
+    static final byte EMPTY_CONDITION = 6;
+    static final byte NULL_CONDITION = 7;
+
+    static final byte STRING_VALUE = 1;
+    static final byte BOOLEAN_VALUE = 2;
+    static final byte INTEGER_VALUE = 3;
+    static final byte LONG_VALUE = 4;
+    static final byte DOUBLE_VALUE = 5;
+
+    private final File file;
+    private final int formatVersion;
+    private final String revision;
+    private final byte[] datafileDigest;
+    private final ByteBuffer buffer;
+
+    @GuardedBy("this")
+    private ProjectConfig config;
+
+    private CompiledConfigSnapshot(File file, int formatVersion, String revision, byte[] datafileDigest,
+                                   ByteBuffer buffer) {
+        this.file = file;
+        this.formatVersion = formatVersion;
+        this.revision = revision;
+        this.datafileDigest = datafileDigest;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Maps a snapshot file and reads its header.
+     *
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static CompiledConfigSnapshot open(@Nonnull File file) throws IOException {
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a compiled config snapshot");
+            }
+            int formatVersion = buffer.getInt();
+            byte[] revision = new byte[buffer.getInt()];
+            buffer.get(revision);
+            // snapshots of other formats may not have a digest, and are never used anyway
+            byte[] datafileDigest = new byte[0];
+            if (formatVersion == FORMAT_VERSION) {
+                datafileDigest = new byte[buffer.getInt()];
+                buffer.get(datafileDigest);
+            }
+            return new CompiledConfigSnapshot(file, formatVersion, new String(revision, StandardCharsets.UTF_8),
+                    datafileDigest, buffer.slice());
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    /**
+     * Writes the config to a snapshot file that isn't tied to a datafile, so {@link #load(File, String)} never uses
+     * it.
+     *
+     * @see #write(ProjectConfig, String, File)
+     */
+    public static void write(@Nonnull ProjectConfig config, @Nonnull File file) throws IOException {
+        write(config, new byte[0], file);
+    }
+
+    /**
+     * Writes the config parsed from a datafile to a snapshot file. The file is written next to its destination and
+     * moved into place, so processes opening it concurrently never see a partial snapshot.
+     */
+    public static void write(@Nonnull ProjectConfig config, @Nonnull String datafile, @Nonnull File file)
+            throws IOException {
+        write(config, digest(datafile), file);
+    }
+
+    private static void write(ProjectConfig config, byte[] datafileDigest, File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+            try {
+                new CompiledConfigWriter().write(config, datafileDigest, out);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    /**
+     * Returns the config of the datafile, from the snapshot file when it was compiled from the same datafile in the
+     * current format, and otherwise by parsing the datafile. A snapshot that is missing, stale or unreadable is
+     * replaced by one of the parsed config.
+     *
+     * @param file the snapshot file
+     * @param datafile the JSON datafile
+     * @throws ConfigParseException if the datafile has to be parsed and can't be
+     */
+    public static ProjectConfig load(@Nonnull File file, @Nonnull String datafile) throws ConfigParseException {
+        return load(file, datafile, DefaultConfigParser.getInstance(), null);
+    }
+
+    /**
+     * Returns the config of the datafile like {@link #load(File, String)}, parsing the datafile with the given parser
+     * when the snapshot doesn't match it.
+     *
+     * @param file the snapshot file
+     * @param datafile the JSON datafile
+     * @param parser the parser of the datafile
+     * @param previousConfig the config of the previous datafile, to reuse the entities that didn't change from
+     * @throws ConfigParseException if the datafile has to be parsed and can't be
+     */
+    public static ProjectConfig load(@Nonnull File file,
+                                     @Nonnull String datafile,
+                                     @Nonnull ConfigParser parser,
+                                     @Nullable ProjectConfig previousConfig) throws ConfigParseException {
+        byte[] datafileDigest = digest(datafile);
+        if (file.isFile()) {
+            try {
+                CompiledConfigSnapshot snapshot = open(file);
+                if (snapshot.matches(datafileDigest)) {
+                    return snapshot.getConfig();
+                }
+                logger.debug("Snapshot {} of revision {} in format {} wasn't compiled from the datafile",
+                        file, snapshot.getRevision(), snapshot.getFormatVersion());
+            } catch (IOException e) {
+                logger.warn("Unable to read config snapshot {}, parsing the datafile", file, e);
+            }
+        }
+
+        ProjectConfig config = parser.parseProjectConfig(datafile, previousConfig);
+        try {
+            write(config, datafileDigest, file);
+        } catch (IOException e) {
+            logger.warn("Unable to write config snapshot {}", file, e);
+        }
+
+        return config;
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return whether the snapshot is in the current format and was compiled from the given datafile
+     */
+    public boolean matches(@Nonnull String datafile) {
+        return matches(digest(datafile));
+    }
+
+    private boolean matches(byte[] digest) {
+        return formatVersion == FORMAT_VERSION && datafileDigest.length > 0
+                && MessageDigest.isEqual(datafileDigest, digest);
+    }
+
+    /**
+     * Materializes the config on the first call.
+     *
+     * @throws IOException if the snapshot is in another format or can't be decoded
+     */
+    public synchronized ProjectConfig getConfig() throws IOException {
+        if (config == null) {
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException(file + " is in format " + formatVersion + ", expected " + FORMAT_VERSION);
+            }
+            try {
+                config = new Reader(buffer.duplicate()).readConfig();
+            } catch (RuntimeException e) {
+                throw new IOException("Unable to decode " + file, e);
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * @return the SHA-256 digest of the UTF-8 bytes of the datafile
+     */
+    static byte[] digest(@Nonnull String datafile) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(datafile.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes the body of a snapshot, in the order {@link CompiledConfigWriter} wrote it.
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final int[] stringEnds;
+        private final int stringsStart;
+        private final String[] strings;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            stringEnds = new int[buffer.getInt()];
+            for (int i = 0; i < stringEnds.length; i++) {
+                stringEnds[i] = buffer.getInt();
+            }
+            stringsStart = buffer.position();
+            strings = new String[stringEnds.length];
+            buffer.position(stringsStart + (stringEnds.length == 0 ? 0 : stringEnds[stringEnds.length - 1]));
+        }
+
+        private ProjectConfig readConfig() {
+            String accountId = readString();
+            String projectId = readString();
+            String version = readString();
+            String revision = readString();
+            boolean anonymizeIP = readBoolean();
+            byte botFilteringByte = buffer.get();
+            Boolean botFiltering = botFilteringByte == NULL ? null : botFilteringByte == 1;
+
+            List<Attribute> attributes = readAttributes();
+            List<Audience> audiences = readAudiences();
+            List<Audience> typedAudiences = readAudiences();
+            List<EventType> events = readEvents();
+            List<Experiment> experiments = readExperiments();
+            List<FeatureFlag> featureFlags = readFeatureFlags();
+            List<Group> groups = readGroups();
+            List<LiveVariable> liveVariables = readBoolean() ? readLiveVariables() : null;
+            List<Rollout> rollouts = readRollouts();
+
+            return new ProjectConfig(accountId, anonymizeIP, botFiltering, projectId, revision, version, attributes,
+                    audiences, typedAudiences, events, experiments, featureFlags, groups, liveVariables, rollouts);
+        }
+
+        private List<Attribute> readAttributes() {
+            int count = buffer.getInt();
+            List<Attribute> attributes = new ArrayList<Attribute>(count);
+            for (int i = 0; i < count; i++) {
+                attributes.add(new Attribute(readString(), readString(), readString()));
+            }
+
+            return attributes;
+        }
+
+        private List<Audience> readAudiences() {
+            int count = buffer.getInt();
+            List<Audience> audiences = new ArrayList<Audience>(count);
+            for (int i = 0; i < count; i++) {
+                audiences.add(new Audience(readString(), readString(), readCondition()));
+            }
+
+            return audiences;
+        }
+
+        private List<EventType> readEvents() {
+            int count = buffer.getInt();
+            List<EventType> events = new ArrayList<EventType>(count);
+            for (int i = 0; i < count; i++) {
+                events.add(new EventType(readString(), readString(), readStrings()));
+            }
+
+            return events;
+        }
+
+        private List<Experiment> readExperiments() {
+            int count = buffer.getInt();
+            List<Experiment> experiments = new ArrayList<Experiment>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString();
+                String key = readString();
+                String status = readString();
+                String layerId = readString();
+                List<String> audienceIds = readStrings();
+                Condition audienceConditions = readCondition();
+                List<Variation> variations = readVariations();
+                int forcedCount = buffer.getInt();
+                Map<String, String> forcedVariations = new HashMap<String, String>();
+                for (int j = 0; j < forcedCount; j++) {
+                    forcedVariations.put(readString(), readString());
+                }
+                List<TrafficAllocation> trafficAllocation = readTrafficAllocation();
+                String groupId = readString();
+                experiments.add(new Experiment(id, key, status, layerId, audienceIds, audienceConditions, variations,
+                        forcedVariations, trafficAllocation, groupId));
+            }
+
+            return experiments;
+        }
+
+        private List<Variation> readVariations() {
+            int count = buffer.getInt();
+            List<Variation> variations = new ArrayList<Variation>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString();
+                String key = readString();
+                boolean featureEnabled = readBoolean();
+                int usageCount = buffer.getInt();
+                List<LiveVariableUsageInstance> usages = new ArrayList<LiveVariableUsageInstance>(usageCount);
+                for (int j = 0; j < usageCount; j++) {
+                    usages.add(new LiveVariableUsageInstance(readString(), readString()));
+                }
+                variations.add(new Variation(id, key, featureEnabled, usages));
+            }
+
+            return variations;
+        }
+
+        private List<TrafficAllocation> readTrafficAllocation() {
+            int count = buffer.getInt();
+            List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>(count);
+            for (int i = 0; i < count; i++) {
+                trafficAllocation.add(new TrafficAllocation(readString(), buffer.getInt()));
+            }
+
+            return trafficAllocation;
+        }
+
+        private List<FeatureFlag> readFeatureFlags() {
+            int count = buffer.getInt();
+            List<FeatureFlag> featureFlags = new ArrayList<FeatureFlag>(count);
+            for (int i = 0; i < count; i++) {
+                featureFlags.add(new FeatureFlag(readString(), readString(), readString(), readStrings(),
+                        readLiveVariables()));
+            }
+
+            return featureFlags;
+        }
+
+        private List<Group> readGroups() {
+            int count = buffer.getInt();
+            List<Group> groups = new ArrayList<Group>(count);
+            for (int i = 0; i < count; i++) {
+                groups.add(new Group(readString(), readString(), readExperiments(), readTrafficAllocation()));
+            }
+
+            return groups;
+        }
+
+        private List<LiveVariable> readLiveVariables() {
+            int count = buffer.getInt();
+            List<LiveVariable> liveVariables = new ArrayList<LiveVariable>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString();
+                String key = readString();
+                String defaultValue = readString();
+                String status = readString();
+                String type = readString();
+                liveVariables.add(new LiveVariable(id, key, defaultValue,
+                        status == null ? null : LiveVariable.VariableStatus.fromString(status),
+                        type == null ? null : LiveVariable.VariableType.fromString(type)));
+            }
+
+            return liveVariables;
+        }
+
+        private List<Rollout> readRollouts() {
+            int count = buffer.getInt();
+            List<Rollout> rollouts = new ArrayList<Rollout>(count);
+            for (int i = 0; i < count; i++) {
+                rollouts.add(new Rollout(readString(), readExperiments()));
+            }
+
+            return rollouts;
+        }
+
+        @Nullable
+        private Condition readCondition() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case AND_CONDITION:
+                    return new AndCondition(readConditions());
+                case OR_CONDITION:
+                    return new OrCondition(readConditions());
+                case NOT_CONDITION:
+                    return new NotCondition(readCondition());
+                case AUDIENCE_ID_CONDITION:
+                    return new AudienceIdCondition(readString());
+                case USER_ATTRIBUTE:
+                    return new UserAttribute(readString(), readString(), readString(), readValue());
+                case EMPTY_CONDITION:
+                    return new EmptyCondition();
+                case NULL_CONDITION:
+                    return new NullCondition();
+                default:
+                    throw new IllegalStateException("Unknown condition tag " + tag);
+            }
+        }
+
+        private List<Condition> readConditions() {
+            int count = buffer.getInt();
+            List<Condition> conditions = new ArrayList<Condition>(count);
+            for (int i = 0; i < count; i++) {
+                conditions.add(readCondition());
+            }
+
+            return conditions;
+        }
+
+        @Nullable
+        private Object readValue() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING_VALUE:
+                    return readString();
+                case BOOLEAN_VALUE:
+                    return readBoolean();
+                case INTEGER_VALUE:
+                    return buffer.getInt();
+                case LONG_VALUE:
+                    return buffer.getLong();
+                case DOUBLE_VALUE:
+                    return buffer.getDouble();
+                default:
+                    throw new IllegalStateException("Unknown value tag " + tag);
+            }
+        }
+
+        private boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        private List<String> readStrings() {
+            int count = buffer.getInt();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<String> values = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+
+            return values;
+        }
+
+        /**
+         * Decodes a string of the table the first time it's referred to.
+         */
+        @Nullable
+        private String readString() {
+            int index = buffer.getInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            String string = strings[index];
+            if (string == null) {
+                int start = index == 0 ? 0 : stringEnds[index - 1];
+                byte[] bytes = new byte[stringEnds[index] - start];
+                ByteBuffer view = buffer.duplicate();
+                view.position(stringsStart + start);
+                view.get(bytes);
+                string = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = string;
+            }
+
+            return string;
+        }
+    }
+}
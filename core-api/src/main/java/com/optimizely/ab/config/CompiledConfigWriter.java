@@ -0,0 +1,342 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.EmptyCondition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.NullCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.UserAttribute;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.optimizely.ab.config.CompiledConfigSnapshot.AND_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.AUDIENCE_ID_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.BOOLEAN_VALUE;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.DOUBLE_VALUE;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.EMPTY_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.FORMAT_VERSION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.INTEGER_VALUE;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.LONG_VALUE;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.MAGIC;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.NOT_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.NULL;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.NULL_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.NULL_STRING;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.OR_CONDITION;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.STRING_VALUE;
+import static com.optimizely.ab.config.CompiledConfigSnapshot.USER_ATTRIBUTE;
+
+/**
+ * Writes a {@link ProjectConfig} in the format read by {@link CompiledConfigSnapshot}.
+ * <p>
+ * Entities are written in the order of the arguments of the {@link ProjectConfig} constructor, with every string
+ * replaced by its number in a string table that precedes them. Each distinct string is then stored once, however
+ * many entities refer to it.
+ */
+@NotThreadSafe
+final class CompiledConfigWriter {
+
+    private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream body = new DataOutputStream(bodyBytes);
+
+    /**
+     * @param datafileDigest the digest of the datafile the config was parsed from, empty if it's unknown
+     */
+    void write(@Nonnull ProjectConfig config, @Nonnull byte[] datafileDigest, @Nonnull OutputStream out)
+            throws IOException {
+        writeString(config.getAccountId());
+        writeString(config.getProjectId());
+        writeString(config.getVersion());
+        writeString(config.getRevision());
+        body.writeBoolean(config.getAnonymizeIP());
+        Boolean botFiltering = config.getBotFiltering();
+        body.writeByte(botFiltering == null ? NULL : botFiltering ? 1 : 0);
+
+        writeAttributes(config.getAttributes());
+        writeAudiences(config.getAudiences());
+        writeAudiences(config.getTypedAudiences());
+        writeEvents(config.getEventTypes());
+        writeExperiments(topLevelExperiments(config));
+        writeFeatureFlags(config.getFeatureFlags());
+        writeGroups(config.getGroups());
+        body.writeBoolean(config.getLiveVariables() != null);
+        if (config.getLiveVariables() != null) {
+            writeLiveVariables(config.getLiveVariables());
+        }
+        writeRollouts(config.getRollouts());
+        body.flush();
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        byte[] revision = config.getRevision().getBytes(StandardCharsets.UTF_8);
+        header.writeInt(revision.length);
+        header.write(revision);
+        header.writeInt(datafileDigest.length);
+        header.write(datafileDigest);
+
+        // the string table, as end offsets followed by the UTF-8 bytes of all strings
+        List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+        for (String string : strings.keySet()) {
+            encoded.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        header.writeInt(encoded.size());
+        int end = 0;
+        for (byte[] bytes : encoded) {
+            end += bytes.length;
+            header.writeInt(end);
+        }
+        for (byte[] bytes : encoded) {
+            header.write(bytes);
+        }
+
+        bodyBytes.writeTo(header);
+        header.flush();
+    }
+
+    /**
+     * @return the experiments of the config that aren't in a group, which the {@link ProjectConfig} constructor
+     * takes separately from the groups
+     */
+    private static List<Experiment> topLevelExperiments(ProjectConfig config) {
+        Set<Experiment> groupExperiments = Collections.newSetFromMap(new IdentityHashMap<Experiment, Boolean>());
+        for (Group group : config.getGroups()) {
+            groupExperiments.addAll(group.getExperiments());
+        }
+
+        List<Experiment> experiments = new ArrayList<Experiment>(config.getExperiments().size());
+        for (Experiment experiment : config.getExperiments()) {
+            if (!groupExperiments.contains(experiment)) {
+                experiments.add(experiment);
+            }
+        }
+
+        return experiments;
+    }
+
+    private void writeAttributes(List<Attribute> attributes) throws IOException {
+        body.writeInt(attributes.size());
+        for (Attribute attribute : attributes) {
+            writeString(attribute.getId());
+            writeString(attribute.getKey());
+            writeString(attribute.getSegmentId());
+        }
+    }
+
+    private void writeAudiences(List<Audience> audiences) throws IOException {
+        body.writeInt(audiences.size());
+        for (Audience audience : audiences) {
+            writeString(audience.getId());
+            writeString(audience.getName());
+            writeCondition(audience.getConditions());
+        }
+    }
+
+    private void writeEvents(List<EventType> events) throws IOException {
+        body.writeInt(events.size());
+        for (EventType event : events) {
+            writeString(event.getId());
+            writeString(event.getKey());
+            writeStrings(event.getExperimentIds());
+        }
+    }
+
+    private void writeExperiments(List<Experiment> experiments) throws IOException {
+        body.writeInt(experiments.size());
+        for (Experiment experiment : experiments) {
+            writeString(experiment.getId());
+            writeString(experiment.getKey());
+            writeString(experiment.getStatus());
+            writeString(experiment.getLayerId());
+            writeStrings(experiment.getAudienceIds());
+            writeCondition(experiment.getAudienceConditions());
+            writeVariations(experiment.getVariations());
+            Map<String, String> forcedVariations = experiment.getUserIdToVariationKeyMap();
+            body.writeInt(forcedVariations.size());
+            for (Map.Entry<String, String> entry : forcedVariations.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+            writeTrafficAllocation(experiment.getTrafficAllocation());
+            writeString(experiment.getGroupId());
+        }
+    }
+
+    private void writeVariations(List<Variation> variations) throws IOException {
+        body.writeInt(variations.size());
+        for (Variation variation : variations) {
+            writeString(variation.getId());
+            writeString(variation.getKey());
+            body.writeBoolean(variation.getFeatureEnabled());
+            List<LiveVariableUsageInstance> usages = variation.getLiveVariableUsageInstances();
+            body.writeInt(usages.size());
+            for (LiveVariableUsageInstance usage : usages) {
+                writeString(usage.getId());
+                writeString(usage.getValue());
+            }
+        }
+    }
+
+    private void writeTrafficAllocation(List<TrafficAllocation> trafficAllocation) throws IOException {
+        body.writeInt(trafficAllocation.size());
+        for (TrafficAllocation allocation : trafficAllocation) {
+            writeString(allocation.getEntityId());
+            body.writeInt(allocation.getEndOfRange());
+        }
+    }
+
+    private void writeFeatureFlags(List<FeatureFlag> featureFlags) throws IOException {
+        body.writeInt(featureFlags.size());
+        for (FeatureFlag featureFlag : featureFlags) {
+            writeString(featureFlag.getId());
+            writeString(featureFlag.getKey());
+            writeString(featureFlag.getRolloutId());
+            writeStrings(featureFlag.getExperimentIds());
+            writeLiveVariables(featureFlag.getVariables());
+        }
+    }
+
+    private void writeGroups(List<Group> groups) throws IOException {
+        body.writeInt(groups.size());
+        for (Group group : groups) {
+            writeString(group.getId());
+            writeString(group.getPolicy());
+            writeExperiments(group.getExperiments());
+            writeTrafficAllocation(group.getTrafficAllocation());
+        }
+    }
+
+    private void writeLiveVariables(List<LiveVariable> liveVariables) throws IOException {
+        body.writeInt(liveVariables.size());
+        for (LiveVariable liveVariable : liveVariables) {
+            writeString(liveVariable.getId());
+            writeString(liveVariable.getKey());
+            writeString(liveVariable.getDefaultValue());
+            writeString(liveVariable.getStatus() == null ? null : liveVariable.getStatus().getVariableStatus());
+            writeString(liveVariable.getType() == null ? null : liveVariable.getType().getVariableType());
+        }
+    }
+
+    private void writeRollouts(List<Rollout> rollouts) throws IOException {
+        body.writeInt(rollouts.size());
+        for (Rollout rollout : rollouts) {
+            writeString(rollout.getId());
+            writeExperiments(rollout.getExperiments());
+        }
+    }
+
+    private void writeCondition(@Nullable Condition condition) throws IOException {
+        if (condition == null) {
+            body.writeByte(NULL);
+        } else if (condition instanceof AndCondition) {
+            body.writeByte(AND_CONDITION);
+            writeConditions(((AndCondition<?>) condition).getConditions());
+        } else if (condition instanceof OrCondition) {
+            body.writeByte(OR_CONDITION);
+            writeConditions(((OrCondition<?>) condition).getConditions());
+        } else if (condition instanceof NotCondition) {
+            body.writeByte(NOT_CONDITION);
+            writeCondition(((NotCondition<?>) condition).getCondition());
+        } else if (condition instanceof AudienceIdCondition) {
+            body.writeByte(AUDIENCE_ID_CONDITION);
+            writeString(((AudienceIdCondition<?>) condition).getAudienceId());
+        } else if (condition instanceof UserAttribute) {
+            UserAttribute<?> userAttribute = (UserAttribute<?>) condition;
+            body.writeByte(USER_ATTRIBUTE);
+            writeString(userAttribute.getName());
+            writeString(userAttribute.getType());
+            writeString(userAttribute.getMatch());
+            writeValue(userAttribute.getValue());
+        } else if (condition instanceof EmptyCondition) {
+            body.writeByte(EMPTY_CONDITION);
+        } else if (condition instanceof NullCondition) {
+            body.writeByte(NULL_CONDITION);
+        } else {
+            throw new IOException("Unsupported condition " + condition.getClass().getName());
+        }
+    }
+
+    private void writeConditions(List<? extends Condition> conditions) throws IOException {
+        body.writeInt(conditions.size());
+        for (Condition condition : conditions) {
+            writeCondition(condition);
+        }
+    }
+
+    private void writeValue(@Nullable Object value) throws IOException {
+        if (value == null) {
+            body.writeByte(NULL);
+        } else if (value instanceof String) {
+            body.writeByte(STRING_VALUE);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            body.writeByte(BOOLEAN_VALUE);
+            body.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            body.writeByte(INTEGER_VALUE);
+            body.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            body.writeByte(LONG_VALUE);
+            body.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            body.writeByte(DOUBLE_VALUE);
+            body.writeDouble((Double) value);
+        } else {
+            throw new IOException("Unsupported condition value " + value.getClass().getName());
+        }
+    }
+
+    private void writeStrings(List<String> values) throws IOException {
+        body.writeInt(values.size());
+        for (String value : values) {
+            writeString(value);
+        }
+    }
+
+    private void writeString(@Nullable String value) throws IOException {
+        if (value == null) {
+            body.writeInt(NULL_STRING);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+        body.writeInt(index);
+    }
+}
@@ -39,6 +39,7 @@ public class Experiment implements IdKeyMapped {
     private final String id;
     private final String key;
     private final String status;
+    @Nullable private final ExperimentStatus experimentStatus;
     private final String layerId;
     private final String groupId;
 
@@ -67,6 +68,18 @@ public class Experiment implements IdKeyMapped {
         public String toString() {
             return experimentStatus;
         }
+
+        public static ExperimentStatus fromString(String experimentStatusString) {
+            if (experimentStatusString != null) {
+                for (ExperimentStatus experimentStatusEnum : ExperimentStatus.values()) {
+                    if (experimentStatusString.equals(experimentStatusEnum.toString())) {
+                        return experimentStatusEnum;
+                    }
+                }
+            }
+
+            return null;
+        }
     }
 
     @JsonCreator
@@ -95,13 +108,14 @@ public class Experiment implements IdKeyMapped {
         this.id = id;
         this.key = key;
         this.status = status == null ? ExperimentStatus.NOT_STARTED.toString() : status;
+        this.experimentStatus = ExperimentStatus.fromString(this.status);
         this.layerId = layerId;
         this.audienceIds = Collections.unmodifiableList(audienceIds);
         this.audienceConditions = audienceConditions;
         this.variations = Collections.unmodifiableList(variations);
         this.trafficAllocation = Collections.unmodifiableList(trafficAllocation);
         this.groupId = groupId;
-        this.userIdToVariationKeyMap = userIdToVariationKeyMap;
+        this.userIdToVariationKeyMap = CompactMap.copyOf(userIdToVariationKeyMap);
         this.variationKeyToVariationMap = ProjectConfigUtils.generateNameMapping(variations);
         this.variationIdToVariationMap = ProjectConfigUtils.generateIdMapping(variations);
     }
@@ -118,6 +132,13 @@ public class Experiment implements IdKeyMapped {
         return status;
     }
 
+    /**
+     * @return the status resolved when the experiment was created, or null for a status this SDK doesn't know
+     */
+    public @Nullable ExperimentStatus getExperimentStatus() {
+        return experimentStatus;
+    }
+
     public String getLayerId() {
         return layerId;
     }
@@ -155,16 +176,16 @@ public class Experiment implements IdKeyMapped {
     }
 
     public boolean isActive() {
-        return status.equals(ExperimentStatus.RUNNING.toString()) ||
-               status.equals(ExperimentStatus.LAUNCHED.toString());
+        return experimentStatus == ExperimentStatus.RUNNING ||
+               experimentStatus == ExperimentStatus.LAUNCHED;
     }
 
     public boolean isRunning() {
-        return status.equals(ExperimentStatus.RUNNING.toString());
+        return experimentStatus == ExperimentStatus.RUNNING;
     }
 
     public boolean isLaunched() {
-        return status.equals(ExperimentStatus.LAUNCHED.toString());
+        return experimentStatus == ExperimentStatus.LAUNCHED;
     }
 
     @Override
@@ -0,0 +1,345 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The variations users are forced into at runtime, stored per user as pairs of experiment and variation ids. Unlike
+ * the whitelists of {@link OverrideIndex}, they aren't stored as integer pairs, which are only valid for one config.
+ * <p>
+ * Since they don't refer to the entities of a particular project config, the same forced variations apply to every
+ * config that still has their experiments and variations. {@link com.optimizely.ab.Optimizely} keeps them this way,
+ * so they carry over when its project config is replaced.
+ * <p>
+ * Forced variations can be bounded in the number of users they are kept for, and in how long each of them is kept
+ * after it was set. Both are unbounded by default. When the limit on users is reached, the users whose forced
+ * variations were set least recently are evicted first.
+ */
+@ThreadSafe
+public final class ForcedVariations {
+
+    public static final int UNBOUNDED = 0;
+
+    private static final UserVariations NO_VARIATIONS = new UserVariations(new String[0], new String[0], new long[0]);
+
+    // when the limit on users is reached, evict this fraction of them at once so the scan is amortized
+    private static final int EVICTION_BATCH_DIVISOR = 16;
+
+    private final ConcurrentHashMap<String, UserVariations> users = new ConcurrentHashMap<String, UserVariations>();
+
+    private volatile int maxUsers = UNBOUNDED;
+    private volatile long ttlNanos = UNBOUNDED;
+
+    /**
+     * Bounds the forced variations kept. Users over the limit are evicted, least recently set first, when a forced
+     * variation is set for a new user.
+     *
+     * @param maxUsers the maximum number of users to keep forced variations for, or {@link #UNBOUNDED}
+     * @param ttl how long a forced variation is kept after it was set, for each user and experiment, or
+     *            {@link #UNBOUNDED}
+     * @param unit the time unit of the ttl
+     */
+    public void setLimits(int maxUsers, long ttl, @Nonnull TimeUnit unit) {
+        if (maxUsers < 0 || ttl < 0) {
+            throw new IllegalArgumentException("limits must not be negative");
+        }
+        this.maxUsers = maxUsers;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * @return the number of users with forced variations, including ones that expired but weren't evicted yet
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * @return false if the user has no forced variations, true if they might have some
+     */
+    public boolean hasForcedVariations(@Nonnull String userId) {
+        return !users.isEmpty() && userId != null && users.containsKey(userId);
+    }
+
+    /**
+     * @return the forced variation of the user in the experiment, or null if there is none or the experiment no
+     * longer has the variation
+     */
+    public @Nullable Variation get(@Nonnull Experiment experiment, @Nonnull String userId) {
+        if (users.isEmpty()) {
+            return null;
+        }
+        UserVariations userVariations = users.get(userId);
+        if (userVariations == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long ttl = ttlNanos;
+        if (userVariations.isExpired(now, ttl)) {
+            users.remove(userId, userVariations);
+            return null;
+        }
+
+        int index = userVariations.indexOf(experiment.getId());
+        if (index < 0 || isExpired(userVariations.setAt[index], now, ttl)) {
+            return null;
+        }
+        return experiment.getVariationIdToVariationMap().get(userVariations.variationIds[index]);
+    }
+
+    /**
+     * Sets or removes the forced variation of the user in an experiment.
+     *
+     * @param experiment the experiment
+     * @param userId the user id
+     * @param variation the variation to force, or null to remove the forced variation
+     * @return the previously forced variation, or null if there was none
+     */
+    public @Nullable Variation set(@Nonnull Experiment experiment,
+                                   @Nonnull String userId,
+                                   @Nullable Variation variation) {
+        Map<String, Variation> variations = experiment.getVariationIdToVariationMap();
+        if (variation != null && variations.get(variation.getId()) == null) {
+            throw new IllegalArgumentException("variation " + variation.getKey() + " is not in experiment " + experiment.getKey());
+        }
+
+        String previousId = set(userId, experiment.getId(), variation == null ? null : variation.getId());
+        return previousId == null ? null : variations.get(previousId);
+    }
+
+    /**
+     * @return the forced variations as a map of user ids to maps of experiment ids to variation ids
+     */
+    @Nonnull
+    Map<String, Map<String, String>> getVariationIds() {
+        Map<String, Map<String, String>> mapping = new HashMap<String, Map<String, String>>();
+        long now = System.nanoTime();
+        long ttl = ttlNanos;
+        for (Map.Entry<String, UserVariations> entry : users.entrySet()) {
+            UserVariations userVariations = entry.getValue().withoutExpired(now, ttl);
+            if (userVariations.size() == 0) {
+                continue;
+            }
+            Map<String, String> experimentToVariation = new HashMap<String, String>();
+            for (int i = 0; i < userVariations.size(); i++) {
+                experimentToVariation.put(userVariations.experimentIds[i], userVariations.variationIds[i]);
+            }
+            mapping.put(entry.getKey(), experimentToVariation);
+        }
+
+        return mapping;
+    }
+
+    /**
+     * @return the previous variation id, or null if there was none
+     */
+    private String set(String userId, String experimentId, @Nullable String variationId) {
+        while (true) {
+            long now = System.nanoTime();
+            UserVariations current = users.get(userId);
+            UserVariations unexpired = current == null ? NO_VARIATIONS : current.withoutExpired(now, ttlNanos);
+
+            int index = unexpired.indexOf(experimentId);
+            String previousId = index < 0 ? null : unexpired.variationIds[index];
+            UserVariations updated = variationId == null
+                    ? unexpired.without(experimentId)
+                    : unexpired.with(experimentId, variationId, now);
+
+            boolean swapped;
+            if (current == null) {
+                if (updated.size() == 0) {
+                    return previousId;
+                }
+                evictIfFull();
+                swapped = users.putIfAbsent(userId, updated) == null;
+            } else if (updated.size() == 0) {
+                swapped = users.remove(userId, current);
+            } else {
+                swapped = users.replace(userId, current, updated);
+            }
+            if (swapped) {
+                return previousId;
+            }
+        }
+    }
+
+    /**
+     * Makes room for a new user by evicting the users whose forced variations all expired, then the ones whose
+     * forced variations were set least recently.
+     */
+    private void evictIfFull() {
+        int max = maxUsers;
+        if (max == UNBOUNDED || users.size() < max) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long ttl = ttlNanos;
+        for (Map.Entry<String, UserVariations> entry : users.entrySet()) {
+            if (entry.getValue().isExpired(now, ttl)) {
+                users.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        int excess = users.size() - max + 1;
+        if (excess <= 0) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, UserVariations>[] entries = users.entrySet().toArray(new Map.Entry[0]);
+        Arrays.sort(entries, new Comparator<Map.Entry<String, UserVariations>>() {
+            @Override
+            public int compare(Map.Entry<String, UserVariations> a, Map.Entry<String, UserVariations> b) {
+                long difference = a.getValue().lastSetAt() - b.getValue().lastSetAt();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        int evictions = Math.min(entries.length, Math.max(excess, max / EVICTION_BATCH_DIVISOR));
+        for (int i = 0; i < evictions; i++) {
+            users.remove(entries[i].getKey(), entries[i].getValue());
+        }
+    }
+
+    private static boolean isExpired(long setAt, long now, long ttl) {
+        return ttl != UNBOUNDED && now - setAt >= ttl;
+    }
+
+    /**
+     * The forced variations of a user, each with the time it was set. Replaced as a whole on every change.
+     */
+    private static final class UserVariations {
+        private final String[] experimentIds;
+        private final String[] variationIds;
+        private final long[] setAt;
+
+        private UserVariations(String[] experimentIds, String[] variationIds, long[] setAt) {
+            this.experimentIds = experimentIds;
+            this.variationIds = variationIds;
+            this.setAt = setAt;
+        }
+
+        private int size() {
+            return experimentIds.length;
+        }
+
+        private int indexOf(String experimentId) {
+            for (int i = 0; i < experimentIds.length; i++) {
+                if (experimentIds[i].equals(experimentId)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return when the most recent forced variation was set, the user must have at least one
+         */
+        private long lastSetAt() {
+            long last = setAt[0];
+            for (int i = 1; i < setAt.length; i++) {
+                // nano times are only comparable by their difference
+                if (setAt[i] - last > 0) {
+                    last = setAt[i];
+                }
+            }
+
+            return last;
+        }
+
+        /**
+         * @return whether all the forced variations of the user expired
+         */
+        private boolean isExpired(long now, long ttl) {
+            return ttl != UNBOUNDED && (size() == 0 || ForcedVariations.isExpired(lastSetAt(), now, ttl));
+        }
+
+        private UserVariations withoutExpired(long now, long ttl) {
+            if (ttl == UNBOUNDED) {
+                return this;
+            }
+            int unexpired = 0;
+            for (long time : setAt) {
+                if (!ForcedVariations.isExpired(time, now, ttl)) {
+                    unexpired++;
+                }
+            }
+            if (unexpired == size()) {
+                return this;
+            }
+
+            String[] experiments = new String[unexpired];
+            String[] variations = new String[unexpired];
+            long[] times = new long[unexpired];
+            for (int i = 0, j = 0; i < size(); i++) {
+                if (!ForcedVariations.isExpired(setAt[i], now, ttl)) {
+                    experiments[j] = experimentIds[i];
+                    variations[j] = variationIds[i];
+                    times[j++] = setAt[i];
+                }
+            }
+            return new UserVariations(experiments, variations, times);
+        }
+
+        private UserVariations with(String experimentId, String variationId, long now) {
+            int index = indexOf(experimentId);
+            if (index >= 0) {
+                String[] variations = variationIds.clone();
+                long[] times = setAt.clone();
+                variations[index] = variationId;
+                times[index] = now;
+                return new UserVariations(experimentIds, variations, times);
+            }
+
+            String[] experiments = Arrays.copyOf(experimentIds, size() + 1);
+            String[] variations = Arrays.copyOf(variationIds, size() + 1);
+            long[] times = Arrays.copyOf(setAt, size() + 1);
+            experiments[size()] = experimentId;
+            variations[size()] = variationId;
+            times[size()] = now;
+            return new UserVariations(experiments, variations, times);
+        }
+
+        private UserVariations without(String experimentId) {
+            int index = indexOf(experimentId);
+            if (index < 0) {
+                return this;
+            }
+
+            String[] experiments = new String[size() - 1];
+            String[] variations = new String[size() - 1];
+            long[] times = new long[size() - 1];
+            for (int i = 0, j = 0; i < size(); i++) {
+                if (i != index) {
+                    experiments[j] = experimentIds[i];
+                    variations[j] = variationIds[i];
+                    times[j++] = setAt[i];
+                }
+            }
+            return new UserVariations(experiments, variations, times);
+        }
+    }
+}
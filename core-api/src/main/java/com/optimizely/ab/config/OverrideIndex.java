@@ -0,0 +1,207 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the users the datafile whitelists into a variation of an experiment, next to the forced variations set at
+ * runtime for the project config.
+ * <p>
+ * Only whitelists are indexed here, stored per user as pairs of integers, the dense number of the experiment in the
+ * project config and the position of the variation in the experiment. Forced variations are kept apart in a
+ * {@link ForcedVariations}, which stores experiment and variation ids rather than integer pairs, since they have to
+ * apply to later configs that number their experiments differently. The store of this index is used when the project
+ * config is accessed directly, {@link com.optimizely.ab.Optimizely} keeps its own.
+ * <p>
+ * Almost no user has an override, so {@link #hasOverrides(String)} and its halves let decisions skip the lookups with
+ * a single check.
+ */
+@ThreadSafe
+public final class OverrideIndex {
+
+    /**
+     * Returned by {@link #getWhitelistedVariationIndex(Experiment, String)} when the user isn't whitelisted.
+     */
+    public static final int NOT_WHITELISTED = -1;
+
+    /**
+     * Returned by {@link #getWhitelistedVariationIndex(Experiment, String)} when the user is whitelisted into a
+     * variation that isn't in the experiment.
+     */
+    public static final int UNKNOWN_VARIATION = -2;
+
+    /**
+     * Returned by {@link #getWhitelistedVariationIndex(Experiment, String)} when the experiment isn't one of the
+     * indexed experiments.
+     */
+    public static final int NOT_INDEXED = -3;
+
+    public static final int UNBOUNDED = ForcedVariations.UNBOUNDED;
+
+    private static final int[] NO_PAIRS = new int[0];
+
+    // experiments by id, numbered densely by the map
+    private final CompactMap<Experiment> experiments;
+    private final Map<String, int[]> whitelist;
+    private final ForcedVariations forcedVariations = new ForcedVariations();
+
+    OverrideIndex(@Nonnull List<Experiment> experiments) {
+        CompactMap.Builder<Experiment> experimentsById = new CompactMap.Builder<Experiment>(experiments.size());
+        for (Experiment experiment : experiments) {
+            experimentsById.put(experiment.getId(), experiment);
+        }
+        this.experiments = experimentsById.build();
+
+        Map<String, int[]> whitelist = new HashMap<String, int[]>();
+        for (int i = 0; i < this.experiments.size(); i++) {
+            Experiment experiment = this.experiments.valueAt(i);
+            for (Map.Entry<String, String> entry : experiment.getUserIdToVariationKeyMap().entrySet()) {
+                Variation variation = experiment.getVariationKeyToVariationMap().get(entry.getValue());
+                int variationIndex = variation == null ? UNKNOWN_VARIATION : experiment.getVariations().indexOf(variation);
+                int[] pairs = whitelist.get(entry.getKey());
+                whitelist.put(entry.getKey(), with(pairs == null ? NO_PAIRS : pairs, i, variationIndex));
+            }
+        }
+        this.whitelist = whitelist.isEmpty() ? Collections.<String, int[]>emptyMap() : whitelist;
+    }
+
+    /**
+     * @return the forced variations of this index
+     */
+    public @Nonnull ForcedVariations getForcedVariations() {
+        return forcedVariations;
+    }
+
+    /**
+     * Bounds the forced variations kept by this index.
+     *
+     * @see ForcedVariations#setLimits(int, long, TimeUnit)
+     */
+    public void setForcedVariationLimits(int maxUsers, long ttl, @Nonnull TimeUnit unit) {
+        forcedVariations.setLimits(maxUsers, ttl, unit);
+    }
+
+    /**
+     * @return the number of users with forced variations, including ones that expired but weren't evicted yet
+     */
+    public int getForcedUserCount() {
+        return forcedVariations.getUserCount();
+    }
+
+    /**
+     * @return false if the user has neither forced nor whitelisted variations, true if they might have some
+     */
+    public boolean hasOverrides(@Nonnull String userId) {
+        return hasWhitelistedVariations(userId) || hasForcedVariations(userId);
+    }
+
+    /**
+     * @return whether the datafile whitelists the user in any experiment
+     */
+    public boolean hasWhitelistedVariations(@Nonnull String userId) {
+        return !whitelist.isEmpty() && whitelist.containsKey(userId);
+    }
+
+    /**
+     * @return false if the user has no forced variations, true if they might have some
+     */
+    public boolean hasForcedVariations(@Nonnull String userId) {
+        return forcedVariations.hasForcedVariations(userId);
+    }
+
+    /**
+     * @return the forced variation of the user in the experiment, or null if there is none
+     */
+    public @Nullable Variation getForcedVariation(@Nonnull Experiment experiment, @Nonnull String userId) {
+        return forcedVariations.get(experiment, userId);
+    }
+
+    /**
+     * Sets or removes the forced variation of the user in an experiment of the indexed config.
+     *
+     * @param experiment the experiment
+     * @param userId the user id
+     * @param variation the variation to force, or null to remove the forced variation
+     * @return the previously forced variation, or null if there was none
+     */
+    public @Nullable Variation setForcedVariation(@Nonnull Experiment experiment,
+                                                  @Nonnull String userId,
+                                                  @Nullable Variation variation) {
+        if (indexOf(experiment) < 0) {
+            throw new IllegalArgumentException("experiment " + experiment.getKey() + " is not in the project config");
+        }
+
+        return forcedVariations.set(experiment, userId, variation);
+    }
+
+    /**
+     * Looks up the variation the datafile whitelists the user into.
+     *
+     * @return the position of the variation in the experiment, or one of {@link #NOT_WHITELISTED},
+     * {@link #UNKNOWN_VARIATION} and {@link #NOT_INDEXED}
+     */
+    public int getWhitelistedVariationIndex(@Nonnull Experiment experiment, @Nonnull String userId) {
+        int experimentIndex = indexOf(experiment);
+        if (experimentIndex < 0 || experiments.valueAt(experimentIndex) != experiment) {
+            return NOT_INDEXED;
+        }
+        int[] pairs = whitelist.get(userId);
+        if (pairs == null) {
+            return NOT_WHITELISTED;
+        }
+        int variationIndex = find(pairs, experimentIndex);
+        return variationIndex == -1 ? NOT_WHITELISTED : variationIndex;
+    }
+
+    private int indexOf(Experiment experiment) {
+        return experiments.indexOf(experiment.getId());
+    }
+
+    private static int find(int[] pairs, int experimentIndex) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i] == experimentIndex) {
+                return pairs[i + 1];
+            }
+        }
+
+        return -1;
+    }
+
+    private static int[] with(int[] pairs, int experimentIndex, int variationIndex) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i] == experimentIndex) {
+                int[] updated = pairs.clone();
+                updated[i + 1] = variationIndex;
+                return updated;
+            }
+        }
+
+        int[] updated = new int[pairs.length + 2];
+        System.arraycopy(pairs, 0, updated, 0, pairs.length);
+        updated[pairs.length] = experimentIndex;
+        updated[pairs.length + 1] = variationIndex;
+        return updated;
+    }
+}
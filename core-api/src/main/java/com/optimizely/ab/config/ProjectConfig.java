@@ -19,8 +19,12 @@ package com.optimizely.ab.config;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.optimizely.ab.UnknownEventTypeException;
 import com.optimizely.ab.UnknownExperimentException;
+import com.optimizely.ab.config.audience.AttributeValueIndex;
 import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIndex;
+import com.optimizely.ab.config.audience.ConditionInterner;
 import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.config.parser.ConfigParser;
 import com.optimizely.ab.config.parser.DefaultConfigParser;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.error.NoOpErrorHandler;
@@ -32,8 +36,15 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents the Optimizely Project configuration.
@@ -70,6 +81,8 @@ public class ProjectConfig {
     // logger
     private static final Logger logger = LoggerFactory.getLogger(ProjectConfig.class);
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     // ProjectConfig properties
     private final String accountId;
     private final String projectId;
@@ -96,24 +109,32 @@ public class ProjectConfig {
 
     // id to entity mappings
     private final Map<String, Audience> audienceIdMapping;
+    private final AudienceIndex audienceIndex;
+    private final AttributeValueIndex attributeValueIndex;
     private final Map<String, Experiment> experimentIdMapping;
     private final Map<String, Group> groupIdMapping;
     private final Map<String, Rollout> rolloutIdMapping;
 
-    // other mappings
-    private final Map<String, List<Experiment>> liveVariableIdToExperimentsMapping;
-    private final Map<String, Map<String, LiveVariableUsageInstance>> variationToLiveVariableUsageInstanceMapping;
-    private final Map<String, Experiment> variationIdToExperimentMapping;
+    // experiments resolved once per config, so tracking and feature decisions don't look them up
+    private final Map<String, List<Experiment>> eventKeyToExperimentsMapping;
+    private final Map<String, List<Experiment>> eventKeyToRunningExperimentsMapping;
+    private final Map<FeatureFlag, List<Experiment>> featureFlagToActiveExperimentsMapping;
+
+    // other mappings, rarely used so they're only built on first access
+    private final Object lazyMappingsLock = new Object();
+    private volatile Map<String, List<Experiment>> liveVariableIdToExperimentsMapping;
+    private volatile Map<String, Map<String, LiveVariableUsageInstance>> variationToLiveVariableUsageInstanceMapping;
+    private volatile Map<String, Experiment> variationIdToExperimentMapping;
 
     public final static String RESERVED_ATTRIBUTE_PREFIX = "$opt_";
 
     /**
      *  Forced variations supersede any other mappings.  They are transient and are not persistent or part of
-     * the actual datafile. This contains all the forced variations
-     * set by the user by calling {@link ProjectConfig#setForcedVariation(String, String, String)} (it is not the same as the
-     * whitelisting forcedVariations data structure in the Experiments class).
+     * the actual datafile. This indexes all the forced variations
+     * set by the user by calling {@link ProjectConfig#setForcedVariation(String, String, String)}, together with the
+     * whitelisting forcedVariations data structure in the Experiments class.
      */
-    private transient ConcurrentHashMap<String, ConcurrentHashMap<String, String>> forcedVariationMapping = new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
+    private final transient OverrideIndex overrideIndex;
 
     // v2 constructor
     public ProjectConfig(String accountId, String projectId, String version, String revision, List<Group> groups,
@@ -162,6 +183,47 @@ public class ProjectConfig {
                          List<Group> groups,
                          List<LiveVariable> liveVariables,
                          List<Rollout> rollouts) {
+        this(accountId, anonymizeIP, botFiltering, projectId, revision, version, attributes, audiences,
+             typedAudiences, events, experiments, featureFlags, groups, liveVariables, rollouts, null);
+    }
+
+    /**
+     * v4 constructor that rebuilds a config incrementally from the config of the previous datafile.
+     * <p>
+     * Experiments, audiences, feature flags, rollouts and groups whose content didn't change since the previous config
+     * are taken from it instead of the given lists, along with their interned conditions and, when no audience
+     * changed, the audience indexes.
+     *
+     * @param previousConfig the config to reuse unchanged entities from, or {@code null} to build from scratch
+     */
+    public ProjectConfig(String accountId,
+                         boolean anonymizeIP,
+                         Boolean botFiltering,
+                         String projectId,
+                         String revision,
+                         String version,
+                         List<Attribute> attributes,
+                         List<Audience> audiences,
+                         List<Audience> typedAudiences,
+                         List<EventType> events,
+                         List<Experiment> experiments,
+                         List<FeatureFlag> featureFlags,
+                         List<Group> groups,
+                         List<LiveVariable> liveVariables,
+                         List<Rollout> rollouts,
+                         @Nullable ProjectConfig previousConfig) {
+
+        if (previousConfig != null) {
+            ProjectConfigDiff diff = new ProjectConfigDiff(previousConfig);
+            audiences = diff.audiences(audiences);
+            typedAudiences = diff.typedAudiences(typedAudiences);
+            experiments = diff.experiments(experiments);
+            featureFlags = diff.featureFlags(featureFlags);
+            rollouts = diff.rollouts(rollouts);
+            groups = diff.groups(groups);
+            logger.debug("Reused {} unchanged entities from revision \"{}\" and rebuilt {}.",
+                    diff.getReusedCount(), previousConfig.getRevision(), diff.getRebuiltCount());
+        }
 
         this.accountId = accountId;
         this.projectId = projectId;
@@ -171,10 +233,18 @@ public class ProjectConfig {
         this.botFiltering = botFiltering;
 
         this.attributes = Collections.unmodifiableList(attributes);
-        this.audiences = Collections.unmodifiableList(audiences);
+
+        // identical conditions across audiences share one instance, so they are evaluated once per user
+        ConditionInterner conditionInterner = new ConditionInterner();
+        if (previousConfig != null) {
+            // the previous conditions go first, so that reused audiences keep their instances
+            conditionInterner.intern(previousConfig.getAudiences());
+            conditionInterner.intern(previousConfig.getTypedAudiences());
+        }
+        this.audiences = Collections.unmodifiableList(conditionInterner.intern(audiences));
 
         if (typedAudiences != null) {
-            this.typedAudiences = Collections.unmodifiableList(typedAudiences);
+            this.typedAudiences = Collections.unmodifiableList(conditionInterner.intern(typedAudiences));
         }
         else {
             this.typedAudiences = Collections.emptyList();
@@ -200,14 +270,7 @@ public class ProjectConfig {
         allExperiments.addAll(experiments);
         allExperiments.addAll(aggregateGroupExperiments(groups));
         this.experiments = Collections.unmodifiableList(allExperiments);
-
-        Map<String, Experiment> variationIdToExperimentMap = new HashMap<String, Experiment>();
-        for (Experiment experiment : this.experiments) {
-            for (Variation variation: experiment.getVariations()) {
-                variationIdToExperimentMap.put(variation.getId(), experiment);
-            }
-        }
-        this.variationIdToExperimentMapping = Collections.unmodifiableMap(variationIdToExperimentMap);
+        this.overrideIndex = new OverrideIndex(this.experiments);
 
         // generate the name mappers
         this.attributeKeyMapping = ProjectConfigUtils.generateNameMapping(attributes);
@@ -217,29 +280,38 @@ public class ProjectConfig {
 
         // generate audience id to audience mapping
         if (typedAudiences == null) {
-            this.audienceIdMapping = ProjectConfigUtils.generateIdMapping(audiences);
+            this.audienceIdMapping = ProjectConfigUtils.generateIdMapping(this.audiences);
         }
         else {
-            List<Audience> combinedList = new ArrayList<>(audiences);
-            combinedList.addAll(typedAudiences);
+            List<Audience> combinedList = new ArrayList<>(this.audiences);
+            combinedList.addAll(this.typedAudiences);
             this.audienceIdMapping = ProjectConfigUtils.generateIdMapping(combinedList);
         }
+        if (previousConfig != null && sameInstances(audienceIdMapping, previousConfig.getAudienceIdMapping())) {
+            this.audienceIndex = previousConfig.getAudienceIndex();
+            this.attributeValueIndex = previousConfig.getAttributeValueIndex();
+        }
+        else {
+            this.audienceIndex = new AudienceIndex(audienceIdMapping.values());
+            this.attributeValueIndex = new AttributeValueIndex(audienceIdMapping.values());
+        }
         this.experimentIdMapping = ProjectConfigUtils.generateIdMapping(this.experiments);
         this.groupIdMapping = ProjectConfigUtils.generateIdMapping(groups);
         this.rolloutIdMapping = ProjectConfigUtils.generateIdMapping(this.rollouts);
 
+        this.eventKeyToExperimentsMapping =
+                ProjectConfigUtils.generateEventKeyToExperimentsMapping(this.events, experimentIdMapping);
+        this.eventKeyToRunningExperimentsMapping =
+                ProjectConfigUtils.generateEventKeyToRunningExperimentsMapping(eventKeyToExperimentsMapping);
+        this.featureFlagToActiveExperimentsMapping =
+                ProjectConfigUtils.generateFeatureFlagToActiveExperimentsMapping(this.featureFlags, experimentIdMapping);
+
         if (liveVariables == null) {
             this.liveVariables = null;
             this.liveVariableKeyMapping = Collections.emptyMap();
-            this.liveVariableIdToExperimentsMapping = Collections.emptyMap();
-            this.variationToLiveVariableUsageInstanceMapping = Collections.emptyMap();
         } else {
             this.liveVariables = Collections.unmodifiableList(liveVariables);
             this.liveVariableKeyMapping = ProjectConfigUtils.generateNameMapping(this.liveVariables);
-            this.liveVariableIdToExperimentsMapping =
-                    ProjectConfigUtils.generateLiveVariableIdToExperimentsMapping(this.experiments);
-            this.variationToLiveVariableUsageInstanceMapping =
-                    ProjectConfigUtils.generateVariationToLiveVariableUsageInstancesMap(this.experiments);
         }
     }
 
@@ -300,7 +372,36 @@ public class ProjectConfig {
 
 
     public @Nullable Experiment getExperimentForVariationId(String variationId) {
-        return this.variationIdToExperimentMapping.get(variationId);
+        Map<String, Experiment> mapping = variationIdToExperimentMapping;
+        if (mapping == null) {
+            synchronized (lazyMappingsLock) {
+                mapping = variationIdToExperimentMapping;
+                if (mapping == null) {
+                    Map<String, Experiment> variationIdToExperimentMap = new HashMap<String, Experiment>();
+                    for (Experiment experiment : this.experiments) {
+                        for (Variation variation: experiment.getVariations()) {
+                            variationIdToExperimentMap.put(variation.getId(), experiment);
+                        }
+                    }
+                    mapping = Collections.unmodifiableMap(variationIdToExperimentMap);
+                    variationIdToExperimentMapping = mapping;
+                }
+            }
+        }
+        return mapping.get(variationId);
+    }
+
+    private static <T> boolean sameInstances(Map<String, T> mapping, Map<String, T> previousMapping) {
+        if (mapping.size() != previousMapping.size()) {
+            return false;
+        }
+        for (Map.Entry<String, T> entry : mapping.entrySet()) {
+            if (entry.getValue() != previousMapping.get(entry.getKey())) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private List<Experiment> aggregateGroupExperiments(List<Group> groups) {
@@ -369,18 +470,28 @@ public class ProjectConfig {
     }
 
     public List<Experiment> getExperimentsForEventKey(String eventKey) {
-        EventType event = eventNameMapping.get(eventKey);
-        if (event != null) {
-            List<String> experimentIds = event.getExperimentIds();
-            List<Experiment> experiments = new ArrayList<Experiment>(experimentIds.size());
-            for (String experimentId : experimentIds) {
-                experiments.add(experimentIdMapping.get(experimentId));
-            }
+        List<Experiment> experiments = eventKeyToExperimentsMapping.get(eventKey);
+        return experiments == null ? Collections.<Experiment>emptyList() : experiments;
+    }
 
-            return experiments;
-        }
+    /**
+     * @return the running experiments tracking the event, in datafile order
+     */
+    public List<Experiment> getRunningExperimentsForEventKey(String eventKey) {
+        List<Experiment> experiments = eventKeyToRunningExperimentsMapping.get(eventKey);
+        return experiments == null ? Collections.<Experiment>emptyList() : experiments;
+    }
 
-        return Collections.emptyList();
+    /**
+     * @return the running and launched experiments the feature is used in, in datafile order
+     */
+    public List<Experiment> getActiveExperimentsForFeature(FeatureFlag featureFlag) {
+        List<Experiment> experiments = featureFlagToActiveExperimentsMapping.get(featureFlag);
+        if (experiments == null) {
+            // the feature isn't in this config, resolve its experiments on the fly and let the decision check them
+            experiments = ProjectConfigUtils.resolveExperiments(featureFlag.getExperimentIds(), experimentIdMapping);
+        }
+        return experiments;
     }
 
     public List<FeatureFlag> getFeatureFlags() {
@@ -429,6 +540,14 @@ public class ProjectConfig {
         return audienceIdMapping;
     }
 
+    public AudienceIndex getAudienceIndex() {
+        return audienceIndex;
+    }
+
+    public AttributeValueIndex getAttributeValueIndex() {
+        return attributeValueIndex;
+    }
+
     public Map<String, Experiment> getExperimentIdMapping() {
         return experimentIdMapping;
     }
@@ -445,19 +564,72 @@ public class ProjectConfig {
         return liveVariableKeyMapping;
     }
 
+    /**
+     * Built on the first call, the legacy live variables are only used by a few callers.
+     */
     public Map<String, List<Experiment>> getLiveVariableIdToExperimentsMapping() {
-        return liveVariableIdToExperimentsMapping;
+        if (liveVariables == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<Experiment>> mapping = liveVariableIdToExperimentsMapping;
+        if (mapping == null) {
+            synchronized (lazyMappingsLock) {
+                mapping = liveVariableIdToExperimentsMapping;
+                if (mapping == null) {
+                    mapping = ProjectConfigUtils.generateLiveVariableIdToExperimentsMapping(experiments);
+                    liveVariableIdToExperimentsMapping = mapping;
+                }
+            }
+        }
+        return mapping;
     }
 
+    /**
+     * Built on the first call, the legacy live variables are only used by a few callers.
+     */
     public Map<String, Map<String, LiveVariableUsageInstance>> getVariationToLiveVariableUsageInstanceMapping() {
-        return variationToLiveVariableUsageInstanceMapping;
+        if (liveVariables == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Map<String, LiveVariableUsageInstance>> mapping = variationToLiveVariableUsageInstanceMapping;
+        if (mapping == null) {
+            synchronized (lazyMappingsLock) {
+                mapping = variationToLiveVariableUsageInstanceMapping;
+                if (mapping == null) {
+                    mapping = ProjectConfigUtils.generateVariationToLiveVariableUsageInstancesMap(experiments);
+                    variationToLiveVariableUsageInstanceMapping = mapping;
+                }
+            }
+        }
+        return mapping;
     }
 
     public Map<String, FeatureFlag> getFeatureKeyMapping() {
         return featureKeyMapping;
     }
 
-    public ConcurrentHashMap<String, ConcurrentHashMap<String, String>> getForcedVariationMapping() { return forcedVariationMapping; }
+    /**
+     * @return an index of the forced and whitelisted variations of users
+     */
+    public OverrideIndex getOverrideIndex() {
+        return overrideIndex;
+    }
+
+    /**
+     * @return a copy of the forced variations, as a map of user ids to maps of experiment ids to variation ids
+     * @deprecated forced variations are kept in the {@link #getOverrideIndex() override index}, changes to the
+     * returned map have no effect
+     */
+    @Deprecated
+    public ConcurrentHashMap<String, ConcurrentHashMap<String, String>> getForcedVariationMapping() {
+        ConcurrentHashMap<String, ConcurrentHashMap<String, String>> mapping =
+                new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
+        for (Map.Entry<String, Map<String, String>> entry : overrideIndex.getForcedVariations().getVariationIds().entrySet()) {
+            mapping.put(entry.getKey(), new ConcurrentHashMap<String, String>(entry.getValue()));
+        }
+
+        return mapping;
+    }
 
     /**
      * Force a user into a variation for a given experiment.
@@ -474,6 +646,25 @@ public class ProjectConfig {
     public boolean setForcedVariation(@Nonnull String experimentKey,
                                       @Nonnull String userId,
                                       @Nullable String variationKey) {
+        return setForcedVariation(experimentKey, userId, variationKey, overrideIndex.getForcedVariations());
+    }
+
+    /**
+     * Force a user into a variation for a given experiment, in forced variations kept apart from this config.
+     *
+     * @param experimentKey The key for the experiment.
+     * @param userId The user ID to be used for bucketing.
+     * @param variationKey The variation key to force the user into.  If the variation key is null
+     *                     then the forcedVariation for that experiment is removed.
+     * @param forcedVariations The forced variations to set the variation in.
+     *
+     * @return boolean A boolean value that indicates if the set completed successfully.
+     * @see #setForcedVariation(String, String, String)
+     */
+    public boolean setForcedVariation(@Nonnull String experimentKey,
+                                      @Nonnull String userId,
+                                      @Nullable String variationKey,
+                                      @Nonnull ForcedVariations forcedVariations) {
 
         // if the experiment is not a valid experiment key, don't set it.
         Experiment experiment = getExperimentKeyMapping().get(experimentKey);
@@ -500,24 +691,12 @@ public class ProjectConfig {
             return false;
         }
 
-        ConcurrentHashMap<String, String> experimentToVariation;
-        if (!forcedVariationMapping.containsKey(userId)) {
-            forcedVariationMapping.putIfAbsent(userId, new ConcurrentHashMap<String, String>());
-        }
-        experimentToVariation = forcedVariationMapping.get(userId);
-
         boolean retVal = true;
+        Variation previousVariation = forcedVariations.set(experiment, userId, variation);
         // if it is null remove the variation if it exists.
         if (variationKey == null) {
-            String removedVariationId = experimentToVariation.remove(experiment.getId());
-            if (removedVariationId != null) {
-                Variation removedVariation = experiment.getVariationIdToVariationMap().get(removedVariationId);
-                if (removedVariation != null) {
-                    logger.debug("Variation mapped to experiment \"{}\" has been removed for user \"{}\"", experiment.getKey(), userId);
-                }
-                else {
-                    logger.debug("Removed forced variation that did not exist in experiment");
-                }
+            if (previousVariation != null) {
+                logger.debug("Variation mapped to experiment \"{}\" has been removed for user \"{}\"", experiment.getKey(), userId);
             }
             else {
                 logger.debug("No variation for experiment {}", experimentKey);
@@ -525,15 +704,11 @@ public class ProjectConfig {
             }
         }
         else {
-            String previous = experimentToVariation.put(experiment.getId(), variation.getId());
             logger.debug("Set variation \"{}\" for experiment \"{}\" and user \"{}\" in the forced variation map.",
                     variation.getKey(), experiment.getKey(), userId);
-            if (previous != null) {
-                Variation previousVariation = experiment.getVariationIdToVariationMap().get(previous);
-                if (previousVariation != null) {
-                    logger.debug("forced variation {} replaced forced variation {} in forced variation map.",
-                            variation.getKey(), previousVariation.getKey());
-                }
+            if (previousVariation != null) {
+                logger.debug("forced variation {} replaced forced variation {} in forced variation map.",
+                        variation.getKey(), previousVariation.getKey());
             }
         }
 
@@ -551,6 +726,23 @@ public class ProjectConfig {
      */
     public @Nullable Variation getForcedVariation(@Nonnull String experimentKey,
                                                   @Nonnull String userId) {
+        return getForcedVariation(experimentKey, userId, overrideIndex.getForcedVariations());
+    }
+
+    /**
+     * Gets the forced variation for a given user and experiment, from forced variations kept apart from this config.
+     *
+     * @param experimentKey The key for the experiment.
+     * @param userId The user ID to be used for bucketing.
+     * @param forcedVariations The forced variations to look the variation up in.
+     *
+     * @return The variation the user was bucketed into. This value can be null if the
+     * forced variation fails.
+     * @see #getForcedVariation(String, String)
+     */
+    public @Nullable Variation getForcedVariation(@Nonnull String experimentKey,
+                                                  @Nonnull String userId,
+                                                  @Nonnull ForcedVariations forcedVariations) {
 
         // if the user id is invalid, return false.
         if (!validateUserId(userId)) {
@@ -562,25 +754,25 @@ public class ProjectConfig {
             return null;
         }
 
-        Map<String, String> experimentToVariation = getForcedVariationMapping().get(userId);
-        if (experimentToVariation != null) {
-            Experiment experiment = getExperimentKeyMapping().get(experimentKey);
-            if (experiment == null)  {
-                logger.debug("No experiment \"{}\" mapped to user \"{}\" in the forced variation map ", experimentKey, userId);
-                return null;
-            }
-            String variationId = experimentToVariation.get(experiment.getId());
-            if (variationId != null) {
-                Variation variation =  experiment.getVariationIdToVariationMap().get(variationId);
-                if (variation != null) {
-                    logger.debug("Variation \"{}\" is mapped to experiment \"{}\" and user \"{}\" in the forced variation map",
-                            variation.getKey(), experimentKey, userId);
-                    return variation;
-                }
-            }
-            else {
-                logger.debug("No variation for experiment \"{}\" mapped to user \"{}\" in the forced variation map ", experimentKey, userId);
-            }
+        // nearly no user has forced variations, so skip looking up the experiment for the ones that don't
+        if (!forcedVariations.hasForcedVariations(userId)) {
+            logger.debug("No variation for experiment \"{}\" mapped to user \"{}\" in the forced variation map ", experimentKey, userId);
+            return null;
+        }
+
+        Experiment experiment = getExperimentKeyMapping().get(experimentKey);
+        if (experiment == null)  {
+            logger.debug("No experiment \"{}\" mapped to user \"{}\" in the forced variation map ", experimentKey, userId);
+            return null;
+        }
+        Variation variation = forcedVariations.get(experiment, userId);
+        if (variation != null) {
+            logger.debug("Variation \"{}\" is mapped to experiment \"{}\" and user \"{}\" in the forced variation map",
+                    variation.getKey(), experimentKey, userId);
+            return variation;
+        }
+        else {
+            logger.debug("No variation for experiment \"{}\" mapped to user \"{}\" in the forced variation map ", experimentKey, userId);
         }
         return null;
     }
@@ -602,6 +794,10 @@ public class ProjectConfig {
 
     @Override
     public String toString() {
+        // the lazy mappings are only shown once something else built them
+        Map<String, List<Experiment>> liveVariableIdToExperimentsMapping = this.liveVariableIdToExperimentsMapping;
+        Map<String, Map<String, LiveVariableUsageInstance>> variationToLiveVariableUsageInstanceMapping =
+                this.variationToLiveVariableUsageInstanceMapping;
         return "ProjectConfig{" +
                 "accountId='" + accountId + '\'' +
                 ", projectId='" + projectId + '\'' +
@@ -627,33 +823,120 @@ public class ProjectConfig {
                 ", experimentIdMapping=" + experimentIdMapping +
                 ", groupIdMapping=" + groupIdMapping +
                 ", rolloutIdMapping=" + rolloutIdMapping +
-                ", liveVariableIdToExperimentsMapping=" + liveVariableIdToExperimentsMapping +
-                ", variationToLiveVariableUsageInstanceMapping=" + variationToLiveVariableUsageInstanceMapping +
-                ", forcedVariationMapping=" + forcedVariationMapping +
-                ", variationIdToExperimentMapping=" + variationIdToExperimentMapping +
+                (liveVariableIdToExperimentsMapping == null ? "" :
+                        ", liveVariableIdToExperimentsMapping=" + liveVariableIdToExperimentsMapping) +
+                (variationToLiveVariableUsageInstanceMapping == null ? "" :
+                        ", variationToLiveVariableUsageInstanceMapping=" + variationToLiveVariableUsageInstanceMapping) +
                 '}';
     }
 
     public static class Builder {
         private String datafile;
+        private byte[] datafileBytes;
+        private InputStream datafileStream;
+        private ByteBuffer datafileBuffer;
+        private ProjectConfig previousConfig;
+        private File compiledSnapshot;
+        private ForkJoinPool parsingPool;
 
         public Builder withDatafile(String datafile) {
+            clearDatafile();
             this.datafile = datafile;
             return this;
         }
 
+        /**
+         * @param datafile the UTF-8 encoded JSON datafile
+         */
+        public Builder withDatafileBytes(byte[] datafile) {
+            clearDatafile();
+            this.datafileBytes = datafile;
+            return this;
+        }
+
+        /**
+         * @param datafile the UTF-8 encoded JSON datafile, read to its end by {@link #build()} but not closed
+         */
+        public Builder withDatafileStream(InputStream datafile) {
+            clearDatafile();
+            this.datafileStream = datafile;
+            return this;
+        }
+
+        /**
+         * @param datafile the UTF-8 encoded JSON datafile between the position and the limit of the buffer, which
+         *                 may be a {@link java.nio.MappedByteBuffer} of the datafile
+         */
+        public Builder withDatafileBuffer(ByteBuffer datafile) {
+            clearDatafile();
+            this.datafileBuffer = datafile;
+            return this;
+        }
+
+        private void clearDatafile() {
+            datafile = null;
+            datafileBytes = null;
+            datafileStream = null;
+            datafileBuffer = null;
+        }
+
+        /**
+         * @param previousConfig the config of the previous datafile, to reuse the entities that didn't change from
+         */
+        public Builder withPreviousConfig(@Nullable ProjectConfig previousConfig) {
+            this.previousConfig = previousConfig;
+            return this;
+        }
+
+        /**
+         * @param compiledSnapshot the file to load the compiled config from when it matches the datafile, and to
+         *                         write it to otherwise, after parsing the datafile with the parsing pool and
+         *                         previous config if they're set
+         * @see CompiledConfigSnapshot#load(File, String, ConfigParser, ProjectConfig)
+         */
+        public Builder withCompiledSnapshot(@Nullable File compiledSnapshot) {
+            this.compiledSnapshot = compiledSnapshot;
+            return this;
+        }
+
+        /**
+         * @param parsingPool the pool to parse the sections of large datafiles on in parallel, or {@code null} to
+         *                    parse them on the calling thread
+         * @see DefaultConfigParser#getParallelInstance(ForkJoinPool)
+         */
+        public Builder withParsingPool(@Nullable ForkJoinPool parsingPool) {
+            this.parsingPool = parsingPool;
+            return this;
+        }
+
         /**
          * @return a {@link ProjectConfig} instance given a JSON string datafile
          */
         public ProjectConfig build() throws ConfigParseException {
-            if (datafile == null) {
+            if (datafile == null && datafileBytes == null && datafileStream == null && datafileBuffer == null) {
                 throw new ConfigParseException("Unable to parse null datafile.");
             }
-            if (datafile.isEmpty()) {
+            if ((datafile != null && datafile.isEmpty())
+                    || (datafileBytes != null && datafileBytes.length == 0)
+                    || (datafileBuffer != null && !datafileBuffer.hasRemaining())) {
                 throw new ConfigParseException("Unable to parse empty datafile.");
             }
 
-            ProjectConfig projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+            ConfigParser parser = parsingPool != null
+                    ? DefaultConfigParser.getParallelInstance(parsingPool)
+                    : DefaultConfigParser.getInstance();
+            ProjectConfig projectConfig;
+            if (compiledSnapshot != null) {
+                projectConfig = CompiledConfigSnapshot.load(compiledSnapshot, datafileString(), parser, previousConfig);
+            } else if (datafileBytes != null) {
+                projectConfig = parser.parseProjectConfig(datafileBytes, previousConfig);
+            } else if (datafileStream != null) {
+                projectConfig = parser.parseProjectConfig(datafileStream, previousConfig);
+            } else if (datafileBuffer != null) {
+                projectConfig = parser.parseProjectConfig(datafileBuffer, previousConfig);
+            } else {
+                projectConfig = parser.parseProjectConfig(datafile, previousConfig);
+            }
 
             if (!supportedVersions.contains(projectConfig.getVersion())) {
                 throw new ConfigParseException("This version of the Java SDK does not support the given datafile version: " + projectConfig.getVersion());
@@ -661,5 +944,33 @@ public class ProjectConfig {
 
             return projectConfig;
         }
+
+        /**
+         * The compiled snapshot is matched on a SHA-256 digest of the datafile text, so other datafile sources are
+         * decoded for it.
+         */
+        private String datafileString() throws ConfigParseException {
+            if (datafile != null) {
+                return datafile;
+            }
+            if (datafileBytes != null) {
+                return new String(datafileBytes, UTF_8);
+            }
+            if (datafileBuffer != null) {
+                return UTF_8.decode(datafileBuffer.duplicate()).toString();
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = datafileStream.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return new String(bytes.toByteArray(), UTF_8);
+            } catch (IOException e) {
+                throw new ConfigParseException("Unable to read datafile.", e);
+            }
+        }
     }
 }
@@ -0,0 +1,311 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diffs the entities of a newly parsed datafile against the config built from the previous one.
+ * <p>
+ * Entities are matched by id, feature flags by key, and an entity whose content is the same as its previous version
+ * is replaced by that previous instance. Unchanged entities, and anything derived from them like interned audience
+ * conditions, then stay shared between the two configs instead of being rebuilt, and the new instances are left for
+ * the young generation to collect.
+ */
+@NotThreadSafe
+final class ProjectConfigDiff {
+
+    private final Map<String, Experiment> previousExperiments;
+    private final Map<String, Audience> previousAudiences;
+    private final Map<String, Audience> previousTypedAudiences;
+    private final Map<String, FeatureFlag> previousFeatureFlags;
+    private final Map<String, Rollout> previousRollouts;
+    private final Map<String, Group> previousGroups;
+
+    private int reusedCount;
+    private int rebuiltCount;
+
+    ProjectConfigDiff(@Nonnull ProjectConfig previousConfig) {
+        previousExperiments = new HashMap<String, Experiment>(previousConfig.getExperimentIdMapping());
+        for (Rollout rollout : previousConfig.getRollouts()) {
+            for (Experiment experiment : rollout.getExperiments()) {
+                previousExperiments.put(experiment.getId(), experiment);
+            }
+        }
+        previousAudiences = idMapping(previousConfig.getAudiences());
+        previousTypedAudiences = idMapping(previousConfig.getTypedAudiences());
+        // feature flags are matched by key, their ids aren't always unique
+        previousFeatureFlags = previousConfig.getFeatureKeyMapping();
+        previousRollouts = previousConfig.getRolloutIdMapping();
+        previousGroups = previousConfig.getGroupIdMapping();
+    }
+
+    /**
+     * @return the number of entities replaced by their previous instance
+     */
+    int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * @return the number of entities that are new or changed
+     */
+    int getRebuiltCount() {
+        return rebuiltCount;
+    }
+
+    @Nonnull
+    List<Audience> audiences(@Nonnull List<Audience> audiences) {
+        return audiences(audiences, previousAudiences);
+    }
+
+    @Nullable
+    List<Audience> typedAudiences(@Nullable List<Audience> typedAudiences) {
+        return typedAudiences == null ? null : audiences(typedAudiences, previousTypedAudiences);
+    }
+
+    private List<Audience> audiences(List<Audience> audiences, Map<String, Audience> previousAudiences) {
+        List<Audience> result = new ArrayList<Audience>(audiences.size());
+        for (Audience audience : audiences) {
+            Audience previous = previousAudiences.get(audience.getId());
+            result.add(reuse(previous != null && sameAudience(previous, audience), previous, audience));
+        }
+
+        return result;
+    }
+
+    @Nonnull
+    List<Experiment> experiments(@Nonnull List<Experiment> experiments) {
+        List<Experiment> result = new ArrayList<Experiment>(experiments.size());
+        for (Experiment experiment : experiments) {
+            result.add(experiment(experiment));
+        }
+
+        return result;
+    }
+
+    @Nullable
+    List<FeatureFlag> featureFlags(@Nullable List<FeatureFlag> featureFlags) {
+        if (featureFlags == null) {
+            return null;
+        }
+
+        List<FeatureFlag> result = new ArrayList<FeatureFlag>(featureFlags.size());
+        for (FeatureFlag featureFlag : featureFlags) {
+            FeatureFlag previous = previousFeatureFlags.get(featureFlag.getKey());
+            result.add(reuse(featureFlag.equals(previous), previous, featureFlag));
+        }
+
+        return result;
+    }
+
+    @Nullable
+    List<Rollout> rollouts(@Nullable List<Rollout> rollouts) {
+        if (rollouts == null) {
+            return null;
+        }
+
+        List<Rollout> result = new ArrayList<Rollout>(rollouts.size());
+        for (Rollout rollout : rollouts) {
+            Rollout previous = previousRollouts.get(rollout.getId());
+            if (previous != null && sameExperiments(previous.getExperiments(), rollout.getExperiments())) {
+                result.add(reuse(true, previous, rollout));
+            } else {
+                rebuiltCount++;
+                result.add(new Rollout(rollout.getId(), experiments(rollout.getExperiments())));
+            }
+        }
+
+        return result;
+    }
+
+    @Nonnull
+    List<Group> groups(@Nonnull List<Group> groups) {
+        List<Group> result = new ArrayList<Group>(groups.size());
+        for (Group group : groups) {
+            Group previous = previousGroups.get(group.getId());
+            if (previous != null && sameGroup(previous, group)) {
+                result.add(reuse(true, previous, group));
+            } else {
+                rebuiltCount++;
+                result.add(new Group(group.getId(), group.getPolicy(), experiments(group.getExperiments()),
+                        group.getTrafficAllocation()));
+            }
+        }
+
+        return result;
+    }
+
+    private Experiment experiment(Experiment experiment) {
+        Experiment previous = previousExperiments.get(experiment.getId());
+        return reuse(previous != null && sameExperiment(previous, experiment), previous, experiment);
+    }
+
+    private <T> T reuse(boolean unchanged, T previous, T current) {
+        if (unchanged) {
+            reusedCount++;
+            return previous;
+        }
+
+        rebuiltCount++;
+        return current;
+    }
+
+    //======== Content comparisons ========//
+
+    private static boolean sameGroup(Group a, Group b) {
+        return equal(a.getPolicy(), b.getPolicy())
+                && sameTrafficAllocation(a.getTrafficAllocation(), b.getTrafficAllocation())
+                && sameExperiments(a.getExperiments(), b.getExperiments());
+    }
+
+    private static boolean sameExperiments(List<Experiment> a, List<Experiment> b) {
+        if (a == null || b == null || a.size() != b.size()) {
+            return a == b;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!sameExperiment(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static boolean sameExperiment(@Nonnull Experiment a, @Nonnull Experiment b) {
+        if (a == b) {
+            return true;
+        }
+
+        return a.getId().equals(b.getId())
+                && equal(a.getKey(), b.getKey())
+                && equal(a.getStatus(), b.getStatus())
+                && equal(a.getLayerId(), b.getLayerId())
+                && equal(a.getGroupId(), b.getGroupId())
+                && equal(a.getAudienceIds(), b.getAudienceIds())
+                && sameCondition(a.getAudienceConditions(), b.getAudienceConditions())
+                && sameVariations(a.getVariations(), b.getVariations())
+                && sameTrafficAllocation(a.getTrafficAllocation(), b.getTrafficAllocation())
+                && equal(a.getUserIdToVariationKeyMap(), b.getUserIdToVariationKeyMap());
+    }
+
+    static boolean sameAudience(@Nonnull Audience a, @Nonnull Audience b) {
+        if (a == b) {
+            return true;
+        }
+
+        return a.getId().equals(b.getId())
+                && equal(a.getName(), b.getName())
+                && sameCondition(a.getConditions(), b.getConditions());
+    }
+
+    private static boolean sameVariations(List<Variation> a, List<Variation> b) {
+        if (a == null || b == null || a.size() != b.size()) {
+            return a == b;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            Variation variationA = a.get(i);
+            Variation variationB = b.get(i);
+            if (!equal(variationA.getId(), variationB.getId())
+                    || !equal(variationA.getKey(), variationB.getKey())
+                    || !equal(variationA.getFeatureEnabled(), variationB.getFeatureEnabled())
+                    || !equal(variationA.getLiveVariableUsageInstances(), variationB.getLiveVariableUsageInstances())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sameTrafficAllocation(List<TrafficAllocation> a, List<TrafficAllocation> b) {
+        if (a == null || b == null || a.size() != b.size()) {
+            return a == b;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getEndOfRange() != b.get(i).getEndOfRange()
+                    || !equal(a.get(i).getEntityId(), b.get(i).getEntityId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compares condition trees by structure. Audience id references are compared by id only, since the audience they
+     * resolve to is looked up from the config at evaluation time.
+     */
+    private static boolean sameCondition(@Nullable Condition a, @Nullable Condition b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.getClass() != b.getClass()) {
+            return false;
+        }
+
+        if (a instanceof AudienceIdCondition) {
+            return equal(((AudienceIdCondition<?>) a).getAudienceId(), ((AudienceIdCondition<?>) b).getAudienceId());
+        } else if (a instanceof AndCondition) {
+            return sameConditions(((AndCondition<?>) a).getConditions(), ((AndCondition<?>) b).getConditions());
+        } else if (a instanceof OrCondition) {
+            return sameConditions(((OrCondition<?>) a).getConditions(), ((OrCondition<?>) b).getConditions());
+        } else if (a instanceof NotCondition) {
+            return sameCondition(((NotCondition<?>) a).getCondition(), ((NotCondition<?>) b).getCondition());
+        }
+
+        return a.equals(b);
+    }
+
+    private static boolean sameConditions(List<? extends Condition> a, List<? extends Condition> b) {
+        if (a == null || b == null || a.size() != b.size()) {
+            return a == b;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!sameCondition(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean equal(@Nullable Object a, @Nullable Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static <T extends IdMapped> Map<String, T> idMapping(List<T> entities) {
+        Map<String, T> mapping = new HashMap<String, T>();
+        for (T entity : entities) {
+            mapping.put(entity.getId(), entity);
+        }
+
+        return mapping;
+    }
+}
@@ -17,8 +17,10 @@
 package com.optimizely.ab.config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,24 +30,24 @@ public class ProjectConfigUtils {
      * Helper method for creating convenience mappings from key to entity
      */
     public static <T extends IdKeyMapped> Map<String, T> generateNameMapping(List<T> nameables) {
-        Map<String, T> nameMapping = new HashMap<String, T>();
+        CompactMap.Builder<T> nameMapping = new CompactMap.Builder<T>(nameables.size());
         for (T nameable : nameables) {
             nameMapping.put(nameable.getKey(), nameable);
         }
 
-        return Collections.unmodifiableMap(nameMapping);
+        return nameMapping.build();
     }
 
     /**
      * Helper method for creating convenience mappings from ID to entity
      */
     public static <T extends IdMapped> Map<String, T> generateIdMapping(List<T> nameables) {
-        Map<String, T> nameMapping = new HashMap<String, T>();
+        CompactMap.Builder<T> idMapping = new CompactMap.Builder<T>(nameables.size());
         for (T nameable : nameables) {
-            nameMapping.put(nameable.getId(), nameable);
+            idMapping.put(nameable.getId(), nameable);
         }
 
-        return Collections.unmodifiableMap(nameMapping);
+        return idMapping.build();
     }
 
     /**
@@ -88,21 +90,104 @@ public class ProjectConfigUtils {
                 new HashMap<String, Map<String, LiveVariableUsageInstance>>();
         for (Experiment experiment : experiments) {
             for (Variation variation : experiment.getVariations()) {
-                if (variation.getLiveVariableUsageInstances() != null) {
-                    for (LiveVariableUsageInstance usageInstance : variation.getLiveVariableUsageInstances()) {
-                        Map<String, LiveVariableUsageInstance> liveVariableIdToValueMap =
-                                liveVariableValueMap.get(variation.getId());
-                        if (liveVariableIdToValueMap == null) {
-                            liveVariableIdToValueMap = new HashMap<String, LiveVariableUsageInstance>();
-                        }
-
-                        liveVariableIdToValueMap.put(usageInstance.getId(), usageInstance);
-                        liveVariableValueMap.put(variation.getId(), liveVariableIdToValueMap);
-                    }
+                // share the mapping the variation already holds instead of building another one per variation
+                if (!variation.getVariableIdToLiveVariableUsageInstanceMap().isEmpty()) {
+                    liveVariableValueMap.put(variation.getId(), variation.getVariableIdToLiveVariableUsageInstanceMap());
                 }
             }
         }
 
         return liveVariableValueMap;
     }
+
+    /**
+     * Helper method to create a map from event key to the experiments tracking the event
+     */
+    public static Map<String, List<Experiment>> generateEventKeyToExperimentsMapping(
+            List<EventType> events, Map<String, Experiment> experimentIdMapping) {
+
+        CompactMap.Builder<List<Experiment>> experimentsMapping =
+                new CompactMap.Builder<List<Experiment>>(events.size());
+        for (EventType event : events) {
+            experimentsMapping.put(event.getKey(), resolveExperiments(event.getExperimentIds(), experimentIdMapping));
+        }
+
+        return experimentsMapping.build();
+    }
+
+    /**
+     * Helper method to create a map from event key to only the running experiments tracking the event
+     */
+    public static Map<String, List<Experiment>> generateEventKeyToRunningExperimentsMapping(
+            Map<String, List<Experiment>> eventKeyToExperimentsMapping) {
+
+        CompactMap.Builder<List<Experiment>> experimentsMapping =
+                new CompactMap.Builder<List<Experiment>>(eventKeyToExperimentsMapping.size());
+        for (Map.Entry<String, List<Experiment>> entry : eventKeyToExperimentsMapping.entrySet()) {
+            experimentsMapping.put(entry.getKey(), filterExperiments(entry.getValue(), false));
+        }
+
+        return experimentsMapping.build();
+    }
+
+    /**
+     * Helper method to create a map from feature flag to only the active experiments the feature is used in. The map
+     * is keyed by instance, feature ids aren't guaranteed to be unique.
+     */
+    public static Map<FeatureFlag, List<Experiment>> generateFeatureFlagToActiveExperimentsMapping(
+            List<FeatureFlag> featureFlags, Map<String, Experiment> experimentIdMapping) {
+
+        Map<FeatureFlag, List<Experiment>> experimentsMapping =
+                new IdentityHashMap<FeatureFlag, List<Experiment>>(featureFlags.size());
+        for (FeatureFlag featureFlag : featureFlags) {
+            List<Experiment> experiments = resolveExperiments(featureFlag.getExperimentIds(), experimentIdMapping);
+            experimentsMapping.put(featureFlag, filterExperiments(experiments, true));
+        }
+
+        return Collections.unmodifiableMap(experimentsMapping);
+    }
+
+    /**
+     * Helper method to resolve experiment ids in order, skipping the ids that aren't in the datafile
+     */
+    static List<Experiment> resolveExperiments(List<String> experimentIds,
+                                               Map<String, Experiment> experimentIdMapping) {
+        Experiment[] experiments = new Experiment[experimentIds.size()];
+        int count = 0;
+        for (String experimentId : experimentIds) {
+            Experiment experiment = experimentIdMapping.get(experimentId);
+            if (experiment != null) {
+                experiments[count++] = experiment;
+            }
+        }
+
+        return toList(experiments, count);
+    }
+
+    /**
+     * Helper method to keep only the running, or the running and launched, experiments. The given list is returned
+     * when all of them are kept.
+     */
+    private static List<Experiment> filterExperiments(List<Experiment> experiments, boolean keepLaunched) {
+        Experiment[] kept = new Experiment[experiments.size()];
+        int count = 0;
+        for (Experiment experiment : experiments) {
+            if (keepLaunched ? experiment.isActive() : experiment.isRunning()) {
+                kept[count++] = experiment;
+            }
+        }
+
+        return count == experiments.size() ? experiments : toList(kept, count);
+    }
+
+    private static List<Experiment> toList(Experiment[] experiments, int count) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        if (count < experiments.length) {
+            experiments = Arrays.copyOf(experiments, count);
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(experiments));
+    }
 }
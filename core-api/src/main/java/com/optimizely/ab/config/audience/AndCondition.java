@@ -50,7 +50,7 @@ public class AndCondition<T> implements Condition<T> {
         // true and true is true
         // null and null is null
         for (Condition condition : conditions) {
-            Boolean conditionEval = condition.evaluate(config, attributes);
+            Boolean conditionEval = AttributesSnapshot.evaluate(condition, config, attributes);
             if (conditionEval == null) {
                 foundNull = true;
             }
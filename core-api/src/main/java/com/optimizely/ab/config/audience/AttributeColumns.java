@@ -0,0 +1,200 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The attributes of a batch of users, stored as one array per attribute key.
+ * <p>
+ * Row {@code i} of every column holds the attribute value of the {@code i}th user. Numbers and booleans are kept in
+ * primitive arrays along with a bitmap of the rows where the attribute is present, strings in a {@code String[]}
+ * where missing values are null. The arrays aren't copied, so they must not be modified while the columns are in use.
+ *
+ * @see BatchAudienceEvaluator
+ */
+public final class AttributeColumns {
+
+    private final int size;
+    private final Map<String, Column> columns;
+
+    private AttributeColumns(int size, Map<String, Column> columns) {
+        this.size = size;
+        this.columns = Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * @return the number of users in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    @Nullable Column getColumn(String key) {
+        return columns.get(key);
+    }
+
+    /**
+     * Builds the attribute map of a single user, for conditions that can't be evaluated column by column.
+     */
+    @Nonnull Map<String, Object> getRow(int row) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        for (Map.Entry<String, Column> column : columns.entrySet()) {
+            Object value = column.getValue().get(row);
+            if (value != null) {
+                attributes.put(column.getKey(), value);
+            }
+        }
+
+        return attributes;
+    }
+
+    public static Builder builder(int size) {
+        return new Builder(size);
+    }
+
+    //======== Builder ========//
+
+    public static final class Builder {
+        private final int size;
+        private final Map<String, Column> columns = new HashMap<String, Column>();
+
+        private Builder(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size must not be negative");
+            }
+            this.size = size;
+        }
+
+        public Builder withStrings(@Nonnull String key, @Nonnull String[] values) {
+            checkLength(key, values.length);
+            columns.put(key, new StringColumn(values));
+            return this;
+        }
+
+        public Builder withNumbers(@Nonnull String key, @Nonnull double[] values) {
+            BitSet present = new BitSet(size);
+            present.set(0, size);
+            return withNumbers(key, values, present);
+        }
+
+        public Builder withNumbers(@Nonnull String key, @Nonnull double[] values, @Nonnull BitSet present) {
+            checkLength(key, values.length);
+            columns.put(key, new NumberColumn(values, present.get(0, size)));
+            return this;
+        }
+
+        public Builder withBooleans(@Nonnull String key, @Nonnull boolean[] values) {
+            BitSet present = new BitSet(size);
+            present.set(0, size);
+            return withBooleans(key, values, present);
+        }
+
+        public Builder withBooleans(@Nonnull String key, @Nonnull boolean[] values, @Nonnull BitSet present) {
+            checkLength(key, values.length);
+            columns.put(key, new BooleanColumn(values, present.get(0, size)));
+            return this;
+        }
+
+        /**
+         * Adds a column of arbitrary attribute values, evaluated value by value with the regular matchers.
+         */
+        public Builder withObjects(@Nonnull String key, @Nonnull Object[] values) {
+            checkLength(key, values.length);
+            columns.put(key, new ObjectColumn(values));
+            return this;
+        }
+
+        public AttributeColumns build() {
+            return new AttributeColumns(size, new HashMap<String, Column>(columns));
+        }
+
+        private void checkLength(String key, int length) {
+            if (length != size) {
+                throw new IllegalArgumentException(String.format(
+                        "column \"%s\" has %d values but the batch has %d users", key, length, size));
+            }
+        }
+    }
+
+    //======== Columns ========//
+
+    abstract static class Column {
+        abstract @Nullable Object get(int row);
+    }
+
+    static final class StringColumn extends Column {
+        final String[] values;
+
+        StringColumn(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+
+    static final class NumberColumn extends Column {
+        final double[] values;
+        final BitSet present;
+
+        NumberColumn(double[] values, BitSet present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        @Override
+        Object get(int row) {
+            return present.get(row) ? values[row] : null;
+        }
+    }
+
+    static final class BooleanColumn extends Column {
+        final boolean[] values;
+        final BitSet present;
+
+        BooleanColumn(boolean[] values, BitSet present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        @Override
+        Object get(int row) {
+            return present.get(row) ? values[row] : null;
+        }
+    }
+
+    static final class ObjectColumn extends Column {
+        final Object[] values;
+
+        ObjectColumn(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+}
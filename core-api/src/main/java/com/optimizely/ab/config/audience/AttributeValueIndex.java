@@ -0,0 +1,385 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.audience.match.MatchType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-attribute indexes over the {@code exact}, {@code gt}, {@code lt} and legacy leaf conditions of all audiences.
+ * <p>
+ * Exact values are kept in hash maps and {@code gt}/{@code lt} thresholds in sorted arrays, so a single lookup per
+ * attribute yields the results of every leaf condition on that attribute, no matter how many audiences use it.
+ * <p>
+ * Only results that the regular {@link UserAttribute#evaluate} path computes without logging, that is when the
+ * attribute value has the type the condition expects, are answered by the index. Everything else falls back to
+ * the matchers in {@link MatchType}.
+ */
+@Immutable
+public final class AttributeValueIndex {
+
+    private static final String CUSTOM_ATTRIBUTE_TYPE = "custom_attribute";
+
+    private final Map<UserAttribute, Integer> leafIds;
+    private final AttributeLeaves[] attributeLeaves;
+
+    public AttributeValueIndex(@Nonnull Collection<? extends Audience> audiences) {
+        Map<UserAttribute, Integer> ids = new HashMap<UserAttribute, Integer>();
+        Map<String, AttributeLeaves.Builder> builders = new HashMap<String, AttributeLeaves.Builder>();
+        for (Audience audience : audiences) {
+            collectLeaves(audience.getConditions(), ids, builders);
+        }
+
+        this.leafIds = ids;
+        this.attributeLeaves = new AttributeLeaves[builders.size()];
+        int i = 0;
+        for (AttributeLeaves.Builder builder : builders.values()) {
+            attributeLeaves[i++] = builder.build();
+        }
+    }
+
+    /**
+     * @return the number of distinct leaf conditions covered by the index
+     */
+    public int getLeafCount() {
+        return leafIds.size();
+    }
+
+    /**
+     * Looks up the results of all indexed leaf conditions for the given attributes.
+     *
+     * @param attributes the attributes of the user
+     * @return the leaf results
+     */
+    public @Nonnull LeafResults evaluate(@Nullable Map<String, ?> attributes) {
+        int leafCount = leafIds.size();
+        BitSet defined = new BitSet(leafCount);
+        BitSet matched = new BitSet(leafCount);
+        if (attributes != null) {
+            for (AttributeLeaves leaves : attributeLeaves) {
+                Object value = attributes.get(leaves.key);
+                if (value != null) {
+                    leaves.evaluate(value, defined, matched);
+                }
+            }
+        }
+
+        return new LeafResults(this, defined, matched);
+    }
+
+    /**
+     * Returns the indexed result of a leaf condition.
+     *
+     * @param condition the leaf condition
+     * @param attributes the attributes of the user
+     * @return the result, or null if the condition has to be evaluated by its matcher
+     */
+    public @Nullable Boolean evaluate(@Nonnull UserAttribute condition, @Nullable Map<String, ?> attributes) {
+        if (condition.getName() == null || condition.getType() == null) {
+            return null;
+        }
+        if (attributes instanceof AttributesSnapshot) {
+            return ((AttributesSnapshot) attributes).getLeafResults(this).get(condition);
+        }
+
+        return evaluate(attributes).get(condition);
+    }
+
+    //======== Helper methods ========//
+
+    private static void collectLeaves(@Nullable Condition condition,
+                                      @Nonnull Map<UserAttribute, Integer> ids,
+                                      @Nonnull Map<String, AttributeLeaves.Builder> builders) {
+        if (condition instanceof UserAttribute) {
+            UserAttribute leaf = (UserAttribute) condition;
+            if (!isIndexable(leaf) || ids.containsKey(leaf)) {
+                return;
+            }
+            int id = ids.size();
+            ids.put(leaf, id);
+            AttributeLeaves.Builder builder = builders.get(leaf.getName());
+            if (builder == null) {
+                builder = new AttributeLeaves.Builder(leaf.getName());
+                builders.put(leaf.getName(), builder);
+            }
+            builder.add(leaf, id);
+        } else if (condition instanceof AndCondition) {
+            collectLeaves(((AndCondition) condition).getConditions(), ids, builders);
+        } else if (condition instanceof OrCondition) {
+            collectLeaves(((OrCondition) condition).getConditions(), ids, builders);
+        } else if (condition instanceof NotCondition) {
+            collectLeaves(((NotCondition) condition).getCondition(), ids, builders);
+        }
+    }
+
+    private static void collectLeaves(@Nullable List<Condition> conditions,
+                                      @Nonnull Map<UserAttribute, Integer> ids,
+                                      @Nonnull Map<String, AttributeLeaves.Builder> builders) {
+        if (conditions != null) {
+            for (Condition condition : conditions) {
+                collectLeaves(condition, ids, builders);
+            }
+        }
+    }
+
+    private static boolean isIndexable(@Nonnull UserAttribute leaf) {
+        if (!CUSTOM_ATTRIBUTE_TYPE.equals(leaf.getType()) || leaf.getName() == null) {
+            return false;
+        }
+
+        Object value = leaf.getValue();
+        String match = leaf.getMatch();
+        if (match == null) {
+            return value instanceof String;
+        }
+        switch (match) {
+            case "exact":
+                return value instanceof String || value instanceof Boolean || MatchType.isValidNumber(value);
+            case "gt":
+            case "lt":
+                return MatchType.isValidNumber(value);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The results of the indexed leaf conditions for one set of attributes.
+     */
+    @Immutable
+    public static final class LeafResults {
+        private final AttributeValueIndex index;
+        private final BitSet defined;
+        private final BitSet matched;
+
+        private LeafResults(AttributeValueIndex index, BitSet defined, BitSet matched) {
+            this.index = index;
+            this.defined = defined;
+            this.matched = matched;
+        }
+
+        AttributeValueIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the result of the leaf condition, or null if it isn't answered by the index
+         */
+        public @Nullable Boolean get(@Nonnull UserAttribute condition) {
+            Integer id = index.leafIds.get(condition);
+            if (id == null || !defined.get(id)) {
+                return null;
+            }
+
+            return matched.get(id);
+        }
+    }
+
+    /**
+     * The leaf conditions on a single attribute.
+     */
+    private static final class AttributeLeaves {
+        private final String key;
+
+        // leaves answered when the attribute is a string, a boolean or a number
+        private final BitSet stringLeaves;
+        private final BitSet booleanLeaves;
+        private final BitSet numberLeaves;
+
+        private final Map<String, BitSet> stringIndex;
+        private final Map<Boolean, BitSet> booleanIndex;
+        private final Map<Double, BitSet> numberIndex;
+
+        // thresholds in ascending order along with the ids of their leaves
+        private final double[] gtThresholds;
+        private final int[] gtLeafIds;
+        private final double[] ltThresholds;
+        private final int[] ltLeafIds;
+
+        private AttributeLeaves(Builder builder) {
+            this.key = builder.key;
+            this.stringLeaves = builder.stringLeaves;
+            this.booleanLeaves = builder.booleanLeaves;
+            this.numberLeaves = builder.numberLeaves;
+            this.stringIndex = builder.stringIndex;
+            this.booleanIndex = builder.booleanIndex;
+            this.numberIndex = builder.numberIndex;
+
+            int gtCount = builder.gtLeaves.size();
+            this.gtThresholds = new double[gtCount];
+            this.gtLeafIds = new int[gtCount];
+            sortThresholds(builder.gtLeaves, gtThresholds, gtLeafIds);
+
+            int ltCount = builder.ltLeaves.size();
+            this.ltThresholds = new double[ltCount];
+            this.ltLeafIds = new int[ltCount];
+            sortThresholds(builder.ltLeaves, ltThresholds, ltLeafIds);
+        }
+
+        private void evaluate(@Nonnull Object value, @Nonnull BitSet defined, @Nonnull BitSet matched) {
+            if (value instanceof String) {
+                defined.or(stringLeaves);
+                orIfPresent(matched, stringIndex.get(value));
+            } else if (value instanceof Boolean) {
+                defined.or(booleanLeaves);
+                orIfPresent(matched, booleanIndex.get(value));
+            } else if (value instanceof Number) {
+                defined.or(numberLeaves);
+                double number = ((Number) value).doubleValue();
+                if (Double.isNaN(number)) {
+                    // every comparison with NaN is false
+                    return;
+                }
+                orIfPresent(matched, numberIndex.get((Double) AudienceIndex.normalize(number)));
+
+                // gt holds for every threshold below the value
+                int below = lowerBound(gtThresholds, number);
+                for (int i = 0; i < below; i++) {
+                    matched.set(gtLeafIds[i]);
+                }
+                // lt holds for every threshold above the value
+                for (int i = upperBound(ltThresholds, number); i < ltThresholds.length; i++) {
+                    matched.set(ltLeafIds[i]);
+                }
+            }
+        }
+
+        private static void orIfPresent(@Nonnull BitSet target, @Nullable BitSet bitSet) {
+            if (bitSet != null) {
+                target.or(bitSet);
+            }
+        }
+
+        /**
+         * @return the number of thresholds strictly less than the value
+         */
+        private static int lowerBound(double[] thresholds, double value) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (thresholds[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the number of thresholds less than or equal to the value
+         */
+        private static int upperBound(double[] thresholds, double value) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (thresholds[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static void sortThresholds(List<Threshold> leaves, double[] thresholds, int[] leafIds) {
+            Threshold[] sorted = leaves.toArray(new Threshold[leaves.size()]);
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                thresholds[i] = sorted[i].value;
+                leafIds[i] = sorted[i].leafId;
+            }
+        }
+
+        private static final class Builder {
+            private final String key;
+            private final BitSet stringLeaves = new BitSet();
+            private final BitSet booleanLeaves = new BitSet();
+            private final BitSet numberLeaves = new BitSet();
+            private final Map<String, BitSet> stringIndex = new HashMap<String, BitSet>();
+            private final Map<Boolean, BitSet> booleanIndex = new HashMap<Boolean, BitSet>();
+            private final Map<Double, BitSet> numberIndex = new HashMap<Double, BitSet>();
+            private final List<Threshold> gtLeaves = new ArrayList<Threshold>();
+            private final List<Threshold> ltLeaves = new ArrayList<Threshold>();
+
+            private Builder(String key) {
+                this.key = key;
+            }
+
+            private void add(UserAttribute leaf, int id) {
+                Object value = leaf.getValue();
+                String match = leaf.getMatch() == null ? "exact" : leaf.getMatch();
+                if ("gt".equals(match)) {
+                    numberLeaves.set(id);
+                    gtLeaves.add(new Threshold(((Number) value).doubleValue(), id));
+                } else if ("lt".equals(match)) {
+                    numberLeaves.set(id);
+                    ltLeaves.add(new Threshold(((Number) value).doubleValue(), id));
+                } else if (value instanceof String) {
+                    stringLeaves.set(id);
+                    bitSetFor(stringIndex, (String) value).set(id);
+                } else if (value instanceof Boolean) {
+                    booleanLeaves.set(id);
+                    bitSetFor(booleanIndex, (Boolean) value).set(id);
+                } else {
+                    numberLeaves.set(id);
+                    bitSetFor(numberIndex, (Double) AudienceIndex.normalize(value)).set(id);
+                }
+            }
+
+            private AttributeLeaves build() {
+                return new AttributeLeaves(this);
+            }
+
+            private static <K> BitSet bitSetFor(Map<K, BitSet> index, K key) {
+                BitSet bitSet = index.get(key);
+                if (bitSet == null) {
+                    bitSet = new BitSet();
+                    index.put(key, bitSet);
+                }
+                return bitSet;
+            }
+        }
+    }
+
+    private static final class Threshold implements Comparable<Threshold> {
+        private final double value;
+        private final int leafId;
+
+        private Threshold(double value, int leafId) {
+            this.value = value;
+            this.leafId = leafId;
+        }
+
+        @Override
+        public int compareTo(Threshold other) {
+            return Double.compare(value, other.value);
+        }
+    }
+}
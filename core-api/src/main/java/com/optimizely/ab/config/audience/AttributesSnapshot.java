@@ -0,0 +1,210 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only copy of a user's attributes taken at the start of an API call.
+ * <p>
+ * Since the attributes can't change for the lifetime of the snapshot, lookups that only depend on the attributes,
+ * such as the candidate audiences of an {@link AudienceIndex}, the leaf results of an {@link AttributeValueIndex}
+ * and the results of audience conditions, are computed once and shared by every decision made with the snapshot.
+ */
+public final class AttributesSnapshot extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> attributes;
+    private final AudienceResultCache audienceResultCache;
+
+    private volatile CandidateAudiences candidateAudiences;
+    private volatile AttributeValueIndex.LeafResults leafResults;
+    private volatile ConditionResults conditionResults;
+
+    private AttributesSnapshot(@Nonnull Map<String, ?> attributes, @Nullable AudienceResultCache audienceResultCache) {
+        this.attributes = Collections.unmodifiableMap(new HashMap<String, Object>(attributes));
+        this.audienceResultCache = audienceResultCache;
+    }
+
+    /**
+     * Copies the given attributes into a snapshot, unless they already are one.
+     *
+     * @param attributes the user's attributes
+     * @return the snapshot, or null if the attributes are null
+     */
+    public static @Nullable Map<String, ?> of(@Nullable Map<String, ?> attributes) {
+        return of(attributes, null);
+    }
+
+    /**
+     * Copies the given attributes into a snapshot, unless they already are one.
+     *
+     * @param attributes the user's attributes
+     * @param audienceResultCache the cache of audience results shared across users, or null to not share them
+     * @return the snapshot, or null if the attributes are null
+     */
+    public static @Nullable Map<String, ?> of(@Nullable Map<String, ?> attributes,
+                                              @Nullable AudienceResultCache audienceResultCache) {
+        if (attributes == null || attributes instanceof AttributesSnapshot) {
+            return attributes;
+        }
+
+        return new AttributesSnapshot(attributes, audienceResultCache);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return attributes.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return attributes.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return attributes.size();
+    }
+
+    @Override
+    public @Nonnull Set<Entry<String, Object>> entrySet() {
+        return attributes.entrySet();
+    }
+
+    BitSet getAudienceCandidates(@Nonnull AudienceIndex audienceIndex) {
+        CandidateAudiences cached = candidateAudiences;
+        if (cached == null || cached.audienceIndex != audienceIndex) {
+            cached = new CandidateAudiences(audienceIndex, audienceIndex.candidates(this));
+            candidateAudiences = cached;
+        }
+
+        return cached.candidates;
+    }
+
+    AttributeValueIndex.LeafResults getLeafResults(@Nonnull AttributeValueIndex attributeValueIndex) {
+        AttributeValueIndex.LeafResults cached = leafResults;
+        if (cached == null || cached.getIndex() != attributeValueIndex) {
+            cached = attributeValueIndex.evaluate(this);
+            leafResults = cached;
+        }
+
+        return cached;
+    }
+
+    /**
+     * Evaluates a condition, reusing its result if the same condition instance was already evaluated for this
+     * snapshot. Together with {@link ConditionInterner} this evaluates every distinct node at most once per user.
+     *
+     * @param condition the condition to evaluate
+     * @param config the project config
+     * @param attributes the attributes, results are only cached when they're a snapshot
+     * @return the result of the condition
+     */
+    static @Nullable Boolean evaluate(@Nonnull Condition condition,
+                                      @Nullable ProjectConfig config,
+                                      @Nullable Map<String, ?> attributes) {
+        if (config == null || !(attributes instanceof AttributesSnapshot)) {
+            return condition.evaluate(config, attributes);
+        }
+
+        AttributesSnapshot snapshot = (AttributesSnapshot) attributes;
+        ConditionResults results = snapshot.conditionResults;
+        if (results == null || results.config != config) {
+            results = new ConditionResults(config);
+            snapshot.conditionResults = results;
+        }
+
+        Object cached = results.get(condition);
+        if (cached != null) {
+            return cached == ConditionResults.NULL ? null : (Boolean) cached;
+        }
+
+        Boolean result = condition.evaluate(config, attributes);
+        results.put(condition, result);
+        return result;
+    }
+
+    /**
+     * Evaluates the conditions of an audience, going through the snapshot's {@link AudienceResultCache} if it has
+     * one.
+     *
+     * @param audience the audience to evaluate
+     * @param config the project config
+     * @param attributes the attributes, results are only cached when they're a snapshot
+     * @return the result of the audience's conditions
+     */
+    static @Nullable Boolean evaluate(@Nonnull Audience audience,
+                                      @Nullable ProjectConfig config,
+                                      @Nullable Map<String, ?> attributes) {
+        if (hasAudienceResultCache(config, attributes)) {
+            AudienceResultCache cache = ((AttributesSnapshot) attributes).audienceResultCache;
+            return cache.evaluate(audience, config, attributes);
+        }
+
+        return evaluate(audience.getConditions(), config, attributes);
+    }
+
+    /**
+     * @return whether audiences evaluated with the attributes go through an {@link AudienceResultCache}
+     */
+    static boolean hasAudienceResultCache(@Nullable ProjectConfig config, @Nullable Map<String, ?> attributes) {
+        return config != null && attributes instanceof AttributesSnapshot
+                && ((AttributesSnapshot) attributes).audienceResultCache != null;
+    }
+
+    private static final class CandidateAudiences {
+        private final AudienceIndex audienceIndex;
+        private final BitSet candidates;
+
+        private CandidateAudiences(AudienceIndex audienceIndex, BitSet candidates) {
+            this.audienceIndex = audienceIndex;
+            this.candidates = candidates;
+        }
+    }
+
+    /**
+     * Results of the conditions evaluated against one project config, keyed by condition instance.
+     */
+    private static final class ConditionResults {
+        private static final Object NULL = new Object();
+
+        private final ProjectConfig config;
+        private final Map<Condition, Object> results = new IdentityHashMap<Condition, Object>();
+
+        private ConditionResults(ProjectConfig config) {
+            this.config = config;
+        }
+
+        private synchronized Object get(Condition condition) {
+            return results.get(condition);
+        }
+
+        private synchronized void put(Condition condition, Boolean result) {
+            results.put(condition, result == null ? NULL : result);
+        }
+    }
+}
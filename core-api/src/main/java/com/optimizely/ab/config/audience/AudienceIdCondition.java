@@ -66,14 +66,13 @@ public class AudienceIdCondition<T> implements Condition<T> {
     @Nullable
     @Override
     public Boolean evaluate(ProjectConfig config, Map<String, ?> attributes) {
-        if (config != null) {
-            audience = config.getAudienceIdMapping().get(audienceId);
-        }
-        if (audience == null) {
+        // conditions are shared between the configs an experiment is reused in, so resolve without storing it
+        Audience resolved = config != null ? config.getAudienceIdMapping().get(audienceId) : audience;
+        if (resolved == null) {
             logger.error(String.format("Audience not set for audienceConditions %s", audienceId));
             return null;
         }
-        return audience.getConditions().evaluate(config, attributes);
+        return AttributesSnapshot.evaluate(resolved, config, attributes);
     }
 
     @Override
@@ -0,0 +1,505 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.audience.match.MatchType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from user attribute values to the audiences that could possibly evaluate to true for them.
+ * <p>
+ * Every audience is reduced to a list of requirements, at least one of which must hold for the audience to match:
+ * either an attribute being equal to a given value ({@code exact} and legacy conditions) or an attribute being
+ * present at all ({@code exists}, {@code substring}, {@code gt} and {@code lt} conditions). Audiences that can't be
+ * reduced this way, for instance because they are built around a {@link NotCondition}, are always candidates.
+ * <p>
+ * The index never rules out an audience that could evaluate to true, so audiences which aren't candidates can be
+ * skipped without changing the outcome of a decision. Experiments are only rejected when evaluating their audiences
+ * wouldn't log either, that is when every leaf condition finds an attribute value of the type it expects, so the
+ * matchers' diagnostics for missing and mismatched attributes are kept.
+ */
+@Immutable
+public final class AudienceIndex {
+
+    private static final String CUSTOM_ATTRIBUTE_TYPE = "custom_attribute";
+
+    private final Map<String, Integer> audienceOrdinals;
+    private final String[] audienceIds;
+    private final String[][] audienceKeys;
+    // per audience, the attribute keys and expected value types of the leaves that log unless the value has that
+    // type, a null type for leaves that always log
+    private final String[][] typedLeafKeys;
+    private final Class<?>[][] typedLeafTypes;
+
+    // audiences that are candidates no matter what the attributes are
+    private final BitSet unconstrained;
+    // attribute key to the audiences that can match when the attribute is present
+    private final Map<String, BitSet> presenceIndex;
+    // attribute key to normalized attribute value to the audiences that can match for that value
+    private final Map<String, Map<Object, BitSet>> exactIndex;
+
+    public AudienceIndex(@Nonnull Collection<? extends Audience> audiences) {
+        int size = audiences.size();
+        Map<String, Integer> ordinals = new HashMap<String, Integer>(size);
+        this.audienceIds = new String[size];
+        this.audienceKeys = new String[size][];
+        this.typedLeafKeys = new String[size][];
+        this.typedLeafTypes = new Class<?>[size][];
+        this.unconstrained = new BitSet(size);
+        this.presenceIndex = new HashMap<String, BitSet>();
+        this.exactIndex = new HashMap<String, Map<Object, BitSet>>();
+
+        int ordinal = 0;
+        for (Audience audience : audiences) {
+            ordinals.put(audience.getId(), ordinal);
+            audienceIds[ordinal] = audience.getId();
+            collectTypedLeaves(audience.getConditions(), ordinal);
+
+            List<Requirement> requirements = audience.getConditions() == null ?
+                    null : requirements(audience.getConditions());
+            if (requirements == null) {
+                unconstrained.set(ordinal);
+                audienceKeys[ordinal] = new String[0];
+            } else {
+                Set<String> keys = new LinkedHashSet<String>();
+                for (Requirement requirement : requirements) {
+                    keys.add(requirement.key);
+                    if (requirement.value == null) {
+                        bitSetFor(presenceIndex, requirement.key).set(ordinal);
+                    } else {
+                        Map<Object, BitSet> valueIndex = exactIndex.get(requirement.key);
+                        if (valueIndex == null) {
+                            valueIndex = new HashMap<Object, BitSet>();
+                            exactIndex.put(requirement.key, valueIndex);
+                        }
+                        bitSetFor(valueIndex, requirement.value).set(ordinal);
+                    }
+                }
+                audienceKeys[ordinal] = keys.toArray(new String[keys.size()]);
+            }
+            ordinal++;
+        }
+
+        this.audienceOrdinals = Collections.unmodifiableMap(ordinals);
+    }
+
+    /**
+     * Returns the ids of all audiences that could evaluate to true for the given attributes.
+     *
+     * @param attributes the attributes of the user
+     * @return the candidate audience ids
+     */
+    public @Nonnull Set<String> getCandidateAudienceIds(@Nullable Map<String, ?> attributes) {
+        BitSet candidates = candidates(attributes);
+        Set<String> candidateIds = new HashSet<String>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            candidateIds.add(audienceIds[i]);
+        }
+
+        return candidateIds;
+    }
+
+    /**
+     * Determines whether the audience with the given id could evaluate to true for the given attributes.
+     * Unknown audiences are never candidates since they can't be resolved during evaluation either.
+     */
+    public boolean isCandidate(@Nonnull String audienceId, @Nullable Map<String, ?> attributes) {
+        Integer ordinal = audienceOrdinals.get(audienceId);
+        if (ordinal == null) {
+            return false;
+        }
+
+        if (attributes instanceof AttributesSnapshot) {
+            return ((AttributesSnapshot) attributes).getAudienceCandidates(this).get(ordinal);
+        }
+
+        return isCandidate(ordinal, attributes);
+    }
+
+    /**
+     * Determines whether the audience conditions of an experiment could evaluate to true for the given attributes.
+     * If this returns false, evaluating the experiment's audiences is guaranteed not to return true, and not to log
+     * anything either.
+     *
+     * @param experiment the experiment whose audiences are checked
+     * @param attributes the attributes of the user
+     * @return false if the user can't be in the experiment's audiences, true if the audiences must be evaluated
+     */
+    public boolean couldMatch(@Nonnull Experiment experiment, @Nullable Map<String, ?> attributes) {
+        Condition audienceConditions = experiment.getAudienceConditions();
+        if (audienceConditions != null) {
+            return couldMatch(audienceConditions, attributes) || !evaluatesSilently(audienceConditions, attributes);
+        }
+
+        List<String> experimentAudienceIds = experiment.getAudienceIds();
+        if (experimentAudienceIds.isEmpty()) {
+            return true;
+        }
+        for (String audienceId : experimentAudienceIds) {
+            if (isCandidate(audienceId, attributes)) {
+                return true;
+            }
+        }
+        for (String audienceId : experimentAudienceIds) {
+            if (!evaluatesSilently(audienceId, attributes)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    //======== Helper methods ========//
+
+    BitSet candidates(@Nullable Map<String, ?> attributes) {
+        BitSet candidates = (BitSet) unconstrained.clone();
+        if (attributes == null) {
+            return candidates;
+        }
+
+        for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+            if (attribute.getValue() == null) {
+                continue;
+            }
+            BitSet present = presenceIndex.get(attribute.getKey());
+            if (present != null) {
+                candidates.or(present);
+            }
+            Map<Object, BitSet> valueIndex = exactIndex.get(attribute.getKey());
+            if (valueIndex != null) {
+                BitSet matching = valueIndex.get(normalize(attribute.getValue()));
+                if (matching != null) {
+                    candidates.or(matching);
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    private boolean isCandidate(int ordinal, @Nullable Map<String, ?> attributes) {
+        if (unconstrained.get(ordinal)) {
+            return true;
+        }
+        if (attributes == null) {
+            return false;
+        }
+
+        for (String key : audienceKeys[ordinal]) {
+            Object value = attributes.get(key);
+            if (value == null) {
+                continue;
+            }
+            BitSet present = presenceIndex.get(key);
+            if (present != null && present.get(ordinal)) {
+                return true;
+            }
+            Map<Object, BitSet> valueIndex = exactIndex.get(key);
+            if (valueIndex != null) {
+                BitSet matching = valueIndex.get(normalize(value));
+                if (matching != null && matching.get(ordinal)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean couldMatch(@Nonnull Condition condition, @Nullable Map<String, ?> attributes) {
+        if (condition instanceof AudienceIdCondition) {
+            return isCandidate(((AudienceIdCondition) condition).getAudienceId(), attributes);
+        } else if (condition instanceof AndCondition) {
+            List<Condition> conditions = ((AndCondition) condition).getConditions();
+            if (conditions == null) {
+                return false;
+            }
+            for (Condition child : conditions) {
+                if (!couldMatch(child, attributes)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (condition instanceof OrCondition) {
+            List<Condition> conditions = ((OrCondition) condition).getConditions();
+            if (conditions == null) {
+                return false;
+            }
+            for (Condition child : conditions) {
+                if (couldMatch(child, attributes)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (condition instanceof NullCondition) {
+            return false;
+        }
+
+        // not conditions, empty conditions and anything else we can't reason about
+        return true;
+    }
+
+    private boolean evaluatesSilently(@Nullable Condition condition, @Nullable Map<String, ?> attributes) {
+        if (condition instanceof AudienceIdCondition) {
+            return evaluatesSilently(((AudienceIdCondition) condition).getAudienceId(), attributes);
+        } else if (condition instanceof AndCondition || condition instanceof OrCondition) {
+            List<Condition> conditions = condition instanceof AndCondition ?
+                    ((AndCondition) condition).getConditions() : ((OrCondition) condition).getConditions();
+            if (conditions != null) {
+                for (Condition child : conditions) {
+                    if (!evaluatesSilently(child, attributes)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else if (condition instanceof NotCondition) {
+            return evaluatesSilently(((NotCondition) condition).getCondition(), attributes);
+        }
+
+        return true;
+    }
+
+    /**
+     * Determines whether evaluating an audience won't log, which is the case when all of its leaves that log for
+     * missing or mismatched attributes find a value of the type they expect.
+     */
+    private boolean evaluatesSilently(@Nonnull String audienceId, @Nullable Map<String, ?> attributes) {
+        Integer ordinal = audienceOrdinals.get(audienceId);
+        if (ordinal == null) {
+            // unresolved audiences are logged as errors
+            return false;
+        }
+
+        String[] keys = typedLeafKeys[ordinal];
+        Class<?>[] types = typedLeafTypes[ordinal];
+        for (int i = 0; i < keys.length; i++) {
+            Object value = attributes == null ? null : attributes.get(keys[i]);
+            if (types[i] == null || !types[i].isInstance(value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void collectTypedLeaves(@Nullable Condition conditions, int ordinal) {
+        List<String> keys = new ArrayList<String>();
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        collectTypedLeaves(conditions, keys, types);
+        typedLeafKeys[ordinal] = keys.toArray(new String[keys.size()]);
+        typedLeafTypes[ordinal] = types.toArray(new Class<?>[types.size()]);
+    }
+
+    private static void collectTypedLeaves(@Nullable Condition condition,
+                                           @Nonnull List<String> keys,
+                                           @Nonnull List<Class<?>> types) {
+        if (condition instanceof UserAttribute) {
+            UserAttribute leaf = (UserAttribute) condition;
+            Class<?> type = CUSTOM_ATTRIBUTE_TYPE.equals(leaf.getType()) ? expectedType(leaf) : null;
+            if (type != Object.class) {
+                keys.add(leaf.getName());
+                types.add(type);
+            }
+        } else if (condition instanceof AndCondition || condition instanceof OrCondition) {
+            List<Condition> conditions = condition instanceof AndCondition ?
+                    ((AndCondition) condition).getConditions() : ((OrCondition) condition).getConditions();
+            if (conditions != null) {
+                for (Condition child : conditions) {
+                    collectTypedLeaves(child, keys, types);
+                }
+            }
+        } else if (condition instanceof NotCondition) {
+            collectTypedLeaves(((NotCondition) condition).getCondition(), keys, types);
+        }
+    }
+
+    /**
+     * Mirrors {@link MatchType#getMatchType}: the type of attribute value a custom attribute leaf is evaluated
+     * without logging for, or {@code Object.class} for leaves that never log, such as {@code exists} conditions and
+     * conditions whose value makes them unevaluable.
+     */
+    private static @Nonnull Class<?> expectedType(@Nonnull UserAttribute leaf) {
+        Object value = leaf.getValue();
+        String match = leaf.getMatch();
+        if (match == null) {
+            return value instanceof String ? String.class : Object.class;
+        }
+
+        switch (match) {
+            case "exact":
+                if (value instanceof String) {
+                    return String.class;
+                } else if (MatchType.isValidNumber(value)) {
+                    return Number.class;
+                } else if (value instanceof Boolean) {
+                    return Boolean.class;
+                }
+                break;
+            case "substring":
+                if (value instanceof String) {
+                    return String.class;
+                }
+                break;
+            case "gt":
+            case "lt":
+                if (MatchType.isValidNumber(value)) {
+                    return Number.class;
+                }
+                break;
+            default:
+                break;
+        }
+
+        return Object.class;
+    }
+
+    /**
+     * Reduces a condition to the requirements of which at least one must hold for it to evaluate to true.
+     *
+     * @return null when the condition could be true for any attributes, an empty list when it can never be true
+     */
+    private static @Nullable List<Requirement> requirements(@Nonnull Condition condition) {
+        if (condition instanceof UserAttribute) {
+            return requirements((UserAttribute) condition);
+        } else if (condition instanceof AndCondition) {
+            List<Condition> conditions = ((AndCondition) condition).getConditions();
+            if (conditions == null) {
+                return Collections.emptyList();
+            }
+            // every child has to be true, so the requirements of any single child are sufficient.
+            List<Requirement> narrowest = null;
+            for (Condition child : conditions) {
+                List<Requirement> childRequirements = requirements(child);
+                if (childRequirements != null &&
+                        (narrowest == null || childRequirements.size() < narrowest.size())) {
+                    narrowest = childRequirements;
+                }
+            }
+            return narrowest;
+        } else if (condition instanceof OrCondition) {
+            List<Condition> conditions = ((OrCondition) condition).getConditions();
+            if (conditions == null) {
+                return Collections.emptyList();
+            }
+            List<Requirement> union = new ArrayList<Requirement>();
+            for (Condition child : conditions) {
+                List<Requirement> childRequirements = requirements(child);
+                if (childRequirements == null) {
+                    return null;
+                }
+                union.addAll(childRequirements);
+            }
+            return union;
+        } else if (condition instanceof NullCondition) {
+            return Collections.emptyList();
+        }
+
+        return null;
+    }
+
+    private static @Nonnull List<Requirement> requirements(@Nonnull UserAttribute condition) {
+        if (!CUSTOM_ATTRIBUTE_TYPE.equals(condition.getType())) {
+            return Collections.emptyList();
+        }
+
+        String name = condition.getName();
+        Object value = condition.getValue();
+        String match = condition.getMatch();
+        if (match == null) {
+            // legacy conditions only ever match strings exactly
+            return value instanceof String ?
+                    Collections.singletonList(new Requirement(name, value)) :
+                    Collections.<Requirement>emptyList();
+        }
+
+        switch (match) {
+            case "exists":
+                return Collections.singletonList(new Requirement(name, null));
+            case "exact":
+                if (value instanceof String || value instanceof Boolean || MatchType.isValidNumber(value)) {
+                    return Collections.singletonList(new Requirement(name, normalize(value)));
+                }
+                break;
+            case "substring":
+                if (value instanceof String) {
+                    return Collections.singletonList(new Requirement(name, null));
+                }
+                break;
+            case "gt":
+            case "lt":
+                if (MatchType.isValidNumber(value)) {
+                    return Collections.singletonList(new Requirement(name, null));
+                }
+                break;
+            default:
+                break;
+        }
+
+        // the condition can't be evaluated, so it never evaluates to true
+        return Collections.emptyList();
+    }
+
+    /**
+     * Numbers are compared by their double value when matching exactly, so they are all keyed as doubles.
+     */
+    static Object normalize(@Nonnull Object value) {
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return number == 0 ? 0d : number;
+        }
+
+        return value;
+    }
+
+    private static <K> BitSet bitSetFor(Map<K, BitSet> index, K key) {
+        BitSet bitSet = index.get(key);
+        if (bitSet == null) {
+            bitSet = new BitSet();
+            index.put(key, bitSet);
+        }
+
+        return bitSet;
+    }
+
+    /**
+     * An attribute that has to equal {@link #value}, or has to be present when the value is null.
+     */
+    private static final class Requirement {
+        private final String key;
+        private final Object value;
+
+        private Requirement(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
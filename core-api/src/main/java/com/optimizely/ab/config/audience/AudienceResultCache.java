@@ -0,0 +1,239 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded cache of audience results shared across users.
+ * <p>
+ * The result of an audience only depends on the values of the attributes its conditions reference, so results are
+ * keyed by the audience id and the values of just those attributes. Users in the same segment share an entry, no
+ * matter what other attributes they have. The whole cache is dropped when it sees a project config with a different
+ * revision.
+ * <p>
+ * Audiences that reference other audiences or custom condition types, and attribute values that aren't strings,
+ * booleans or numbers, are evaluated without the cache.
+ */
+@ThreadSafe
+public final class AudienceResultCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final String[] NOT_CACHEABLE = new String[0];
+    private static final Object ABSENT = new Object();
+    private static final Object NULL = new Object();
+
+    private final int maxSize;
+    private final AtomicReference<Generation> generation = new AtomicReference<Generation>(new Generation(null));
+
+    public AudienceResultCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of results to keep
+     */
+    public AudienceResultCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of results currently cached
+     */
+    public int size() {
+        return generation.get().results.size();
+    }
+
+    public void clear() {
+        generation.set(new Generation(generation.get().revision));
+    }
+
+    /**
+     * Evaluates an audience, reusing the result of a previous user with the same values for the attributes that
+     * the audience references.
+     *
+     * @param audience the audience to evaluate
+     * @param config the project config the audience belongs to
+     * @param attributes the attributes of the user
+     * @return the result of the audience's conditions
+     */
+    @Nullable
+    Boolean evaluate(@Nonnull Audience audience, @Nonnull ProjectConfig config, @Nonnull Map<String, ?> attributes) {
+        Generation current = getGeneration(config.getRevision());
+        Key key = current.key(audience, attributes);
+        if (key == null) {
+            return AttributesSnapshot.evaluate(audience.getConditions(), config, attributes);
+        }
+
+        Object cached = current.results.get(key);
+        if (cached != null) {
+            return cached == NULL ? null : (Boolean) cached;
+        }
+
+        Boolean result = AttributesSnapshot.evaluate(audience.getConditions(), config, attributes);
+        if (current.results.size() >= maxSize) {
+            Iterator<Key> keys = current.results.keySet().iterator();
+            if (keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        current.results.put(key, result == null ? NULL : result);
+        return result;
+    }
+
+    private Generation getGeneration(@Nullable String revision) {
+        Generation current = generation.get();
+        while (!equal(current.revision, revision)) {
+            Generation next = new Generation(revision);
+            if (generation.compareAndSet(current, next)) {
+                return next;
+            }
+            current = generation.get();
+        }
+
+        return current;
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Collects the attribute names referenced by a condition tree.
+     *
+     * @return whether every node of the tree could be handled
+     */
+    private static boolean collectAttributes(@Nullable Condition condition, @Nonnull Set<String> names) {
+        if (condition == null || condition instanceof EmptyCondition || condition instanceof NullCondition) {
+            return true;
+        } else if (condition instanceof UserAttribute) {
+            names.add(((UserAttribute) condition).getName());
+            return true;
+        } else if (condition instanceof AndCondition || condition instanceof OrCondition) {
+            List<Condition> children = condition instanceof AndCondition ?
+                    ((AndCondition<?>) condition).getConditions() : ((OrCondition<?>) condition).getConditions();
+            if (children != null) {
+                for (Condition child : children) {
+                    if (!collectAttributes(child, names)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else if (condition instanceof NotCondition) {
+            return collectAttributes(((NotCondition<?>) condition).getCondition(), names);
+        }
+
+        return false;
+    }
+
+    private static boolean isCacheable(@Nullable Object value) {
+        return value == null || value instanceof String || value instanceof Boolean || value instanceof Integer ||
+                value instanceof Long || value instanceof Double || value instanceof Float ||
+                value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * The cached results of one revision, along with the attributes each of its audiences references.
+     */
+    private static final class Generation {
+        private final String revision;
+        private final ConcurrentMap<String, String[]> referencedAttributes = new ConcurrentHashMap<String, String[]>();
+        private final ConcurrentMap<Key, Object> results = new ConcurrentHashMap<Key, Object>();
+
+        private Generation(@Nullable String revision) {
+            this.revision = revision;
+        }
+
+        private @Nullable Key key(@Nonnull Audience audience, @Nonnull Map<String, ?> attributes) {
+            String audienceId = audience.getId();
+            if (audienceId == null) {
+                return null;
+            }
+
+            String[] names = referencedAttributes.get(audienceId);
+            if (names == null) {
+                Set<String> collected = new LinkedHashSet<String>();
+                names = collectAttributes(audience.getConditions(), collected) ?
+                        collected.toArray(new String[collected.size()]) : NOT_CACHEABLE;
+                referencedAttributes.put(audienceId, names);
+            }
+            if (names == NOT_CACHEABLE) {
+                return null;
+            }
+
+            Object[] values = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object value = attributes.get(names[i]);
+                if (!isCacheable(value)) {
+                    return null;
+                }
+                values[i] = value == null && !attributes.containsKey(names[i]) ? ABSENT : value;
+            }
+
+            return new Key(audienceId, values);
+        }
+    }
+
+    private static final class Key {
+        private final String audienceId;
+        private final Object[] values;
+        private final int hashCode;
+
+        private Key(String audienceId, Object[] values) {
+            this.audienceId = audienceId;
+            this.values = values;
+            this.hashCode = 31 * audienceId.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+
+            Key key = (Key) other;
+            return hashCode == key.hashCode && audienceId.equals(key.audienceId) && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
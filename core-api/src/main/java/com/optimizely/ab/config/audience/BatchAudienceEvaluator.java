@@ -0,0 +1,368 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.audience.AttributeColumns.BooleanColumn;
+import com.optimizely.ab.config.audience.AttributeColumns.Column;
+import com.optimizely.ab.config.audience.AttributeColumns.NumberColumn;
+import com.optimizely.ab.config.audience.AttributeColumns.ObjectColumn;
+import com.optimizely.ab.config.audience.AttributeColumns.StringColumn;
+import com.optimizely.ab.config.audience.match.Match;
+import com.optimizely.ab.config.audience.match.MatchType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Evaluates audience conditions for a whole batch of users at once.
+ * <p>
+ * Leaf conditions are evaluated in tight loops over the {@link AttributeColumns} of the batch and combined with
+ * bitwise operations, following the same semantics as {@link Condition#evaluate}. Unlike the per-user path, type
+ * mismatches in primitive columns aren't logged for every user; they simply evaluate to null.
+ */
+@ThreadSafe
+public final class BatchAudienceEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAudienceEvaluator.class);
+
+    private final ProjectConfig projectConfig;
+
+    /**
+     * @param projectConfig the project config used to resolve audience ids, may be null
+     */
+    public BatchAudienceEvaluator(@Nullable ProjectConfig projectConfig) {
+        this.projectConfig = projectConfig;
+    }
+
+    /**
+     * Evaluates an audience for every user in the batch.
+     *
+     * @param audience the audience
+     * @param columns the attributes of the users
+     * @return the result for every user
+     */
+    public @Nonnull BatchAudienceResult evaluate(@Nonnull Audience audience, @Nonnull AttributeColumns columns) {
+        return evaluate(audience.getConditions(), columns);
+    }
+
+    /**
+     * Evaluates a condition for every user in the batch.
+     *
+     * @param condition the condition
+     * @param columns the attributes of the users
+     * @return the result for every user
+     */
+    public @Nonnull BatchAudienceResult evaluate(@Nullable Condition condition, @Nonnull AttributeColumns columns) {
+        Bits bits = evaluateCondition(condition, columns);
+        return new BatchAudienceResult(columns.size(), bits.matched, bits.unknown);
+    }
+
+    //======== Conditions ========//
+
+    private Bits evaluateCondition(@Nullable Condition condition, AttributeColumns columns) {
+        int size = columns.size();
+        if (condition == null || condition instanceof NullCondition) {
+            return Bits.allNull(size);
+        } else if (condition instanceof EmptyCondition) {
+            return Bits.allTrue(size);
+        } else if (condition instanceof UserAttribute) {
+            return evaluateLeaf((UserAttribute) condition, columns);
+        } else if (condition instanceof AndCondition) {
+            return evaluateAnd(((AndCondition) condition).getConditions(), columns);
+        } else if (condition instanceof OrCondition) {
+            return evaluateOr(((OrCondition) condition).getConditions(), columns);
+        } else if (condition instanceof NotCondition) {
+            Condition child = ((NotCondition) condition).getCondition();
+            if (child == null) {
+                return Bits.allNull(size);
+            }
+            Bits bits = evaluateCondition(child, columns);
+            BitSet matched = new BitSet(size);
+            matched.set(0, size);
+            matched.andNot(bits.matched);
+            matched.andNot(bits.unknown);
+            return new Bits(matched, bits.unknown);
+        } else if (condition instanceof AudienceIdCondition) {
+            AudienceIdCondition audienceIdCondition = (AudienceIdCondition) condition;
+            Audience audience = projectConfig != null ?
+                    projectConfig.getAudienceIdMapping().get(audienceIdCondition.getAudienceId()) :
+                    audienceIdCondition.getAudience();
+            if (audience == null) {
+                logger.error(String.format("Audience not set for audienceConditions %s", audienceIdCondition.getAudienceId()));
+                return Bits.allNull(size);
+            }
+            return evaluateCondition(audience.getConditions(), columns);
+        }
+
+        // conditions we don't know how to vectorize are evaluated user by user
+        BitSet matched = new BitSet(size);
+        BitSet unknown = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            Boolean result = condition.evaluate(projectConfig, columns.getRow(row));
+            if (result == null) {
+                unknown.set(row);
+            } else if (result) {
+                matched.set(row);
+            }
+        }
+        return new Bits(matched, unknown);
+    }
+
+    private Bits evaluateAnd(@Nullable List<Condition> conditions, AttributeColumns columns) {
+        int size = columns.size();
+        if (conditions == null) {
+            return Bits.allNull(size);
+        }
+
+        // a row is false as soon as one child is false, true only if every child is true
+        BitSet matched = new BitSet(size);
+        matched.set(0, size);
+        BitSet notFalse = new BitSet(size);
+        notFalse.set(0, size);
+        for (Condition condition : conditions) {
+            Bits bits = evaluateCondition(condition, columns);
+            matched.and(bits.matched);
+            bits.unknown.or(bits.matched);
+            notFalse.and(bits.unknown);
+        }
+        notFalse.andNot(matched);
+        return new Bits(matched, notFalse);
+    }
+
+    private Bits evaluateOr(@Nullable List<Condition> conditions, AttributeColumns columns) {
+        int size = columns.size();
+        if (conditions == null) {
+            return Bits.allNull(size);
+        }
+
+        // a row is true as soon as one child is true, null if no child is true and one is null
+        BitSet matched = new BitSet(size);
+        BitSet unknown = new BitSet(size);
+        for (Condition condition : conditions) {
+            Bits bits = evaluateCondition(condition, columns);
+            matched.or(bits.matched);
+            unknown.or(bits.unknown);
+        }
+        unknown.andNot(matched);
+        return new Bits(matched, unknown);
+    }
+
+    //======== Leaves ========//
+
+    private static Bits evaluateLeaf(UserAttribute leaf, AttributeColumns columns) {
+        int size = columns.size();
+        LeafKind kind = LeafKind.of(leaf);
+        if (kind == LeafKind.INVALID) {
+            return Bits.allNull(size);
+        }
+
+        Column column = columns.getColumn(leaf.getName());
+        Bits bits = new Bits(new BitSet(size), new BitSet(size));
+        if (column instanceof StringColumn) {
+            evaluateStrings(kind, leaf.getValue(), ((StringColumn) column).values, bits);
+        } else if (column instanceof NumberColumn) {
+            NumberColumn numbers = (NumberColumn) column;
+            boolean comparable = kind == LeafKind.EXACT_NUMBER || kind == LeafKind.GT || kind == LeafKind.LT;
+            evaluatePresent(kind, comparable, numbers.present, size, bits);
+            if (comparable) {
+                evaluateNumbers(kind, ((Number) leaf.getValue()).doubleValue(), numbers.values, numbers.present, bits);
+            }
+        } else if (column instanceof BooleanColumn) {
+            BooleanColumn booleans = (BooleanColumn) column;
+            evaluatePresent(kind, kind == LeafKind.EXACT_BOOLEAN, booleans.present, size, bits);
+            if (kind == LeafKind.EXACT_BOOLEAN) {
+                boolean expected = (Boolean) leaf.getValue();
+                BitSet present = booleans.present;
+                for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                    if (booleans.values[row] == expected) {
+                        bits.matched.set(row);
+                    }
+                }
+            }
+        } else if (column instanceof ObjectColumn) {
+            Match matcher = MatchType.getMatchType(leaf.getMatch(), leaf.getValue()).getMatcher();
+            Object[] values = ((ObjectColumn) column).values;
+            for (int row = 0; row < size; row++) {
+                Boolean result;
+                try {
+                    result = matcher.eval(values[row]);
+                } catch (NullPointerException e) {
+                    result = null;
+                }
+                if (result == null) {
+                    bits.unknown.set(row);
+                } else if (result) {
+                    bits.matched.set(row);
+                }
+            }
+        } else if (kind.isNullWhenMissing()) {
+            bits.unknown.set(0, size);
+        }
+
+        return bits;
+    }
+
+    private static void evaluateStrings(LeafKind kind, Object conditionValue, String[] values, Bits bits) {
+        for (int row = 0; row < values.length; row++) {
+            String value = values[row];
+            if (value == null) {
+                if (kind.isNullWhenMissing()) {
+                    bits.unknown.set(row);
+                }
+                continue;
+            }
+            switch (kind) {
+                case EXISTS:
+                    bits.matched.set(row);
+                    break;
+                case EXACT_STRING:
+                case LEGACY:
+                    if (value.equals(conditionValue)) {
+                        bits.matched.set(row);
+                    }
+                    break;
+                case SUBSTRING:
+                    if (value.contains((String) conditionValue)) {
+                        bits.matched.set(row);
+                    }
+                    break;
+                default:
+                    // a string can't be compared with a number or a boolean
+                    bits.unknown.set(row);
+                    break;
+            }
+        }
+    }
+
+    private static void evaluateNumbers(LeafKind kind, double threshold, double[] values, BitSet present, Bits bits) {
+        BitSet matched = bits.matched;
+        for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+            double value = values[row];
+            boolean result;
+            switch (kind) {
+                case GT:
+                    result = value > threshold;
+                    break;
+                case LT:
+                    result = value < threshold;
+                    break;
+                default:
+                    result = value == threshold;
+                    break;
+            }
+            if (result) {
+                matched.set(row);
+            }
+        }
+    }
+
+    /**
+     * Sets the results that only depend on whether a number or boolean attribute is present.
+     *
+     * @param comparable whether present values are compared by the caller, otherwise their type doesn't match
+     */
+    private static void evaluatePresent(LeafKind kind, boolean comparable, BitSet present, int size, Bits bits) {
+        if (kind.isNullWhenMissing()) {
+            bits.unknown.set(0, size);
+            bits.unknown.andNot(present);
+        }
+        if (kind == LeafKind.EXISTS) {
+            bits.matched.or(present);
+        } else if (kind != LeafKind.LEGACY && !comparable) {
+            // legacy conditions are false for values that aren't strings, other mismatches are null
+            bits.unknown.or(present);
+        }
+    }
+
+    /**
+     * The kinds of leaf conditions, mirroring {@link MatchType#getMatchType}.
+     */
+    private enum LeafKind {
+        EXISTS, EXACT_STRING, EXACT_NUMBER, EXACT_BOOLEAN, SUBSTRING, GT, LT, LEGACY, INVALID;
+
+        private static final String CUSTOM_ATTRIBUTE_TYPE = "custom_attribute";
+
+        static LeafKind of(UserAttribute leaf) {
+            if (!CUSTOM_ATTRIBUTE_TYPE.equals(leaf.getType())) {
+                return INVALID;
+            }
+            Object value = leaf.getValue();
+            if (leaf.getMatch() == null) {
+                return value instanceof String ? LEGACY : INVALID;
+            }
+            switch (leaf.getMatch()) {
+                case "exists":
+                    return EXISTS;
+                case "exact":
+                    if (value instanceof String) {
+                        return EXACT_STRING;
+                    } else if (MatchType.isValidNumber(value)) {
+                        return EXACT_NUMBER;
+                    } else if (value instanceof Boolean) {
+                        return EXACT_BOOLEAN;
+                    }
+                    return INVALID;
+                case "substring":
+                    return value instanceof String ? SUBSTRING : INVALID;
+                case "gt":
+                    return MatchType.isValidNumber(value) ? GT : INVALID;
+                case "lt":
+                    return MatchType.isValidNumber(value) ? LT : INVALID;
+                default:
+                    return INVALID;
+            }
+        }
+
+        /**
+         * Exists and legacy conditions evaluate to false for missing attributes, all others to null.
+         */
+        boolean isNullWhenMissing() {
+            return this != EXISTS && this != LEGACY;
+        }
+    }
+
+    /**
+     * Mutable pair of bitmaps holding the rows that evaluated to true and to null.
+     */
+    private static final class Bits {
+        private final BitSet matched;
+        private final BitSet unknown;
+
+        private Bits(BitSet matched, BitSet unknown) {
+            this.matched = matched;
+            this.unknown = unknown;
+        }
+
+        private static Bits allTrue(int size) {
+            BitSet matched = new BitSet(size);
+            matched.set(0, size);
+            return new Bits(matched, new BitSet(size));
+        }
+
+        private static Bits allNull(int size) {
+            BitSet unknown = new BitSet(size);
+            unknown.set(0, size);
+            return new Bits(new BitSet(size), unknown);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.BitSet;
+
+/**
+ * The results of evaluating a condition for a batch of users, as bitmaps over the rows of the batch.
+ * <p>
+ * Every row is either in the matched bitmap, in the null bitmap when the condition couldn't be evaluated for the
+ * user, or in neither when the condition evaluated to false.
+ */
+@Immutable
+public final class BatchAudienceResult {
+
+    private final int size;
+    private final BitSet matched;
+    private final BitSet unknown;
+
+    BatchAudienceResult(int size, @Nonnull BitSet matched, @Nonnull BitSet unknown) {
+        this.size = size;
+        this.matched = matched;
+        this.unknown = unknown;
+    }
+
+    /**
+     * @return the number of users in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the result for a single user, the same as {@link Condition#evaluate} would return
+     */
+    public @Nullable Boolean get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " is not in a batch of " + size);
+        }
+        if (matched.get(row)) {
+            return true;
+        }
+
+        return unknown.get(row) ? null : false;
+    }
+
+    /**
+     * @return the rows for which the condition evaluated to true
+     */
+    public @Nonnull BitSet getMatched() {
+        return (BitSet) matched.clone();
+    }
+
+    /**
+     * @return the rows for which the condition evaluated to false
+     */
+    public @Nonnull BitSet getNotMatched() {
+        BitSet notMatched = new BitSet(size);
+        notMatched.set(0, size);
+        notMatched.andNot(matched);
+        notMatched.andNot(unknown);
+        return notMatched;
+    }
+
+    /**
+     * @return the rows for which the condition evaluated to null
+     */
+    public @Nonnull BitSet getNull() {
+        return (BitSet) unknown.clone();
+    }
+
+    public int getMatchedCount() {
+        return matched.cardinality();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchAudienceResult{" +
+                "size=" + size +
+                ", matched=" + matched.cardinality() +
+                ", null=" + unknown.cardinality() +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The audience conditions of the experiments of one project config, each compiled with
+ * {@link CompiledCondition#compile(Condition, Map)} the first time it's needed.
+ * <p>
+ * Experiments without audience conditions are compiled from the implicit or of their audience ids. Audience ids are
+ * replaced by the conditions of the config's audiences, so the compiled conditions must only be evaluated against that
+ * config.
+ */
+@ThreadSafe
+public final class CompiledAudiences {
+
+    private final Map<String, Audience> audiences;
+    private final ConcurrentMap<String, CompiledCondition> compiledConditions =
+            new ConcurrentHashMap<String, CompiledCondition>();
+
+    /**
+     * @param projectConfig the project config whose experiments are compiled
+     */
+    public CompiledAudiences(@Nonnull ProjectConfig projectConfig) {
+        this.audiences = projectConfig.getAudienceIdMapping();
+    }
+
+    /**
+     * @param experiment the experiment
+     * @return the compiled audience conditions of the experiment
+     */
+    public @Nonnull CompiledCondition getAudienceConditions(@Nonnull Experiment experiment) {
+        CompiledCondition compiled = compiledConditions.get(experiment.getId());
+        if (compiled == null) {
+            compiled = CompiledCondition.compile(audienceConditions(experiment), audiences);
+            CompiledCondition existing = compiledConditions.putIfAbsent(experiment.getId(), compiled);
+            if (existing != null) {
+                compiled = existing;
+            }
+        }
+
+        return compiled;
+    }
+
+    /**
+     * @return the number of experiments whose audience conditions were compiled so far
+     */
+    public int size() {
+        return compiledConditions.size();
+    }
+
+    private static @Nonnull Condition audienceConditions(@Nonnull Experiment experiment) {
+        if (experiment.getAudienceConditions() != null) {
+            return experiment.getAudienceConditions();
+        }
+
+        // if there are no audiences, ALL users should be part of the experiment
+        List<String> audienceIds = experiment.getAudienceIds();
+        if (audienceIds.isEmpty()) {
+            return new EmptyCondition();
+        }
+
+        List<Condition> conditions = new ArrayList<Condition>(audienceIds.size());
+        for (String audienceId : audienceIds) {
+            conditions.add(new AudienceIdCondition(audienceId));
+        }
+        return new OrCondition(conditions);
+    }
+}
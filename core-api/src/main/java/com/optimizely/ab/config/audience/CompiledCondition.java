@@ -0,0 +1,129 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Map;
+
+/**
+ * A {@link Condition} tree compiled into a form that returns a primitive tri-state instead of a boxed
+ * {@link Boolean}.
+ * <p>
+ * {@link #compile(Condition)} builds a chain of method handles that mirrors the tree, so that the and, or and not
+ * operators are linked directly to their children instead of being dispatched through the {@link Condition}
+ * interface. When method handles aren't available on the platform, the compiled condition falls back to
+ * interpreting the tree with {@link Condition#evaluate}. Both produce the same results as the interpreter.
+ */
+@Immutable
+public abstract class CompiledCondition {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledCondition.class);
+
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+    public static final int NULL = 2;
+
+    /**
+     * Evaluates the condition.
+     *
+     * @param config the project config used to resolve audience ids
+     * @param attributes the attributes of the user
+     * @return {@link #TRUE}, {@link #FALSE} or {@link #NULL} when the condition can't be evaluated
+     */
+    public abstract int evaluate(ProjectConfig config, Map<String, ?> attributes);
+
+    /**
+     * Compiles the condition, falling back to the interpreter if the method handle backend isn't available.
+     *
+     * @param condition the condition to compile
+     * @return the compiled condition
+     */
+    public static @Nonnull CompiledCondition compile(@Nonnull Condition condition) {
+        return compile(condition, null);
+    }
+
+    /**
+     * Compiles the condition with the conditions of the given audiences in place of their ids, falling back to the
+     * interpreter if the method handle backend isn't available.
+     * <p>
+     * The compiled condition must only be evaluated against the project config the audiences are from.
+     *
+     * @param condition the condition to compile
+     * @param audiences the audiences by id, or null to resolve audience ids when the condition is evaluated
+     * @return the compiled condition
+     */
+    public static @Nonnull CompiledCondition compile(@Nonnull Condition condition,
+                                                     @Nullable Map<String, Audience> audiences) {
+        try {
+            return MethodHandleCondition.fromCondition(condition, audiences);
+        } catch (LinkageError e) {
+            logger.debug("Method handles are not available, interpreting audience conditions.", e);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to compile audience conditions, interpreting them instead.", e);
+        }
+
+        return interpret(condition);
+    }
+
+    /**
+     * Wraps the condition so that it's evaluated by {@link Condition#evaluate}.
+     *
+     * @param condition the condition to interpret
+     * @return the interpreted condition
+     */
+    public static @Nonnull CompiledCondition interpret(@Nonnull Condition condition) {
+        return new InterpretedCondition(condition);
+    }
+
+    public static int toTriState(@Nullable Boolean result) {
+        if (result == null) {
+            return NULL;
+        }
+
+        return result ? TRUE : FALSE;
+    }
+
+    public static @Nullable Boolean toBoolean(int result) {
+        switch (result) {
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            default:
+                return null;
+        }
+    }
+
+    private static final class InterpretedCondition extends CompiledCondition {
+        private final Condition condition;
+
+        private InterpretedCondition(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public int evaluate(ProjectConfig config, Map<String, ?> attributes) {
+            return toTriState(condition.evaluate(config, attributes));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-conses condition trees, so that structurally identical leaves and subtrees share a single instance.
+ * <p>
+ * Shared instances take less memory and let {@link AttributesSnapshot} evaluate each distinct node only once per
+ * user. Audience id references, empty and null conditions are kept as they are.
+ */
+@NotThreadSafe
+public final class ConditionInterner {
+
+    private final Map<Condition, Condition> canonical = new HashMap<Condition, Condition>();
+
+    /**
+     * @return the number of distinct conditions seen so far
+     */
+    public int size() {
+        return canonical.size();
+    }
+
+    /**
+     * Interns the conditions of every audience.
+     *
+     * @param audiences the audiences
+     * @return the audiences, with new instances for the ones whose conditions were replaced by shared ones
+     */
+    public @Nonnull List<Audience> intern(@Nonnull List<Audience> audiences) {
+        List<Audience> interned = new ArrayList<Audience>(audiences.size());
+        for (Audience audience : audiences) {
+            interned.add(intern(audience));
+        }
+
+        return interned;
+    }
+
+    public @Nonnull Audience intern(@Nonnull Audience audience) {
+        Condition conditions = audience.getConditions();
+        Condition interned = intern(conditions);
+        if (interned == conditions) {
+            return audience;
+        }
+
+        // keep the runtime type of the audience, typed audiences are told apart from legacy ones by their class
+        if (audience instanceof TypedAudience) {
+            return new TypedAudience(audience.getId(), audience.getName(), interned);
+        }
+        return new Audience(audience.getId(), audience.getName(), interned);
+    }
+
+    public @Nullable Condition intern(@Nullable Condition condition) {
+        if (condition instanceof UserAttribute) {
+            UserAttribute leaf = (UserAttribute) condition;
+            if (leaf.getName() == null || leaf.getType() == null) {
+                return condition;
+            }
+            return canonical(condition);
+        } else if (condition instanceof AndCondition) {
+            List<Condition> children = ((AndCondition) condition).getConditions();
+            List<Condition> interned = internChildren(children);
+            return interned == null ? condition :
+                    canonical(interned == children ? condition : new AndCondition(interned));
+        } else if (condition instanceof OrCondition) {
+            List<Condition> children = ((OrCondition) condition).getConditions();
+            List<Condition> interned = internChildren(children);
+            return interned == null ? condition :
+                    canonical(interned == children ? condition : new OrCondition(interned));
+        } else if (condition instanceof NotCondition) {
+            Condition child = ((NotCondition) condition).getCondition();
+            Condition interned = intern(child);
+            return child == null ? condition :
+                    canonical(interned == child ? condition : new NotCondition(interned));
+        }
+
+        return condition;
+    }
+
+    /**
+     * @return the interned children, the same list if none of them changed, or null if the list is null
+     */
+    private @Nullable List<Condition> internChildren(@Nullable List<Condition> children) {
+        if (children == null) {
+            return null;
+        }
+
+        List<Condition> interned = new ArrayList<Condition>(children.size());
+        boolean changed = false;
+        for (Condition child : children) {
+            Condition internedChild = intern(child);
+            changed |= internedChild != child;
+            interned.add(internedChild);
+        }
+
+        return changed ? interned : children;
+    }
+
+    private Condition canonical(Condition condition) {
+        Condition existing = canonical.get(condition);
+        if (existing != null) {
+            return existing;
+        }
+
+        canonical.put(condition, condition);
+        return condition;
+    }
+}
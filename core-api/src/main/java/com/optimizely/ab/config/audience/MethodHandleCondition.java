@@ -0,0 +1,261 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A condition tree compiled into a chain of method handles of type {@code (ProjectConfig, Map)int}.
+ * <p>
+ * And and or conditions are folded from their last child backwards, each step evaluating one child and either
+ * short-circuiting or combining its result with the rest of the chain, in the same order as the interpreter.
+ * <p>
+ * Audience ids found in the given audiences are replaced by the conditions of their audience, so the whole tree of an
+ * experiment is compiled into one chain. Those audiences are still evaluated through the audience result cache of
+ * the attributes when they have one.
+ */
+@Immutable
+final class MethodHandleCondition extends CompiledCondition {
+
+    private static final MethodType CONDITION_TYPE =
+            MethodType.methodType(int.class, ProjectConfig.class, Map.class);
+    // (int left, ProjectConfig, Map)int, the type of a step that has the result of its child as first argument
+    private static final MethodType STEP_TYPE =
+            MethodType.methodType(int.class, int.class, ProjectConfig.class, Map.class);
+
+    private static final MethodHandle EVALUATE;
+    private static final MethodHandle USER_ATTRIBUTE_EVALUATE;
+    private static final MethodHandle TO_TRI_STATE;
+    private static final MethodHandle IS_TRUE;
+    private static final MethodHandle IS_FALSE;
+    private static final MethodHandle AND;
+    private static final MethodHandle OR;
+    private static final MethodHandle NOT;
+    private static final MethodHandle HAS_AUDIENCE_RESULT_CACHE;
+    private static final MethodHandle EVALUATE_AUDIENCE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType evaluateType = MethodType.methodType(Boolean.class, ProjectConfig.class, Map.class);
+        MethodType binaryType = MethodType.methodType(int.class, int.class, int.class);
+        MethodType testType = MethodType.methodType(boolean.class, int.class);
+        try {
+            EVALUATE = lookup.findVirtual(Condition.class, "evaluate", evaluateType);
+            USER_ATTRIBUTE_EVALUATE = lookup.findVirtual(UserAttribute.class, "evaluate", evaluateType);
+            TO_TRI_STATE = lookup.findStatic(CompiledCondition.class, "toTriState",
+                    MethodType.methodType(int.class, Boolean.class));
+            IS_TRUE = lookup.findStatic(MethodHandleCondition.class, "isTrue", testType);
+            IS_FALSE = lookup.findStatic(MethodHandleCondition.class, "isFalse", testType);
+            AND = lookup.findStatic(MethodHandleCondition.class, "and", binaryType);
+            OR = lookup.findStatic(MethodHandleCondition.class, "or", binaryType);
+            NOT = lookup.findStatic(MethodHandleCondition.class, "not", MethodType.methodType(int.class, int.class));
+            HAS_AUDIENCE_RESULT_CACHE = lookup.findStatic(AttributesSnapshot.class, "hasAudienceResultCache",
+                    MethodType.methodType(boolean.class, ProjectConfig.class, Map.class));
+            EVALUATE_AUDIENCE = lookup.findStatic(MethodHandleCondition.class, "evaluateAudience",
+                    MethodType.methodType(int.class, Audience.class, ProjectConfig.class, Map.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle handle;
+
+    private MethodHandleCondition(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @param condition the condition to compile
+     * @param audiences the audiences to inline by id, or null to leave audience ids to resolve themselves
+     */
+    static @Nonnull MethodHandleCondition fromCondition(@Nonnull Condition condition,
+                                                        @Nullable Map<String, Audience> audiences) {
+        return new MethodHandleCondition(new Compiler(audiences).toHandle(condition));
+    }
+
+    @Override
+    public int evaluate(ProjectConfig config, Map<String, ?> attributes) {
+        try {
+            return (int) handle.invokeExact(config, attributes);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    //======== Compilation ========//
+
+    /**
+     * Compiles a condition tree, keeping track of the audiences being inlined so an audience referring back to
+     * itself is left to resolve itself.
+     */
+    private static final class Compiler {
+        private final Map<String, Audience> audiences;
+        private final Set<String> inlining = new HashSet<String>();
+
+        private Compiler(@Nullable Map<String, Audience> audiences) {
+            this.audiences = audiences;
+        }
+
+        private MethodHandle toHandle(Condition condition) {
+            if (condition instanceof UserAttribute) {
+                return MethodHandles.filterReturnValue(USER_ATTRIBUTE_EVALUATE.bindTo(condition), TO_TRI_STATE)
+                        .asType(CONDITION_TYPE);
+            } else if (condition instanceof AndCondition) {
+                return junction(((AndCondition) condition).getConditions(), TRUE, IS_FALSE, FALSE, AND);
+            } else if (condition instanceof OrCondition) {
+                return junction(((OrCondition) condition).getConditions(), FALSE, IS_TRUE, TRUE, OR);
+            } else if (condition instanceof NotCondition) {
+                Condition child = ((NotCondition) condition).getCondition();
+                return child == null ? constant(NULL) : MethodHandles.filterReturnValue(toHandle(child), NOT);
+            } else if (condition instanceof EmptyCondition) {
+                return constant(TRUE);
+            } else if (condition instanceof NullCondition) {
+                return constant(NULL);
+            } else if (condition instanceof AudienceIdCondition) {
+                MethodHandle audience = audience(((AudienceIdCondition) condition).getAudienceId());
+                if (audience != null) {
+                    return audience;
+                }
+            }
+
+            // unknown audience ids and anything else are resolved by the condition itself
+            return MethodHandles.filterReturnValue(EVALUATE.bindTo(condition), TO_TRI_STATE).asType(CONDITION_TYPE);
+        }
+
+        /**
+         * @return the conditions of the audience, which go through the audience result cache of the attributes when
+         * they have one, or null if the audience can't be inlined
+         */
+        private @Nullable MethodHandle audience(String audienceId) {
+            Audience audience = audiences == null ? null : audiences.get(audienceId);
+            if (audience == null || audience.getConditions() == null || !inlining.add(audienceId)) {
+                return null;
+            }
+
+            MethodHandle conditions = toHandle(audience.getConditions());
+            inlining.remove(audienceId);
+            return MethodHandles.guardWithTest(HAS_AUDIENCE_RESULT_CACHE, EVALUATE_AUDIENCE.bindTo(audience),
+                    conditions);
+        }
+
+        /**
+         * Folds the children of an and or or condition into a single handle.
+         *
+         * @param conditions the children
+         * @param identity the result when there are no children
+         * @param isShortCircuit tests whether a child's result decides the outcome on its own
+         * @param shortCircuit the outcome in that case
+         * @param combine combines a child's result with the result of the remaining children
+         */
+        private MethodHandle junction(List<Condition> conditions,
+                                      int identity,
+                                      MethodHandle isShortCircuit,
+                                      int shortCircuit,
+                                      MethodHandle combine) {
+            if (conditions == null) {
+                return constant(NULL);
+            }
+            if (conditions.isEmpty()) {
+                return constant(identity);
+            }
+
+            MethodHandle chain = toHandle(conditions.get(conditions.size() - 1));
+            for (int i = conditions.size() - 2; i >= 0; i--) {
+                // (int rest, ProjectConfig, Map, int left) -> combine(left, rest)
+                MethodHandle combineWithRest = MethodHandles.permuteArguments(combine,
+                        MethodType.methodType(int.class, int.class, ProjectConfig.class, Map.class, int.class), 3, 0);
+                // (ProjectConfig, Map, int left) -> combine(left, chain(ProjectConfig, Map))
+                MethodHandle rest = MethodHandles.foldArguments(combineWithRest, chain);
+                // (int left, ProjectConfig, Map) -> short circuit or continue with the rest
+                MethodHandle step = MethodHandles.guardWithTest(isShortCircuit,
+                        MethodHandles.dropArguments(MethodHandles.constant(int.class, shortCircuit), 0,
+                                STEP_TYPE.parameterList()),
+                        MethodHandles.permuteArguments(rest, STEP_TYPE, 1, 2, 0));
+                chain = MethodHandles.foldArguments(step, toHandle(conditions.get(i)));
+            }
+
+            return chain;
+        }
+    }
+
+    private static MethodHandle constant(int result) {
+        return MethodHandles.dropArguments(MethodHandles.constant(int.class, result), 0,
+                CONDITION_TYPE.parameterList());
+    }
+
+    //======== Combinators ========//
+
+    private static boolean isTrue(int result) {
+        return result == TRUE;
+    }
+
+    private static boolean isFalse(int result) {
+        return result == FALSE;
+    }
+
+    /**
+     * Combines a result that isn't false with the result of the remaining children of an and condition.
+     */
+    private static int and(int left, int right) {
+        if (right == FALSE) {
+            return FALSE;
+        }
+
+        return left == NULL || right == NULL ? NULL : TRUE;
+    }
+
+    /**
+     * Combines a result that isn't true with the result of the remaining children of an or condition.
+     */
+    private static int or(int left, int right) {
+        if (right == TRUE) {
+            return TRUE;
+        }
+
+        return left == NULL || right == NULL ? NULL : FALSE;
+    }
+
+    private static int evaluateAudience(Audience audience, ProjectConfig config, Map<String, ?> attributes) {
+        return toTriState(AttributesSnapshot.evaluate(audience, config, attributes));
+    }
+
+    private static int not(int result) {
+        switch (result) {
+            case TRUE:
+                return FALSE;
+            case FALSE:
+                return TRUE;
+            default:
+                return NULL;
+        }
+    }
+}
@@ -42,7 +42,7 @@ public class NotCondition<T> implements Condition<T> {
 
     public @Nullable Boolean evaluate(ProjectConfig config, Map<String, ?> attributes) {
 
-        Boolean conditionEval = condition == null ? null : condition.evaluate(config, attributes);
+        Boolean conditionEval = condition == null ? null : AttributesSnapshot.evaluate(condition, config, attributes);
         return (conditionEval == null ? null : !conditionEval);
     }
 
@@ -48,7 +48,7 @@ public class OrCondition<T> implements Condition<T> {
         if (conditions == null) return null;
         boolean foundNull = false;
         for (Condition condition : conditions) {
-            Boolean conditionEval = condition.evaluate(config, attributes);
+            Boolean conditionEval = AttributesSnapshot.evaluate(condition, config, attributes);
             if (conditionEval == null) { // true with falses and nulls is still true
                 foundNull = true;
             }
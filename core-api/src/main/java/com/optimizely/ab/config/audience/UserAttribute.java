@@ -78,6 +78,13 @@ public class UserAttribute<T> implements Condition<T> {
             MatchType.logger.error(String.format("condition type not equal to `custom_attribute` %s", type));
             return null; // unknown type
         }
+        // use the per-attribute indexes of the config when the attributes are a snapshot that caches lookups
+        if (config != null && attributes instanceof AttributesSnapshot) {
+            Boolean indexed = config.getAttributeValueIndex().evaluate(this, attributes);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
         // check user attribute value is equal
         try {
             return MatchType.getMatchType(match, value).getMatcher().eval(userAttributeValue);
@@ -70,7 +70,7 @@ public class MatchType {
         return new MatchType(matchType, new NullMatch());
     }
 
-    private static boolean isValidNumber(Object conditionValue) {
+    public static boolean isValidNumber(Object conditionValue) {
         if (conditionValue instanceof Integer) {
             return Math.abs((Integer) conditionValue) <= 1e53;
         } else if (conditionValue instanceof Double) {
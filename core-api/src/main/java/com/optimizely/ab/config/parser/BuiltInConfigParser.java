@@ -0,0 +1,93 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Built-in config parser implementation, which reads the datafile schema with {@link ProjectConfigStreamingReader}
+ * from the tokens of {@link BuiltInJsonReader} and needs no json library.
+ * <p>
+ * The datafile is read in a single pass, like the streaming modes of {@link JacksonConfigParser} and
+ * {@link GsonConfigParser}, without reflection or data binding, so there's little to load and initialize before the
+ * first parse. The entities are the same as the ones the other parsers build, with the user attribute values Jackson
+ * would bind.
+ */
+final class BuiltInConfigParser implements ConfigParser {
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parse(new BuiltInJsonReader(json), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parse(new BuiltInJsonReader(ConfigParserHelpers.reader(json)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        ConfigParserHelpers.ExcerptInputStream excerptStream = new ConfigParserHelpers.ExcerptInputStream(json);
+        try {
+            return parse(new BuiltInJsonReader(ConfigParserHelpers.reader(excerptStream)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(excerptStream), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parse(new BuiltInJsonReader(ConfigParserHelpers.reader(json)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    private static ProjectConfig parse(BuiltInJsonReader in, @Nullable ProjectConfig previousConfig)
+        throws IOException {
+        ProjectConfig projectConfig = new ProjectConfigStreamingReader(in, new IdentifierInterner())
+                .readProjectConfig(previousConfig);
+        if (in.peek() != JsonTokenSource.Token.END_DOCUMENT) {
+            throw new IOException("Expected the end of the datafile");
+        }
+        return projectConfig;
+    }
+}
@@ -0,0 +1,557 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal strict JSON pull reader for the datafile, with no dependencies.
+ * <p>
+ * Like {@code com.google.gson.stream.JsonReader}, tokens are peeked and then consumed with the {@code begin*},
+ * {@code end*} and {@code next*} methods. Strings without escapes are copied straight out of the read buffer, and
+ * numbers are read to the narrowest of {@link Integer}, {@link Long}, {@link BigInteger} and {@link Double}, the
+ * way Jackson reads untyped numbers.
+ */
+final class BuiltInJsonReader implements JsonTokenSource {
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+    /** Number of characters read before the start of the buffer, for error offsets. */
+    private long bufferOffset;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    private Token peeked;
+    private boolean peekedBoolean;
+
+    /**
+     * Names read so far, by the hash of their characters. The datafile repeats a few dozen field names, so they're
+     * matched against the buffer rather than copied out of it each time.
+     */
+    private final String[] names = new String[256];
+
+    BuiltInJsonReader(Reader in) {
+        this.in = in;
+        this.buffer = new char[8192];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Reads from a single buffer holding all the characters of the string, so it's never refilled.
+     */
+    BuiltInJsonReader(String json) {
+        this.in = null;
+        this.buffer = json.toCharArray();
+        this.limit = buffer.length;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    @Override
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        peeked = null;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+        peeked = null;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        peeked = null;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+        peeked = null;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        peeked = null;
+
+        int hash = 0;
+        for (int i = pos; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                String name = cachedName(hash, pos, i - pos);
+                pos = i + 1;
+                return name;
+            }
+            if (c == '\\') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        return readString();
+    }
+
+    private String cachedName(int hash, int start, int length) {
+        int slot = (hash ^ (hash >>> 16)) & (names.length - 1);
+        String name = names[slot];
+        if (name != null && name.length() == length) {
+            int i = 0;
+            while (i < length && name.charAt(i) == buffer[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return name;
+            }
+        }
+        name = new String(buffer, start, length);
+        names[slot] = name;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readNumberLiteral();
+        }
+        expect(Token.STRING);
+        peeked = null;
+        return readString();
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        peeked = null;
+        return peekedBoolean;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        peeked = null;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        expect(Token.NUMBER);
+        peeked = null;
+        String literal = readNumberLiteral();
+        try {
+            if (isIntegral(literal)) {
+                return Integer.parseInt(literal);
+            }
+            double value = Double.parseDouble(literal);
+            if (value != (int) value) {
+                throw syntaxError("Expected an int but was " + literal);
+            }
+            return (int) value;
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected an int but was " + literal);
+        }
+    }
+
+    @Override
+    public Number nextNumber() throws IOException {
+        expect(Token.NUMBER);
+        peeked = null;
+        String literal = readNumberLiteral();
+        try {
+            if (!isIntegral(literal)) {
+                return Double.parseDouble(literal);
+            }
+            if (literal.length() <= 9) {
+                return Integer.parseInt(literal);
+            }
+            BigInteger value = new BigInteger(literal);
+            if (value.bitLength() < 32) {
+                return value.intValue();
+            }
+            if (value.bitLength() < 64) {
+                return value.longValue();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number " + literal);
+        }
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    nextString();
+                    break;
+                case NUMBER:
+                    peeked = null;
+                    readNumberLiteral();
+                    break;
+                case BOOLEAN:
+                case NULL:
+                    peeked = null;
+                    break;
+                default:
+                    throw syntaxError("Expected a value but was " + peeked);
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * @return a map keeping the members in order, as Jackson binds untyped objects
+     */
+    @Override
+    public Map<String, Object> newObjectValue() {
+        return new LinkedHashMap<String, Object>();
+    }
+
+    @Override
+    public JsonTokenSource embedded(String json) {
+        return new BuiltInJsonReader(json);
+    }
+
+    //======== Tokenizing ========//
+
+    private Token doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    pos++;
+                    return Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                pos++;
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    pos++;
+                    return Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    pos++;
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                pos++;
+                return Token.NAME;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                pos++;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespaceOrEnd() == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Expected the end of the document");
+            default:
+                throw new IllegalStateException("Unknown scope " + scope);
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                pos++;
+                return Token.BEGIN_OBJECT;
+            case '[':
+                pos++;
+                return Token.BEGIN_ARRAY;
+            case '"':
+                pos++;
+                return Token.STRING;
+            case 't':
+                readLiteral("true");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if ((pos == limit && !fill()) || buffer[pos] != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+            pos++;
+        }
+        if ((pos < limit || fill()) && Character.isLetterOrDigit(buffer[pos])) {
+            throw syntaxError("Expected " + literal);
+        }
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote was consumed.
+     */
+    private String readString() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    if (builder == null) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    builder.append(buffer, start, pos - start - 1);
+                    return builder.toString();
+                }
+                if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder(Math.max(2 * (pos - start), 16));
+                    }
+                    builder.append(buffer, start, pos - start - 1);
+                    builder.append(readEscape());
+                    start = pos;
+                } else if (c < 0x20) {
+                    throw syntaxError("Unescaped control character in string");
+                }
+            }
+            if (builder == null) {
+                builder = new StringBuilder(Math.max(2 * (pos - start), 16));
+            }
+            builder.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (pos == limit && !fill()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Invalid escape sequence \\" + c);
+        }
+    }
+
+    private String readNumberLiteral() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit && isNumberCharacter(buffer[pos])) {
+                pos++;
+            }
+            if (pos < limit) {
+                if (builder == null) {
+                    return new String(buffer, start, pos - start);
+                }
+                return builder.append(buffer, start, pos - start).toString();
+            }
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append(buffer, start, pos - start);
+            if (!fill()) {
+                return builder.toString();
+            }
+        }
+    }
+
+    private static boolean isNumberCharacter(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isIntegral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = nextNonWhitespaceOrEnd();
+        if (c == -1) {
+            throw new EOFException("End of input at offset " + (bufferOffset + pos));
+        }
+        return c;
+    }
+
+    private int nextNonWhitespaceOrEnd() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Refills the buffer once all of it has been consumed.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) == 0) {
+            // a reader may return no characters before its end
+        }
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private void expect(Token token) throws IOException {
+        if (peek() != token) {
+            throw syntaxError("Expected " + token + " but was " + peeked);
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at offset " + (bufferOffset + pos));
+    }
+}
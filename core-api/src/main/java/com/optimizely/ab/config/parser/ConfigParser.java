@@ -19,6 +19,9 @@ package com.optimizely.ab.config.parser;
 import com.optimizely.ab.config.ProjectConfig;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Config parser wrapper to allow multiple library implementations to be used.
@@ -38,4 +41,45 @@ public interface ConfigParser {
      * @throws ConfigParseException when there's an issue parsing the provided project config
      */
     ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException;
+
+    /**
+     * @param json the json to parse
+     * @param previousConfig the config parsed from the previous datafile, whose unchanged entities are reused, or
+     *                       {@code null} to build the config from scratch
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException;
+
+    /**
+     * @param json the UTF-8 encoded json to parse
+     * @param previousConfig the config parsed from the previous datafile, whose unchanged entities are reused, or
+     *                       {@code null} to build the config from scratch
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException;
+
+    /**
+     * @param json the UTF-8 encoded json to parse, which is read to its end but not closed
+     * @param previousConfig the config parsed from the previous datafile, whose unchanged entities are reused, or
+     *                       {@code null} to build the config from scratch
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException;
+
+    /**
+     * @param json the UTF-8 encoded json to parse, from the position to the limit of the buffer, which may be a
+     *             {@link java.nio.MappedByteBuffer} of the datafile. The position of the buffer isn't moved.
+     * @param previousConfig the config parsed from the previous datafile, whose unchanged entities are reused, or
+     *                       {@code null} to build the config from scratch
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException;
 }
@@ -0,0 +1,178 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Helpers shared by the {@link ConfigParser} implementations to read UTF-8 datafiles from bytes, streams and
+ * buffers, and to name the datafile in error messages without copying all of it.
+ */
+final class ConfigParserHelpers {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Length of the datafile excerpt in error messages, in characters or bytes.
+     */
+    static final int EXCERPT_LENGTH = 200;
+
+    private static final String ERROR_MESSAGE = "Unable to parse datafile: ";
+
+    private ConfigParserHelpers() {
+    }
+
+    static String errorMessage(@Nullable String json) {
+        if (json == null || json.length() <= EXCERPT_LENGTH) {
+            return ERROR_MESSAGE + json;
+        }
+        return ERROR_MESSAGE + json.substring(0, EXCERPT_LENGTH) + "... (" + json.length() + " characters)";
+    }
+
+    static String errorMessage(@Nonnull byte[] json) {
+        return errorMessage(json, 0, json.length);
+    }
+
+    static String errorMessage(@Nonnull ByteBuffer json) {
+        if (json.hasArray()) {
+            return errorMessage(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+        byte[] excerpt = new byte[Math.min(json.remaining(), EXCERPT_LENGTH)];
+        json.duplicate().get(excerpt);
+        return errorMessage(excerpt, 0, json.remaining());
+    }
+
+    static String errorMessage(@Nonnull ExcerptInputStream json) {
+        return errorMessage(json.excerpt, 0, json.length, " bytes read");
+    }
+
+    private static String errorMessage(byte[] json, int offset, long length) {
+        return errorMessage(json, offset, length, " bytes");
+    }
+
+    private static String errorMessage(byte[] json, int offset, long length, String unit) {
+        if (length <= EXCERPT_LENGTH) {
+            return ERROR_MESSAGE + new String(json, offset, (int) length, UTF_8);
+        }
+        return ERROR_MESSAGE + new String(json, offset, EXCERPT_LENGTH, UTF_8) + "... (" + length + unit + ")";
+    }
+
+    static Reader reader(@Nonnull byte[] json) {
+        return reader(new ByteArrayInputStream(json));
+    }
+
+    static Reader reader(@Nonnull ByteBuffer json) {
+        return reader(inputStream(json));
+    }
+
+    static Reader reader(@Nonnull InputStream json) {
+        return new InputStreamReader(json, UTF_8);
+    }
+
+    /**
+     * @return a stream over the remaining bytes of the buffer, which doesn't move the position of the buffer
+     */
+    static InputStream inputStream(@Nonnull ByteBuffer json) {
+        if (json.hasArray()) {
+            return new ByteArrayInputStream(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+
+        final ByteBuffer buffer = json.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(@Nonnull byte[] bytes, int offset, int length) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                length = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, length);
+                return length;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * Stream keeping the first bytes read from it for the error message, since a stream can't be read again.
+     */
+    static final class ExcerptInputStream extends FilterInputStream {
+        private final byte[] excerpt = new byte[EXCERPT_LENGTH];
+        private long length;
+
+        ExcerptInputStream(@Nonnull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                if (length < EXCERPT_LENGTH) {
+                    excerpt[(int) length] = (byte) b;
+                }
+                length++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                record(bytes, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void record(byte[] bytes, int offset, int count) {
+            if (length < EXCERPT_LENGTH) {
+                System.arraycopy(bytes, offset, excerpt, (int) length, (int) Math.min(count, EXCERPT_LENGTH - length));
+            }
+            length += count;
+        }
+    }
+}
@@ -20,9 +20,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Factory for generating {@link ConfigParser} instances, based on the json parser available on the classpath.
+ * Factory for generating {@link ConfigParser} instances.
  */
 public final class DefaultConfigParser {
 
@@ -34,29 +35,31 @@ public final class DefaultConfigParser {
         return LazyHolder.INSTANCE;
     }
 
+    /**
+     * Returns a parser that binds the experiments, groups, audiences, feature flags and rollouts of large datafiles
+     * in parallel on the given pool. Only the {@code Jackson} parser supports this, without it on the classpath this
+     * is the {@link #getInstance() default parser}.
+     *
+     * @param pool the pool to parse on, usually sized to the cores available to parsing
+     * @return the created config parser
+     */
+    public static ConfigParser getParallelInstance(@Nonnull ForkJoinPool pool) {
+        if (!isPresent("com.fasterxml.jackson.databind.ObjectMapper")) {
+            return getInstance();
+        }
+        return new JacksonConfigParser(pool);
+    }
+
     //======== Helper methods ========//
 
     /**
-     * Creates and returns a {@link ConfigParser} using a json parser available on the classpath.
+     * Creates and returns the built-in {@link ConfigParser}. It reads the datafile schema without a json library or
+     * reflection, so it doesn't depend on the classpath, and it gets to its first config several times sooner than
+     * the json library based parsers.
      * @return the created config parser
-     * @throws MissingJsonParserException if there are no supported json parsers available on the classpath
      */
     private static @Nonnull ConfigParser create() {
-        ConfigParser configParser;
-
-        if (isPresent("com.fasterxml.jackson.databind.ObjectMapper")) {
-            configParser = new JacksonConfigParser();
-        } else if (isPresent("com.google.gson.Gson")) {
-            configParser = new GsonConfigParser();
-        } else if (isPresent("org.json.simple.JSONObject")) {
-            configParser = new JsonSimpleConfigParser();
-        } else if (isPresent("org.json.JSONObject")) {
-            configParser = new JsonConfigParser();
-        } else {
-            throw new MissingJsonParserException("unable to locate a JSON parser. "
-                                                 + "Please see <link> for more information");
-        }
-
+        ConfigParser configParser = new BuiltInConfigParser();
         logger.info("using json parser: {}", configParser.getClass().getSimpleName());
         return configParser;
     }
@@ -18,6 +18,7 @@ package com.optimizely.ab.config.parser;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.FeatureFlag;
 import com.optimizely.ab.config.Group;
@@ -26,33 +27,125 @@ import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.TypedAudience;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 
 /**
  * {@link Gson}-based config parser implementation.
  */
 final class GsonConfigParser implements ConfigParser {
 
+    /**
+     * How the {@link ProjectConfig} is built from the datafile.
+     */
+    enum Mode {
+        /**
+         * Reads the datafile into a {@link com.google.gson.JsonElement} tree, then deserializes the entities from it.
+         */
+        TREE,
+        /**
+         * Builds the entities straight from the {@link com.google.gson.stream.JsonReader} token stream, without a
+         * tree.
+         */
+        STREAMING
+    }
+
+    private final Mode mode;
+
+    public GsonConfigParser() {
+        this(Mode.STREAMING);
+    }
+
+    GsonConfigParser(Mode mode) {
+        this.mode = mode;
+    }
+
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
         if (json == null) {
             throw new ConfigParseException("Unable to parse null json.");
         }
         if (json.length() == 0) {
             throw new ConfigParseException("Unable to parse empty json.");
         }
-        Gson gson = new GsonBuilder()
+
+        try {
+            return gson(previousConfig).fromJson(json, ProjectConfig.class);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        if (json.length == 0) {
+            throw new ConfigParseException("Unable to parse empty json.");
+        }
+
+        try {
+            return parse(ConfigParserHelpers.reader(json), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        ConfigParserHelpers.ExcerptInputStream excerptStream = new ConfigParserHelpers.ExcerptInputStream(json);
+        try {
+            return parse(ConfigParserHelpers.reader(excerptStream), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(excerptStream), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        if (!json.hasRemaining()) {
+            throw new ConfigParseException("Unable to parse empty json.");
+        }
+
+        try {
+            return parse(ConfigParserHelpers.reader(json), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    private ProjectConfig parse(Reader json, @Nullable ProjectConfig previousConfig) {
+        ProjectConfig projectConfig = gson(previousConfig).fromJson(json, ProjectConfig.class);
+        // unlike a string, gson reads an empty stream as null
+        if (projectConfig == null) {
+            throw new JsonParseException("Empty json");
+        }
+        return projectConfig;
+    }
+
+    private Gson gson(@Nullable ProjectConfig previousConfig) {
+        if (mode == Mode.STREAMING) {
+            return new GsonBuilder()
+                    .registerTypeAdapter(ProjectConfig.class, new ProjectConfigGsonStreamingAdapter(previousConfig))
+                    .create();
+        }
+
+        return new GsonBuilder()
                 .registerTypeAdapter(Audience.class, new AudienceGsonDeserializer())
                 .registerTypeAdapter(TypedAudience.class, new AudienceGsonDeserializer())
                 .registerTypeAdapter(Experiment.class, new ExperimentGsonDeserializer())
                 .registerTypeAdapter(FeatureFlag.class, new FeatureFlagGsonDeserializer())
                 .registerTypeAdapter(Group.class, new GroupGsonDeserializer())
-                .registerTypeAdapter(ProjectConfig.class, new ProjectConfigGsonDeserializer())
+                .registerTypeAdapter(ProjectConfig.class, new ProjectConfigGsonDeserializer(previousConfig))
                 .create();
-
-        try {
-            return gson.fromJson(json, ProjectConfig.class);
-        } catch (Exception e) {
-            throw new ConfigParseException("Unable to parse datafile: " + json, e);
-        }
     }
 }
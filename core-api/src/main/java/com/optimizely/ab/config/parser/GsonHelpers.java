@@ -23,6 +23,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.reflect.TypeToken;
 import com.optimizely.ab.bucketing.DecisionService;
@@ -183,4 +184,39 @@ final class GsonHelpers {
                 liveVariables
         );
     }
+
+    /**
+     * Replaces the string values of identifier fields by their canonical instances, so the entities deserialized
+     * from the tree share them.
+     */
+    static void internIdentifiers(JsonElement json, IdentifierInterner interner) {
+        internIdentifiers(json, interner, false);
+    }
+
+    private static void internIdentifiers(JsonElement json, IdentifierInterner interner, boolean identifier) {
+        if (json.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> field : json.getAsJsonObject().entrySet()) {
+                boolean identifierField = identifier || IdentifierInterner.isIdentifierField(field.getKey());
+                if (identifierField && isString(field.getValue())) {
+                    field.setValue(new JsonPrimitive(interner.intern(field.getValue().getAsString())));
+                } else {
+                    internIdentifiers(field.getValue(), interner, identifierField);
+                }
+            }
+        } else if (json.isJsonArray()) {
+            JsonArray array = json.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                JsonElement value = array.get(i);
+                if (identifier && isString(value)) {
+                    array.set(i, new JsonPrimitive(interner.intern(value.getAsString())));
+                } else {
+                    internIdentifiers(value, interner, identifier);
+                }
+            }
+        }
+    }
+
+    private static boolean isString(JsonElement json) {
+        return json.isJsonPrimitive() && json.getAsJsonPrimitive().isString();
+    }
 }
@@ -0,0 +1,70 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-parse table canonicalizing the ids and keys of a datafile.
+ * <p>
+ * The same experiment, variation, audience and attribute ids appear many times in a datafile, in traffic
+ * allocations, audience ids, experiment ids of events and feature flags and so on. The parsers pass the values of
+ * identifier fields through this table before binding them, so every occurrence of an id shares one instance and
+ * lookups keyed by it can succeed on reference equality. The table is dropped with the parse, unlike
+ * {@link String#intern()}.
+ */
+@NotThreadSafe
+final class IdentifierInterner {
+
+    private final Map<String, String> table = new HashMap<String, String>();
+
+    /**
+     * @return the canonical instance of the value
+     */
+    @Nullable
+    String intern(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = table.get(value);
+        if (canonical == null) {
+            table.put(value, value);
+            return value;
+        }
+
+        return canonical;
+    }
+
+    /**
+     * Identifier fields are {@code id} and {@code key}, fields naming ids like {@code layerId} or {@code audienceIds},
+     * the audience ids of {@code audienceConditions}, and the variation keys of {@code forcedVariations}.
+     *
+     * @return whether the string values under the field are identifiers
+     */
+    static boolean isIdentifierField(@Nonnull String fieldName) {
+        return fieldName.equals("id")
+                || fieldName.equals("key")
+                || fieldName.endsWith("Id")
+                || fieldName.endsWith("Ids")
+                || fieldName.equals("audienceConditions")
+                || fieldName.equals("forcedVariations");
+    }
+}
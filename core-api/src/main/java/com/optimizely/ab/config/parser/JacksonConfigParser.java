@@ -17,6 +17,7 @@
 package com.optimizely.ab.config.parser;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.audience.Audience;
@@ -24,29 +25,139 @@ import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.TypedAudience;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * {@code Jackson}-based config parser implementation.
  */
 final class JacksonConfigParser implements ConfigParser {
+
+    /**
+     * How the {@link ProjectConfig} is built from the datafile.
+     */
+    enum Mode {
+        /**
+         * Reads the datafile into a tree, then binds the entities from it.
+         */
+        TREE,
+        /**
+         * Builds the entities straight from the token stream, without a tree.
+         */
+        STREAMING,
+        /**
+         * Reads the datafile into a tree, then binds the entities of large datafiles from it on a
+         * {@link ForkJoinPool} provided by the caller.
+         */
+        PARALLEL
+    }
+
     private ObjectMapper objectMapper;
+    private final Mode mode;
+    @Nullable
+    private final ForkJoinPool pool;
 
     public JacksonConfigParser() {
-        this(new ObjectMapper());
+        this(Mode.STREAMING);
+    }
+
+    JacksonConfigParser(Mode mode) {
+        this(new ObjectMapper(), mode);
     }
 
     JacksonConfigParser(ObjectMapper objectMapper) {
+        this(objectMapper, Mode.STREAMING);
+    }
+
+    /**
+     * @param pool the pool to bind the entities on, in {@link Mode#PARALLEL} mode
+     */
+    JacksonConfigParser(ForkJoinPool pool) {
+        this(new ObjectMapper(), pool);
+    }
+
+    /**
+     * @param pool the pool to bind the entities on, owned by the caller
+     */
+    JacksonConfigParser(ObjectMapper objectMapper, ForkJoinPool pool) {
+        this(objectMapper, Mode.PARALLEL, pool);
+    }
+
+    /**
+     * @throws IllegalArgumentException for {@link Mode#PARALLEL}, which takes the caller's pool instead
+     */
+    JacksonConfigParser(ObjectMapper objectMapper, Mode mode) {
+        this(objectMapper, mode, null);
+    }
+
+    private JacksonConfigParser(ObjectMapper objectMapper, Mode mode, @Nullable ForkJoinPool pool) {
+        if (mode == Mode.PARALLEL && pool == null) {
+            throw new IllegalArgumentException("parallel parsing needs a pool to run on");
+        }
         this.objectMapper = objectMapper;
+        this.mode = mode;
+        this.pool = pool;
         this.objectMapper.registerModule(new ProjectConfigModule());
     }
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return reader(previousConfig).readValue(json);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return reader(previousConfig).readValue(json);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        ConfigParserHelpers.ExcerptInputStream excerptStream = new ConfigParserHelpers.ExcerptInputStream(json);
         try {
-            return objectMapper.readValue(json, ProjectConfig.class);
+            return reader(previousConfig).readValue(excerptStream);
         } catch (Exception e) {
-            throw new ConfigParseException("Unable to parse datafile: " + json, e);
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(excerptStream), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            if (json.hasArray()) {
+                return reader(previousConfig).readValue(json.array(), json.arrayOffset() + json.position(),
+                        json.remaining());
+            }
+            return reader(previousConfig).readValue(ConfigParserHelpers.inputStream(json));
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    private ObjectReader reader(@Nullable ProjectConfig previousConfig) {
+        ObjectReader reader = objectMapper.readerFor(ProjectConfig.class);
+        if (previousConfig != null) {
+            reader = reader.withAttribute(ProjectConfigJacksonDeserializer.PREVIOUS_CONFIG_ATTRIBUTE, previousConfig);
         }
+        return reader;
     }
 
     class ProjectConfigModule extends SimpleModule {
@@ -54,7 +165,11 @@ final class JacksonConfigParser implements ConfigParser {
 
         public ProjectConfigModule() {
             super(NAME);
-            addDeserializer(ProjectConfig.class, new ProjectConfigJacksonDeserializer());
+            if (mode == Mode.STREAMING) {
+                addDeserializer(ProjectConfig.class, new ProjectConfigJacksonStreamingDeserializer());
+            } else {
+                addDeserializer(ProjectConfig.class, new ProjectConfigJacksonDeserializer(pool));
+            }
             addDeserializer(Audience.class, new AudienceJacksonDeserializer(objectMapper));
             addDeserializer(TypedAudience.class, new TypedAudienceJacksonDeserializer(objectMapper));
             addDeserializer(Condition.class, new ConditionJacksonDeserializer(objectMapper));
@@ -18,10 +18,14 @@ package com.optimizely.ab.config.parser;
 
 import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 final class JacksonHelpers {
     private JacksonHelpers() {
@@ -44,4 +48,37 @@ final class JacksonHelpers {
 
         return items;
     }
+
+    /**
+     * Replaces the text values of identifier fields by their canonical instances, so the entities bound from the
+     * tree share them.
+     */
+    static void internIdentifiers(JsonNode node, IdentifierInterner interner) {
+        internIdentifiers(node, interner, false);
+    }
+
+    private static void internIdentifiers(JsonNode node, IdentifierInterner interner, boolean identifier) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                boolean identifierField = identifier || IdentifierInterner.isIdentifierField(field.getKey());
+                if (identifierField && field.getValue().isTextual()) {
+                    field.setValue(TextNode.valueOf(interner.intern(field.getValue().textValue())));
+                } else {
+                    internIdentifiers(field.getValue(), interner, identifierField);
+                }
+            }
+        } else if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                JsonNode value = array.get(i);
+                if (identifier && value.isTextual()) {
+                    array.set(i, TextNode.valueOf(interner.intern(value.textValue())));
+                } else {
+                    internIdentifiers(value, interner, identifier);
+                }
+            }
+        }
+    }
 }
@@ -40,6 +40,9 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -54,72 +57,114 @@ final class JsonConfigParser implements ConfigParser {
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new JSONObject(json), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new JSONObject(new JSONTokener(ConfigParserHelpers.reader(json))), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        ConfigParserHelpers.ExcerptInputStream excerptStream = new ConfigParserHelpers.ExcerptInputStream(json);
+        try {
+            return parseProjectConfig(new JSONObject(new JSONTokener(ConfigParserHelpers.reader(excerptStream))), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(excerptStream), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
         try {
-            JSONObject rootObject = new JSONObject(json);
+            return parseProjectConfig(new JSONObject(new JSONTokener(ConfigParserHelpers.reader(json))), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
 
-            String accountId = rootObject.getString("accountId");
-            String projectId = rootObject.getString("projectId");
-            String revision = rootObject.getString("revision");
-            String version = rootObject.getString("version");
-            int datafileVersion = Integer.parseInt(version);
+    private ProjectConfig parseProjectConfig(JSONObject rootObject, @Nullable ProjectConfig previousConfig) {
+        internIdentifiers(rootObject, new IdentifierInterner(), false);
 
-            List<Experiment> experiments = parseExperiments(rootObject.getJSONArray("experiments"));
+        String accountId = rootObject.getString("accountId");
+        String projectId = rootObject.getString("projectId");
+        String revision = rootObject.getString("revision");
+        String version = rootObject.getString("version");
+        int datafileVersion = Integer.parseInt(version);
 
-            List<Attribute> attributes;
-            attributes = parseAttributes(rootObject.getJSONArray("attributes"));
+        List<Experiment> experiments = parseExperiments(rootObject.getJSONArray("experiments"));
 
-            List<EventType> events = parseEvents(rootObject.getJSONArray("events"));
-            List<Audience> audiences = Collections.emptyList();
+        List<Attribute> attributes;
+        attributes = parseAttributes(rootObject.getJSONArray("attributes"));
 
-            if (rootObject.has("audiences")) {
-                audiences = parseAudiences(rootObject.getJSONArray("audiences"));
-            }
+        List<EventType> events = parseEvents(rootObject.getJSONArray("events"));
+        List<Audience> audiences = Collections.emptyList();
 
-            List<Audience> typedAudiences = null;
-            if (rootObject.has("typedAudiences")) {
-                typedAudiences = parseTypedAudiences(rootObject.getJSONArray("typedAudiences"));
-            }
+        if (rootObject.has("audiences")) {
+            audiences = parseAudiences(rootObject.getJSONArray("audiences"));
+        }
 
-            List<Group> groups = parseGroups(rootObject.getJSONArray("groups"));
+        List<Audience> typedAudiences = null;
+        if (rootObject.has("typedAudiences")) {
+            typedAudiences = parseTypedAudiences(rootObject.getJSONArray("typedAudiences"));
+        }
 
-            boolean anonymizeIP = false;
-            List<LiveVariable> liveVariables = null;
-            if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString())) {
-                liveVariables = parseLiveVariables(rootObject.getJSONArray("variables"));
+        List<Group> groups = parseGroups(rootObject.getJSONArray("groups"));
 
-                anonymizeIP = rootObject.getBoolean("anonymizeIP");
-            }
+        boolean anonymizeIP = false;
+        List<LiveVariable> liveVariables = null;
+        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString())) {
+            liveVariables = parseLiveVariables(rootObject.getJSONArray("variables"));
 
-            List<FeatureFlag> featureFlags = null;
-            List<Rollout> rollouts = null;
-            Boolean botFiltering = null;
-            if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString())) {
-                featureFlags = parseFeatureFlags(rootObject.getJSONArray("featureFlags"));
-                rollouts = parseRollouts(rootObject.getJSONArray("rollouts"));
-                if(rootObject.has("botFiltering"))
-                    botFiltering = rootObject.getBoolean("botFiltering");
-            }
+            anonymizeIP = rootObject.getBoolean("anonymizeIP");
+        }
 
-            return new ProjectConfig(
-                    accountId,
-                    anonymizeIP,
-                    botFiltering,
-                    projectId,
-                    revision,
-                    version,
-                    attributes,
-                    audiences,
-                    typedAudiences,
-                    events,
-                    experiments,
-                    featureFlags,
-                    groups,
-                    liveVariables,
-                    rollouts
-            );
-        } catch (Exception e) {
-            throw new ConfigParseException("Unable to parse datafile: " + json, e);
+        List<FeatureFlag> featureFlags = null;
+        List<Rollout> rollouts = null;
+        Boolean botFiltering = null;
+        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString())) {
+            featureFlags = parseFeatureFlags(rootObject.getJSONArray("featureFlags"));
+            rollouts = parseRollouts(rootObject.getJSONArray("rollouts"));
+            if(rootObject.has("botFiltering"))
+                botFiltering = rootObject.getBoolean("botFiltering");
         }
+
+        return new ProjectConfig(
+                accountId,
+                anonymizeIP,
+                botFiltering,
+                projectId,
+                revision,
+                version,
+                attributes,
+                audiences,
+                typedAudiences,
+                events,
+                experiments,
+                featureFlags,
+                groups,
+                liveVariables,
+                rollouts,
+                previousConfig
+        );
     }
 
     //======== Helper methods ========//
@@ -387,4 +432,33 @@ final class JsonConfigParser implements ConfigParser {
 
         return rollouts;
     }
+
+    /**
+     * Replaces the string values of identifier fields by their canonical instances, so the entities parsed from the
+     * tree share them.
+     */
+    private void internIdentifiers(Object json, IdentifierInterner interner, boolean identifier) {
+        if (json instanceof JSONObject) {
+            JSONObject object = (JSONObject) json;
+            for (String name : object.keySet()) {
+                Object value = object.get(name);
+                boolean identifierField = identifier || IdentifierInterner.isIdentifierField(name);
+                if (identifierField && value instanceof String) {
+                    object.put(name, interner.intern((String) value));
+                } else {
+                    internIdentifiers(value, interner, identifierField);
+                }
+            }
+        } else if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            for (int i = 0; i < array.length(); i++) {
+                Object value = array.get(i);
+                if (identifier && value instanceof String) {
+                    array.put(i, interner.intern((String) value));
+                } else {
+                    internIdentifiers(value, interner, identifier);
+                }
+            }
+        }
+    }
 }
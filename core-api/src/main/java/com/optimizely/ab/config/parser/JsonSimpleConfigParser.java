@@ -41,6 +41,9 @@ import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -56,75 +59,115 @@ final class JsonSimpleConfigParser implements ConfigParser {
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig((JSONObject) new JSONParser().parse(json), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull byte[] json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig((JSONObject) new JSONParser().parse(ConfigParserHelpers.reader(json)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
+        ConfigParserHelpers.ExcerptInputStream excerptStream = new ConfigParserHelpers.ExcerptInputStream(json);
+        try {
+            return parseProjectConfig((JSONObject) new JSONParser().parse(ConfigParserHelpers.reader(excerptStream)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(excerptStream), e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json, @Nullable ProjectConfig previousConfig)
+        throws ConfigParseException {
         try {
-            JSONParser parser = new JSONParser();
-            JSONObject rootObject = (JSONObject)parser.parse(json);
+            return parseProjectConfig((JSONObject) new JSONParser().parse(ConfigParserHelpers.reader(json)), previousConfig);
+        } catch (Exception e) {
+            throw new ConfigParseException(ConfigParserHelpers.errorMessage(json), e);
+        }
+    }
 
-            String accountId = (String)rootObject.get("accountId");
-            String projectId = (String)rootObject.get("projectId");
-            String revision = (String)rootObject.get("revision");
-            String version = (String)rootObject.get("version");
-            int datafileVersion = Integer.parseInt(version);
+    private ProjectConfig parseProjectConfig(JSONObject rootObject, @Nullable ProjectConfig previousConfig)
+        throws ParseException {
+        internIdentifiers(rootObject, new IdentifierInterner(), false);
 
-            List<Experiment> experiments = parseExperiments((JSONArray)rootObject.get("experiments"));
+        String accountId = (String)rootObject.get("accountId");
+        String projectId = (String)rootObject.get("projectId");
+        String revision = (String)rootObject.get("revision");
+        String version = (String)rootObject.get("version");
+        int datafileVersion = Integer.parseInt(version);
 
-            List<Attribute> attributes;
-            attributes = parseAttributes((JSONArray)rootObject.get("attributes"));
+        List<Experiment> experiments = parseExperiments((JSONArray)rootObject.get("experiments"));
 
-            List<EventType> events = parseEvents((JSONArray)rootObject.get("events"));
-            List<Audience> audiences = Collections.emptyList();
+        List<Attribute> attributes;
+        attributes = parseAttributes((JSONArray)rootObject.get("attributes"));
 
-            if (rootObject.containsKey("audiences")) {
-                audiences = parseAudiences((JSONArray)parser.parse(rootObject.get("audiences").toString()));
-            }
+        List<EventType> events = parseEvents((JSONArray)rootObject.get("events"));
+        List<Audience> audiences = Collections.emptyList();
 
-            List<Audience> typedAudiences = null;
-            if (rootObject.containsKey("typedAudiences")) {
-                typedAudiences = parseTypedAudiences((JSONArray)parser.parse(rootObject.get("typedAudiences").toString()));
-            }
+        if (rootObject.containsKey("audiences")) {
+            audiences = parseAudiences((JSONArray)rootObject.get("audiences"));
+        }
 
-            List<Group> groups = parseGroups((JSONArray)rootObject.get("groups"));
+        List<Audience> typedAudiences = null;
+        if (rootObject.containsKey("typedAudiences")) {
+            typedAudiences = parseTypedAudiences((JSONArray)rootObject.get("typedAudiences"));
+        }
 
-            boolean anonymizeIP = false;
-            List<LiveVariable> liveVariables = null;
-            if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString())) {
-                liveVariables = parseLiveVariables((JSONArray)rootObject.get("variables"));
+        List<Group> groups = parseGroups((JSONArray)rootObject.get("groups"));
 
-                anonymizeIP = (Boolean)rootObject.get("anonymizeIP");
-            }
+        boolean anonymizeIP = false;
+        List<LiveVariable> liveVariables = null;
+        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString())) {
+            liveVariables = parseLiveVariables((JSONArray)rootObject.get("variables"));
 
-            List<FeatureFlag> featureFlags = null;
-            List<Rollout> rollouts = null;
-            Boolean botFiltering = null;
-            if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString())) {
-                featureFlags = parseFeatureFlags((JSONArray) rootObject.get("featureFlags"));
-                rollouts = parseRollouts((JSONArray) rootObject.get("rollouts"));
-                if(rootObject.containsKey("botFiltering"))
-                    botFiltering = (Boolean) rootObject.get("botFiltering");
-            }
+            anonymizeIP = (Boolean)rootObject.get("anonymizeIP");
+        }
 
-            return new ProjectConfig(
-                    accountId,
-                    anonymizeIP,
-                    botFiltering,
-                    projectId,
-                    revision,
-                    version,
-                    attributes,
-                    audiences,
-                    typedAudiences,
-                    events,
-                    experiments,
-                    featureFlags,
-                    groups,
-                    liveVariables,
-                    rollouts
-            );
-        } catch (RuntimeException ex){
-            throw new ConfigParseException("Unable to parse datafile: " + json, ex);
-        } catch (Exception e) {
-            throw new ConfigParseException("Unable to parse datafile: " + json, e);
+        List<FeatureFlag> featureFlags = null;
+        List<Rollout> rollouts = null;
+        Boolean botFiltering = null;
+        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString())) {
+            featureFlags = parseFeatureFlags((JSONArray) rootObject.get("featureFlags"));
+            rollouts = parseRollouts((JSONArray) rootObject.get("rollouts"));
+            if(rootObject.containsKey("botFiltering"))
+                botFiltering = (Boolean) rootObject.get("botFiltering");
         }
+
+        return new ProjectConfig(
+                accountId,
+                anonymizeIP,
+                botFiltering,
+                projectId,
+                revision,
+                version,
+                attributes,
+                audiences,
+                typedAudiences,
+                events,
+                experiments,
+                featureFlags,
+                groups,
+                liveVariables,
+                rollouts,
+                previousConfig
+        );
     }
 
     //======== Helper methods ========//
@@ -386,5 +429,34 @@ final class JsonSimpleConfigParser implements ConfigParser {
 
         return rollouts;
     }
+
+    /**
+     * Replaces the string values of identifier fields by their canonical instances, so the entities parsed from the
+     * tree share them.
+     */
+    @SuppressWarnings("unchecked")
+    private void internIdentifiers(Object json, IdentifierInterner interner, boolean identifier) {
+        if (json instanceof JSONObject) {
+            for (Object obj : ((JSONObject) json).entrySet()) {
+                Map.Entry<Object, Object> field = (Map.Entry<Object, Object>) obj;
+                boolean identifierField = identifier || IdentifierInterner.isIdentifierField((String) field.getKey());
+                if (identifierField && field.getValue() instanceof String) {
+                    field.setValue(interner.intern((String) field.getValue()));
+                } else {
+                    internIdentifiers(field.getValue(), interner, identifierField);
+                }
+            }
+        } else if (json instanceof JSONArray) {
+            JSONArray array = (JSONArray) json;
+            for (int i = 0; i < array.size(); i++) {
+                Object value = array.get(i);
+                if (identifier && value instanceof String) {
+                    array.set(i, interner.intern((String) value));
+                } else {
+                    internIdentifiers(value, interner, identifier);
+                }
+            }
+        }
+    }
 }
 
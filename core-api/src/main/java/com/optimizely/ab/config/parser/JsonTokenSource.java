@@ -0,0 +1,91 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The JSON token stream {@link ProjectConfigStreamingReader} reads the datafile schema from.
+ * <p>
+ * Tokens are peeked and then consumed with the {@code begin*}, {@code end*} and {@code next*} methods, the way
+ * {@code com.google.gson.stream.JsonReader} reads them. Untyped values, which only user attribute values are, are
+ * bound the way the JSON library the source stands for binds them to {@link Object}.
+ */
+interface JsonTokenSource {
+
+    enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    Token peek() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    /**
+     * @return whether the current array or object has another element
+     */
+    boolean hasNext() throws IOException;
+
+    String nextName() throws IOException;
+
+    /**
+     * @return the string, or the literal text of a number
+     */
+    String nextString() throws IOException;
+
+    boolean nextBoolean() throws IOException;
+
+    void nextNull() throws IOException;
+
+    int nextInt() throws IOException;
+
+    /**
+     * @return the number of an untyped value
+     */
+    Number nextNumber() throws IOException;
+
+    /**
+     * Skips the next value, with all its nested values.
+     */
+    void skipValue() throws IOException;
+
+    /**
+     * @return the empty map the members of an untyped object value are put in
+     */
+    Map<String, Object> newObjectValue();
+
+    /**
+     * @return the tokens of the JSON document held in a string value
+     */
+    JsonTokenSource embedded(String json);
+}
@@ -33,6 +33,7 @@ import com.optimizely.ab.config.Rollout;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.TypedAudience;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.List;
@@ -42,10 +43,24 @@ import java.util.List;
  */
 public class ProjectConfigGsonDeserializer implements JsonDeserializer<ProjectConfig> {
 
+    private final ProjectConfig previousConfig;
+
+    public ProjectConfigGsonDeserializer() {
+        this(null);
+    }
+
+    /**
+     * @param previousConfig the config to reuse unchanged entities from
+     */
+    public ProjectConfigGsonDeserializer(@Nullable ProjectConfig previousConfig) {
+        this.previousConfig = previousConfig;
+    }
+
     @Override
     public ProjectConfig deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
         throws JsonParseException {
         JsonObject jsonObject = json.getAsJsonObject();
+        GsonHelpers.internIdentifiers(jsonObject, new IdentifierInterner());
 
         String accountId = jsonObject.get("accountId").getAsString();
         String projectId = jsonObject.get("projectId").getAsString();
@@ -116,7 +131,8 @@ public class ProjectConfigGsonDeserializer implements JsonDeserializer<ProjectCo
                 featureFlags,
                 groups,
                 liveVariables,
-                rollouts
+                rollouts,
+                previousConfig
         );
     }
 }
@@ -0,0 +1,161 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.internal.ConditionUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Builds the {@link ProjectConfig} straight from the Gson {@link JsonReader} token stream, with
+ * {@link ProjectConfigStreamingReader}.
+ * <p>
+ * Unlike {@link ProjectConfigGsonDeserializer}, no {@link com.google.gson.JsonElement} tree of the datafile is kept,
+ * conditions aren't converted to maps and lists before {@link ConditionUtils} walks them, and identifiers are
+ * interned as they're read. The entities are the same as the ones deserialized from the tree, down to the
+ * {@link Double} and {@link LinkedTreeMap} values of user attributes.
+ */
+final class ProjectConfigGsonStreamingAdapter extends TypeAdapter<ProjectConfig> {
+
+    private final ProjectConfig previousConfig;
+
+    /**
+     * @param previousConfig the config to reuse unchanged entities from
+     */
+    ProjectConfigGsonStreamingAdapter(@Nullable ProjectConfig previousConfig) {
+        this.previousConfig = previousConfig;
+    }
+
+    @Override
+    public ProjectConfig read(JsonReader in) throws IOException {
+        return new ProjectConfigStreamingReader(new GsonTokenSource(in), new IdentifierInterner())
+                .readProjectConfig(previousConfig);
+    }
+
+    @Override
+    public void write(JsonWriter out, ProjectConfig value) {
+        throw new UnsupportedOperationException("ProjectConfig can't be serialized");
+    }
+
+    /**
+     * The Gson reader's tokens, with untyped values bound the way Gson binds them.
+     */
+    private static final class GsonTokenSource implements JsonTokenSource {
+        private static final Token[] TOKENS = new Token[JsonToken.values().length];
+
+        static {
+            for (JsonToken token : JsonToken.values()) {
+                TOKENS[token.ordinal()] = Token.valueOf(token.name());
+            }
+        }
+
+        private final JsonReader in;
+
+        GsonTokenSource(JsonReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public Token peek() throws IOException {
+            return TOKENS[in.peek().ordinal()];
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            in.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            in.endArray();
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            in.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            in.endObject();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return in.hasNext();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return in.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return in.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return in.nextBoolean();
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            in.nextNull();
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            return in.nextInt();
+        }
+
+        /**
+         * @return the number as a double
+         */
+        @Override
+        public Number nextNumber() throws IOException {
+            return in.nextDouble();
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            in.skipValue();
+        }
+
+        @Override
+        public Map<String, Object> newObjectValue() {
+            return new LinkedTreeMap<String, Object>();
+        }
+
+        @Override
+        public JsonTokenSource embedded(String json) {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            return new GsonTokenSource(reader);
+        }
+    }
+}
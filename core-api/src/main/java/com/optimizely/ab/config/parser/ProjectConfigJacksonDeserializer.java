@@ -26,54 +26,80 @@ import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.TypedAudience;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 class ProjectConfigJacksonDeserializer extends JsonDeserializer<ProjectConfig> {
+
+    /**
+     * Deserialization context attribute holding the config to reuse unchanged entities from.
+     */
+    static final String PREVIOUS_CONFIG_ATTRIBUTE = "optimizely.previousConfig";
+
+    /**
+     * Number of array items bound by one task when binding in parallel; datafiles with fewer items in all their
+     * sections are bound on the calling thread.
+     */
+    static final int ITEMS_PER_TASK = 256;
+
+    @Nullable
+    private final ForkJoinPool pool;
+
+    ProjectConfigJacksonDeserializer() {
+        this(null);
+    }
+
+    /**
+     * @param pool the pool to bind the sections of large datafiles on, or {@code null} to bind them on the calling
+     *             thread
+     */
+    ProjectConfigJacksonDeserializer(@Nullable ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     @Override
     public ProjectConfig deserialize(JsonParser parser, DeserializationContext context) throws IOException {
         ObjectCodec codec = parser.getCodec();
         JsonNode node = codec.readTree(parser);
+        JacksonHelpers.internIdentifiers(node, new IdentifierInterner());
 
         String accountId = node.get("accountId").textValue();
         String projectId = node.get("projectId").textValue();
         String revision = node.get("revision").textValue();
         String version = node.get("version").textValue();
         int datafileVersion = Integer.parseInt(version);
+        boolean hasV3Sections = datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString());
+        boolean hasV4Sections = datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString());
 
-        List<Group> groups = JacksonHelpers.arrayNodeToList(node.get("groups"), Group.class, codec);
-        List<Experiment> experiments = JacksonHelpers.arrayNodeToList(node.get("experiments"), Experiment.class, codec);
-        List<Attribute> attributes = JacksonHelpers.arrayNodeToList(node.get("attributes"), Attribute.class, codec);
-        List<EventType> events = JacksonHelpers.arrayNodeToList(node.get("events"), EventType.class, codec);
-
-        List<Audience> audiences = Collections.emptyList();
-        if (node.has("audiences")) {
-            audiences = JacksonHelpers.arrayNodeToList(node.get("audiences"), Audience.class, codec);
-        }
-
-        List<TypedAudience> typedAudiences = null;
-        if (node.has("typedAudiences")) {
-            typedAudiences = JacksonHelpers.arrayNodeToList(node.get("typedAudiences"), TypedAudience.class, codec);
-        }
+        ArrayBindingTask<Group> groups = new ArrayBindingTask<>(node.get("groups"), Group.class, codec);
+        ArrayBindingTask<Experiment> experiments =
+                new ArrayBindingTask<>(node.get("experiments"), Experiment.class, codec);
+        ArrayBindingTask<Attribute> attributes = new ArrayBindingTask<>(node.get("attributes"), Attribute.class, codec);
+        ArrayBindingTask<EventType> events = new ArrayBindingTask<>(node.get("events"), EventType.class, codec);
+        ArrayBindingTask<Audience> audiences = new ArrayBindingTask<>(node.get("audiences"), Audience.class, codec);
+        ArrayBindingTask<TypedAudience> typedAudiences =
+                new ArrayBindingTask<>(node.get("typedAudiences"), TypedAudience.class, codec);
+        ArrayBindingTask<LiveVariable> liveVariables =
+                new ArrayBindingTask<>(hasV3Sections ? node.get("variables") : null, LiveVariable.class, codec);
+        ArrayBindingTask<FeatureFlag> featureFlags =
+                new ArrayBindingTask<>(hasV4Sections ? node.get("featureFlags") : null, FeatureFlag.class, codec);
+        ArrayBindingTask<Rollout> rollouts =
+                new ArrayBindingTask<>(hasV4Sections ? node.get("rollouts") : null, Rollout.class, codec);
+        bind(groups, experiments, attributes, events, audiences, typedAudiences, liveVariables, featureFlags, rollouts);
 
         boolean anonymizeIP = false;
-        List<LiveVariable> liveVariables = null;
-        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V3.toString())) {
-            liveVariables = JacksonHelpers.arrayNodeToList(node.get("variables"), LiveVariable.class, codec);
+        if (hasV3Sections) {
             anonymizeIP = node.get("anonymizeIP").asBoolean();
         }
 
-        List<FeatureFlag> featureFlags = null;
-        List<Rollout> rollouts = null;
         Boolean botFiltering = null;
-        if (datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString())) {
-            featureFlags = JacksonHelpers.arrayNodeToList(node.get("featureFlags"), FeatureFlag.class, codec);
-            rollouts = JacksonHelpers.arrayNodeToList(node.get("rollouts"), Rollout.class, codec);
-            if (node.hasNonNull("botFiltering")) {
-                botFiltering = node.get("botFiltering").asBoolean();
-            }
+        if (hasV4Sections && node.hasNonNull("botFiltering")) {
+            botFiltering = node.get("botFiltering").asBoolean();
         }
 
         return new ProjectConfig(
@@ -83,16 +109,132 @@ class ProjectConfigJacksonDeserializer extends JsonDeserializer<ProjectConfig> {
                 projectId,
                 revision,
                 version,
-                attributes,
-                audiences,
-                (List<Audience>)(List<? extends Audience>)typedAudiences,
-                events,
-                experiments,
-                featureFlags,
-                groups,
-                liveVariables,
-                rollouts
+                attributes.getItems(),
+                node.has("audiences") ? audiences.getItems() : Collections.<Audience>emptyList(),
+                (List<Audience>)(List<? extends Audience>)typedAudiences.getItems(),
+                events.getItems(),
+                experiments.getItems(),
+                featureFlags.getItems(),
+                groups.getItems(),
+                liveVariables.getItems(),
+                rollouts.getItems(),
+                (ProjectConfig) context.getAttribute(PREVIOUS_CONFIG_ATTRIBUTE)
         );
     }
 
-}
\ No newline at end of file
+    /**
+     * Binds the items of every section, on the pool when there's one and the sections are large enough to be worth
+     * splitting, otherwise on the calling thread.
+     */
+    private void bind(final ArrayBindingTask<?>... sections) throws IOException {
+        int itemCount = 0;
+        for (ArrayBindingTask<?> section : sections) {
+            itemCount += section.to;
+        }
+
+        if (pool == null || itemCount <= ITEMS_PER_TASK) {
+            for (ArrayBindingTask<?> section : sections) {
+                section.bindItems();
+            }
+            return;
+        }
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(sections);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the pool may rethrow a copy of the exception of the task, with the original as its cause
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Binds the items of a datafile array, splitting large ranges of items into subtasks. The items are bound in
+     * place, so the list keeps their order whatever order the tasks run in.
+     */
+    static final class ArrayBindingTask<T> extends RecursiveAction {
+        private final JsonNode arrayNode;
+        private final Class<T> itemClass;
+        private final ObjectCodec codec;
+        private final Object[] items;
+        private final int from;
+        private final int to;
+
+        ArrayBindingTask(@Nullable JsonNode arrayNode, Class<T> itemClass, ObjectCodec codec) {
+            this(arrayNode, itemClass, codec, new Object[size(arrayNode)], 0, size(arrayNode));
+        }
+
+        private ArrayBindingTask(JsonNode arrayNode, Class<T> itemClass, ObjectCodec codec, Object[] items, int from,
+                                 int to) {
+            this.arrayNode = arrayNode;
+            this.itemClass = itemClass;
+            this.codec = codec;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ITEMS_PER_TASK) {
+                try {
+                    bindItems();
+                } catch (IOException e) {
+                    throw new ItemBindingException(e);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ArrayBindingTask<T>(arrayNode, itemClass, codec, items, from, middle),
+                    new ArrayBindingTask<T>(arrayNode, itemClass, codec, items, middle, to));
+        }
+
+        void bindItems() throws IOException {
+            for (int i = from; i < to; i++) {
+                JsonNode itemNode = arrayNode.get(i);
+                if (!itemNode.isNull()) {
+                    items[i] = codec.treeToValue(itemNode, itemClass);
+                }
+            }
+        }
+
+        /**
+         * @return the bound items, without the null ones, or {@code null} when the datafile has no such array
+         */
+        @Nullable
+        @SuppressWarnings("unchecked")
+        List<T> getItems() {
+            if (arrayNode == null || !arrayNode.isArray()) {
+                return null;
+            }
+
+            List<T> list = new ArrayList<>(items.length);
+            for (Object item : items) {
+                if (item != null) {
+                    list.add((T) item);
+                }
+            }
+            return list;
+        }
+    }
+
+    private static int size(@Nullable JsonNode arrayNode) {
+        return arrayNode != null && arrayNode.isArray() ? arrayNode.size() : 0;
+    }
+
+    private static final class ItemBindingException extends RuntimeException {
+        ItemBindingException(IOException cause) {
+            super(cause);
+        }
+    }
+}
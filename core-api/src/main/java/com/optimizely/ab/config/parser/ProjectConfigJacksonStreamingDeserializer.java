@@ -0,0 +1,812 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.FeatureFlag;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.LiveVariable;
+import com.optimizely.ab.config.LiveVariable.VariableStatus;
+import com.optimizely.ab.config.LiveVariable.VariableType;
+import com.optimizely.ab.config.LiveVariableUsageInstance;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Rollout;
+import com.optimizely.ab.config.TrafficAllocation;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.EmptyCondition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.NullCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.TypedAudience;
+import com.optimizely.ab.config.audience.UserAttribute;
+import com.optimizely.ab.internal.ConditionUtils;
+import com.optimizely.ab.internal.InvalidAudienceCondition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the {@link ProjectConfig} straight from the {@link JsonParser} token stream.
+ * <p>
+ * Unlike {@link ProjectConfigJacksonDeserializer}, no tree of the datafile is kept, the conditions string of each
+ * audience is parsed without a second tree, and identifiers are interned as they're read. The entities are the same
+ * as the ones bound from the tree.
+ */
+final class ProjectConfigJacksonStreamingDeserializer extends JsonDeserializer<ProjectConfig> {
+
+    @Override
+    public ProjectConfig deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        ProjectConfig previousConfig =
+                (ProjectConfig) context.getAttribute(ProjectConfigJacksonDeserializer.PREVIOUS_CONFIG_ATTRIBUTE);
+        return new Reader(parser, new IdentifierInterner()).readProjectConfig(previousConfig);
+    }
+
+    private static final class Reader {
+        private final JsonParser parser;
+        private final IdentifierInterner interner;
+
+        Reader(JsonParser parser, IdentifierInterner interner) {
+            this.parser = parser;
+            this.interner = interner;
+        }
+
+        ProjectConfig readProjectConfig(ProjectConfig previousConfig) throws IOException {
+            String accountId = null;
+            String projectId = null;
+            String revision = null;
+            String version = null;
+            boolean anonymizeIP = false;
+            Boolean botFiltering = null;
+            List<Group> groups = null;
+            List<Experiment> experiments = null;
+            List<Attribute> attributes = null;
+            List<EventType> events = null;
+            List<Audience> audiences = Collections.emptyList();
+            List<Audience> typedAudiences = null;
+            List<LiveVariable> liveVariables = null;
+            List<FeatureFlag> featureFlags = null;
+            List<Rollout> rollouts = null;
+
+            expect(JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "accountId":
+                        accountId = parser.getValueAsString();
+                        break;
+                    case "projectId":
+                        projectId = parser.getValueAsString();
+                        break;
+                    case "revision":
+                        revision = parser.getValueAsString();
+                        break;
+                    case "version":
+                        version = parser.getValueAsString();
+                        break;
+                    case "anonymizeIP":
+                        anonymizeIP = parser.getValueAsBoolean();
+                        break;
+                    case "botFiltering":
+                        botFiltering = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsBoolean();
+                        break;
+                    case "groups":
+                        groups = readGroups();
+                        break;
+                    case "experiments":
+                        experiments = readExperiments("");
+                        break;
+                    case "attributes":
+                        attributes = readAttributes();
+                        break;
+                    case "events":
+                        events = readEvents();
+                        break;
+                    case "audiences":
+                        audiences = readAudiences(false);
+                        break;
+                    case "typedAudiences":
+                        typedAudiences = readAudiences(true);
+                        break;
+                    case "variables":
+                        liveVariables = readLiveVariables();
+                        break;
+                    case "featureFlags":
+                        featureFlags = readFeatureFlags();
+                        break;
+                    case "rollouts":
+                        rollouts = readRollouts();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+
+            if (accountId == null || projectId == null || revision == null || version == null) {
+                throw new JsonParseException(parser, "Missing accountId, projectId, revision or version");
+            }
+            int datafileVersion = Integer.parseInt(version);
+            if (datafileVersion < Integer.parseInt(ProjectConfig.Version.V3.toString())) {
+                liveVariables = null;
+                anonymizeIP = false;
+            }
+            if (datafileVersion < Integer.parseInt(ProjectConfig.Version.V4.toString())) {
+                featureFlags = null;
+                rollouts = null;
+                botFiltering = null;
+            }
+
+            return new ProjectConfig(
+                    accountId,
+                    anonymizeIP,
+                    botFiltering,
+                    projectId,
+                    revision,
+                    version,
+                    attributes,
+                    audiences,
+                    typedAudiences,
+                    events,
+                    experiments,
+                    featureFlags,
+                    groups,
+                    liveVariables,
+                    rollouts,
+                    previousConfig
+            );
+        }
+
+        //======== Entities ========//
+
+        private List<Experiment> readExperiments(String groupId) throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Experiment> experiments = new ArrayList<Experiment>();
+            while (nextElement()) {
+                experiments.add(readExperiment(groupId));
+            }
+            return experiments;
+        }
+
+        private Experiment readExperiment(String groupId) throws IOException {
+            String id = null;
+            String key = null;
+            String status = null;
+            String layerId = null;
+            List<String> audienceIds = null;
+            Condition audienceConditions = null;
+            List<Variation> variations = null;
+            Map<String, String> userIdToVariationKeyMap = null;
+            List<TrafficAllocation> trafficAllocation = null;
+
+            expect(JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "status":
+                        status = parser.getValueAsString();
+                        break;
+                    case "layerId":
+                        layerId = identifier();
+                        break;
+                    case "audienceIds":
+                        audienceIds = readIdentifiers();
+                        break;
+                    case "audienceConditions":
+                        audienceConditions = readCondition(AudienceIdCondition.class);
+                        break;
+                    case "variations":
+                        variations = readVariations();
+                        break;
+                    case "forcedVariations":
+                        userIdToVariationKeyMap = readForcedVariations();
+                        break;
+                    case "trafficAllocation":
+                        trafficAllocation = readTrafficAllocation();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+
+            return new Experiment(id, key, status, layerId, audienceIds, audienceConditions, variations,
+                    userIdToVariationKeyMap, trafficAllocation, groupId);
+        }
+
+        private List<Variation> readVariations() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Variation> variations = new ArrayList<Variation>();
+            while (nextElement()) {
+                String id = null;
+                String key = null;
+                Boolean featureEnabled = null;
+                List<LiveVariableUsageInstance> liveVariableUsageInstances = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "key":
+                            key = identifier();
+                            break;
+                        case "featureEnabled":
+                            featureEnabled =
+                                    parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsBoolean();
+                            break;
+                        case "variables":
+                            liveVariableUsageInstances = readLiveVariableUsageInstances();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                variations.add(new Variation(id, key, featureEnabled, liveVariableUsageInstances));
+            }
+            return variations;
+        }
+
+        private List<LiveVariableUsageInstance> readLiveVariableUsageInstances() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<LiveVariableUsageInstance> liveVariableUsageInstances = new ArrayList<LiveVariableUsageInstance>();
+            while (nextElement()) {
+                String id = null;
+                String value = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("id".equals(name)) {
+                        id = identifier();
+                    } else if ("value".equals(name)) {
+                        value = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                liveVariableUsageInstances.add(new LiveVariableUsageInstance(id, value));
+            }
+            return liveVariableUsageInstances;
+        }
+
+        private Map<String, String> readForcedVariations() throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
+            expect(JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String userId = parser.getCurrentName();
+                parser.nextToken();
+                userIdToVariationKeyMap.put(userId, identifier());
+            }
+            return userIdToVariationKeyMap;
+        }
+
+        private List<TrafficAllocation> readTrafficAllocation() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>();
+            while (nextElement()) {
+                String entityId = null;
+                int endOfRange = 0;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("entityId".equals(name)) {
+                        entityId = identifier();
+                    } else if ("endOfRange".equals(name)) {
+                        endOfRange = parser.getValueAsInt();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                trafficAllocation.add(new TrafficAllocation(entityId, endOfRange));
+            }
+            return trafficAllocation;
+        }
+
+        private List<Attribute> readAttributes() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Attribute> attributes = new ArrayList<Attribute>();
+            while (nextElement()) {
+                String id = null;
+                String key = null;
+                String segmentId = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "key":
+                            key = identifier();
+                            break;
+                        case "segmentId":
+                            segmentId = identifier();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                attributes.add(new Attribute(id, key, segmentId));
+            }
+            return attributes;
+        }
+
+        private List<EventType> readEvents() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<EventType> events = new ArrayList<EventType>();
+            while (nextElement()) {
+                String id = null;
+                String key = null;
+                List<String> experimentIds = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "key":
+                            key = identifier();
+                            break;
+                        case "experimentIds":
+                            experimentIds = readIdentifiers();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                events.add(new EventType(id, key, experimentIds));
+            }
+            return events;
+        }
+
+        /**
+         * Audiences hold their conditions as a JSON string, typed audiences inline.
+         */
+        private List<Audience> readAudiences(boolean typed) throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Audience> audiences = new ArrayList<Audience>();
+            while (nextElement()) {
+                String id = null;
+                String name = null;
+                Condition conditions = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "name":
+                            name = parser.getValueAsString();
+                            break;
+                        case "conditions":
+                            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                                conditions = readEmbeddedConditions(parser.getText());
+                            } else {
+                                conditions = readCondition(UserAttribute.class);
+                            }
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                audiences.add(typed ? new TypedAudience(id, name, conditions) : new Audience(id, name, conditions));
+            }
+            return audiences;
+        }
+
+        private Condition readEmbeddedConditions(String conditionsJson) throws IOException {
+            JsonParser conditionsParser = parser.getCodec().getFactory().createParser(conditionsJson);
+            try {
+                conditionsParser.nextToken();
+                return new Reader(conditionsParser, interner).readCondition(UserAttribute.class);
+            } finally {
+                conditionsParser.close();
+            }
+        }
+
+        private List<Group> readGroups() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Group> groups = new ArrayList<Group>();
+            while (nextElement()) {
+                String id = null;
+                String policy = null;
+                List<Experiment> experiments = null;
+                List<TrafficAllocation> trafficAllocation = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "policy":
+                            policy = parser.getValueAsString();
+                            break;
+                        case "experiments":
+                            // the group assigns its id to experiments read before it
+                            experiments = readExperiments(id == null ? "" : id);
+                            break;
+                        case "trafficAllocation":
+                            trafficAllocation = readTrafficAllocation();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                groups.add(new Group(id, policy, experiments, trafficAllocation));
+            }
+            return groups;
+        }
+
+        private List<LiveVariable> readLiveVariables() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<LiveVariable> liveVariables = new ArrayList<LiveVariable>();
+            while (nextElement()) {
+                String id = null;
+                String key = null;
+                String defaultValue = null;
+                VariableStatus status = null;
+                VariableType type = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "key":
+                            key = identifier();
+                            break;
+                        case "defaultValue":
+                            defaultValue = parser.getValueAsString();
+                            break;
+                        case "status":
+                            status = VariableStatus.fromString(parser.getValueAsString());
+                            break;
+                        case "type":
+                            type = VariableType.fromString(parser.getValueAsString());
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                liveVariables.add(new LiveVariable(id, key, defaultValue, status, type));
+            }
+            return liveVariables;
+        }
+
+        private List<FeatureFlag> readFeatureFlags() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<FeatureFlag> featureFlags = new ArrayList<FeatureFlag>();
+            while (nextElement()) {
+                String id = null;
+                String key = null;
+                String rolloutId = null;
+                List<String> experimentIds = null;
+                List<LiveVariable> variables = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "id":
+                            id = identifier();
+                            break;
+                        case "key":
+                            key = identifier();
+                            break;
+                        case "rolloutId":
+                            rolloutId = identifier();
+                            break;
+                        case "experimentIds":
+                            experimentIds = readIdentifiers();
+                            break;
+                        case "variables":
+                            variables = readLiveVariables();
+                            break;
+                        default:
+                            parser.skipChildren();
+                            break;
+                    }
+                }
+
+                featureFlags.add(new FeatureFlag(id, key, rolloutId, experimentIds, variables));
+            }
+            return featureFlags;
+        }
+
+        private List<Rollout> readRollouts() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<Rollout> rollouts = new ArrayList<Rollout>();
+            while (nextElement()) {
+                String id = null;
+                List<Experiment> experiments = null;
+
+                expect(JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("id".equals(name)) {
+                        id = identifier();
+                    } else if ("experiments".equals(name)) {
+                        experiments = readExperiments("");
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                rollouts.add(new Rollout(id, experiments));
+            }
+            return rollouts;
+        }
+
+        //======== Conditions ========//
+
+        /**
+         * Same rules as {@link ConditionJacksonDeserializer#parseCondition}: arrays are (operand-led) lists of
+         * conditions, strings are audience ids and objects are user attributes.
+         */
+        private <T> Condition readCondition(Class<T> clazz) throws IOException {
+            switch (parser.currentToken()) {
+                case START_ARRAY:
+                    return readConditions(clazz);
+                case VALUE_STRING:
+                    if (clazz != AudienceIdCondition.class) {
+                        throw new InvalidAudienceCondition(String.format("Expected AudienceIdCondition got %s", clazz.getCanonicalName()));
+                    }
+                    return new AudienceIdCondition<T>(identifier());
+                case START_OBJECT:
+                    if (clazz != UserAttribute.class) {
+                        throw new InvalidAudienceCondition(String.format("Expected UserAttributes got %s", clazz.getCanonicalName()));
+                    }
+                    return readUserAttribute();
+                default:
+                    parser.skipChildren();
+                    return null;
+            }
+        }
+
+        private <T> Condition readConditions(Class<T> clazz) throws IOException {
+            List<Condition> conditions = new ArrayList<Condition>();
+            String operand = null;
+            boolean empty = true;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (empty) {
+                    empty = false;
+                    if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                        operand = ConditionUtils.operand(parser.getText());
+                        if (operand != null) {
+                            continue;
+                        }
+                    }
+                }
+                conditions.add(readCondition(clazz));
+            }
+
+            if (empty) {
+                return new EmptyCondition();
+            }
+            if (operand == null) {
+                operand = "or";
+            }
+
+            switch (operand) {
+                case "and":
+                    return new AndCondition(conditions);
+                case "not":
+                    return new NotCondition(conditions.isEmpty() ? new NullCondition() : conditions.get(0));
+                default:
+                    return new OrCondition(conditions);
+            }
+        }
+
+        private UserAttribute readUserAttribute() throws IOException {
+            String name = null;
+            String type = null;
+            String match = null;
+            Object value = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    case "type":
+                        type = parser.getValueAsString();
+                        break;
+                    case "match":
+                        match = parser.getValueAsString();
+                        break;
+                    case "value":
+                        value = readValue();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+
+            return new UserAttribute(name, type, match, value);
+        }
+
+        /**
+         * Reads an untyped value the way Jackson binds it to {@link Object}.
+         */
+        private Object readValue() throws IOException {
+            switch (parser.currentToken()) {
+                case VALUE_STRING:
+                    return parser.getText();
+                case VALUE_NUMBER_INT:
+                    return parser.getNumberValue();
+                case VALUE_NUMBER_FLOAT:
+                    return parser.getDoubleValue();
+                case VALUE_TRUE:
+                    return Boolean.TRUE;
+                case VALUE_FALSE:
+                    return Boolean.FALSE;
+                case START_ARRAY:
+                    List<Object> list = new ArrayList<Object>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case START_OBJECT:
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        parser.nextToken();
+                        map.put(name, readValue());
+                    }
+                    return map;
+                default:
+                    return null;
+            }
+        }
+
+        //======== Tokens ========//
+
+        private String identifier() throws IOException {
+            return interner.intern(parser.getValueAsString());
+        }
+
+        private List<String> readIdentifiers() throws IOException {
+            if (!startArray()) {
+                return null;
+            }
+            List<String> identifiers = new ArrayList<String>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                identifiers.add(identifier());
+            }
+            return identifiers;
+        }
+
+        /**
+         * @return false for a null array
+         */
+        private boolean startArray() throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return false;
+            }
+            expect(JsonToken.START_ARRAY);
+            return true;
+        }
+
+        /**
+         * Moves to the next element of an array of objects, skipping nulls.
+         *
+         * @return false at the end of the array
+         */
+        private boolean nextElement() throws IOException {
+            JsonToken token = parser.nextToken();
+            while (token == JsonToken.VALUE_NULL) {
+                token = parser.nextToken();
+            }
+            return token != JsonToken.END_ARRAY;
+        }
+
+        private void expect(JsonToken token) throws IOException {
+            if (parser.currentToken() != token) {
+                throw new JsonParseException(parser,
+                        String.format("Expected %s but was %s", token, parser.currentToken()));
+            }
+        }
+    }
+}
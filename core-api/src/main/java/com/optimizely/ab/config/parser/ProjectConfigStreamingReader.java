@@ -0,0 +1,820 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.FeatureFlag;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.LiveVariable;
+import com.optimizely.ab.config.LiveVariable.VariableStatus;
+import com.optimizely.ab.config.LiveVariable.VariableType;
+import com.optimizely.ab.config.LiveVariableUsageInstance;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Rollout;
+import com.optimizely.ab.config.TrafficAllocation;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.EmptyCondition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.NullCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.TypedAudience;
+import com.optimizely.ab.config.audience.UserAttribute;
+import com.optimizely.ab.internal.ConditionUtils;
+import com.optimizely.ab.internal.InvalidAudienceCondition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the {@link ProjectConfig} straight from a {@link JsonTokenSource}, in a single pass over the datafile.
+ * <p>
+ * No tree of the datafile is kept, conditions aren't converted to maps and lists before {@link ConditionUtils} walks
+ * them, and identifiers are interned as they're read. The Gson streaming adapter and the built-in parser both read
+ * the datafile schema with it, over their own token sources.
+ */
+final class ProjectConfigStreamingReader {
+    private final JsonTokenSource in;
+    private final IdentifierInterner interner;
+
+    ProjectConfigStreamingReader(JsonTokenSource in, IdentifierInterner interner) {
+        this.in = in;
+        this.interner = interner;
+    }
+
+    ProjectConfig readProjectConfig(ProjectConfig previousConfig) throws IOException {
+        String accountId = null;
+        String projectId = null;
+        String revision = null;
+        String version = null;
+        boolean anonymizeIP = false;
+        Boolean botFiltering = null;
+        List<Group> groups = null;
+        List<Experiment> experiments = null;
+        List<Attribute> attributes = null;
+        List<EventType> events = null;
+        List<Audience> audiences = Collections.emptyList();
+        List<Audience> typedAudiences = null;
+        List<LiveVariable> liveVariables = null;
+        List<FeatureFlag> featureFlags = null;
+        List<Rollout> rollouts = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "accountId":
+                    accountId = string();
+                    break;
+                case "projectId":
+                    projectId = string();
+                    break;
+                case "revision":
+                    revision = string();
+                    break;
+                case "version":
+                    version = string();
+                    break;
+                case "anonymizeIP":
+                    anonymizeIP = Boolean.TRUE.equals(nullableBoolean());
+                    break;
+                case "botFiltering":
+                    botFiltering = nullableBoolean();
+                    break;
+                case "groups":
+                    groups = readGroups();
+                    break;
+                case "experiments":
+                    experiments = readExperiments("");
+                    break;
+                case "attributes":
+                    attributes = readAttributes();
+                    break;
+                case "events":
+                    events = readEvents();
+                    break;
+                case "audiences":
+                    audiences = readAudiences(false);
+                    break;
+                case "typedAudiences":
+                    typedAudiences = readAudiences(true);
+                    break;
+                case "variables":
+                    liveVariables = readLiveVariables();
+                    break;
+                case "featureFlags":
+                    featureFlags = readFeatureFlags();
+                    break;
+                case "rollouts":
+                    rollouts = readRollouts();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (accountId == null || projectId == null || revision == null || version == null) {
+            throw new IOException("Missing accountId, projectId, revision or version");
+        }
+        int datafileVersion = Integer.parseInt(version);
+        if (datafileVersion < Integer.parseInt(ProjectConfig.Version.V3.toString())) {
+            liveVariables = null;
+            anonymizeIP = false;
+        }
+        if (datafileVersion < Integer.parseInt(ProjectConfig.Version.V4.toString())) {
+            featureFlags = null;
+            rollouts = null;
+            botFiltering = null;
+        }
+
+        return new ProjectConfig(
+                accountId,
+                anonymizeIP,
+                botFiltering,
+                projectId,
+                revision,
+                version,
+                attributes,
+                audiences,
+                typedAudiences,
+                events,
+                experiments,
+                featureFlags,
+                groups,
+                liveVariables,
+                rollouts,
+                previousConfig
+        );
+    }
+
+    //======== Entities ========//
+
+    private List<Experiment> readExperiments(String groupId) throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Experiment> experiments = new ArrayList<Experiment>();
+        while (nextElement()) {
+            experiments.add(readExperiment(groupId));
+        }
+        in.endArray();
+        return experiments;
+    }
+
+    private Experiment readExperiment(String groupId) throws IOException {
+        String id = null;
+        String key = null;
+        String status = null;
+        String layerId = null;
+        List<String> audienceIds = null;
+        Condition audienceConditions = null;
+        List<Variation> variations = null;
+        Map<String, String> userIdToVariationKeyMap = null;
+        List<TrafficAllocation> trafficAllocation = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = identifier();
+                    break;
+                case "key":
+                    key = identifier();
+                    break;
+                case "status":
+                    status = string();
+                    break;
+                case "layerId":
+                    layerId = identifier();
+                    break;
+                case "audienceIds":
+                    audienceIds = readIdentifiers();
+                    break;
+                case "audienceConditions":
+                    audienceConditions = readCondition(AudienceIdCondition.class);
+                    break;
+                case "variations":
+                    variations = readVariations();
+                    break;
+                case "forcedVariations":
+                    userIdToVariationKeyMap = readForcedVariations();
+                    break;
+                case "trafficAllocation":
+                    trafficAllocation = readTrafficAllocation();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return new Experiment(id, key, status, layerId, audienceIds, audienceConditions, variations,
+                userIdToVariationKeyMap, trafficAllocation, groupId);
+    }
+
+    private List<Variation> readVariations() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Variation> variations = new ArrayList<Variation>();
+        while (nextElement()) {
+            String id = null;
+            String key = null;
+            Boolean featureEnabled = null;
+            List<LiveVariableUsageInstance> liveVariableUsageInstances = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "featureEnabled":
+                        featureEnabled = nullableBoolean();
+                        break;
+                    case "variables":
+                        liveVariableUsageInstances = readLiveVariableUsageInstances();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            variations.add(new Variation(id, key, featureEnabled, liveVariableUsageInstances));
+        }
+        in.endArray();
+        return variations;
+    }
+
+    private List<LiveVariableUsageInstance> readLiveVariableUsageInstances() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<LiveVariableUsageInstance> liveVariableUsageInstances = new ArrayList<LiveVariableUsageInstance>();
+        while (nextElement()) {
+            String id = null;
+            String value = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("id".equals(name)) {
+                    id = identifier();
+                } else if ("value".equals(name)) {
+                    value = string();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            liveVariableUsageInstances.add(new LiveVariableUsageInstance(id, value));
+        }
+        in.endArray();
+        return liveVariableUsageInstances;
+    }
+
+    private Map<String, String> readForcedVariations() throws IOException {
+        if (in.peek() == JsonTokenSource.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String userId = in.nextName();
+            userIdToVariationKeyMap.put(userId, identifier());
+        }
+        in.endObject();
+        return userIdToVariationKeyMap;
+    }
+
+    private List<TrafficAllocation> readTrafficAllocation() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>();
+        while (nextElement()) {
+            String entityId = null;
+            int endOfRange = 0;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("entityId".equals(name)) {
+                    entityId = identifier();
+                } else if ("endOfRange".equals(name)) {
+                    endOfRange = in.nextInt();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            trafficAllocation.add(new TrafficAllocation(entityId, endOfRange));
+        }
+        in.endArray();
+        return trafficAllocation;
+    }
+
+    private List<Attribute> readAttributes() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        while (nextElement()) {
+            String id = null;
+            String key = null;
+            String segmentId = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "segmentId":
+                        segmentId = identifier();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            attributes.add(new Attribute(id, key, segmentId));
+        }
+        in.endArray();
+        return attributes;
+    }
+
+    private List<EventType> readEvents() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<EventType> events = new ArrayList<EventType>();
+        while (nextElement()) {
+            String id = null;
+            String key = null;
+            List<String> experimentIds = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "experimentIds":
+                        experimentIds = readIdentifiers();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            events.add(new EventType(id, key, experimentIds));
+        }
+        in.endArray();
+        return events;
+    }
+
+    /**
+     * Audiences hold their conditions as a JSON string, typed audiences inline.
+     */
+    private List<Audience> readAudiences(boolean typed) throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Audience> audiences = new ArrayList<Audience>();
+        while (nextElement()) {
+            String id = null;
+            String name = null;
+            Condition conditions = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "name":
+                        name = string();
+                        break;
+                    case "conditions":
+                        if (in.peek() == JsonTokenSource.Token.STRING) {
+                            conditions = readEmbeddedConditions(in.nextString());
+                        } else {
+                            conditions = readCondition(UserAttribute.class);
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            audiences.add(typed ? new TypedAudience(id, name, conditions) : new Audience(id, name, conditions));
+        }
+        in.endArray();
+        return audiences;
+    }
+
+    private Condition readEmbeddedConditions(String conditionsJson) throws IOException {
+        return new ProjectConfigStreamingReader(in.embedded(conditionsJson), interner)
+                .readCondition(UserAttribute.class);
+    }
+
+    private List<Group> readGroups() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Group> groups = new ArrayList<Group>();
+        while (nextElement()) {
+            String id = null;
+            String policy = null;
+            List<Experiment> experiments = null;
+            List<TrafficAllocation> trafficAllocation = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "policy":
+                        policy = string();
+                        break;
+                    case "experiments":
+                        // the group assigns its id to experiments read before it
+                        experiments = readExperiments(id == null ? "" : id);
+                        break;
+                    case "trafficAllocation":
+                        trafficAllocation = readTrafficAllocation();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            groups.add(new Group(id, policy, experiments, trafficAllocation));
+        }
+        in.endArray();
+        return groups;
+    }
+
+    private List<LiveVariable> readLiveVariables() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<LiveVariable> liveVariables = new ArrayList<LiveVariable>();
+        while (nextElement()) {
+            String id = null;
+            String key = null;
+            String defaultValue = null;
+            VariableStatus status = null;
+            VariableType type = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "defaultValue":
+                        defaultValue = string();
+                        break;
+                    case "status":
+                        status = VariableStatus.fromString(string());
+                        break;
+                    case "type":
+                        type = VariableType.fromString(string());
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            liveVariables.add(new LiveVariable(id, key, defaultValue, status, type));
+        }
+        in.endArray();
+        return liveVariables;
+    }
+
+    private List<FeatureFlag> readFeatureFlags() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<FeatureFlag> featureFlags = new ArrayList<FeatureFlag>();
+        while (nextElement()) {
+            String id = null;
+            String key = null;
+            String rolloutId = null;
+            List<String> experimentIds = null;
+            List<LiveVariable> variables = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = identifier();
+                        break;
+                    case "key":
+                        key = identifier();
+                        break;
+                    case "rolloutId":
+                        rolloutId = identifier();
+                        break;
+                    case "experimentIds":
+                        experimentIds = readIdentifiers();
+                        break;
+                    case "variables":
+                        variables = readLiveVariables();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            featureFlags.add(new FeatureFlag(id, key, rolloutId, experimentIds, variables));
+        }
+        in.endArray();
+        return featureFlags;
+    }
+
+    private List<Rollout> readRollouts() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<Rollout> rollouts = new ArrayList<Rollout>();
+        while (nextElement()) {
+            String id = null;
+            List<Experiment> experiments = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("id".equals(name)) {
+                    id = identifier();
+                } else if ("experiments".equals(name)) {
+                    experiments = readExperiments("");
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            rollouts.add(new Rollout(id, experiments));
+        }
+        in.endArray();
+        return rollouts;
+    }
+
+    //======== Conditions ========//
+
+    /**
+     * Same rules as {@link ConditionUtils#parseConditions(Class, Object)}: arrays are (operand-led) lists of
+     * conditions, strings are audience ids and objects are user attributes.
+     */
+    private <T> Condition readCondition(Class<T> clazz) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY:
+                return readConditions(clazz);
+            case STRING:
+                if (clazz != AudienceIdCondition.class) {
+                    throw new InvalidAudienceCondition(String.format("Expected AudienceIdCondition got %s", clazz.getCanonicalName()));
+                }
+                return new AudienceIdCondition<T>(identifier());
+            case BEGIN_OBJECT:
+                if (clazz != UserAttribute.class) {
+                    throw new InvalidAudienceCondition(String.format("Expected UserAttributes got %s", clazz.getCanonicalName()));
+                }
+                return readUserAttribute();
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+
+    private <T> Condition readConditions(Class<T> clazz) throws IOException {
+        List<Condition> conditions = new ArrayList<Condition>();
+        String operand = null;
+        boolean empty = true;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (empty) {
+                empty = false;
+                if (in.peek() == JsonTokenSource.Token.STRING) {
+                    String value = in.nextString();
+                    operand = ConditionUtils.operand(value);
+                    if (operand == null) {
+                        conditions.add(stringCondition(clazz, value));
+                    }
+                    continue;
+                }
+            }
+            conditions.add(readCondition(clazz));
+        }
+        in.endArray();
+
+        if (empty) {
+            return new EmptyCondition();
+        }
+        if (operand == null) {
+            operand = "or";
+        }
+
+        switch (operand) {
+            case "and":
+                return new AndCondition(conditions);
+            case "not":
+                return new NotCondition(conditions.isEmpty() ? new NullCondition() : conditions.get(0));
+            default:
+                return new OrCondition(conditions);
+        }
+    }
+
+    /**
+     * A leading string of a conditions list that isn't an operand, which is read before it's known.
+     */
+    private <T> Condition stringCondition(Class<T> clazz, String value) {
+        if (clazz != AudienceIdCondition.class) {
+            throw new InvalidAudienceCondition(String.format("Expected AudienceIdCondition got %s", clazz.getCanonicalName()));
+        }
+        return new AudienceIdCondition<T>(interner.intern(value));
+    }
+
+    private UserAttribute readUserAttribute() throws IOException {
+        String name = null;
+        String type = null;
+        String match = null;
+        Object value = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = string();
+                    break;
+                case "type":
+                    type = string();
+                    break;
+                case "match":
+                    match = string();
+                    break;
+                case "value":
+                    value = readValue();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return new UserAttribute(name, type, match, value);
+    }
+
+    /**
+     * Reads an untyped value the way the json library of the token source binds it to {@link Object}.
+     */
+    private Object readValue() throws IOException {
+        switch (in.peek()) {
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return in.nextNumber();
+            case BOOLEAN:
+                return in.nextBoolean();
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<Object>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(readValue());
+                }
+                in.endArray();
+                return list;
+            case BEGIN_OBJECT:
+                Map<String, Object> map = in.newObjectValue();
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    map.put(name, readValue());
+                }
+                in.endObject();
+                return map;
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+
+    //======== Tokens ========//
+
+    private String string() throws IOException {
+        if (in.peek() == JsonTokenSource.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private Boolean nullableBoolean() throws IOException {
+        if (in.peek() == JsonTokenSource.Token.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextBoolean();
+    }
+
+    private String identifier() throws IOException {
+        return interner.intern(string());
+    }
+
+    private List<String> readIdentifiers() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        List<String> identifiers = new ArrayList<String>();
+        while (in.hasNext()) {
+            identifiers.add(identifier());
+        }
+        in.endArray();
+        return identifiers;
+    }
+
+    /**
+     * @return false for a null array
+     */
+    private boolean beginArray() throws IOException {
+        if (in.peek() == JsonTokenSource.Token.NULL) {
+            in.nextNull();
+            return false;
+        }
+        in.beginArray();
+        return true;
+    }
+
+    /**
+     * Moves to the next element of an array of objects, skipping nulls.
+     *
+     * @return false at the end of the array
+     */
+    private boolean nextElement() throws IOException {
+        while (in.hasNext()) {
+            if (in.peek() != JsonTokenSource.Token.NULL) {
+                return true;
+            }
+            in.nextNull();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.internal.payload.Attribute;
+import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.event.internal.payload.Snapshot;
+import com.optimizely.ab.event.internal.payload.Visitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EventHandler} that collects the visitors of the events it's given into one {@link EventBatch} per account,
+ * project, revision and endpoint, and passes the batches to another event handler.
+ * <p>
+ * Snapshots of the same visitor, with the same attributes, are merged into that visitor. A batch is passed on once it
+ * has {@code batchSize} snapshots, once its first event is {@code flushInterval} old, or when the handler is flushed
+ * or closed. Events without a batch to merge are passed on as they are.
+ *
+ * Example:
+ * <pre>
+ *     BatchEventHandler eventHandler = new BatchEventHandler(new AsyncEventHandler(1000, 2));
+ *     Optimizely optimizely = Optimizely.builder(datafile, eventHandler).build();
+ *     ...
+ *     eventHandler.close();
+ * </pre>
+ */
+@ThreadSafe
+public class BatchEventHandler implements EventHandler, Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 10;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchEventHandler.class);
+
+    private final EventHandler eventHandler;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // guarded by this
+    private final Map<BatchKey, PendingBatch> pendingBatches = new LinkedHashMap<BatchKey, PendingBatch>();
+    private boolean closed;
+
+    public BatchEventHandler(@Nonnull EventHandler eventHandler) {
+        this(eventHandler, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param eventHandler the event handler batches are passed to
+     * @param batchSize the number of snapshots a batch is passed on at
+     * @param flushInterval how long after its first event a batch is passed on at the latest
+     * @param unit the time unit of the flush interval
+     */
+    public BatchEventHandler(@Nonnull EventHandler eventHandler, int batchSize, long flushInterval,
+                             @Nonnull TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be > 0");
+        }
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("flush interval must be > 0");
+        }
+
+        this.eventHandler = eventHandler;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = unit.toMillis(flushInterval);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new FlushThreadFactory());
+        // batches passed on by size cancel their flush, which shouldn't keep them referenced until it was due
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void dispatchEvent(LogEvent logEvent) {
+        EventBatch eventBatch = logEvent.getEventBatch();
+        if (eventBatch == null || eventBatch.getVisitors() == null) {
+            dispatch(logEvent);
+            return;
+        }
+
+        BatchKey key = new BatchKey(logEvent, eventBatch);
+        boolean batched = false;
+        PendingBatch full = null;
+        synchronized (this) {
+            if (!closed) {
+                PendingBatch batch = pendingBatches.get(key);
+                if (batch == null) {
+                    batch = new PendingBatch(logEvent, eventBatch);
+                    pendingBatches.put(key, batch);
+                    batch.scheduledFlush = scheduleFlush(key, batch);
+                }
+
+                batch.add(eventBatch.getVisitors());
+                if (batch.snapshotCount >= batchSize) {
+                    pendingBatches.remove(key);
+                    batch.scheduledFlush.cancel(false);
+                    full = batch;
+                }
+                batched = true;
+            }
+        }
+
+        if (!batched) {
+            // closed, nothing is held back anymore
+            dispatch(logEvent);
+        } else if (full != null) {
+            dispatch(full.toLogEvent());
+        }
+    }
+
+    /**
+     * Passes every pending batch on, regardless of its size and age.
+     */
+    public void flush() {
+        List<PendingBatch> batches;
+        synchronized (this) {
+            batches = new ArrayList<PendingBatch>(pendingBatches.values());
+            pendingBatches.clear();
+            for (PendingBatch batch : batches) {
+                batch.scheduledFlush.cancel(false);
+            }
+        }
+
+        for (PendingBatch batch : batches) {
+            dispatch(batch.toLogEvent());
+        }
+    }
+
+    /**
+     * Passes every pending batch on and stops the flush timer. Events dispatched afterwards are passed on as they are.
+     * The event handler batches are passed to isn't closed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return the number of snapshots waiting in pending batches
+     */
+    public synchronized int getPendingSnapshotCount() {
+        int count = 0;
+        for (PendingBatch batch : pendingBatches.values()) {
+            count += batch.snapshotCount;
+        }
+        return count;
+    }
+
+    private ScheduledFuture<?> scheduleFlush(final BatchKey key, final PendingBatch batch) {
+        return scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BatchEventHandler.this) {
+                    // the batch may have been passed on, and another started for its key, since this was scheduled
+                    if (pendingBatches.get(key) != batch) {
+                        return;
+                    }
+                    pendingBatches.remove(key);
+                }
+                dispatch(batch.toLogEvent());
+            }
+        }, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void dispatch(LogEvent logEvent) {
+        try {
+            eventHandler.dispatchEvent(logEvent);
+        } catch (Exception e) {
+            logger.error("Unexpected exception in event dispatcher", e);
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * What the events of one batch must have in common: everything about them but their visitors.
+     */
+    private static final class BatchKey {
+        private final List<Object> values;
+        private final int hashCode;
+
+        BatchKey(LogEvent logEvent, EventBatch eventBatch) {
+            values = Arrays.<Object>asList(logEvent.getRequestMethod(), logEvent.getEndpointUrl(),
+                    logEvent.getRequestParams(), eventBatch.getAccountId(), eventBatch.getProjectId(),
+                    eventBatch.getRevision(), eventBatch.getAnonymizeIp(), eventBatch.getClientName(),
+                    eventBatch.getClientVersion());
+            hashCode = values.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof BatchKey && values.equals(((BatchKey) o).values));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A visitor's identity within a batch. Visitors with other attributes are kept apart, since the attributes apply
+     * to all of their snapshots.
+     */
+    private static final class VisitorKey {
+        private final String visitorId;
+        @Nullable private final String sessionId;
+        @Nullable private final List<Attribute> attributes;
+
+        VisitorKey(Visitor visitor) {
+            this.visitorId = visitor.getVisitorId();
+            this.sessionId = visitor.getSessionId();
+            this.attributes = visitor.getAttributes();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VisitorKey)) return false;
+
+            VisitorKey that = (VisitorKey) o;
+            return equal(visitorId, that.visitorId) && equal(sessionId, that.sessionId)
+                    && equal(attributes, that.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = visitorId != null ? visitorId.hashCode() : 0;
+            result = 31 * result + (sessionId != null ? sessionId.hashCode() : 0);
+            result = 31 * result + (attributes != null ? attributes.hashCode() : 0);
+            return result;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The visitors collected for one {@link BatchKey}, and the event they're passed on with. The visitors of the
+     * events given to the handler are copied rather than changed, they may still be referenced by listeners.
+     */
+    private static final class PendingBatch {
+        private final LogEvent first;
+        private final EventBatch firstBatch;
+        private final Map<VisitorKey, Visitor> visitors = new LinkedHashMap<VisitorKey, Visitor>();
+        private int snapshotCount;
+        private ScheduledFuture<?> scheduledFlush;
+
+        PendingBatch(LogEvent first, EventBatch firstBatch) {
+            this.first = first;
+            this.firstBatch = firstBatch;
+        }
+
+        void add(List<Visitor> added) {
+            for (Visitor visitor : added) {
+                List<Snapshot> snapshots = visitor.getSnapshots() == null
+                        ? Collections.<Snapshot>emptyList() : visitor.getSnapshots();
+                VisitorKey key = new VisitorKey(visitor);
+                Visitor merged = visitors.get(key);
+                if (merged == null) {
+                    merged = new Visitor.Builder()
+                            .setVisitorId(visitor.getVisitorId())
+                            .setSessionId(visitor.getSessionId())
+                            .setAttributes(visitor.getAttributes())
+                            .setSnapshots(new ArrayList<Snapshot>(snapshots))
+                            .build();
+                    visitors.put(key, merged);
+                } else {
+                    merged.getSnapshots().addAll(snapshots);
+                }
+                snapshotCount += snapshots.size();
+            }
+        }
+
+        LogEvent toLogEvent() {
+            EventBatch eventBatch = new EventBatch.Builder()
+                    .setClientName(firstBatch.getClientName())
+                    .setClientVersion(firstBatch.getClientVersion())
+                    .setAccountId(firstBatch.getAccountId())
+                    .setVisitors(new ArrayList<Visitor>(visitors.values()))
+                    .setAnonymizeIp(firstBatch.getAnonymizeIp())
+                    .setProjectId(firstBatch.getProjectId())
+                    .setRevision(firstBatch.getRevision())
+                    .build();
+
+            return new LogEvent(first.getRequestMethod(), first.getEndpointUrl(), first.getRequestParams(),
+                    eventBatch);
+        }
+    }
+
+    private static final class FlushThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "optimizely-batch-event-handler-thread-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -20,6 +20,8 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 import com.optimizely.ab.event.internal.serializer.DefaultJsonSerializer;
 import com.optimizely.ab.event.internal.serializer.Serializer;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -60,6 +62,10 @@ public class LogEvent {
         return requestParams;
     }
 
+    public EventBatch getEventBatch() {
+        return eventBatch;
+    }
+
     public String getBody() {
         if (eventBatch == null) {
             return "";
@@ -69,6 +75,22 @@ public class LogEvent {
         return serializer.serialize(eventBatch);
     }
 
+    /**
+     * Writes the body to the stream as UTF-8 encoded JSON, serializing the event batch straight into it rather than
+     * through {@link #getBody()}. Nothing is written when there's no event batch.
+     *
+     * @param out the stream to write the body to, which is flushed but not closed
+     * @throws IOException if the stream can't be written to
+     */
+    public void writeBody(@Nonnull OutputStream out) throws IOException {
+        if (eventBatch == null) {
+            return;
+        }
+
+        Serializer serializer = DefaultJsonSerializer.getInstance();
+        serializer.serialize(eventBatch, out);
+    }
+
     //======== Overriding method ========//
 
     @Override
@@ -19,6 +19,11 @@ package com.optimizely.ab.event.internal.serializer;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 
 class GsonSerializer implements Serializer {
 
@@ -29,4 +34,20 @@ class GsonSerializer implements Serializer {
     public <T> String serialize(T payload) {
         return gson.toJson(payload);
     }
+
+    public <T> void serialize(T payload, OutputStream out) throws IOException {
+        serialize(payload, SerializationBuffer.writerOf(out));
+    }
+
+    public <T> void serialize(T payload, Writer writer) throws IOException {
+        try {
+            gson.toJson(payload, writer);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new SerializationException("Unable to serialize payload", e);
+        }
+        writer.flush();
+    }
 }
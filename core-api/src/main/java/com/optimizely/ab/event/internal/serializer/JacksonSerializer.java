@@ -17,22 +17,44 @@
 package com.optimizely.ab.event.internal.serializer;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
 class JacksonSerializer implements Serializer {
 
     private final ObjectMapper mapper =
             new ObjectMapper().setPropertyNamingStrategy(
-            PropertyNamingStrategy.SNAKE_CASE);
+            PropertyNamingStrategy.SNAKE_CASE)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
 
     public <T> String serialize(T payload) {
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         try {
             return mapper.writeValueAsString(payload);
         } catch (JsonProcessingException e) {
             throw new SerializationException("Unable to serialize payload", e);
         }
     }
+
+    public <T> void serialize(T payload, OutputStream out) throws IOException {
+        try {
+            mapper.writeValue(out, payload);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Unable to serialize payload", e);
+        }
+    }
+
+    public <T> void serialize(T payload, Writer writer) throws IOException {
+        try {
+            mapper.writeValue(writer, payload);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Unable to serialize payload", e);
+        }
+    }
 }
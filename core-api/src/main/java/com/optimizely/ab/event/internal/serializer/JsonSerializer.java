@@ -18,8 +18,15 @@ package com.optimizely.ab.event.internal.serializer;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
 class JsonSerializer implements Serializer {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     public <T> String serialize(T payload) {
         JSONObject payloadJsonObject = new JSONObject(payload);
         String jsonResponse = payloadJsonObject.toString();
@@ -43,4 +50,15 @@ class JsonSerializer implements Serializer {
 
         return stringBuilder.toString();
     }
+
+    // the field names are only snake cased once the payload is a string, so it's written from that string
+    public <T> void serialize(T payload, OutputStream out) throws IOException {
+        out.write(serialize(payload).getBytes(UTF_8));
+        out.flush();
+    }
+
+    public <T> void serialize(T payload, Writer writer) throws IOException {
+        writer.write(serialize(payload));
+        writer.flush();
+    }
 }
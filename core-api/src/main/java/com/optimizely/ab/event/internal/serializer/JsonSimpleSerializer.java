@@ -26,6 +26,9 @@ import com.optimizely.ab.event.internal.payload.Visitor;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +41,15 @@ class JsonSimpleSerializer implements Serializer {
         return payloadJsonObj.toJSONString();
     }
 
+    public <T> void serialize(T payload, OutputStream out) throws IOException {
+        serialize(payload, SerializationBuffer.writerOf(out));
+    }
+
+    public <T> void serialize(T payload, Writer writer) throws IOException {
+        serializeEventBatch((EventBatch)payload).writeJSONString(writer);
+        writer.flush();
+    }
+
     private JSONObject serializeEventBatch(EventBatch eventBatch) {
         JSONObject jsonObject = new JSONObject();
 
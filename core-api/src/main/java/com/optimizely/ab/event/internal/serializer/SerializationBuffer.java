@@ -0,0 +1,72 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event.internal.serializer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A byte buffer payloads are serialized into one after another, reset in between.
+ * <p>
+ * Serializers that write characters rather than bytes write to the buffer through its UTF-8 writer, which is created
+ * once per buffer rather than for every payload.
+ */
+@NotThreadSafe
+public class SerializationBuffer extends ByteArrayOutputStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // the encoder is written to in many small pieces, which are costly without a buffer in front of it
+    private static final int WRITER_BUFFER_SIZE = 2048;
+
+    private Writer writer;
+
+    public SerializationBuffer(int size) {
+        super(size);
+    }
+
+    /**
+     * @return the writer of UTF-8 encoded characters into the buffer, which is flushed by the serializers
+     */
+    public @Nonnull Writer getWriter() {
+        if (writer == null) {
+            writer = newWriter(this);
+        }
+
+        return writer;
+    }
+
+    /**
+     * @return the buffer's writer if the stream is a buffer, or else a new UTF-8 writer of the stream
+     */
+    static @Nonnull Writer writerOf(@Nonnull OutputStream out) {
+        if (out instanceof SerializationBuffer) {
+            return ((SerializationBuffer) out).getWriter();
+        }
+
+        return newWriter(out);
+    }
+
+    private static Writer newWriter(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, UTF_8), WRITER_BUFFER_SIZE);
+    }
+}
@@ -16,6 +16,23 @@
  */
 package com.optimizely.ab.event.internal.serializer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
 public interface Serializer {
     <T> String serialize(T payload) throws SerializationException;
+
+    /**
+     * Writes the payload to the stream as UTF-8 encoded JSON, without building it as a string first where the json
+     * library allows it. The stream is flushed but not closed. When the json library writes characters, they're
+     * written through the writer of a {@link SerializationBuffer} instead of a new one.
+     */
+    <T> void serialize(T payload, OutputStream out) throws IOException, SerializationException;
+
+    /**
+     * Writes the payload to the writer as JSON, without building it as a string first where the json library allows
+     * it. The writer is flushed but not closed.
+     */
+    <T> void serialize(T payload, Writer writer) throws IOException, SerializationException;
 }
@@ -19,6 +19,8 @@ package com.optimizely.ab.internal;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.CompiledAudiences;
+import com.optimizely.ab.config.audience.CompiledCondition;
 import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.OrCondition;
 import org.slf4j.Logger;
@@ -63,12 +65,39 @@ public final class ExperimentUtils {
     public static boolean isUserInExperiment(@Nonnull ProjectConfig projectConfig,
                                              @Nonnull Experiment experiment,
                                              @Nonnull Map<String, ?> attributes) {
+        return isUserInExperiment(projectConfig, experiment, attributes, null);
+    }
+
+    /**
+     * Determines whether a user satisfies audience conditions for the experiment, evaluating them with the compiled
+     * conditions when given.
+     *
+     * @param projectConfig the current projectConfig
+     * @param experiment the experiment we are evaluating audiences for
+     * @param attributes the attributes of the user
+     * @param compiledAudiences the compiled audience conditions of the project config, or null to interpret them
+     * @return whether the user meets the criteria for the experiment
+     */
+    public static boolean isUserInExperiment(@Nonnull ProjectConfig projectConfig,
+                                             @Nonnull Experiment experiment,
+                                             @Nonnull Map<String, ?> attributes,
+                                             @Nullable CompiledAudiences compiledAudiences) {
+        // skip evaluating audiences that the attributes can't possibly satisfy
+        if (!projectConfig.getAudienceIndex().couldMatch(experiment, attributes)) {
+            return false;
+        }
+
         if (experiment.getAudienceConditions() != null) {
-            Boolean resolveReturn = evaluateAudienceConditions(projectConfig, experiment, attributes);
+            Boolean resolveReturn = compiledAudiences == null ?
+                    evaluateAudienceConditions(projectConfig, experiment, attributes) :
+                    evaluateCompiledAudienceConditions(projectConfig, experiment, attributes, compiledAudiences);
             return resolveReturn == null ? false : resolveReturn;
         }
         else {
-            Boolean resolveReturn = evaluateAudience(projectConfig, experiment, attributes);
+            Boolean resolveReturn = compiledAudiences == null ?
+                    evaluateAudience(projectConfig, experiment, attributes) :
+                    CompiledCondition.toBoolean(compiledAudiences.getAudienceConditions(experiment)
+                            .evaluate(projectConfig, attributes));
             return Boolean.TRUE.equals(resolveReturn);
         }
     }
@@ -111,5 +140,19 @@ public final class ExperimentUtils {
         }
     }
 
+    private static @Nullable Boolean evaluateCompiledAudienceConditions(@Nonnull ProjectConfig projectConfig,
+                                                                        @Nonnull Experiment experiment,
+                                                                        @Nonnull Map<String, ?> attributes,
+                                                                        @Nonnull CompiledAudiences compiledAudiences) {
+        try {
+            return CompiledCondition.toBoolean(compiledAudiences.getAudienceConditions(experiment)
+                    .evaluate(projectConfig, attributes));
+        }
+        catch (Exception e) {
+            logger.error("Condition invalid", e);
+            return null;
+        }
+    }
+
 
 }
@@ -33,11 +33,16 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.concurrent.TimeUnit;
+
 import static com.optimizely.ab.config.ProjectConfigTestUtils.*;
+import static com.optimizely.ab.config.ValidProjectConfigV4.EXPERIMENT_BASIC_EXPERIMENT_KEY;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -107,6 +112,36 @@ public class OptimizelyBuilderTest {
         assertThat(optimizelyClient.getUserProfileService(), is(userProfileService));
     }
 
+    @Test
+    public void withAudienceResultCache() throws Exception {
+        Optimizely optimizelyClient = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+            .withAudienceResultCache(500)
+            .build();
+
+        assertThat(optimizelyClient.audienceResultCache.getMaxSize(), is(500));
+    }
+
+    @Test
+    public void withoutAudienceResultCache() throws Exception {
+        Optimizely optimizelyClient = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+            .build();
+
+        assertNull(optimizelyClient.audienceResultCache);
+    }
+
+    @Test
+    public void withForcedVariationLimits() throws Exception {
+        Optimizely optimizelyClient = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+            .withForcedVariationLimits(1, 0, TimeUnit.MILLISECONDS)
+            .build();
+
+        assertTrue(optimizelyClient.setForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user1", "A"));
+        assertTrue(optimizelyClient.setForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user2", "B"));
+
+        assertNull(optimizelyClient.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user1"));
+        assertThat(optimizelyClient.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user2").getKey(), is("B"));
+    }
+
     @Test
     public void withDefaultClientEngine() throws Exception {
         Optimizely optimizelyClient = Optimizely.builder(validConfigJsonV2(), mockEventHandler)
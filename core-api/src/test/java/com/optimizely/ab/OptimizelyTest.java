@@ -1629,7 +1629,7 @@ public class OptimizelyTest {
         // Force to the first variation for all experiments. However, only a subset of the experiments will actually
         // call get forced.
         for (Experiment experiment : allExperiments) {
-            optimizely.projectConfig.setForcedVariation(experiment.getKey(),
+            optimizely.getProjectConfig().setForcedVariation(experiment.getKey(),
                     testUserId, experiment.getVariations().get(0).getKey());
         }
 
@@ -1653,9 +1653,9 @@ public class OptimizelyTest {
         verify(mockEventHandler).dispatchEvent(any(LogEvent.class));
 
         for (Experiment experiment : allExperiments) {
-            assertEquals(optimizely.projectConfig.getForcedVariation(experiment.getKey(), testUserId), experiment.getVariations().get(0));
-            optimizely.projectConfig.setForcedVariation(experiment.getKey(), testUserId, null);
-            assertNull(optimizely.projectConfig.getForcedVariation(experiment.getKey(), testUserId));
+            assertEquals(optimizely.getProjectConfig().getForcedVariation(experiment.getKey(), testUserId), experiment.getVariations().get(0));
+            optimizely.getProjectConfig().setForcedVariation(experiment.getKey(), testUserId, null);
+            assertNull(optimizely.getProjectConfig().getForcedVariation(experiment.getKey(), testUserId));
         }
 
     }
@@ -2411,7 +2411,7 @@ public class OptimizelyTest {
 
         Map<Experiment, Variation> experimentVariationMap = createExperimentVariationMap(
                 noAudienceProjectConfig,
-                client.decisionService,
+                client.getDecisionService(),
                 eventType.getKey(),
                 genericUserId,
                 Collections.<String, String>emptyMap());
@@ -2926,6 +2926,86 @@ public class OptimizelyTest {
         verify(mockEventHandler).dispatchEvent(logEventToDispatch);
     }
 
+    /**
+     * Verify that activating with compiled audience conditions compiles the experiments' audiences and makes the same
+     * decisions as interpreting them.
+     */
+    @Test
+    public void activateWithCompiledAudienceConditions() throws Exception {
+        assumeTrue(datafileVersion >= 4);
+
+        Optimizely interpreted = Optimizely.builder(validDatafile, mockEventHandler).build();
+        Optimizely compiled = Optimizely.builder(validDatafile, mockEventHandler)
+                .withCompiledAudienceConditions()
+                .build();
+
+        List<Map<String, ?>> sampleAttributes = new ArrayList<Map<String, ?>>();
+        sampleAttributes.add(Collections.<String, Object>emptyMap());
+        sampleAttributes.add(Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, AUDIENCE_GRYFFINDOR_VALUE));
+        sampleAttributes.add(Collections.singletonMap(ATTRIBUTE_BOOLEAN_KEY, true));
+        Map<String, Object> typedAttributes = new HashMap<String, Object>();
+        typedAttributes.put(ATTRIBUTE_BOOLEAN_KEY, true);
+        typedAttributes.put(ATTRIBUTE_INTEGER_KEY, 2);
+        typedAttributes.put(ATTRIBUTE_DOUBLE_KEY, 99.9);
+        sampleAttributes.add(typedAttributes);
+
+        int activations = 0;
+        for (Experiment experiment : validProjectConfig.getExperiments()) {
+            for (Map<String, ?> attributes : sampleAttributes) {
+                Variation expected = interpreted.activate(experiment.getKey(), testUserId, attributes);
+                Variation actual = compiled.activate(experiment.getKey(), testUserId, attributes);
+                assertEquals(experiment.getKey() + " " + attributes,
+                        expected == null ? null : expected.getKey(), actual == null ? null : actual.getKey());
+                if (actual != null) {
+                    activations++;
+                }
+            }
+        }
+
+        assertTrue(activations > 0);
+        assertNull(interpreted.getDecisionService().getCompiledAudiences());
+        assertTrue(compiled.getDecisionService().getCompiledAudiences().size() > 0);
+    }
+
+    /**
+     * Verify that activate listeners are handed a mutable copy of the attributes.
+     */
+    @Test
+    public void activateWithListenerMutableAttributes() throws Exception {
+        Experiment activatedExperiment = noAudienceProjectConfig.getExperiments().get(0);
+        Variation bucketedVariation = activatedExperiment.getVariations().get(0);
+
+        Optimizely optimizely = Optimizely.builder(noAudienceDatafile, mockEventHandler)
+                .withBucketing(mockBucketer)
+                .withConfig(noAudienceProjectConfig)
+                .withErrorHandler(mockErrorHandler)
+                .build();
+
+        when(mockBucketer.bucket(activatedExperiment, testUserId))
+                .thenReturn(bucketedVariation);
+
+        final List<Map<String, ?>> notifiedAttributes = new ArrayList<Map<String, ?>>();
+        optimizely.notificationCenter.addNotificationListener(NotificationCenter.NotificationType.Activate,
+                new ActivateNotificationListener() {
+                    @Override
+                    public void onActivate(@Nonnull Experiment experiment, @Nonnull String userId,
+                                           @Nonnull Map<String, ?> attributes, @Nonnull Variation variation,
+                                           @Nonnull LogEvent event) {
+                        notifiedAttributes.add(attributes);
+                    }
+                });
+
+        Map<String, String> testUserAttributes = Collections.singletonMap("browser_type", "chrome");
+        optimizely.activate(activatedExperiment.getKey(), testUserId, testUserAttributes);
+
+        assertEquals(1, notifiedAttributes.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> attributes = (Map<String, Object>) notifiedAttributes.get(0);
+        assertEquals(testUserAttributes, attributes);
+        attributes.put("browser_type", "firefox");
+        assertEquals("chrome", testUserAttributes.get("browser_type"));
+    }
+
     /**
      * Verify that {@link com.optimizely.ab.notification.NotificationCenter#addNotificationListener(
      * com.optimizely.ab.notification.NotificationCenter.NotificationType,
@@ -4076,27 +4156,31 @@ public class OptimizelyTest {
     }
 
     /**
-     * Verify {@link Optimizely#getEnabledFeatures(String, Map)} calls into
-     * {@link Optimizely#isFeatureEnabled(String, String, Map)} for each featureFlag sending
-     * userId and emptyMap and Mocked {@link Optimizely#isFeatureEnabled(String, String, Map)}
-     * to return false so {@link Optimizely#getEnabledFeatures(String, Map)} will
-     * return empty List of FeatureFlags.
+     * Verify {@link Optimizely#getEnabledFeatures(String, Map)} decides each featureFlag
+     * with the {@link DecisionService} and, with the decision service mocked to return no
+     * variation, returns an empty List of FeatureFlags.
      */
     @Test
-    public void getEnabledFeatureWithMockIsFeatureEnabledToReturnFalse() throws ConfigParseException{
+    public void getEnabledFeatureWithMockDecisionServiceToReturnNoVariation() throws ConfigParseException{
         assumeTrue(datafileVersion >= Integer.parseInt(ProjectConfig.Version.V4.toString()));
 
-        Optimizely spyOptimizely = spy(Optimizely.builder(validDatafile, mockEventHandler)
+        Optimizely optimizely = Optimizely.builder(validDatafile, mockEventHandler)
                 .withConfig(validProjectConfig)
-                .build());
-        doReturn(false).when(spyOptimizely).isFeatureEnabled(
-                any(String.class),
+                .withDecisionService(mockDecisionService)
+                .build();
+        doReturn(new FeatureDecision(null, null, null)).when(mockDecisionService).getVariationForFeature(
+                any(FeatureFlag.class),
                 eq(genericUserId),
-                eq(Collections.<String, String>emptyMap())
+                anyMapOf(String.class, String.class)
         );
-        ArrayList<String> featureFlags = (ArrayList<String>) spyOptimizely.getEnabledFeatures(genericUserId,
+        ArrayList<String> featureFlags = (ArrayList<String>) optimizely.getEnabledFeatures(genericUserId,
                 Collections.<String, String>emptyMap());
         assertTrue(featureFlags.isEmpty());
+        verify(mockDecisionService, times(validProjectConfig.getFeatureFlags().size())).getVariationForFeature(
+                any(FeatureFlag.class),
+                eq(genericUserId),
+                anyMapOf(String.class, String.class)
+        );
     }
 
     /**
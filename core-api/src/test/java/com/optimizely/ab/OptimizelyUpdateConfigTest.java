@@ -0,0 +1,275 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.optimizely.ab.bucketing.DecisionService;
+import com.optimizely.ab.bucketing.UserProfileService;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.event.EventHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static com.optimizely.ab.config.ValidProjectConfigV4.EXPERIMENT_BASIC_EXPERIMENT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link Optimizely#updateDatafile(String)} and {@link Optimizely#updateProjectConfig(ProjectConfig)}.
+ */
+public class OptimizelyUpdateConfigTest {
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock private EventHandler mockEventHandler;
+    @Mock private DecisionService mockDecisionService;
+
+    /**
+     * Verify that updating the datafile swaps the project config and the decision service built for it.
+     */
+    @Test
+    public void updateDatafileSwapsProjectConfig() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV3(), mockEventHandler).build();
+        ProjectConfig previousConfig = optimizely.getProjectConfig();
+        DecisionService previousDecisionService = optimizely.getDecisionService();
+
+        optimizely.updateDatafile(validConfigJsonV4());
+
+        verifyProjectConfig(optimizely.getProjectConfig(), validProjectConfigV4());
+        assertNotSame(previousConfig, optimizely.getProjectConfig());
+        assertNotSame(previousDecisionService, optimizely.getDecisionService());
+        assertTrue(optimizely.getVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user") != null);
+    }
+
+    /**
+     * Verify that an invalid datafile is rejected and the current project config is kept.
+     */
+    @Test
+    public void updateDatafileKeepsConfigWhenInvalid() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build();
+        ProjectConfig previousConfig = optimizely.getProjectConfig();
+
+        try {
+            optimizely.updateDatafile("{\"version\": ");
+            fail("expected the datafile to be rejected");
+        } catch (ConfigParseException e) {
+            // expected
+        }
+
+        assertSame(previousConfig, optimizely.getProjectConfig());
+        assertTrue(optimizely.isValid());
+    }
+
+    /**
+     * Verify that a client created with an invalid datafile becomes valid once it's given a valid one.
+     */
+    @Test
+    public void updateDatafileMakesInvalidClientValid() throws Exception {
+        Optimizely optimizely = Optimizely.builder("invalid", mockEventHandler).build();
+        assertFalse(optimizely.isValid());
+        assertNull(optimizely.getVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user"));
+
+        optimizely.updateDatafile(validConfigJsonV4());
+
+        assertTrue(optimizely.isValid());
+        assertTrue(optimizely.getVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user") != null);
+    }
+
+    /**
+     * Verify that forced variations are carried over to the new project config.
+     */
+    @Test
+    public void updateProjectConfigKeepsForcedVariations() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build();
+        assertTrue(optimizely.setForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user", "B"));
+
+        optimizely.updateProjectConfig(validProjectConfigV4());
+
+        assertEquals("B", optimizely.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user").getKey());
+        assertEquals("B", optimizely.getVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user").getKey());
+    }
+
+    /**
+     * Verify that forced variations set while the config is being swapped are all kept.
+     */
+    @Test
+    public void setForcedVariationDuringUpdatesIsKept() throws Exception {
+        final Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build();
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int thread = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int user = 0; user < 500; user++) {
+                        if (!optimizely.setForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, thread + "-" + user, "B")) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        String v4 = validConfigJsonV4();
+        for (int i = 0; i < 20; i++) {
+            optimizely.updateDatafile(v4);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+        for (int i = 0; i < 4; i++) {
+            for (int user = 0; user < 500; user++) {
+                assertEquals("B", optimizely.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, i + "-" + user).getKey());
+            }
+        }
+    }
+
+    /**
+     * Verify that the given project config is used as is, without forced variations set through the client.
+     */
+    @Test
+    public void updateProjectConfigDoesNotModifyConfig() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withForcedVariationLimits(10, 1, TimeUnit.HOURS)
+                .build();
+        ProjectConfig projectConfig = validProjectConfigV4();
+
+        optimizely.updateProjectConfig(projectConfig);
+        assertTrue(optimizely.setForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user", "B"));
+
+        assertSame(projectConfig, optimizely.getProjectConfig());
+        assertEquals(0, projectConfig.getOverrideIndex().getForcedUserCount());
+        assertNull(projectConfig.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user"));
+    }
+
+    /**
+     * Verify that the project config of a client with a custom decision service can't be updated, since the decision
+     * service would keep deciding with the previous config.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void updateProjectConfigRejectsCustomDecisionService() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withDecisionService(mockDecisionService)
+                .build();
+
+        optimizely.updateProjectConfig(validProjectConfigV4());
+    }
+
+    /**
+     * Verify that calls made while the config is being swapped don't fail.
+     */
+    @Test
+    public void callsDuringUpdatesUseConsistentConfig() throws Exception {
+        final Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build();
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int call = 0; call < 500; call++) {
+                            optimizely.activate(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user" + call);
+                            optimizely.getEnabledFeatures("user" + call, new HashMap<String, Object>());
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        String v3 = validConfigJsonV3();
+        String v4 = validConfigJsonV4();
+        for (int i = 0; i < 20; i++) {
+            optimizely.updateDatafile(i % 2 == 0 ? v3 : v4);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+    }
+
+    /**
+     * Verify that every feature flag of a getEnabledFeatures call is decided against the same config, even when the
+     * config is replaced while the call is deciding them.
+     */
+    @Test
+    public void getEnabledFeaturesUsesOneConfig() throws Exception {
+        String userId = "user";
+        List<String> expected = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build()
+                .getEnabledFeatures(userId, Collections.<String, Object>emptyMap());
+        assumeTrue(expected.size() > 1);
+
+        final String v3 = validConfigJsonV3();
+        final Optimizely[] optimizely = new Optimizely[1];
+        final AtomicBoolean swapped = new AtomicBoolean();
+        UserProfileService swappingUserProfileService = new UserProfileService() {
+            @Override
+            public Map<String, Object> lookup(String userId) throws Exception {
+                // the first lookup, for the first flag with experiments, replaces the config with one without flags
+                if (swapped.compareAndSet(false, true)) {
+                    optimizely[0].updateDatafile(v3);
+                }
+                return null;
+            }
+
+            @Override
+            public void save(Map<String, Object> userProfile) {
+            }
+        };
+        optimizely[0] = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withUserProfileService(swappingUserProfileService)
+                .build();
+
+        List<String> enabled = optimizely[0].getEnabledFeatures(userId, Collections.<String, Object>emptyMap());
+
+        assertTrue(swapped.get());
+        assertEquals(expected, enabled);
+    }
+}
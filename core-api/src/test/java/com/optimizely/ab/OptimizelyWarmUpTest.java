@@ -0,0 +1,153 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import ch.qos.logback.classic.Level;
+import com.optimizely.ab.bucketing.UserProfileService;
+import com.optimizely.ab.event.EventHandler;
+import com.optimizely.ab.event.LogEvent;
+import com.optimizely.ab.internal.LogbackVerifier;
+import com.optimizely.ab.notification.NotificationCenter.NotificationType;
+import com.optimizely.ab.notification.NotificationListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Tests for {@link Optimizely#warmUp(int)}.
+ */
+public class OptimizelyWarmUpTest {
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Rule
+    public LogbackVerifier logbackVerifier = new LogbackVerifier();
+
+    @Mock private EventHandler mockEventHandler;
+    @Mock private UserProfileService mockUserProfileService;
+    @Mock private NotificationListener mockNotificationListener;
+
+    /**
+     * Verify that warming up makes decisions and serializes events without dispatching them or notifying listeners.
+     */
+    @Test
+    public void warmUpDoesNotDispatchEvents() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler).build();
+        optimizely.notificationCenter.addNotificationListener(NotificationType.Activate, mockNotificationListener);
+        optimizely.notificationCenter.addNotificationListener(NotificationType.Track, mockNotificationListener);
+
+        WarmUpResult result = optimizely.warmUp(10);
+
+        int decisionsPerUser = validProjectConfigV4().getExperiments().size()
+                + validProjectConfigV4().getFeatureFlags().size();
+        assertTrue(result.getDecisions() >= 10 * decisionsPerUser);
+        assertTrue(result.getEvents() > 0);
+        assertTrue(result.getDuration(TimeUnit.NANOSECONDS) > 0);
+        verify(mockEventHandler, never()).dispatchEvent(any(LogEvent.class));
+        verifyZeroInteractions(mockNotificationListener);
+    }
+
+    /**
+     * Verify that warming up neither looks up nor saves the synthetic users' profiles.
+     */
+    @Test
+    public void warmUpDoesNotUseUserProfileService() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withUserProfileService(mockUserProfileService)
+                .build();
+
+        optimizely.warmUp(10);
+
+        verifyZeroInteractions(mockUserProfileService);
+    }
+
+    /**
+     * Verify that the synthetic users' audience results aren't added to the shared audience result cache.
+     */
+    @Test
+    public void warmUpDoesNotFillAudienceResultCache() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withAudienceResultCache(100)
+                .build();
+
+        optimizely.warmUp(10);
+
+        assertEquals(0, optimizely.audienceResultCache.size());
+    }
+
+    /**
+     * Verify that the warm-up is summarized in one info line.
+     */
+    @Test
+    public void warmUpLogsSummary() throws Exception {
+        logbackVerifier.expectMessage(Level.INFO, "Warmed up with", times(1));
+
+        Optimizely.builder(validConfigJsonV4(), mockEventHandler).build().warmUp(2);
+    }
+
+    /**
+     * Verify that the builder warms up the instance it builds.
+     */
+    @Test
+    public void builderWarmsUp() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJsonV4(), mockEventHandler)
+                .withWarmUp(5)
+                .build();
+
+        assertTrue(optimizely.isValid());
+        verify(mockEventHandler, never()).dispatchEvent(any(LogEvent.class));
+    }
+
+    /**
+     * Verify that an invalid instance isn't warmed up.
+     */
+    @Test
+    public void warmUpInvalidInstance() throws Exception {
+        Optimizely optimizely = Optimizely.builder("{}", mockEventHandler)
+                .withWarmUp(5)
+                .build();
+
+        assertFalse(optimizely.isValid());
+        WarmUpResult result = optimizely.warmUp(5);
+        assertEquals(0, result.getDecisions());
+        assertEquals(0, result.getEvents());
+    }
+
+    /**
+     * Verify that a negative number of iterations is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void warmUpNegativeIterations() throws Exception {
+        Optimizely.builder(validConfigJsonV4(), mockEventHandler).build().warmUp(-1);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CompactMap}.
+ */
+public class CompactMapTest {
+
+    /**
+     * Verify that small maps, searched linearly, and large maps, searched through their table, look up every key.
+     */
+    @Test
+    public void looksUpKeys() throws Exception {
+        for (int size : new int[] { 1, CompactMap.LINEAR_SCAN_LIMIT, CompactMap.LINEAR_SCAN_LIMIT + 1, 1000 }) {
+            Map<String, Integer> expected = new HashMap<String, Integer>();
+            CompactMap.Builder<Integer> builder = new CompactMap.Builder<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                expected.put("key" + i, i);
+                builder.put("key" + i, i);
+            }
+            CompactMap<Integer> map = builder.build();
+
+            assertEquals(expected, map);
+            assertEquals(expected.hashCode(), map.hashCode());
+            for (int i = 0; i < size; i++) {
+                assertEquals(i, map.indexOf("key" + i));
+                assertEquals(Integer.valueOf(i), map.get("key" + i));
+            }
+            assertNull(map.get("key" + size));
+            assertFalse(map.containsKey(null));
+            assertEquals(CompactMap.NOT_FOUND, map.indexOf(size));
+        }
+    }
+
+    /**
+     * Verify that a key put twice keeps its number and takes the later value.
+     */
+    @Test
+    public void duplicateKeyTakesLaterValue() throws Exception {
+        for (int size : new int[] { 2, 100 }) {
+            CompactMap.Builder<String> builder = new CompactMap.Builder<String>(size);
+            for (int i = 0; i < size; i++) {
+                builder.put("key" + i, "first");
+            }
+            builder.put("key1", "second");
+            CompactMap<String> map = builder.build();
+
+            assertEquals(size, map.size());
+            assertEquals(1, map.indexOf("key1"));
+            assertEquals("second", map.get("key1"));
+        }
+    }
+
+    /**
+     * Verify that the map can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void isReadOnly() throws Exception {
+        CompactMap<String> map = new CompactMap.Builder<String>(1).put("key", "value").build();
+        assertTrue(map.containsKey("key"));
+        map.put("other", "value");
+    }
+}
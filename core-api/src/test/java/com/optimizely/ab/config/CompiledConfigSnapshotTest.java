@@ -0,0 +1,202 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.Optimizely;
+import com.optimizely.ab.event.NoopEventHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV2;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyIdentifiersShared;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CompiledConfigSnapshot}.
+ */
+public class CompiledConfigSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verify that configs of every datafile version are materialized from their snapshot as they were written.
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        verifyProjectConfig(roundTrip(validConfigJsonV2()), validProjectConfigV2());
+        verifyProjectConfig(roundTrip(validConfigJsonV3()), validProjectConfigV3());
+        ProjectConfig actual = roundTrip(validConfigJsonV4());
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    /**
+     * Verify that the config is only materialized once.
+     */
+    @Test
+    public void materializesOnce() throws Exception {
+        File file = folder.newFile();
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build(),
+                validConfigJsonV4(), file);
+
+        CompiledConfigSnapshot snapshot = CompiledConfigSnapshot.open(file);
+        assertEquals("1480511547", snapshot.getRevision());
+        assertTrue(snapshot.matches(validConfigJsonV4()));
+        assertFalse(snapshot.matches(validConfigJsonV3()));
+        assertSame(snapshot.getConfig(), snapshot.getConfig());
+    }
+
+    /**
+     * Verify that loading writes a missing snapshot and then reads the config from it.
+     */
+    @Test
+    public void loadWritesAndReadsSnapshot() throws Exception {
+        File file = new File(folder.getRoot(), "config.bin");
+
+        ProjectConfig parsed = CompiledConfigSnapshot.load(file, validConfigJsonV4());
+        assertTrue(file.isFile());
+        verifyProjectConfig(parsed, validProjectConfigV4());
+
+        ProjectConfig loaded = CompiledConfigSnapshot.load(file, validConfigJsonV4());
+        verifyProjectConfig(loaded, validProjectConfigV4());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    /**
+     * Verify that loading falls back to the datafile, and replaces the snapshot, when its revision doesn't match.
+     */
+    @Test
+    public void loadFallsBackOnRevisionMismatch() throws Exception {
+        File file = folder.newFile();
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(validConfigJsonV3()).build(), file);
+
+        ProjectConfig actual = CompiledConfigSnapshot.load(file, validConfigJsonV4());
+        verifyProjectConfig(actual, validProjectConfigV4());
+        assertEquals("1480511547", CompiledConfigSnapshot.open(file).getRevision());
+    }
+
+    /**
+     * Verify that loading falls back to the datafile, and replaces the snapshot, when the datafile changed without a
+     * new revision.
+     */
+    @Test
+    public void loadFallsBackOnDatafileMismatchOfSameRevision() throws Exception {
+        File file = new File(folder.getRoot(), "config.bin");
+        String datafile = validConfigJsonV4();
+        String changedDatafile = datafile.replace("\"anonymizeIP\": true", "\"anonymizeIP\": false");
+        CompiledConfigSnapshot.load(file, datafile);
+
+        ProjectConfig actual = CompiledConfigSnapshot.load(file, changedDatafile);
+        assertFalse(actual.getAnonymizeIP());
+        assertEquals("1480511547", actual.getRevision());
+        assertTrue(CompiledConfigSnapshot.open(file).matches(changedDatafile));
+        assertFalse(CompiledConfigSnapshot.load(file, changedDatafile).getAnonymizeIP());
+    }
+
+    /**
+     * Verify that a snapshot written without its datafile is never loaded.
+     */
+    @Test
+    public void loadIgnoresSnapshotWithoutDatafile() throws Exception {
+        File file = folder.newFile();
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build(), file);
+        assertFalse(CompiledConfigSnapshot.open(file).matches(validConfigJsonV4()));
+
+        verifyProjectConfig(CompiledConfigSnapshot.load(file, validConfigJsonV4()), validProjectConfigV4());
+        assertTrue(CompiledConfigSnapshot.open(file).matches(validConfigJsonV4()));
+    }
+
+    /**
+     * Verify that loading falls back to the datafile when the snapshot is in another format version.
+     */
+    @Test
+    public void loadFallsBackOnFormatVersionMismatch() throws Exception {
+        File file = folder.newFile();
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build(),
+                validConfigJsonV4(), file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(4);
+            randomAccessFile.writeInt(CompiledConfigSnapshot.FORMAT_VERSION + 1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        CompiledConfigSnapshot snapshot = CompiledConfigSnapshot.open(file);
+        assertEquals(CompiledConfigSnapshot.FORMAT_VERSION + 1, snapshot.getFormatVersion());
+        assertFalse(snapshot.matches(validConfigJsonV4()));
+
+        verifyProjectConfig(CompiledConfigSnapshot.load(file, validConfigJsonV4()), validProjectConfigV4());
+        assertEquals(CompiledConfigSnapshot.FORMAT_VERSION, CompiledConfigSnapshot.open(file).getFormatVersion());
+    }
+
+    /**
+     * Verify that loading falls back to the datafile when the snapshot isn't one.
+     */
+    @Test
+    public void loadFallsBackOnInvalidSnapshot() throws Exception {
+        File file = folder.newFile();
+
+        verifyProjectConfig(CompiledConfigSnapshot.load(file, validConfigJsonV4()), validProjectConfigV4());
+    }
+
+    /**
+     * Verify that an {@link Optimizely} instance started from a snapshot makes the same decisions.
+     */
+    @Test
+    public void optimizelyDecidesFromSnapshot() throws Exception {
+        File file = new File(folder.getRoot(), "config.bin");
+        Optimizely fromDatafile = Optimizely.builder(validConfigJsonV4(), new NoopEventHandler()).build();
+        Optimizely.builder(validConfigJsonV4(), new NoopEventHandler()).withCompiledSnapshot(file).build();
+        assertTrue(file.isFile());
+        Optimizely fromSnapshot = Optimizely.builder(validConfigJsonV4(), new NoopEventHandler())
+                .withCompiledSnapshot(file)
+                .build();
+
+        assertTrue(fromSnapshot.isValid());
+        for (Experiment experiment : fromDatafile.getProjectConfig().getExperiments()) {
+            for (int i = 0; i < 20; i++) {
+                String userId = "user" + i;
+                assertEquals(String.valueOf(fromDatafile.getVariation(experiment.getKey(), userId,
+                                Collections.<String, String>emptyMap())),
+                        String.valueOf(fromSnapshot.getVariation(experiment.getKey(), userId,
+                                Collections.<String, String>emptyMap())));
+            }
+        }
+    }
+
+    private ProjectConfig roundTrip(String datafile) throws Exception {
+        File file = folder.newFile();
+        CompiledConfigSnapshot.write(new ProjectConfig.Builder().withDatafile(datafile).build(), file);
+        return CompiledConfigSnapshot.open(file).getConfig();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Experiment}.
+ */
+public class ExperimentTest {
+
+    /**
+     * Verify that the status string is resolved to an {@link Experiment.ExperimentStatus} once, and that unknown
+     * statuses are neither running nor launched.
+     */
+    @Test
+    public void resolvesExperimentStatus() throws Exception {
+        Experiment running = experiment("Running");
+        assertSame(Experiment.ExperimentStatus.RUNNING, running.getExperimentStatus());
+        assertTrue(running.isRunning());
+        assertTrue(running.isActive());
+        assertFalse(running.isLaunched());
+
+        Experiment launched = experiment("Launched");
+        assertSame(Experiment.ExperimentStatus.LAUNCHED, launched.getExperimentStatus());
+        assertFalse(launched.isRunning());
+        assertTrue(launched.isActive());
+        assertTrue(launched.isLaunched());
+
+        Experiment notStarted = experiment(null);
+        assertEquals("Not started", notStarted.getStatus());
+        assertSame(Experiment.ExperimentStatus.NOT_STARTED, notStarted.getExperimentStatus());
+        assertFalse(notStarted.isActive());
+
+        Experiment unknown = experiment("Scheduled");
+        assertEquals("Scheduled", unknown.getStatus());
+        assertNull(unknown.getExperimentStatus());
+        assertFalse(unknown.isActive());
+    }
+
+    private static Experiment experiment(String status) {
+        return new Experiment("1", "key", status, "2", Collections.<String>emptyList(), null,
+                Collections.<Variation>emptyList(), Collections.<String, String>emptyMap(),
+                Collections.<TrafficAllocation>emptyList());
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ValidProjectConfigV4.EXPERIMENT_BASIC_EXPERIMENT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ForcedVariations}.
+ */
+public class ForcedVariationsTest {
+
+    private ProjectConfig projectConfig;
+    private ForcedVariations forcedVariations;
+    private Experiment experiment;
+
+    @Before
+    public void setUp() throws Exception {
+        projectConfig = new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        forcedVariations = new ForcedVariations();
+        experiment = projectConfig.getExperimentKeyMapping().get(EXPERIMENT_BASIC_EXPERIMENT_KEY);
+    }
+
+    /**
+     * Verify that forced variations are set, replaced and removed, and that users without any are dropped.
+     */
+    @Test
+    public void setsAndRemovesForcedVariations() throws Exception {
+        Variation a = experiment.getVariations().get(0);
+        Variation b = experiment.getVariations().get(1);
+
+        assertNull(forcedVariations.set(experiment, "user", a));
+        assertTrue(forcedVariations.hasForcedVariations("user"));
+        assertSame(a, forcedVariations.get(experiment, "user"));
+
+        assertSame(a, forcedVariations.set(experiment, "user", b));
+        assertSame(b, forcedVariations.get(experiment, "user"));
+
+        assertSame(b, forcedVariations.set(experiment, "user", null));
+        assertNull(forcedVariations.get(experiment, "user"));
+        assertFalse(forcedVariations.hasForcedVariations("user"));
+        assertEquals(0, forcedVariations.getUserCount());
+    }
+
+    /**
+     * Verify that a variation of another experiment is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsVariationsOfOtherExperiments() throws Exception {
+        ProjectConfig v3Config = new ProjectConfig.Builder().withDatafile(validConfigJsonV3()).build();
+        Variation otherVariation = v3Config.getExperiments().get(0).getVariations().get(0);
+
+        forcedVariations.set(experiment, "user", otherVariation);
+    }
+
+    /**
+     * Verify that forced variations apply to every config with the same experiment and variation ids, and to no
+     * other experiment.
+     */
+    @Test
+    public void appliesToEveryConfigWithTheExperiment() throws Exception {
+        forcedVariations.set(experiment, "user", experiment.getVariations().get(1));
+
+        ProjectConfig v4Config = new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        Experiment v4Experiment = v4Config.getExperimentKeyMapping().get(EXPERIMENT_BASIC_EXPERIMENT_KEY);
+        assertSame(v4Experiment.getVariations().get(1), forcedVariations.get(v4Experiment, "user"));
+        assertSame(v4Experiment.getVariations().get(1),
+                v4Config.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user", forcedVariations));
+        assertNull(v4Config.getForcedVariation(EXPERIMENT_BASIC_EXPERIMENT_KEY, "user"));
+
+        ProjectConfig v3Config = new ProjectConfig.Builder().withDatafile(validConfigJsonV3()).build();
+        assertNull(forcedVariations.get(v3Config.getExperiments().get(0), "user"));
+    }
+
+    /**
+     * Verify that users over the size limit are evicted.
+     */
+    @Test
+    public void evictsUsersOverTheLimit() throws Exception {
+        forcedVariations.setLimits(2, ForcedVariations.UNBOUNDED, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10; i++) {
+            forcedVariations.set(experiment, "user" + i, experiment.getVariations().get(0));
+        }
+
+        assertEquals(2, forcedVariations.getUserCount());
+        assertTrue(forcedVariations.hasForcedVariations("user9"));
+    }
+
+    /**
+     * Verify that the users whose forced variations were set least recently are evicted first.
+     */
+    @Test
+    public void evictsLeastRecentlySetUsers() throws Exception {
+        Variation variation = experiment.getVariations().get(0);
+        forcedVariations.setLimits(2, ForcedVariations.UNBOUNDED, TimeUnit.MILLISECONDS);
+        forcedVariations.set(experiment, "user1", variation);
+        forcedVariations.set(experiment, "user2", variation);
+        forcedVariations.set(experiment, "user1", experiment.getVariations().get(1));
+
+        forcedVariations.set(experiment, "user3", variation);
+
+        assertTrue(forcedVariations.hasForcedVariations("user1"));
+        assertFalse(forcedVariations.hasForcedVariations("user2"));
+        assertTrue(forcedVariations.hasForcedVariations("user3"));
+    }
+
+    /**
+     * Verify that each forced variation of a user expires on its own, and that setting one doesn't extend the
+     * others.
+     */
+    @Test
+    public void expiresEachExperimentSeparately() throws Exception {
+        Experiment otherExperiment = projectConfig.getExperimentKeyMapping().get("typed_audience_experiment");
+        forcedVariations.setLimits(ForcedVariations.UNBOUNDED, 100, TimeUnit.MILLISECONDS);
+        forcedVariations.set(experiment, "user", experiment.getVariations().get(0));
+
+        Thread.sleep(60);
+        forcedVariations.set(otherExperiment, "user", otherExperiment.getVariations().get(0));
+        Thread.sleep(60);
+
+        assertNull(forcedVariations.get(experiment, "user"));
+        assertSame(otherExperiment.getVariations().get(0), forcedVariations.get(otherExperiment, "user"));
+        assertEquals(1, forcedVariations.getVariationIds().get("user").size());
+    }
+
+    /**
+     * Verify that forced variations expire after their ttl.
+     */
+    @Test
+    public void expiresForcedVariations() throws Exception {
+        forcedVariations.setLimits(ForcedVariations.UNBOUNDED, 50, TimeUnit.MILLISECONDS);
+        forcedVariations.set(experiment, "user", experiment.getVariations().get(0));
+        assertSame(experiment.getVariations().get(0), forcedVariations.get(experiment, "user"));
+
+        Thread.sleep(100);
+
+        assertNull(forcedVariations.get(experiment, "user"));
+        assertEquals(0, forcedVariations.getUserCount());
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ValidProjectConfigV4.EXPERIMENT_BASIC_EXPERIMENT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OverrideIndex}.
+ */
+public class OverrideIndexTest {
+
+    private ProjectConfig projectConfig;
+    private OverrideIndex overrideIndex;
+    private Experiment experiment;
+
+    @Before
+    public void setUp() throws Exception {
+        projectConfig = new ProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        overrideIndex = projectConfig.getOverrideIndex();
+        experiment = projectConfig.getExperimentKeyMapping().get(EXPERIMENT_BASIC_EXPERIMENT_KEY);
+    }
+
+    /**
+     * Verify that the whitelists of the datafile are indexed and that other users have no overrides.
+     */
+    @Test
+    public void indexesWhitelists() throws Exception {
+        assertTrue(overrideIndex.hasOverrides("Harry Potter"));
+        assertTrue(overrideIndex.hasWhitelistedVariations("Tom Riddle"));
+        assertFalse(overrideIndex.hasOverrides("Ron Weasley"));
+
+        assertEquals(0, overrideIndex.getWhitelistedVariationIndex(experiment, "Harry Potter"));
+        assertEquals(1, overrideIndex.getWhitelistedVariationIndex(experiment, "Tom Riddle"));
+        assertEquals(OverrideIndex.NOT_WHITELISTED, overrideIndex.getWhitelistedVariationIndex(experiment, "Ron Weasley"));
+
+        Experiment otherExperiment = new Experiment(experiment.getId(), experiment.getKey(), experiment.getStatus(),
+                experiment.getLayerId(), experiment.getAudienceIds(), null, experiment.getVariations(),
+                Collections.<String, String>emptyMap(), experiment.getTrafficAllocation());
+        assertEquals(OverrideIndex.NOT_INDEXED, overrideIndex.getWhitelistedVariationIndex(otherExperiment, "Harry Potter"));
+    }
+
+    /**
+     * Verify that forced variations set through the index are kept in its forced variations.
+     */
+    @Test
+    public void keepsForcedVariationsOfTheConfig() throws Exception {
+        Variation variation = experiment.getVariations().get(0);
+
+        assertNull(overrideIndex.setForcedVariation(experiment, "user", variation));
+        assertTrue(overrideIndex.hasOverrides("user"));
+        assertSame(variation, overrideIndex.getForcedVariations().get(experiment, "user"));
+        assertEquals(1, overrideIndex.getForcedUserCount());
+
+        assertSame(variation, overrideIndex.setForcedVariation(experiment, "user", null));
+        assertFalse(overrideIndex.hasOverrides("user"));
+    }
+
+    /**
+     * Verify that forced variations can't be set for an experiment the config doesn't have.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsExperimentsOfOtherConfigs() throws Exception {
+        ProjectConfig v3Config = new ProjectConfig.Builder().withDatafile(validConfigJsonV3()).build();
+        Experiment v3Experiment = v3Config.getExperiments().get(0);
+
+        overrideIndex.setForcedVariation(v3Experiment, "user", v3Experiment.getVariations().get(0));
+    }
+}
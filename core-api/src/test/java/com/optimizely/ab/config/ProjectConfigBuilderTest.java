@@ -4,12 +4,25 @@ import com.optimizely.ab.config.parser.ConfigParseException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.optimizely.ab.config.ProjectConfigTestUtils.invalidProjectConfigV5;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests for {@link com.optimizely.ab.config.ProjectConfig.Builder}.
@@ -18,6 +31,9 @@ public class ProjectConfigBuilderTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void withNullDatafile() throws Exception {
         thrown.expect(ConfigParseException.class);
@@ -50,4 +66,88 @@ public class ProjectConfigBuilderTest {
                 .withDatafile(invalidProjectConfigV5())
                 .build();
     }
+
+    @Test
+    public void withEmptyDatafileBytes() throws Exception {
+        thrown.expect(ConfigParseException.class);
+        new ProjectConfig.Builder()
+                .withDatafileBytes(new byte[0])
+                .build();
+    }
+
+    @Test
+    public void withValidDatafileBytesAndStream() throws Exception {
+        byte[] datafile = validConfigJsonV4().getBytes("UTF-8");
+        verifyProjectConfig(new ProjectConfig.Builder().withDatafileBytes(datafile).build(), validProjectConfigV4());
+        verifyProjectConfig(new ProjectConfig.Builder().withDatafileStream(new ByteArrayInputStream(datafile)).build(),
+                validProjectConfigV4());
+    }
+
+    @Test
+    public void withMappedDatafile() throws Exception {
+        File file = folder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(validConfigJsonV4().getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer datafile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            verifyProjectConfig(new ProjectConfig.Builder().withDatafileBuffer(datafile).build(),
+                    validProjectConfigV4());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Test
+    public void withMappedDatafileAndCompiledSnapshot() throws Exception {
+        ByteBuffer datafile = ByteBuffer.allocateDirect(validConfigJsonV4().length());
+        datafile.put(validConfigJsonV4().getBytes("UTF-8"));
+        datafile.flip();
+        File snapshot = new File(folder.getRoot(), "config.bin");
+
+        ProjectConfig projectConfig = new ProjectConfig.Builder()
+                .withDatafileBuffer(datafile)
+                .withCompiledSnapshot(snapshot)
+                .build();
+        verifyProjectConfig(projectConfig, validProjectConfigV4());
+        assertEquals(0, datafile.position());
+        assertEquals("1480511547", CompiledConfigSnapshot.open(snapshot).getRevision());
+    }
+
+    @Test
+    public void withCompiledSnapshotAndPreviousConfig() throws Exception {
+        ProjectConfig previous = new ProjectConfig.Builder()
+                .withDatafile(validConfigJsonV4())
+                .build();
+        File snapshot = new File(folder.getRoot(), "config.bin");
+
+        ProjectConfig projectConfig = new ProjectConfig.Builder()
+                .withDatafile(validConfigJsonV4())
+                .withPreviousConfig(previous)
+                .withCompiledSnapshot(snapshot)
+                .build();
+        verifyProjectConfig(projectConfig, validProjectConfigV4());
+        assertSame(previous.getExperiments().get(0), projectConfig.getExperiments().get(0));
+        assertEquals("1480511547", CompiledConfigSnapshot.open(snapshot).getRevision());
+    }
+
+    @Test
+    public void withParsingPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ProjectConfig projectConfig = new ProjectConfig.Builder()
+                    .withDatafile(validConfigJsonV4())
+                    .withParsingPool(pool)
+                    .build();
+            verifyProjectConfig(projectConfig, validProjectConfigV4());
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,210 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIdCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.internal.ExperimentUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for rebuilding a {@link ProjectConfig} incrementally from the config of the previous datafile.
+ */
+public class ProjectConfigDiffTest {
+
+    private static final String BOOLEAN_AUDIENCE_ID = "3468206643";
+    private static final String INTEGER_AUDIENCE_ID = "3468206646";
+
+    /**
+     * Verify that rebuilding from an unchanged datafile reuses every entity and the audience indexes.
+     */
+    @Test
+    public void unchangedDatafileReusesEverything() throws Exception {
+        ProjectConfig previous = build(validConfigJsonV4(), null);
+        ProjectConfig actual = build(validConfigJsonV4(), previous);
+
+        verifyProjectConfig(actual, validProjectConfigV4());
+        for (Experiment experiment : actual.getExperiments()) {
+            assertSame(previous.getExperimentIdMapping().get(experiment.getId()), experiment);
+        }
+        for (int i = 0; i < actual.getAudiences().size(); i++) {
+            assertSame(previous.getAudiences().get(i), actual.getAudiences().get(i));
+        }
+        for (int i = 0; i < actual.getTypedAudiences().size(); i++) {
+            assertSame(previous.getTypedAudiences().get(i), actual.getTypedAudiences().get(i));
+        }
+        for (int i = 0; i < actual.getFeatureFlags().size(); i++) {
+            assertSame(previous.getFeatureFlags().get(i), actual.getFeatureFlags().get(i));
+        }
+        for (int i = 0; i < actual.getRollouts().size(); i++) {
+            assertSame(previous.getRollouts().get(i), actual.getRollouts().get(i));
+        }
+        for (int i = 0; i < actual.getGroups().size(); i++) {
+            assertSame(previous.getGroups().get(i), actual.getGroups().get(i));
+        }
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+        assertSame(previous.getAttributeValueIndex(), actual.getAttributeValueIndex());
+    }
+
+    /**
+     * Verify that only a changed experiment is rebuilt.
+     */
+    @Test
+    public void changedExperimentIsRebuilt() throws Exception {
+        JsonObject datafile = parse(validConfigJsonV4());
+        JsonObject basicExperiment = findById(datafile.getAsJsonArray("experiments"), "1323241596");
+        basicExperiment.getAsJsonObject("forcedVariations").addProperty("Harry Potter", "B");
+
+        ProjectConfig previous = build(validConfigJsonV4(), null);
+        ProjectConfig actual = build(datafile.toString(), previous);
+
+        Experiment experiment = actual.getExperimentIdMapping().get("1323241596");
+        assertNotSame(previous.getExperimentIdMapping().get("1323241596"), experiment);
+        assertEquals("B", experiment.getUserIdToVariationKeyMap().get("Harry Potter"));
+        assertSame(previous.getExperimentIdMapping().get("1323241597"), actual.getExperimentIdMapping().get("1323241597"));
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+    }
+
+    /**
+     * Verify that only a changed audience is rebuilt, and that unchanged experiments referring to it evaluate the new
+     * version.
+     */
+    @Test
+    public void changedAudienceIsRebuilt() throws Exception {
+        JsonObject datafile = parse(validConfigJsonV4());
+        JsonObject booleanAudience = findById(datafile.getAsJsonArray("typedAudiences"), BOOLEAN_AUDIENCE_ID);
+        booleanAudience.add("conditions", new JsonParser().parse(
+                "[\"and\", {\"name\": \"booleanKey\", \"type\": \"custom_attribute\", \"match\": \"exact\", \"value\": false}]"));
+
+        ProjectConfig previous = build(validConfigJsonV4(), null);
+        ProjectConfig actual = build(datafile.toString(), previous);
+
+        Audience audience = actual.getAudienceIdMapping().get(BOOLEAN_AUDIENCE_ID);
+        assertNotSame(previous.getAudienceIdMapping().get(BOOLEAN_AUDIENCE_ID), audience);
+        assertSame(previous.getAudienceIdMapping().get(INTEGER_AUDIENCE_ID),
+                actual.getAudienceIdMapping().get(INTEGER_AUDIENCE_ID));
+        assertNotSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+
+        Experiment experiment = actual.getExperimentKeyMapping().get("typed_audience_experiment");
+        assertSame(previous.getExperimentKeyMapping().get("typed_audience_experiment"), experiment);
+        assertTrue(ExperimentUtils.isUserInExperiment(previous, experiment,
+                Collections.singletonMap("booleanKey", true)));
+        assertFalse(ExperimentUtils.isUserInExperiment(actual, experiment,
+                Collections.singletonMap("booleanKey", true)));
+        assertTrue(ExperimentUtils.isUserInExperiment(actual, experiment,
+                Collections.singletonMap("booleanKey", false)));
+    }
+
+    /**
+     * Verify that an experiment reused by the new config evaluates each config's own audience while both configs are
+     * in use, as they are while the config is being swapped.
+     */
+    @Test
+    public void reusedExperimentEvaluatesConcurrentlyAgainstEachConfig() throws Exception {
+        JsonObject datafile = parse(validConfigJsonV4());
+        JsonObject booleanAudience = findById(datafile.getAsJsonArray("typedAudiences"), BOOLEAN_AUDIENCE_ID);
+        booleanAudience.add("conditions", new JsonParser().parse(
+                "[\"and\", {\"name\": \"booleanKey\", \"type\": \"custom_attribute\", \"match\": \"exact\", \"value\": false}]"));
+
+        final ProjectConfig previous = build(validConfigJsonV4(), null);
+        final ProjectConfig actual = build(datafile.toString(), previous);
+        final Experiment experiment = actual.getExperimentKeyMapping().get("typed_audience_experiment");
+        final Map<String, Boolean> attributes = Collections.singletonMap("booleanKey", true);
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final boolean usePrevious = i % 2 == 0;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int call = 0; call < 2000; call++) {
+                        boolean inExperiment = ExperimentUtils.isUserInExperiment(
+                                usePrevious ? previous : actual, experiment, attributes);
+                        if (inExperiment != usePrevious) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+        // the conditions shared by both configs are never bound to either of them
+        for (Object condition : ((OrCondition) experiment.getAudienceConditions()).getConditions()) {
+            assertNull(((AudienceIdCondition) condition).getAudience());
+        }
+    }
+
+    /**
+     * Verify that a config can be rebuilt from the config of a datafile of another version.
+     */
+    @Test
+    public void previousConfigOfAnotherVersion() throws Exception {
+        ProjectConfig previous = build(validConfigJsonV3(), null);
+        ProjectConfig actual = build(validConfigJsonV4(), previous);
+
+        verifyProjectConfig(actual, validProjectConfigV4());
+    }
+
+    private static ProjectConfig build(String datafile, ProjectConfig previousConfig) throws Exception {
+        return new ProjectConfig.Builder()
+                .withDatafile(datafile)
+                .withPreviousConfig(previousConfig)
+                .build();
+    }
+
+    private static JsonObject parse(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+
+    private static JsonObject findById(JsonArray entities, String id) {
+        for (JsonElement entity : entities) {
+            if (id.equals(entity.getAsJsonObject().get("id").getAsString())) {
+                return entity.getAsJsonObject();
+            }
+        }
+        throw new AssertionError("no entity with id " + id);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.categories.ExhaustiveTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the retained size of {@link ProjectConfig} with JOL, for generated datafiles of 1k, 5k and 10k experiments.
+ * Walking the object graphs takes a while, so the measurements only run with the exhaustive tests.
+ */
+public class ProjectConfigFootprintTest {
+
+    private static final int[] EXPERIMENT_COUNTS = { 1000, 5000, 10000 };
+
+    /**
+     * Verify that the entity mappings of the config retain less than the same mappings as hash maps, at each size.
+     */
+    @Test
+    @Category(ExhaustiveTest.class)
+    public void mappingsRetainLessThanHashMaps() throws Exception {
+        for (int experimentCount : EXPERIMENT_COUNTS) {
+            ProjectConfig projectConfig = build(experimentCount);
+            List<Map<String, ?>> mappings = mappings(projectConfig);
+            List<Map<String, ?>> hashMaps = new ArrayList<Map<String, ?>>(mappings.size());
+            for (Map<String, ?> mapping : mappings) {
+                hashMaps.add(new HashMap<String, Object>(mapping));
+            }
+
+            // both layouts reach the same keys and entities, so the difference is the map structure itself
+            long compactSize = GraphLayout.parseInstance(mappings.toArray()).totalSize();
+            long hashMapSize = GraphLayout.parseInstance(hashMaps.toArray()).totalSize();
+            assertTrue(experimentCount + " experiments: " + compactSize + " bytes vs " + hashMapSize + " bytes",
+                    compactSize < hashMapSize);
+        }
+    }
+
+    /**
+     * Verify that the retained size of the config grows linearly with the number of experiments.
+     */
+    @Test
+    @Category(ExhaustiveTest.class)
+    public void retainedSizeGrowsLinearly() throws Exception {
+        long[] sizes = new long[EXPERIMENT_COUNTS.length];
+        for (int i = 0; i < EXPERIMENT_COUNTS.length; i++) {
+            sizes[i] = GraphLayout.parseInstance(build(EXPERIMENT_COUNTS[i])).totalSize();
+        }
+
+        double smallest = (double) sizes[0] / EXPERIMENT_COUNTS[0];
+        for (int i = 1; i < EXPERIMENT_COUNTS.length; i++) {
+            double perExperiment = (double) sizes[i] / EXPERIMENT_COUNTS[i];
+            assertTrue(EXPERIMENT_COUNTS[i] + " experiments: " + perExperiment + " bytes per experiment vs " + smallest,
+                    perExperiment < smallest * 1.25);
+        }
+    }
+
+    /**
+     * Verify that the compact mappings still answer lookups like the getters did.
+     */
+    @Test
+    public void gettersResolveEntities() throws Exception {
+        ProjectConfig projectConfig = build(EXPERIMENT_COUNTS[0]);
+        assertEquals(EXPERIMENT_COUNTS[0], projectConfig.getExperimentKeyMapping().size());
+        for (Experiment experiment : projectConfig.getExperiments()) {
+            assertSame(experiment, projectConfig.getExperimentKeyMapping().get(experiment.getKey()));
+            assertSame(experiment, projectConfig.getExperimentIdMapping().get(experiment.getId()));
+            for (Variation variation : experiment.getVariations()) {
+                assertSame(variation, experiment.getVariationKeyToVariationMap().get(variation.getKey()));
+                assertSame(variation, experiment.getVariationIdToVariationMap().get(variation.getId()));
+            }
+        }
+        assertEquals(null, projectConfig.getExperimentKeyMapping().get("missing"));
+    }
+
+    private static List<Map<String, ?>> mappings(ProjectConfig projectConfig) {
+        List<Map<String, ?>> mappings = new ArrayList<Map<String, ?>>();
+        mappings.add(projectConfig.getExperimentKeyMapping());
+        mappings.add(projectConfig.getExperimentIdMapping());
+        mappings.add(projectConfig.getFeatureKeyMapping());
+        mappings.add(projectConfig.getEventNameMapping());
+        mappings.add(projectConfig.getAudienceIdMapping());
+        for (Experiment experiment : projectConfig.getExperiments()) {
+            mappings.add(experiment.getVariationKeyToVariationMap());
+            mappings.add(experiment.getVariationIdToVariationMap());
+            mappings.add(experiment.getUserIdToVariationKeyMap());
+            for (Variation variation : experiment.getVariations()) {
+                mappings.add(variation.getVariableIdToLiveVariableUsageInstanceMap());
+            }
+        }
+        for (FeatureFlag featureFlag : projectConfig.getFeatureFlags()) {
+            mappings.add(featureFlag.getVariableKeyToLiveVariableMap());
+        }
+
+        return mappings;
+    }
+
+    private static ProjectConfig build(int experimentCount) throws Exception {
+        return new ProjectConfig.Builder().withDatafile(ProjectConfigTestUtils.generatedConfigJson(experimentCount)).build();
+    }
+}
@@ -28,6 +28,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
@@ -66,6 +71,19 @@ public class ProjectConfigTest {
         projectConfig.toString();
     }
 
+    /**
+     * Verify that {@link ProjectConfig#toString()} doesn't build the lazy mappings, and shows them once they're built.
+     */
+    @Test
+    public void toStringShowsOnlyBuiltLazyMappings() throws Exception {
+        ProjectConfig config = ProjectConfigTestUtils.validProjectConfigV3();
+        assertFalse(config.toString().contains("liveVariableIdToExperimentsMapping"));
+
+        config.getLiveVariableIdToExperimentsMapping();
+        assertTrue(config.toString().contains("liveVariableIdToExperimentsMapping"));
+        assertFalse(config.toString().contains("variationToLiveVariableUsageInstanceMapping"));
+    }
+
     /**
      * Asserts that {@link ProjectConfig#getExperimentsForEventKey(String)}
      * returns the respective experiment ids for experiments using an event,
@@ -95,6 +113,51 @@ public class ProjectConfigTest {
         assertThat(actualExperiments, is(expectedExperiments));
     }
 
+    /**
+     * Asserts that {@link ProjectConfig#getRunningExperimentsForEventKey(String)} returns only the running experiments
+     * of the event, resolved once per config.
+     */
+    @Test
+    public void verifyGetRunningExperimentsForEvent() throws Exception {
+        ProjectConfig config = ProjectConfigTestUtils.validProjectConfigV4();
+
+        String eventKey = ValidProjectConfigV4.EVENT_LAUNCHED_EXPERIMENT_ONLY_KEY;
+        assertFalse(config.getExperimentsForEventKey(eventKey).isEmpty());
+        assertTrue(config.getRunningExperimentsForEventKey(eventKey).isEmpty());
+
+        eventKey = ValidProjectConfigV4.EVENT_BASIC_EVENT_KEY;
+        List<Experiment> expected = new ArrayList<Experiment>();
+        for (Experiment experiment : config.getExperimentsForEventKey(eventKey)) {
+            if (experiment.isRunning()) {
+                expected.add(experiment);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, config.getRunningExperimentsForEventKey(eventKey));
+        assertSame(config.getRunningExperimentsForEventKey(eventKey), config.getRunningExperimentsForEventKey(eventKey));
+        assertTrue(config.getRunningExperimentsForEventKey("a_fake_event").isEmpty());
+    }
+
+    /**
+     * Asserts that {@link ProjectConfig#getActiveExperimentsForFeature(FeatureFlag)} returns the active experiments
+     * of the feature in datafile order, and resolves a feature that isn't in the config on the fly.
+     */
+    @Test
+    public void verifyGetActiveExperimentsForFeature() throws Exception {
+        ProjectConfig config = ProjectConfigTestUtils.validProjectConfigV4();
+        FeatureFlag featureFlag = config.getFeatureKeyMapping().get(ValidProjectConfigV4.FEATURE_MUTEX_GROUP_FEATURE_KEY);
+
+        List<Experiment> expected = asList(
+                config.getExperimentIdMapping().get(featureFlag.getExperimentIds().get(0)),
+                config.getExperimentIdMapping().get(featureFlag.getExperimentIds().get(1)));
+        assertEquals(expected, config.getActiveExperimentsForFeature(featureFlag));
+        assertSame(config.getActiveExperimentsForFeature(featureFlag), config.getActiveExperimentsForFeature(featureFlag));
+
+        FeatureFlag copy = new FeatureFlag(featureFlag.getId(), featureFlag.getKey(), featureFlag.getRolloutId(),
+                featureFlag.getExperimentIds(), featureFlag.getVariables());
+        assertEquals(expected, config.getActiveExperimentsForFeature(copy));
+    }
+
     /**
      * Asserts that getAudience returns the respective audience, provided the
      * audience ID parameter is valid.
@@ -191,6 +254,41 @@ public class ProjectConfigTest {
                 is(expectedVariationToLiveVariableUsageInstanceMapping));
     }
 
+    /**
+     * Asserts that the lazily built mappings are built once, even when they're first accessed concurrently.
+     */
+    @Test
+    public void verifyLazyMappingsBuiltOnce() throws Exception {
+        final ProjectConfig config = ProjectConfigTestUtils.validProjectConfigV3();
+        int threadCount = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Object[]>> futures = new ArrayList<Future<Object[]>>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() throws Exception {
+                        barrier.await();
+                        return new Object[] {
+                                config.getLiveVariableIdToExperimentsMapping(),
+                                config.getVariationToLiveVariableUsageInstanceMapping(),
+                                config.getExperimentForVariationId("276")
+                        };
+                    }
+                }));
+            }
+            for (Future<Object[]> future : futures) {
+                Object[] mappings = future.get();
+                assertSame(config.getLiveVariableIdToExperimentsMapping(), mappings[0]);
+                assertSame(config.getVariationToLiveVariableUsageInstanceMapping(), mappings[1]);
+                assertSame(config.getExperimentKeyMapping().get("etag1"), mappings[2]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Asserts that anonymizeIP is set to false if not explicitly passed into the constructor (in the case of V2
      * projects).
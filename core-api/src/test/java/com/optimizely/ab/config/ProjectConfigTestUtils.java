@@ -18,6 +18,8 @@ package com.optimizely.ab.config;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import com.optimizely.ab.config.audience.AndCondition;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.Condition;
@@ -42,6 +44,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -423,6 +426,111 @@ public final class ProjectConfigTestUtils {
         return Resources.toString(Resources.getResource("config/valid-project-config-v4.json"), Charsets.UTF_8);
     }
 
+    /**
+     * @return a generated v4 datafile of experiments with two variations each, every ten of them behind a feature
+     * flag with two variables and an audience
+     */
+    public static String generatedConfigJson(int experimentCount) {
+        JsonObject datafile = new JsonObject();
+        datafile.addProperty("version", "4");
+        datafile.addProperty("projectId", "1");
+        datafile.addProperty("accountId", "1");
+        datafile.addProperty("revision", "1");
+        datafile.addProperty("anonymizeIP", true);
+
+        JsonArray experiments = new JsonArray();
+        JsonArray featureFlags = new JsonArray();
+        JsonArray events = new JsonArray();
+        JsonArray audiences = new JsonArray();
+        JsonArray experimentIds = null;
+        for (int i = 0; i < experimentCount; i++) {
+            String experimentId = String.valueOf(100000 + i);
+            boolean featureTest = i % 10 == 0;
+            if (featureTest) {
+                experimentIds = new JsonArray();
+                JsonObject featureFlag = new JsonObject();
+                featureFlag.addProperty("id", "f" + i);
+                featureFlag.addProperty("key", "feature_" + i);
+                featureFlag.addProperty("rolloutId", "");
+                featureFlag.add("experimentIds", experimentIds);
+                JsonArray variables = new JsonArray();
+                for (int v = 0; v < 2; v++) {
+                    JsonObject variable = new JsonObject();
+                    variable.addProperty("id", "v" + i + "_" + v);
+                    variable.addProperty("key", "variable_" + v);
+                    variable.addProperty("type", "string");
+                    variable.addProperty("defaultValue", "default");
+                    variables.add(variable);
+                }
+                featureFlag.add("variables", variables);
+                featureFlags.add(featureFlag);
+
+                JsonObject audience = new JsonObject();
+                audience.addProperty("id", "a" + i);
+                audience.addProperty("name", "audience_" + i);
+                audience.addProperty("conditions",
+                        "[\"and\", [\"or\", {\"name\": \"plan\", \"type\": \"custom_attribute\", \"value\": \"p" + i + "\"}]]");
+                audiences.add(audience);
+            }
+            experimentIds.add(experimentId);
+
+            JsonObject experiment = new JsonObject();
+            experiment.addProperty("id", experimentId);
+            experiment.addProperty("key", "experiment_" + i);
+            experiment.addProperty("status", "Running");
+            experiment.addProperty("layerId", "l" + i);
+            JsonArray audienceIds = new JsonArray();
+            audienceIds.add(audiences.get(audiences.size() - 1).getAsJsonObject().get("id"));
+            experiment.add("audienceIds", audienceIds);
+            JsonArray variations = new JsonArray();
+            JsonArray trafficAllocation = new JsonArray();
+            for (int v = 0; v < 2; v++) {
+                JsonObject variation = new JsonObject();
+                variation.addProperty("id", experimentId + v);
+                variation.addProperty("key", "variation_" + v);
+                variation.addProperty("featureEnabled", true);
+                JsonArray variableUsages = new JsonArray();
+                for (int u = 0; u < 2; u++) {
+                    JsonObject usage = new JsonObject();
+                    usage.addProperty("id", "v" + (i - i % 10) + "_" + u);
+                    usage.addProperty("value", "value_" + v);
+                    variableUsages.add(usage);
+                }
+                variation.add("variables", variableUsages);
+                variations.add(variation);
+
+                JsonObject allocation = new JsonObject();
+                allocation.addProperty("entityId", experimentId + v);
+                allocation.addProperty("endOfRange", 5000 * (v + 1));
+                trafficAllocation.add(allocation);
+            }
+            experiment.add("variations", variations);
+            experiment.add("trafficAllocation", trafficAllocation);
+            JsonObject forcedVariations = new JsonObject();
+            forcedVariations.addProperty("qa_user_" + i, "variation_0");
+            experiment.add("forcedVariations", forcedVariations);
+            experiments.add(experiment);
+
+            JsonObject event = new JsonObject();
+            event.addProperty("id", "e" + i);
+            event.addProperty("key", "event_" + i);
+            JsonArray eventExperimentIds = new JsonArray();
+            eventExperimentIds.add(experimentId);
+            event.add("experimentIds", eventExperimentIds);
+            events.add(event);
+        }
+
+        datafile.add("experiments", experiments);
+        datafile.add("featureFlags", featureFlags);
+        datafile.add("events", events);
+        datafile.add("audiences", audiences);
+        datafile.add("groups", new JsonArray());
+        datafile.add("attributes", new JsonArray());
+        datafile.add("rollouts", new JsonArray());
+
+        return datafile.toString();
+    }
+
     /**
      * @return the expected {@link ProjectConfig} for the json produced by {@link #validConfigJsonV2()} ()}
      */
@@ -462,6 +570,34 @@ public final class ProjectConfigTestUtils {
         return Resources.toString(Resources.getResource("config/invalid-project-config-v5.json"), Charsets.UTF_8);
     }
 
+    /**
+     * Asserts that the references to experiments, variations and audiences share the instances of their ids.
+     */
+    public static void verifyIdentifiersShared(@Nonnull ProjectConfig actual) {
+        for (EventType eventType : actual.getEventTypes()) {
+            for (String experimentId : eventType.getExperimentIds()) {
+                Experiment experiment = actual.getExperimentIdMapping().get(experimentId);
+                if (experiment != null) {
+                    assertSame(experiment.getId(), experimentId);
+                }
+            }
+        }
+        for (Experiment experiment : actual.getExperiments()) {
+            for (TrafficAllocation allocation : experiment.getTrafficAllocation()) {
+                Variation variation = experiment.getVariationIdToVariationMap().get(allocation.getEntityId());
+                if (variation != null) {
+                    assertSame(variation.getId(), allocation.getEntityId());
+                }
+            }
+            for (String audienceId : experiment.getAudienceIds()) {
+                Audience audience = actual.getAudienceIdMapping().get(audienceId);
+                if (audience != null) {
+                    assertSame(audience.getId(), audienceId);
+                }
+            }
+        }
+    }
+
     /**
      * Asserts that the provided project configs are equivalent.
      */
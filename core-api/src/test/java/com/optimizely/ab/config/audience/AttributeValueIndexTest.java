@@ -0,0 +1,161 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AttributeValueIndex}.
+ */
+public class AttributeValueIndexTest {
+
+    private static final List<UserAttribute> LEAVES = Arrays.asList(
+            new UserAttribute("country", "custom_attribute", "exact", "us"),
+            new UserAttribute("country", "custom_attribute", "exact", "ca"),
+            new UserAttribute("country", "custom_attribute", null, "us"),
+            new UserAttribute("country", "custom_attribute", "substring", "u"),
+            new UserAttribute("version", "custom_attribute", "gt", 2),
+            new UserAttribute("version", "custom_attribute", "gt", 3.5),
+            new UserAttribute("version", "custom_attribute", "lt", 3.5),
+            new UserAttribute("version", "custom_attribute", "lt", 10),
+            new UserAttribute("version", "custom_attribute", "exact", 3.0),
+            new UserAttribute("version", "custom_attribute", "exact", -0.0),
+            new UserAttribute("premium", "custom_attribute", "exact", true),
+            new UserAttribute("premium", "custom_attribute", "exact", false),
+            new UserAttribute("tier", "custom_attribute", "gt", "gold"),
+            new UserAttribute("tier", "custom_attribute", "exact", 2L),
+            new UserAttribute("tier", "other_attribute", "exact", "gold")
+    );
+
+    private static final AttributeValueIndex INDEX = new AttributeValueIndex(Collections.singletonList(
+            new Audience("1", "leaves", new OrCondition(new ArrayList<Condition>(LEAVES)))));
+
+    /**
+     * Verify that only leaves the index can answer without logging are indexed, and that identical leaves
+     * share an entry.
+     */
+    @Test
+    public void indexesSupportedLeaves() {
+        List<Condition> duplicated = new ArrayList<Condition>(LEAVES);
+        duplicated.add(new UserAttribute("country", "custom_attribute", "exact", "us"));
+        AttributeValueIndex index = new AttributeValueIndex(Collections.singletonList(
+                new Audience("1", "leaves", new AndCondition(duplicated))));
+
+        assertEquals(11, index.getLeafCount());
+    }
+
+    /**
+     * Verify that exact string leaves on the same attribute are resolved with one lookup.
+     */
+    @Test
+    public void exactStringLookup() {
+        AttributeValueIndex.LeafResults results = INDEX.evaluate(Collections.singletonMap("country", "us"));
+
+        assertTrue(results.get(LEAVES.get(0)));
+        assertFalse(results.get(LEAVES.get(1)));
+        assertTrue(results.get(LEAVES.get(2)));
+        assertNull(results.get(LEAVES.get(3)));
+    }
+
+    /**
+     * Verify that gt and lt leaves are resolved against their sorted thresholds.
+     */
+    @Test
+    public void rangeLookup() {
+        AttributeValueIndex.LeafResults results = INDEX.evaluate(Collections.singletonMap("version", 3));
+
+        assertTrue(results.get(LEAVES.get(4)));
+        assertFalse(results.get(LEAVES.get(5)));
+        assertTrue(results.get(LEAVES.get(6)));
+        assertTrue(results.get(LEAVES.get(7)));
+        assertTrue(results.get(LEAVES.get(8)));
+        assertFalse(results.get(LEAVES.get(9)));
+    }
+
+    /**
+     * Verify that values of a type the leaf doesn't expect are left to the matchers.
+     */
+    @Test
+    public void mismatchedTypesAreNotAnswered() {
+        AttributeValueIndex.LeafResults results = INDEX.evaluate(Collections.singletonMap("version", "3"));
+
+        assertNull(results.get(LEAVES.get(4)));
+        assertNull(results.get(LEAVES.get(8)));
+        assertNull(INDEX.evaluate(Collections.singletonMap("premium", 1)).get(LEAVES.get(10)));
+    }
+
+    /**
+     * Verify that every indexed result agrees with evaluating the leaf condition itself.
+     */
+    @Test
+    public void indexedResultsMatchConditionEvaluation() {
+        List<Object> values = Arrays.<Object>asList("us", "ca", "gold", "", true, false, 0, -0.0, 2, 2L, 2.0f,
+                3, 3.0, 3.5, 3.6, 10, 11, -1e300, 1e300, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Collections.emptyList());
+
+        int answered = 0;
+        for (String key : Arrays.asList("country", "version", "premium", "tier")) {
+            for (Object value : values) {
+                Map<String, ?> attributes = Collections.singletonMap(key, value);
+                AttributeValueIndex.LeafResults results = INDEX.evaluate(attributes);
+                for (UserAttribute leaf : LEAVES) {
+                    Boolean indexed = results.get(leaf);
+                    if (indexed != null) {
+                        answered++;
+                        assertEquals(leaf + " " + attributes, leaf.evaluate(null, attributes), indexed);
+                    }
+                }
+            }
+        }
+
+        assertTrue(answered > 0);
+    }
+
+    /**
+     * Verify that conditions evaluated against a snapshot give the same results as against the attributes.
+     */
+    @Test
+    public void snapshotEvaluationMatchesConditionEvaluation() throws Exception {
+        ProjectConfig projectConfig = validProjectConfigV4();
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("house", "Gryffindor");
+        attributes.put("integerKey", 2);
+        attributes.put("doubleKey", 99.9);
+        attributes.put("booleanKey", false);
+        Map<String, ?> snapshot = AttributesSnapshot.of(attributes);
+
+        for (Audience audience : projectConfig.getAudienceIdMapping().values()) {
+            assertEquals(audience.getId(),
+                    audience.getConditions().evaluate(null, attributes),
+                    audience.getConditions().evaluate(projectConfig, snapshot));
+        }
+    }
+}
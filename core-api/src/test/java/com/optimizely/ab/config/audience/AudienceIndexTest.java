@@ -0,0 +1,229 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Rollout;
+import com.optimizely.ab.internal.ExperimentUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_BOOLEAN_KEY;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_DOUBLE_KEY;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_HOUSE_KEY;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_INTEGER_KEY;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_NATIONALITY_KEY;
+import static com.optimizely.ab.config.ValidProjectConfigV4.EXPERIMENT_TYPEDAUDIENCE_WITH_AND_EXPERIMENT_KEY;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AudienceIndex}.
+ */
+public class AudienceIndexTest {
+
+    private static ProjectConfig v4ProjectConfig;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        v4ProjectConfig = validProjectConfigV4();
+    }
+
+    private static final Audience EXACT_AUDIENCE = new Audience("1", "exact",
+            new UserAttribute("browser", "custom_attribute", "exact", "chrome"));
+    private static final Audience NUMBER_AUDIENCE = new Audience("2", "number",
+            new UserAttribute("age", "custom_attribute", "exact", 21.0));
+    private static final Audience EXISTS_AUDIENCE = new Audience("3", "exists",
+            new UserAttribute("plan", "custom_attribute", "exists", null));
+    private static final Audience NOT_AUDIENCE = new Audience("4", "not",
+            new NotCondition(new UserAttribute("browser", "custom_attribute", "exact", "chrome")));
+    private static final Audience AND_AUDIENCE = new Audience("5", "and",
+            new AndCondition(Arrays.<Condition>asList(
+                    new NotCondition(new UserAttribute("plan", "custom_attribute", "exists", null)),
+                    new UserAttribute("age", "custom_attribute", "gt", 18))));
+    private static final Audience INVALID_AUDIENCE = new Audience("6", "invalid",
+            new UserAttribute("browser", "custom_attribute", "gt", "chrome"));
+
+    private static final AudienceIndex AUDIENCE_INDEX = new AudienceIndex(Arrays.asList(
+            EXACT_AUDIENCE, NUMBER_AUDIENCE, EXISTS_AUDIENCE, NOT_AUDIENCE, AND_AUDIENCE, INVALID_AUDIENCE));
+
+    /**
+     * Verify that only audiences that don't depend on any attribute are candidates when there are no attributes.
+     */
+    @Test
+    public void candidatesWithoutAttributes() {
+        assertEquals(Collections.singleton(NOT_AUDIENCE.getId()), AUDIENCE_INDEX.getCandidateAudienceIds(null));
+        assertEquals(Collections.singleton(NOT_AUDIENCE.getId()),
+                AUDIENCE_INDEX.getCandidateAudienceIds(Collections.<String, Object>emptyMap()));
+    }
+
+    /**
+     * Verify that exact conditions only make an audience a candidate when the attribute value matches.
+     */
+    @Test
+    public void candidatesForExactValues() {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("browser", "firefox");
+        assertFalse(AUDIENCE_INDEX.isCandidate(EXACT_AUDIENCE.getId(), attributes));
+
+        attributes.put("browser", "chrome");
+        assertTrue(AUDIENCE_INDEX.isCandidate(EXACT_AUDIENCE.getId(), attributes));
+    }
+
+    /**
+     * Verify that numbers of any type are matched against exact conditions by their value.
+     */
+    @Test
+    public void candidatesForExactNumbers() {
+        assertTrue(AUDIENCE_INDEX.isCandidate(NUMBER_AUDIENCE.getId(), Collections.singletonMap("age", 21)));
+        assertTrue(AUDIENCE_INDEX.isCandidate(NUMBER_AUDIENCE.getId(), Collections.singletonMap("age", 21L)));
+        assertTrue(AUDIENCE_INDEX.isCandidate(NUMBER_AUDIENCE.getId(), Collections.singletonMap("age", 21.0f)));
+        assertFalse(AUDIENCE_INDEX.isCandidate(NUMBER_AUDIENCE.getId(), Collections.singletonMap("age", "21")));
+    }
+
+    /**
+     * Verify that presence conditions make an audience a candidate for any non-null value.
+     */
+    @Test
+    public void candidatesForPresentAttributes() {
+        assertTrue(AUDIENCE_INDEX.isCandidate(EXISTS_AUDIENCE.getId(), Collections.singletonMap("plan", "free")));
+        assertFalse(AUDIENCE_INDEX.isCandidate(EXISTS_AUDIENCE.getId(), Collections.singletonMap("plan", null)));
+    }
+
+    /**
+     * Verify that an and condition is indexed by the children it can reason about.
+     */
+    @Test
+    public void candidatesForAndConditions() {
+        assertFalse(AUDIENCE_INDEX.isCandidate(AND_AUDIENCE.getId(), Collections.singletonMap("plan", "free")));
+        assertTrue(AUDIENCE_INDEX.isCandidate(AND_AUDIENCE.getId(), Collections.singletonMap("age", 30)));
+    }
+
+    /**
+     * Verify that audiences which can't be evaluated and unknown audiences are never candidates.
+     */
+    @Test
+    public void invalidAndUnknownAudiencesAreNeverCandidates() {
+        assertFalse(AUDIENCE_INDEX.isCandidate(INVALID_AUDIENCE.getId(), Collections.singletonMap("browser", "chrome")));
+        assertFalse(AUDIENCE_INDEX.isCandidate("unknown", Collections.singletonMap("browser", "chrome")));
+    }
+
+    /**
+     * Verify that a snapshot of the attributes yields the same candidates as the attributes themselves.
+     */
+    @Test
+    public void snapshotCandidatesMatchAttributeCandidates() {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("browser", "chrome");
+        attributes.put("age", 30);
+        Map<String, ?> snapshot = AttributesSnapshot.of(attributes);
+
+        Set<String> candidates = AUDIENCE_INDEX.getCandidateAudienceIds(attributes);
+        for (String audienceId : Arrays.asList("1", "2", "3", "4", "5", "6")) {
+            assertThat(audienceId, AUDIENCE_INDEX.isCandidate(audienceId, snapshot), is(candidates.contains(audienceId)));
+        }
+        assertEquals(attributes, snapshot);
+    }
+
+    /**
+     * Verify that every experiment and rollout rule whose audiences evaluate to true for a set of attributes
+     * could match according to the index of the project config.
+     */
+    @Test
+    public void couldMatchWheneverAudiencesEvaluateToTrue() {
+        List<Experiment> experiments = new ArrayList<Experiment>(v4ProjectConfig.getExperiments());
+        for (Rollout rollout : v4ProjectConfig.getRollouts()) {
+            experiments.addAll(rollout.getExperiments());
+        }
+
+        AudienceIndex audienceIndex = v4ProjectConfig.getAudienceIndex();
+        int candidateCount = 0;
+        int rejectedCount = 0;
+        for (Map<String, ?> attributes : sampleAttributes()) {
+            for (Map<String, ?> userAttributes : Arrays.asList(attributes, AttributesSnapshot.of(attributes))) {
+                for (Experiment experiment : experiments) {
+                    Boolean evaluation = experiment.getAudienceConditions() != null ?
+                            ExperimentUtils.evaluateAudienceConditions(v4ProjectConfig, experiment, userAttributes) :
+                            ExperimentUtils.evaluateAudience(v4ProjectConfig, experiment, userAttributes);
+                    if (audienceIndex.couldMatch(experiment, userAttributes)) {
+                        candidateCount++;
+                    } else {
+                        rejectedCount++;
+                        assertFalse(experiment.getKey() + " " + attributes, Boolean.TRUE.equals(evaluation));
+                    }
+                }
+            }
+        }
+
+        assertTrue(candidateCount > 0);
+        assertTrue(rejectedCount > 0);
+    }
+
+    /**
+     * Verify that an experiment isn't rejected when evaluating its audiences would log a missing or mismatched
+     * attribute, so those diagnostics are kept.
+     */
+    @Test
+    public void couldMatchWhenEvaluationWouldLog() {
+        Experiment experiment = v4ProjectConfig.getExperimentKeyMapping()
+                .get(EXPERIMENT_TYPEDAUDIENCE_WITH_AND_EXPERIMENT_KEY);
+        AudienceIndex audienceIndex = v4ProjectConfig.getAudienceIndex();
+
+        assertTrue(audienceIndex.couldMatch(experiment, Collections.singletonMap(ATTRIBUTE_BOOLEAN_KEY, true)));
+        assertTrue(audienceIndex.couldMatch(experiment,
+                AttributesSnapshot.of(Collections.singletonMap(ATTRIBUTE_BOOLEAN_KEY, true))));
+    }
+
+    private static List<Map<String, ?>> sampleAttributes() {
+        List<Map<String, ?>> samples = new ArrayList<Map<String, ?>>();
+        samples.add(Collections.<String, Object>emptyMap());
+        samples.add(Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, "Gryffindor"));
+        samples.add(Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, "Slytherin"));
+        samples.add(Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, "Hufflepuff"));
+        samples.add(Collections.singletonMap(ATTRIBUTE_NATIONALITY_KEY, "English"));
+        samples.add(Collections.singletonMap(ATTRIBUTE_BOOLEAN_KEY, true));
+        samples.add(Collections.singletonMap(ATTRIBUTE_BOOLEAN_KEY, false));
+        samples.add(Collections.singletonMap(ATTRIBUTE_INTEGER_KEY, 1));
+        samples.add(Collections.singletonMap(ATTRIBUTE_INTEGER_KEY, 2L));
+        samples.add(Collections.singletonMap(ATTRIBUTE_DOUBLE_KEY, 99.9));
+        samples.add(Collections.singletonMap(ATTRIBUTE_DOUBLE_KEY, 100.1));
+
+        Map<String, Object> combined = new HashMap<String, Object>();
+        combined.put(ATTRIBUTE_HOUSE_KEY, "Gryffindor");
+        combined.put(ATTRIBUTE_NATIONALITY_KEY, "English");
+        combined.put(ATTRIBUTE_BOOLEAN_KEY, true);
+        combined.put(ATTRIBUTE_INTEGER_KEY, 3);
+        combined.put(ATTRIBUTE_DOUBLE_KEY, 1.5);
+        samples.add(combined);
+
+        return samples;
+    }
+}
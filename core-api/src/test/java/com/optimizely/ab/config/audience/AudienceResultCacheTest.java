@@ -0,0 +1,163 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AudienceResultCache}.
+ */
+public class AudienceResultCacheTest {
+
+    private static final Audience HOUSE_AUDIENCE = new Audience("100", "house",
+            new UserAttribute("house", "custom_attribute", "exact", "Gryffindor"));
+
+    private ProjectConfig v4ProjectConfig;
+
+    @Before
+    public void setUp() throws IOException {
+        v4ProjectConfig = validProjectConfigV4();
+    }
+
+    /**
+     * Verify that users with the same values for the referenced attributes share a single result.
+     */
+    @Test
+    public void usersShareResultsForReferencedAttributes() {
+        AudienceResultCache cache = new AudienceResultCache();
+        Map<String, Object> first = new HashMap<String, Object>();
+        first.put("house", "Gryffindor");
+        first.put("browser", "chrome");
+        Map<String, Object> second = new HashMap<String, Object>();
+        second.put("house", "Gryffindor");
+        second.put("plan", 3);
+
+        assertEquals(true, evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig, first));
+        assertEquals(true, evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig, second));
+        assertEquals(1, cache.size());
+
+        assertEquals(false, evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig,
+                Collections.singletonMap("house", "Slytherin")));
+        assertEquals(null, evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig,
+                Collections.<String, Object>emptyMap()));
+        assertEquals(null, evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig,
+                Collections.singletonMap("house", null)));
+        assertEquals(4, cache.size());
+    }
+
+    /**
+     * Verify that the cache is dropped when a project config with another revision is used.
+     */
+    @Test
+    public void revisionChangeInvalidatesCache() throws IOException {
+        AudienceResultCache cache = new AudienceResultCache();
+        evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig, Collections.singletonMap("house", "Gryffindor"));
+        evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig, Collections.singletonMap("house", "Slytherin"));
+        assertEquals(2, cache.size());
+
+        evaluate(cache, HOUSE_AUDIENCE, validProjectConfigV4(), Collections.singletonMap("house", "Ravenclaw"));
+        assertEquals(3, cache.size());
+
+        evaluate(cache, HOUSE_AUDIENCE, validProjectConfigV3(), Collections.singletonMap("house", "Gryffindor"));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Verify that the cache doesn't grow past its maximum size.
+     */
+    @Test
+    public void cacheIsBounded() {
+        AudienceResultCache cache = new AudienceResultCache(3);
+        for (int i = 0; i < 20; i++) {
+            evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig, Collections.singletonMap("house", "house" + i));
+            assertTrue(cache.size() <= 3);
+        }
+    }
+
+    /**
+     * Verify that values that may change and audiences that reference other audiences aren't cached.
+     */
+    @Test
+    public void uncacheableValuesAndConditionsBypassCache() {
+        AudienceResultCache cache = new AudienceResultCache();
+        evaluate(cache, HOUSE_AUDIENCE, v4ProjectConfig,
+                Collections.singletonMap("house", new StringBuilder("Gryffindor")));
+        Audience nested = new Audience("101", "nested",
+                new OrCondition(Collections.<Condition>singletonList(new AudienceIdCondition("100"))));
+        evaluate(cache, nested, v4ProjectConfig, Collections.singletonMap("house", "Gryffindor"));
+
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Verify that the audiences of the v4 datafile evaluate through the cache like they do without it.
+     */
+    @Test
+    public void cachedResultsMatchUncachedEvaluation() {
+        AudienceResultCache cache = new AudienceResultCache(50);
+        Random random = new Random(7);
+        List<Object> houses = Arrays.<Object>asList("Gryffindor", "Slytherin", 1, null);
+        List<Object> numbers = Arrays.<Object>asList(0, 1, 2, 1.5, -1.0, "1", null);
+        List<Object> booleans = Arrays.<Object>asList(true, false, "true", null);
+        List<Object> nationalities = Arrays.<Object>asList("English", "French", null);
+
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> attributes = new HashMap<String, Object>();
+            putRandom(attributes, "house", houses, random);
+            putRandom(attributes, "integerKey", numbers, random);
+            putRandom(attributes, "doubleKey", numbers, random);
+            putRandom(attributes, "booleanKey", booleans, random);
+            putRandom(attributes, "nationality", nationalities, random);
+
+            for (Audience audience : v4ProjectConfig.getAudienceIdMapping().values()) {
+                Boolean expected = audience.getConditions().evaluate(v4ProjectConfig, attributes);
+                assertEquals(audience.getId() + " " + attributes, expected,
+                        evaluate(cache, audience, v4ProjectConfig, attributes));
+            }
+        }
+        assertTrue(cache.size() <= 50);
+    }
+
+    private static void putRandom(Map<String, Object> attributes, String key, List<Object> values, Random random) {
+        int index = random.nextInt(values.size() + 1);
+        if (index < values.size()) {
+            attributes.put(key, values.get(index));
+        }
+    }
+
+    private static Boolean evaluate(AudienceResultCache cache,
+                                    Audience audience,
+                                    ProjectConfig config,
+                                    Map<String, ?> attributes) {
+        return AttributesSnapshot.evaluate(audience, config, AttributesSnapshot.of(attributes, cache));
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BatchAudienceEvaluator}.
+ */
+public class BatchAudienceEvaluatorTest {
+
+    private static final int SIZE = 200;
+
+    private static ProjectConfig v4ProjectConfig;
+    private static AttributeColumns columns;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        v4ProjectConfig = validProjectConfigV4();
+
+        Random random = new Random(42);
+        String[] houses = new String[SIZE];
+        double[] integers = new double[SIZE];
+        BitSet integersPresent = new BitSet(SIZE);
+        double[] doubles = new double[SIZE];
+        boolean[] booleans = new boolean[SIZE];
+        BitSet booleansPresent = new BitSet(SIZE);
+        Object[] nationalities = new Object[SIZE];
+        List<String> houseNames = Arrays.asList("Gryffindor", "Slytherin", "Ravenclaw", "Gryffindors", null);
+        List<Object> nationalityValues = Arrays.<Object>asList("English", "French", 1, true, null);
+        for (int i = 0; i < SIZE; i++) {
+            houses[i] = houseNames.get(random.nextInt(houseNames.size()));
+            integers[i] = random.nextInt(4) - 1;
+            integersPresent.set(i, random.nextBoolean());
+            doubles[i] = random.nextInt(5) == 0 ? Double.NaN : random.nextDouble() * 200;
+            booleans[i] = random.nextBoolean();
+            booleansPresent.set(i, random.nextInt(3) != 0);
+            nationalities[i] = nationalityValues.get(random.nextInt(nationalityValues.size()));
+        }
+
+        columns = AttributeColumns.builder(SIZE)
+                .withStrings("house", houses)
+                .withNumbers("integerKey", integers, integersPresent)
+                .withNumbers("doubleKey", doubles)
+                .withBooleans("booleanKey", booleans, booleansPresent)
+                .withObjects("nationality", nationalities)
+                .build();
+    }
+
+    /**
+     * Verify that every audience of the v4 datafile evaluates for each user in the batch like it does one by one.
+     */
+    @Test
+    public void audiencesMatchPerUserEvaluation() {
+        BatchAudienceEvaluator evaluator = new BatchAudienceEvaluator(v4ProjectConfig);
+        for (Audience audience : v4ProjectConfig.getAudienceIdMapping().values()) {
+            assertMatchesPerUserEvaluation(evaluator, audience.getConditions());
+        }
+        for (Experiment experiment : v4ProjectConfig.getExperiments()) {
+            if (experiment.getAudienceConditions() != null) {
+                assertMatchesPerUserEvaluation(evaluator, experiment.getAudienceConditions());
+            }
+        }
+    }
+
+    /**
+     * Verify that leaves whose value doesn't match the type of the column evaluate like they do one by one.
+     */
+    @Test
+    public void mismatchedLeavesMatchPerUserEvaluation() {
+        BatchAudienceEvaluator evaluator = new BatchAudienceEvaluator(null);
+        List<Object> values = Arrays.<Object>asList("Gryffindor", "ff", 1, 1.0, 0.5, true, false, 2L, null);
+        List<String> matches = Arrays.asList(null, "exact", "exists", "substring", "gt", "lt", "unknown");
+        List<String> keys = Arrays.asList("house", "integerKey", "doubleKey", "booleanKey", "nationality", "missing");
+
+        List<Condition> leaves = new ArrayList<Condition>();
+        for (String key : keys) {
+            for (String match : matches) {
+                for (Object value : values) {
+                    leaves.add(new UserAttribute(key, "custom_attribute", match, value));
+                }
+            }
+            leaves.add(new UserAttribute(key, "other_attribute", "exists", null));
+        }
+
+        for (Condition leaf : leaves) {
+            assertMatchesPerUserEvaluation(evaluator, leaf);
+            assertMatchesPerUserEvaluation(evaluator, new NotCondition(leaf));
+        }
+        assertMatchesPerUserEvaluation(evaluator, new AndCondition(leaves.subList(0, 30)));
+        assertMatchesPerUserEvaluation(evaluator, new OrCondition(leaves.subList(60, 120)));
+        assertMatchesPerUserEvaluation(evaluator, new AndCondition(null));
+        assertMatchesPerUserEvaluation(evaluator, new OrCondition(new ArrayList<Condition>()));
+    }
+
+    /**
+     * Verify that the result bitmaps partition the batch.
+     */
+    @Test
+    public void resultBitmapsPartitionTheBatch() {
+        BatchAudienceResult result = new BatchAudienceEvaluator(v4ProjectConfig)
+                .evaluate(new UserAttribute("integerKey", "custom_attribute", "gt", 0), columns);
+
+        BitSet all = result.getMatched();
+        all.or(result.getNotMatched());
+        all.or(result.getNull());
+        assertEquals(SIZE, all.cardinality());
+        assertFalse(result.getMatched().intersects(result.getNull()));
+        assertFalse(result.getNotMatched().intersects(result.getNull()));
+        assertEquals(result.getMatched().cardinality(), result.getMatchedCount());
+        assertTrue(result.getMatchedCount() > 0);
+    }
+
+    /**
+     * Verify that an unknown audience id evaluates to null for the whole batch.
+     */
+    @Test
+    public void unknownAudienceIdIsNull() {
+        BatchAudienceResult result = new BatchAudienceEvaluator(v4ProjectConfig)
+                .evaluate(new AudienceIdCondition("unknown"), columns);
+
+        assertEquals(SIZE, result.getNull().cardinality());
+        assertNull(result.get(0));
+    }
+
+    private static void assertMatchesPerUserEvaluation(BatchAudienceEvaluator evaluator, Condition condition) {
+        BatchAudienceResult result = evaluator.evaluate(condition, columns);
+        for (int row = 0; row < SIZE; row++) {
+            Boolean expected;
+            try {
+                expected = condition.evaluate(v4ProjectConfig, columns.getRow(row));
+            } catch (RuntimeException e) {
+                expected = null;
+            }
+            assertEquals("row " + row, expected, result.get(row));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link CompiledCondition}.
+ */
+public class CompiledConditionTest {
+
+    private static final Condition TRUE_LEAF = new UserAttribute("browser", "custom_attribute", "exact", "chrome");
+    private static final Condition FALSE_LEAF = new UserAttribute("browser", "custom_attribute", "exact", "firefox");
+    private static final Condition NULL_LEAF = new UserAttribute("browser", "custom_attribute", "gt", 1);
+
+    private static final Map<String, Object> ATTRIBUTES = Collections.<String, Object>singletonMap("browser", "chrome");
+
+    private static ProjectConfig v4ProjectConfig;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        v4ProjectConfig = validProjectConfigV4();
+    }
+
+    /**
+     * Verify that conditions are compiled into method handles when they're available.
+     */
+    @Test
+    public void compileUsesMethodHandles() {
+        assertThat(CompiledCondition.compile(TRUE_LEAF), instanceOf(MethodHandleCondition.class));
+    }
+
+    /**
+     * Verify that every and, or and not combination of true, false and null leaves evaluates like the interpreter.
+     */
+    @Test
+    public void junctionsMatchInterpreter() {
+        List<Condition> leaves = Arrays.asList(TRUE_LEAF, FALSE_LEAF, NULL_LEAF);
+        List<Condition> conditions = new ArrayList<Condition>();
+        conditions.add(new AndCondition(Collections.<Condition>emptyList()));
+        conditions.add(new OrCondition(Collections.<Condition>emptyList()));
+        conditions.add(new AndCondition(null));
+        conditions.add(new OrCondition(null));
+        conditions.add(new NotCondition(null));
+        conditions.add(new EmptyCondition());
+        conditions.add(new NullCondition());
+        for (Condition first : leaves) {
+            conditions.add(new NotCondition(first));
+            for (Condition second : leaves) {
+                for (Condition third : leaves) {
+                    List<Condition> children = Arrays.asList(first, second, third);
+                    conditions.add(new AndCondition(children));
+                    conditions.add(new OrCondition(children));
+                    conditions.add(new NotCondition(new AndCondition(Arrays.asList(first, new OrCondition(children)))));
+                }
+            }
+        }
+
+        for (Condition condition : conditions) {
+            assertEvaluatesLikeInterpreter(condition, null, ATTRIBUTES);
+        }
+    }
+
+    /**
+     * Verify that the audience conditions of the v4 datafile, including audience id references, evaluate like the
+     * interpreter.
+     */
+    @Test
+    public void audienceConditionsMatchInterpreter() {
+        List<Map<String, Object>> samples = new ArrayList<Map<String, Object>>();
+        samples.add(Collections.<String, Object>emptyMap());
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("house", "Gryffindor");
+        attributes.put("booleanKey", true);
+        attributes.put("integerKey", 2);
+        attributes.put("doubleKey", 99.9);
+        samples.add(attributes);
+        attributes = new HashMap<String, Object>(attributes);
+        attributes.put("integerKey", "2");
+        attributes.put("nationality", "English");
+        samples.add(attributes);
+
+        for (Map<String, Object> sample : samples) {
+            for (Audience audience : v4ProjectConfig.getAudienceIdMapping().values()) {
+                assertEvaluatesLikeInterpreter(audience.getConditions(), v4ProjectConfig, sample);
+            }
+            for (Experiment experiment : v4ProjectConfig.getExperiments()) {
+                if (experiment.getAudienceConditions() != null) {
+                    assertEvaluatesLikeInterpreter(experiment.getAudienceConditions(), v4ProjectConfig, sample);
+                }
+            }
+        }
+    }
+
+    /**
+     * Verify that audience ids are replaced by the conditions of their audiences, so they're evaluated without
+     * being resolved against the config.
+     */
+    @Test
+    public void audienceIdsAreInlined() {
+        List<Condition> audienceIds = new ArrayList<Condition>();
+        for (String audienceId : v4ProjectConfig.getAudienceIdMapping().keySet()) {
+            audienceIds.add(new AudienceIdCondition(audienceId));
+        }
+        Condition condition = new OrCondition(audienceIds);
+        Map<String, Object> attributes = Collections.<String, Object>singletonMap("house", "Gryffindor");
+
+        CompiledCondition compiled = CompiledCondition.compile(condition, v4ProjectConfig.getAudienceIdMapping());
+
+        assertNull(condition.evaluate(null, attributes));
+        assertEquals(condition.evaluate(v4ProjectConfig, attributes),
+                CompiledCondition.toBoolean(compiled.evaluate(null, attributes)));
+    }
+
+    /**
+     * Verify that an audience referring to itself is resolved when evaluated rather than inlined again.
+     */
+    @Test
+    public void selfReferencingAudienceIsNotInlinedAgain() {
+        Audience audience = new Audience("1", "self", new OrCondition(
+                Collections.<Condition>singletonList(new AudienceIdCondition("1"))));
+
+        CompiledCondition compiled = CompiledCondition.compile(new AudienceIdCondition("1"),
+                Collections.singletonMap("1", audience));
+
+        assertEquals(CompiledCondition.NULL, compiled.evaluate(null, ATTRIBUTES));
+    }
+
+    /**
+     * Verify that inlined audiences are evaluated through the audience result cache of the attributes.
+     */
+    @Test
+    public void inlinedAudiencesUseAudienceResultCache() {
+        Experiment experiment = v4ProjectConfig.getExperimentKeyMapping().get("typed_audience_experiment");
+        AudienceResultCache cache = new AudienceResultCache(100);
+        Map<String, ?> attributes = AttributesSnapshot.of(
+                Collections.<String, Object>singletonMap("house", "Gryffindor"), cache);
+
+        new CompiledAudiences(v4ProjectConfig).getAudienceConditions(experiment).evaluate(v4ProjectConfig, attributes);
+
+        assertTrue(cache.size() > 0);
+    }
+
+    /**
+     * Verify that the interpreter fallback wraps {@link Condition#evaluate}.
+     */
+    @Test
+    public void interpretedConditionMatchesInterpreter() {
+        assertEquals(CompiledCondition.TRUE, CompiledCondition.interpret(TRUE_LEAF).evaluate(null, ATTRIBUTES));
+        assertEquals(CompiledCondition.FALSE, CompiledCondition.interpret(FALSE_LEAF).evaluate(null, ATTRIBUTES));
+        assertEquals(CompiledCondition.NULL, CompiledCondition.interpret(NULL_LEAF).evaluate(null, ATTRIBUTES));
+    }
+
+    private static void assertEvaluatesLikeInterpreter(Condition condition,
+                                                       ProjectConfig projectConfig,
+                                                       Map<String, ?> attributes) {
+        Boolean expected = condition.evaluate(projectConfig, attributes);
+        int actual = CompiledCondition.compile(condition).evaluate(projectConfig, attributes);
+        assertEquals(expected, CompiledCondition.toBoolean(actual));
+        if (projectConfig != null) {
+            actual = CompiledCondition.compile(condition, projectConfig.getAudienceIdMapping())
+                    .evaluate(projectConfig, attributes);
+            assertEquals(expected, CompiledCondition.toBoolean(actual));
+        }
+    }
+}
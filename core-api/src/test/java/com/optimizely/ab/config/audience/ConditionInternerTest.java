@@ -0,0 +1,134 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.ProjectConfig;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link ConditionInterner} and the per-snapshot evaluation of shared conditions.
+ */
+public class ConditionInternerTest {
+
+    /**
+     * Verify that identical leaves and subtrees of different audiences are replaced by a single instance.
+     */
+    @Test
+    public void internSharesIdenticalSubtrees() {
+        List<Audience> audiences = Arrays.asList(
+                new Audience("1", "first", new AndCondition(Arrays.<Condition>asList(
+                        leaf("country", "us"),
+                        new OrCondition(Arrays.<Condition>asList(leaf("tier", "gold"), leaf("tier", "silver")))))),
+                new Audience("2", "second", new NotCondition(
+                        new OrCondition(Arrays.<Condition>asList(leaf("tier", "gold"), leaf("tier", "silver"))))),
+                new Audience("3", "third", leaf("country", "us")));
+
+        ConditionInterner interner = new ConditionInterner();
+        List<Audience> interned = interner.intern(audiences);
+
+        Condition firstOr = ((AndCondition<?>) interned.get(0).getConditions()).getConditions().get(1);
+        Condition secondOr = ((NotCondition<?>) interned.get(1).getConditions()).getCondition();
+        Condition firstLeaf = ((AndCondition<?>) interned.get(0).getConditions()).getConditions().get(0);
+        assertSame(firstOr, secondOr);
+        assertSame(firstLeaf, interned.get(2).getConditions());
+        assertSame(audiences.get(0), interned.get(0));
+        assertNotSame(audiences.get(1), interned.get(1));
+        assertEquals(audiences.get(1).getConditions(), interned.get(1).getConditions());
+        // and, or, not and three distinct leaves
+        assertEquals(6, interner.size());
+    }
+
+    /**
+     * Verify that typed audiences stay typed audiences when their conditions are replaced by shared ones.
+     */
+    @Test
+    public void internKeepsTypedAudiences() {
+        List<Audience> audiences = Arrays.<Audience>asList(
+                new Audience("1", "legacy", leaf("country", "us")),
+                new TypedAudience("2", "typed", new OrCondition(Collections.<Condition>singletonList(
+                        leaf("country", "us")))));
+
+        List<Audience> interned = new ConditionInterner().intern(audiences);
+
+        assertNotSame(audiences.get(1), interned.get(1));
+        assertSame(TypedAudience.class, interned.get(1).getClass());
+        assertEquals(audiences.get(1).getId(), interned.get(1).getId());
+        assertSame(interned.get(0).getConditions(),
+                ((OrCondition<?>) interned.get(1).getConditions()).getConditions().get(0));
+    }
+
+    /**
+     * Verify that the audiences of a project config share identical conditions.
+     */
+    @Test
+    public void projectConfigInternsAudiences() throws Exception {
+        ProjectConfig projectConfig = validProjectConfigV4();
+        ConditionInterner interner = new ConditionInterner();
+        for (Audience audience : projectConfig.getAudienceIdMapping().values()) {
+            assertSame(audience.getConditions(), interner.intern(audience.getConditions()));
+        }
+    }
+
+    /**
+     * Verify that a condition shared by several parents is evaluated only once per snapshot.
+     */
+    @Test
+    public void sharedConditionIsEvaluatedOncePerSnapshot() throws Exception {
+        ProjectConfig projectConfig = validProjectConfigV4();
+        CountingCondition shared = new CountingCondition();
+        Condition root = new AndCondition(Arrays.<Condition>asList(
+                new OrCondition(Arrays.<Condition>asList(shared, leaf("house", "Gryffindor"))),
+                new NotCondition(shared),
+                new OrCondition(Collections.<Condition>singletonList(shared))));
+
+        Map<String, ?> attributes = Collections.singletonMap("house", "Gryffindor");
+        Boolean expected = root.evaluate(projectConfig, attributes);
+        assertEquals(3, shared.count);
+
+        shared.count = 0;
+        Map<String, ?> snapshot = AttributesSnapshot.of(attributes);
+        assertEquals(expected, root.evaluate(projectConfig, snapshot));
+        assertEquals(1, shared.count);
+        assertNull(root.evaluate(projectConfig, snapshot));
+        assertEquals(1, shared.count);
+    }
+
+    private static UserAttribute leaf(String name, String value) {
+        return new UserAttribute(name, "custom_attribute", "exact", value);
+    }
+
+    private static class CountingCondition implements Condition {
+        private int count;
+
+        @Override
+        public Boolean evaluate(ProjectConfig config, Map attributes) {
+            count++;
+            return null;
+        }
+    }
+}
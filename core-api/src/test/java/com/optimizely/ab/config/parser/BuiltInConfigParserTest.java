@@ -0,0 +1,274 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.optimizely.ab.config.ProjectConfig;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.generatedConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV2;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyIdentifiersShared;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BuiltInConfigParser}.
+ */
+public class BuiltInConfigParserTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void parseProjectConfigV2() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV2());
+        ProjectConfig expected = validProjectConfigV2();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV3() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV3());
+        ProjectConfig expected = validProjectConfigV3();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV4() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV4ReusesPreviousConfig() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJsonV4());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4(), previous);
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+        assertSame(previous.getExperiments().get(0), actual.getExperiments().get(0));
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+    }
+
+    @Test
+    public void parseProjectConfigV4SharesIdentifiers() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromBytesStreamAndBuffer() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        byte[] json = validConfigJsonV4().getBytes("UTF-8");
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(json.length);
+        directBuffer.put(json);
+        directBuffer.flip();
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(parser.parseProjectConfig(json, null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(new ByteArrayInputStream(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(ByteBuffer.wrap(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(directBuffer, null), expected);
+        assertEquals(0, directBuffer.position());
+    }
+    @Test
+    public void parseProjectConfigV4InAnyFieldOrder() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode reordered = (ObjectNode) reverseFields(objectMapper.readTree(validConfigJsonV4()));
+        reordered.putObject("unknownField").putArray("nested").add(1).add("\\\"").addNull();
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValueAsString(reordered));
+
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseGeneratedProjectConfigMatchesJackson() throws Exception {
+        String datafile = generatedConfigJson(100);
+        ProjectConfig expected = new JacksonConfigParser(JacksonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+
+        verifyProjectConfig(parser.parseProjectConfig(datafile), expected);
+        verifyProjectConfig(parser.parseProjectConfig(new ByteArrayInputStream(datafile.getBytes("UTF-8")), null),
+                expected);
+    }
+
+    @Test
+    public void parseTypedAudienceValuesMatchJackson() throws Exception {
+        String datafile = "{\"version\": \"4\", \"projectId\": \"1\", \"accountId\": \"1\", \"revision\": \"1\", " +
+                "\"anonymizeIP\": true, \"experiments\": [], \"groups\": [], \"attributes\": [], \"events\": [], " +
+                "\"featureFlags\": [], \"rollouts\": [], \"variables\": [], \"audiences\": [], " +
+                "\"typedAudiences\": [{\"id\": \"1\", \"name\": \"typed\", \"conditions\": [\"and\", " +
+                "{\"name\": \"int\", \"type\": \"custom_attribute\", \"match\": \"gt\", \"value\": 10}, " +
+                "{\"name\": \"long\", \"type\": \"custom_attribute\", \"match\": \"lt\", \"value\": 12345678901}, " +
+                "{\"name\": \"double\", \"type\": \"custom_attribute\", \"match\": \"lt\", \"value\": -1.5e3}, " +
+                "{\"name\": \"map\", \"type\": \"custom_attribute\", \"value\": {\"nested\": [1, true, null]}}]}]}";
+        ProjectConfig expected = new JacksonConfigParser(JacksonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+        ProjectConfig actual = new BuiltInConfigParser().parseProjectConfig(datafile);
+
+        assertEquals(expected.getTypedAudiences().get(0).getConditions(),
+                actual.getTypedAudiences().get(0).getConditions());
+    }
+
+    /**
+     * Verify that content after the datafile results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void trailingContentExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig(validConfigJsonV4() + " {}");
+    }
+
+    /**
+     * Verify that invalid JSON results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void invalidJsonExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig("invalid config");
+    }
+
+    /**
+     * Verify that valid JSON without a required field results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void validJsonRequiredFieldMissingExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig("{\"valid\": \"json\"}");
+    }
+
+    /**
+     * Verify that empty string JSON results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void emptyJsonExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig("");
+    }
+
+    /**
+     * Verify that null JSON results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    @SuppressFBWarnings(value="NP_NONNULL_PARAM_VIOLATION", justification="Testing nullness contract violation")
+    public void nullJsonExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig(null);
+    }
+
+    /**
+     * Verify that the message of a {@link ConfigParseException} only carries an excerpt of a large invalid datafile.
+     */
+    @Test
+    public void invalidJsonExceptionMessageIsBounded() throws Exception {
+        StringBuilder json = new StringBuilder("{\"invalid\": ");
+        for (int i = 0; i < 10000; i++) {
+            json.append("config ");
+        }
+        byte[] bytes = json.toString().getBytes("UTF-8");
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        try {
+            parser.parseProjectConfig(json.toString());
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(bytes, null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(new ByteArrayInputStream(bytes), null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+    }
+
+    private static JsonNode reverseFields(JsonNode node) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<String>();
+            Iterator<String> fieldNames = node.fieldNames();
+            while (fieldNames.hasNext()) {
+                names.add(fieldNames.next());
+            }
+            Collections.reverse(names);
+            ObjectNode reversed = JsonNodeFactory.instance.objectNode();
+            for (String name : names) {
+                reversed.set(name, reverseFields(node.get(name)));
+            }
+            return reversed;
+        }
+        if (node.isArray()) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode element : node) {
+                array.add(reverseFields(element));
+            }
+            return array;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BuiltInJsonReader}.
+ */
+public class BuiltInJsonReaderTest {
+
+    @Test
+    public void readsObjectsAndArrays() throws Exception {
+        BuiltInJsonReader in = new BuiltInJsonReader(
+                " {\"a\" : [1, \"two\", true, false, null, {}, []],\n\t\"b\": {\"c\": -2.5e1}} ");
+
+        in.beginObject();
+        assertEquals("a", in.nextName());
+        in.beginArray();
+        assertEquals(1, in.nextInt());
+        assertEquals("two", in.nextString());
+        assertTrue(in.nextBoolean());
+        assertFalse(in.nextBoolean());
+        in.nextNull();
+        in.beginObject();
+        assertFalse(in.hasNext());
+        in.endObject();
+        in.beginArray();
+        assertFalse(in.hasNext());
+        in.endArray();
+        assertFalse(in.hasNext());
+        in.endArray();
+        assertEquals("b", in.nextName());
+        in.beginObject();
+        assertEquals("c", in.nextName());
+        assertEquals(-25.0, in.nextNumber());
+        in.endObject();
+        in.endObject();
+        assertEquals(BuiltInJsonReader.Token.END_DOCUMENT, in.peek());
+    }
+
+    @Test
+    public void readsNumbersLikeJackson() throws Exception {
+        BuiltInJsonReader in = new BuiltInJsonReader("[0, -7, 2147483648, -9223372036854775808, 18446744073709551616, " +
+                "1.0, 1E3, 100.0]");
+
+        in.beginArray();
+        assertEquals(0, in.nextNumber());
+        assertEquals(-7, in.nextNumber());
+        assertEquals(2147483648L, in.nextNumber());
+        assertEquals(Long.MIN_VALUE, in.nextNumber());
+        assertEquals(new BigInteger("18446744073709551616"), in.nextNumber());
+        assertEquals(1.0, in.nextNumber());
+        assertEquals(1000.0, in.nextNumber());
+        assertEquals(100, in.nextInt());
+        in.endArray();
+    }
+
+    @Test
+    public void readsEscapes() throws Exception {
+        BuiltInJsonReader in = new BuiltInJsonReader("[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\\u20AC\"]");
+
+        in.beginArray();
+        assertEquals("\"\\/\b\f\n\r\t\u00e9\u20ac", in.nextString());
+        in.endArray();
+    }
+
+    @Test
+    public void readsAcrossBufferRefills() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append(i % 10);
+        }
+        String json = "{\"long\": \"" + value + "\", \"escaped\": \"" + value + "\\n" + value + "\", " +
+                "\"number\": 12345678901, \"skipped\": [{\"x\": [\"" + value + "\"]}], \"last\": true}";
+        BuiltInJsonReader in = new BuiltInJsonReader(new OneCharAtATimeReader(json));
+
+        in.beginObject();
+        assertEquals("long", in.nextName());
+        assertEquals(value.toString(), in.nextString());
+        assertEquals("escaped", in.nextName());
+        assertEquals(value + "\n" + value, in.nextString());
+        assertEquals("number", in.nextName());
+        assertEquals(12345678901L, in.nextNumber());
+        assertEquals("skipped", in.nextName());
+        in.skipValue();
+        assertEquals("last", in.nextName());
+        assertTrue(in.nextBoolean());
+        in.endObject();
+        assertEquals(BuiltInJsonReader.Token.END_DOCUMENT, in.peek());
+    }
+
+    @Test
+    public void skipsNestedValues() throws Exception {
+        BuiltInJsonReader in = new BuiltInJsonReader("{\"a\": {\"b\": [1, {\"c\": null}, \"d\"]}, \"e\": 2}");
+
+        in.beginObject();
+        assertEquals("a", in.nextName());
+        in.skipValue();
+        assertEquals("e", in.nextName());
+        assertEquals(2, in.nextInt());
+        in.endObject();
+    }
+
+    @Test(expected = EOFException.class)
+    public void emptyDocument() throws Exception {
+        new BuiltInJsonReader("  ").peek();
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedNumber() throws Exception {
+        BuiltInJsonReader in = new BuiltInJsonReader("[1.2.3]");
+        in.beginArray();
+        in.nextNumber();
+    }
+
+    @Test
+    public void rejectsMalformedJson() throws Exception {
+        assertMalformed("[1,]");
+        assertMalformed("{\"a\": 1,}");
+        assertMalformed("{\"a\" 1}");
+        assertMalformed("{a: 1}");
+        assertMalformed("[tru]");
+        assertMalformed("[nulls]");
+        assertMalformed("[\"unterminated]");
+        assertMalformed("[\"\\x\"]");
+        assertMalformed("[1 2]");
+        assertMalformed("[] []");
+        assertMalformed("['single']");
+    }
+
+    private static void assertMalformed(String json) {
+        BuiltInJsonReader in = new BuiltInJsonReader(json);
+        try {
+            in.skipValue();
+            in.peek();
+        } catch (IOException e) {
+            return;
+        }
+        fail("Expected " + json + " to be malformed");
+    }
+
+    private static final class OneCharAtATimeReader extends Reader {
+        private final StringReader in;
+
+        OneCharAtATimeReader(String value) {
+            this.in = new StringReader(value);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, Math.min(length, 1));
+        }
+
+        @Override
+        public void close() {
+            in.close();
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.optimizely.ab.config.parser;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertTrue;
+
 /**
  * Tests for {@link DefaultConfigParser}.
  */
@@ -27,4 +29,9 @@ public class DefaultConfigParserTest {
     public void createThrowException() throws Exception {
         // FIXME - mdodsworth: hmmm, this isn't going to be the easiest thing to test
     }
+
+    @Test
+    public void getInstanceIsBuiltIn() throws Exception {
+        assertTrue(DefaultConfigParser.getInstance() instanceof BuiltInConfigParser);
+    }
 }
@@ -20,6 +20,8 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.audience.Audience;
@@ -31,17 +33,28 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import static com.optimizely.ab.config.ProjectConfigTestUtils.generatedConfigJson;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyIdentifiersShared;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for {@link GsonConfigParser}.
@@ -78,6 +91,93 @@ public class GsonConfigParserTest {
         verifyProjectConfig(actual, expected);
     }
 
+    @Test
+    public void parseProjectConfigV4ReusesPreviousConfig() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJsonV4());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4(), previous);
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+        assertSame(previous.getExperiments().get(0), actual.getExperiments().get(0));
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+    }
+
+    @Test
+    public void parseProjectConfigV4SharesIdentifiers() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromBytesStreamAndBuffer() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser();
+        byte[] json = validConfigJsonV4().getBytes("UTF-8");
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(json.length);
+        directBuffer.put(json);
+        directBuffer.flip();
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(parser.parseProjectConfig(json, null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(new ByteArrayInputStream(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(ByteBuffer.wrap(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(directBuffer, null), expected);
+        assertEquals(0, directBuffer.position());
+    }
+
+    @Test
+    public void parseProjectConfigTreeMode() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser(GsonConfigParser.Mode.TREE);
+
+        verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV2()), validProjectConfigV2());
+        verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV3()), validProjectConfigV3());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4StreamingInAnyFieldOrder() throws Exception {
+        JsonObject reordered = reverseFields(new JsonParser().parse(validConfigJsonV4())).getAsJsonObject();
+        JsonObject unknownField = new JsonObject();
+        JsonArray nested = new JsonArray();
+        nested.add(new JsonPrimitive(1));
+        unknownField.add("nested", nested);
+        reordered.add("unknownField", unknownField);
+
+        GsonConfigParser parser = new GsonConfigParser(GsonConfigParser.Mode.STREAMING);
+        ProjectConfig actual = parser.parseProjectConfig(reordered.toString());
+
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseGeneratedProjectConfigStreamingMatchesTreeMode() throws Exception {
+        String datafile = generatedConfigJson(100);
+        ProjectConfig expected = new GsonConfigParser(GsonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+        ProjectConfig actual = new GsonConfigParser(GsonConfigParser.Mode.STREAMING).parseProjectConfig(datafile);
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseTypedAudienceValuesStreamingMatchesTreeMode() throws Exception {
+        String datafile = "{\"version\": \"4\", \"projectId\": \"1\", \"accountId\": \"1\", \"revision\": \"1\", " +
+                "\"anonymizeIP\": true, \"experiments\": [], \"groups\": [], \"attributes\": [], \"events\": [], " +
+                "\"featureFlags\": [], \"rollouts\": [], \"variables\": [], \"audiences\": [], " +
+                "\"typedAudiences\": [{\"id\": \"1\", \"name\": \"typed\", \"conditions\": [\"and\", " +
+                "{\"name\": \"int\", \"type\": \"custom_attribute\", \"match\": \"gt\", \"value\": 10}, " +
+                "{\"name\": \"map\", \"type\": \"custom_attribute\", \"value\": {\"nested\": [1, true, null]}}]}]}";
+        ProjectConfig expected = new GsonConfigParser(GsonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+        ProjectConfig actual = new GsonConfigParser(GsonConfigParser.Mode.STREAMING).parseProjectConfig(datafile);
+
+        assertEquals(expected.getTypedAudiences().get(0).getConditions(),
+                actual.getTypedAudiences().get(0).getConditions());
+    }
+
     @Test
     public void parseAudience() throws Exception {
         JsonObject jsonObject = new JsonObject();
@@ -248,4 +348,57 @@ public class GsonConfigParserTest {
         GsonConfigParser parser = new GsonConfigParser();
         parser.parseProjectConfig(null);
     }
+
+    /**
+     * Verify that the message of a {@link ConfigParseException} only carries an excerpt of a large invalid datafile.
+     */
+    @Test
+    public void invalidJsonExceptionMessageIsBounded() throws Exception {
+        StringBuilder json = new StringBuilder("{\"invalid\": ");
+        for (int i = 0; i < 10000; i++) {
+            json.append("config ");
+        }
+        byte[] bytes = json.toString().getBytes("UTF-8");
+
+        GsonConfigParser parser = new GsonConfigParser();
+        try {
+            parser.parseProjectConfig(json.toString());
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(bytes, null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(new ByteArrayInputStream(bytes), null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+    }
+
+    private static JsonElement reverseFields(JsonElement element) {
+        if (element.isJsonObject()) {
+            List<Map.Entry<String, JsonElement>> fields =
+                    new ArrayList<Map.Entry<String, JsonElement>>(element.getAsJsonObject().entrySet());
+            Collections.reverse(fields);
+            JsonObject reversed = new JsonObject();
+            for (Map.Entry<String, JsonElement> field : fields) {
+                reversed.add(field.getKey(), reverseFields(field.getValue()));
+            }
+            return reversed;
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = new JsonArray();
+            for (JsonElement value : element.getAsJsonArray()) {
+                array.add(reverseFields(value));
+            }
+            return array;
+        }
+        return element;
+    }
 }
@@ -16,7 +16,11 @@
  */
 package com.optimizely.ab.config.parser;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.audience.Audience;
@@ -28,14 +32,28 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.generatedConfigJson;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyIdentifiersShared;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for {@link JacksonConfigParser}.
@@ -72,6 +90,137 @@ public class JacksonConfigParserTest {
         verifyProjectConfig(actual, expected);
     }
 
+    @Test
+    public void parseProjectConfigV4ReusesPreviousConfig() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJsonV4());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4(), previous);
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+        assertSame(previous.getExperiments().get(0), actual.getExperiments().get(0));
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+    }
+
+    @Test
+    public void parseProjectConfigV4SharesIdentifiers() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromBytesStreamAndBuffer() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        byte[] json = validConfigJsonV4().getBytes("UTF-8");
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(json.length);
+        directBuffer.put(json);
+        directBuffer.flip();
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(parser.parseProjectConfig(json, null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(new ByteArrayInputStream(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(ByteBuffer.wrap(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(directBuffer, null), expected);
+        assertEquals(0, directBuffer.position());
+    }
+
+    @Test
+    public void parseProjectConfigTreeMode() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser(JacksonConfigParser.Mode.TREE);
+
+        verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV2()), validProjectConfigV2());
+        verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV3()), validProjectConfigV3());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4StreamingInAnyFieldOrder() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode reordered = reverseFields(objectMapper.readTree(validConfigJsonV4()));
+        ((ObjectNode) reordered).putObject("unknownField").putArray("nested").add(1);
+
+        JacksonConfigParser parser = new JacksonConfigParser(JacksonConfigParser.Mode.STREAMING);
+        ProjectConfig actual = parser.parseProjectConfig(objectMapper.writeValueAsString(reordered));
+
+        verifyProjectConfig(actual, validProjectConfigV4());
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseGeneratedProjectConfigStreamingMatchesTreeMode() throws Exception {
+        String datafile = generatedConfigJson(100);
+        ProjectConfig expected = new JacksonConfigParser(JacksonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+        ProjectConfig actual = new JacksonConfigParser(JacksonConfigParser.Mode.STREAMING).parseProjectConfig(datafile);
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigParallelMode() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            JacksonConfigParser parser = new JacksonConfigParser(pool);
+
+            verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV2()), validProjectConfigV2());
+            verifyProjectConfig(parser.parseProjectConfig(validConfigJsonV3()), validProjectConfigV3());
+            ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+            verifyProjectConfig(actual, validProjectConfigV4());
+            verifyIdentifiersShared(actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Verify that parallel mode can't be chosen without the pool to run on, so no parser creates a pool it never
+     * shuts down.
+     */
+    @Test
+    public void parallelModeNeedsPool() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+
+        new JacksonConfigParser(new ObjectMapper(), JacksonConfigParser.Mode.PARALLEL);
+    }
+
+    @Test
+    public void parseGeneratedProjectConfigParallelMatchesTreeMode() throws Exception {
+        String datafile = generatedConfigJson(4 * ProjectConfigJacksonDeserializer.ITEMS_PER_TASK + 1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ProjectConfig expected = new JacksonConfigParser(JacksonConfigParser.Mode.TREE).parseProjectConfig(datafile);
+            ProjectConfig actual = new JacksonConfigParser(pool).parseProjectConfig(datafile);
+
+            verifyProjectConfig(actual, expected);
+            verifyIdentifiersShared(actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Verify that an invalid entity bound on the pool results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void parallelModeExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode datafile = (ObjectNode) objectMapper.readTree(
+                generatedConfigJson(2 * ProjectConfigJacksonDeserializer.ITEMS_PER_TASK));
+        ((ObjectNode) datafile.withArray("audiences").get(0)).put("conditions", "[\"and\", {\"name\": ");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new JacksonConfigParser(pool).parseProjectConfig(objectMapper.writeValueAsString(datafile));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void parseAudience() throws Exception {
         String audienceString =
@@ -244,4 +393,60 @@ public class JacksonConfigParserTest {
         JacksonConfigParser parser = new JacksonConfigParser();
         parser.parseProjectConfig(null);
     }
+
+    /**
+     * Verify that the message of a {@link ConfigParseException} only carries an excerpt of a large invalid datafile.
+     */
+    @Test
+    public void invalidJsonExceptionMessageIsBounded() throws Exception {
+        StringBuilder json = new StringBuilder("{\"invalid\": ");
+        for (int i = 0; i < 10000; i++) {
+            json.append("config ");
+        }
+        byte[] bytes = json.toString().getBytes("UTF-8");
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        try {
+            parser.parseProjectConfig(json.toString());
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(bytes, null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(new ByteArrayInputStream(bytes), null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+    }
+
+    private static JsonNode reverseFields(JsonNode node) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<String>();
+            Iterator<String> fieldNames = node.fieldNames();
+            while (fieldNames.hasNext()) {
+                names.add(fieldNames.next());
+            }
+            Collections.reverse(names);
+            ObjectNode reversed = JsonNodeFactory.instance.objectNode();
+            for (String name : names) {
+                reversed.set(name, reverseFields(node.get(name)));
+            }
+            return reversed;
+        }
+        if (node.isArray()) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode element : node) {
+                array.add(reverseFields(element));
+            }
+            return array;
+        }
+        return node;
+    }
 }
@@ -30,14 +30,22 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV3;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyIdentifiersShared;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for {@link JsonConfigParser}.
@@ -74,6 +82,42 @@ public class JsonConfigParserTest {
         verifyProjectConfig(actual, expected);
     }
 
+    @Test
+    public void parseProjectConfigV4ReusesPreviousConfig() throws Exception {
+        JsonConfigParser parser = new JsonConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJsonV4());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4(), previous);
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+        assertSame(previous.getExperiments().get(0), actual.getExperiments().get(0));
+        assertSame(previous.getAudienceIndex(), actual.getAudienceIndex());
+    }
+
+    @Test
+    public void parseProjectConfigV4SharesIdentifiers() throws Exception {
+        JsonConfigParser parser = new JsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJsonV4());
+
+        verifyIdentifiersShared(actual);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromBytesStreamAndBuffer() throws Exception {
+        JsonConfigParser parser = new JsonConfigParser();
+        byte[] json = validConfigJsonV4().getBytes("UTF-8");
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(json.length);
+        directBuffer.put(json);
+        directBuffer.flip();
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(parser.parseProjectConfig(json, null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(new ByteArrayInputStream(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(ByteBuffer.wrap(json), null), expected);
+        verifyProjectConfig(parser.parseProjectConfig(directBuffer, null), expected);
+        assertEquals(0, directBuffer.position());
+    }
+
     @Test
     public void parseAudience() throws Exception {
         JSONObject jsonObject = new JSONObject();
@@ -196,4 +240,36 @@ public class JsonConfigParserTest {
         JsonConfigParser parser = new JsonConfigParser();
         parser.parseProjectConfig(null);
     }
+
+    /**
+     * Verify that the message of a {@link ConfigParseException} only carries an excerpt of a large invalid datafile.
+     */
+    @Test
+    public void invalidJsonExceptionMessageIsBounded() throws Exception {
+        StringBuilder json = new StringBuilder("{\"invalid\": ");
+        for (int i = 0; i < 10000; i++) {
+            json.append("config ");
+        }
+        byte[] bytes = json.toString().getBytes("UTF-8");
+
+        JsonConfigParser parser = new JsonConfigParser();
+        try {
+            parser.parseProjectConfig(json.toString());
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(bytes, null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+        try {
+            parser.parseProjectConfig(new ByteArrayInputStream(bytes), null);
+            fail("Expected a ConfigParseException");
+        } catch (ConfigParseException e) {
+            assertTrue(e.getMessage().length() < 300);
+        }
+    }
 }
@@ -0,0 +1,214 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.event.internal.EventFactory;
+import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.event.internal.payload.Visitor;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV2;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_HOUSE_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link BatchEventHandler}.
+ */
+public class BatchEventHandlerTest {
+
+    private final EventFactory eventFactory = new EventFactory();
+    private final RecordingEventHandler recordingEventHandler = new RecordingEventHandler();
+    private BatchEventHandler batchEventHandler;
+
+    @After
+    public void tearDown() {
+        if (batchEventHandler != null) {
+            batchEventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that a batch is passed on once it has the batch size in snapshots, with the visitors of all its events.
+     */
+    @Test
+    public void batchIsDispatchedAtBatchSize() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler, 3, 1, TimeUnit.HOURS);
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user2"));
+        assertEquals(0, recordingEventHandler.events.size());
+        assertEquals(2, batchEventHandler.getPendingSnapshotCount());
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user3"));
+        assertEquals(1, recordingEventHandler.events.size());
+        assertEquals(0, batchEventHandler.getPendingSnapshotCount());
+
+        LogEvent logEvent = recordingEventHandler.events.get(0);
+        EventBatch eventBatch = logEvent.getEventBatch();
+        assertEquals(LogEvent.RequestMethod.POST, logEvent.getRequestMethod());
+        assertEquals("https://logx.optimizely.com/v1/events", logEvent.getEndpointUrl());
+        assertEquals(validProjectConfigV4().getRevision(), eventBatch.getRevision());
+        assertEquals(validProjectConfigV4().getAccountId(), eventBatch.getAccountId());
+        assertEquals(3, eventBatch.getVisitors().size());
+        assertEquals("user1", eventBatch.getVisitors().get(0).getVisitorId());
+        assertEquals("user3", eventBatch.getVisitors().get(2).getVisitorId());
+    }
+
+    /**
+     * Verify that the snapshots of a visitor with the same attributes are merged into one visitor, without changing
+     * the events they came from.
+     */
+    @Test
+    public void snapshotsOfSameVisitorAreMerged() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler, 10, 1, TimeUnit.HOURS);
+
+        LogEvent first = impression(validProjectConfigV4(), "user1");
+        batchEventHandler.dispatchEvent(first);
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1",
+                Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, "Gryffindor")));
+        batchEventHandler.flush();
+
+        List<Visitor> visitors = recordingEventHandler.events.get(0).getEventBatch().getVisitors();
+        assertEquals(2, visitors.size());
+        assertEquals(2, visitors.get(0).getSnapshots().size());
+        assertEquals(1, visitors.get(1).getSnapshots().size());
+        assertEquals(1, first.getEventBatch().getVisitors().get(0).getSnapshots().size());
+    }
+
+    /**
+     * Verify that events of different revisions are batched separately.
+     */
+    @Test
+    public void revisionsAreBatchedSeparately() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler, 10, 1, TimeUnit.HOURS);
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV2(), "user1"));
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user2"));
+        batchEventHandler.flush();
+
+        assertEquals(2, recordingEventHandler.events.size());
+        assertEquals(validProjectConfigV4().getRevision(),
+                recordingEventHandler.events.get(0).getEventBatch().getRevision());
+        assertEquals(2, recordingEventHandler.events.get(0).getEventBatch().getVisitors().size());
+        assertEquals(validProjectConfigV2().getRevision(),
+                recordingEventHandler.events.get(1).getEventBatch().getRevision());
+    }
+
+    /**
+     * Verify that a batch is passed on once its first event is as old as the flush interval.
+     */
+    @Test
+    public void batchIsDispatchedAtFlushInterval() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler, 10, 50, TimeUnit.MILLISECONDS);
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (recordingEventHandler.events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, recordingEventHandler.events.size());
+        assertEquals(0, batchEventHandler.getPendingSnapshotCount());
+    }
+
+    /**
+     * Verify that closing passes the pending batches on, and that events dispatched afterwards aren't held back.
+     */
+    @Test
+    public void closeDispatchesPendingBatches() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler, 10, 1, TimeUnit.HOURS);
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+        batchEventHandler.close();
+        assertEquals(1, recordingEventHandler.events.size());
+
+        LogEvent afterClose = impression(validProjectConfigV4(), "user2");
+        batchEventHandler.dispatchEvent(afterClose);
+        assertEquals(2, recordingEventHandler.events.size());
+        assertSame(afterClose, recordingEventHandler.events.get(1));
+    }
+
+    /**
+     * Verify that events without a batch are passed on as they are.
+     */
+    @Test
+    public void eventsWithoutBatchArePassedOn() throws Exception {
+        batchEventHandler = new BatchEventHandler(recordingEventHandler);
+
+        LogEvent logEvent = new LogEvent(LogEvent.RequestMethod.GET, "http://localhost",
+                Collections.<String, String>emptyMap(), null);
+        batchEventHandler.dispatchEvent(logEvent);
+
+        assertSame(logEvent, recordingEventHandler.events.get(0));
+    }
+
+    /**
+     * Verify that exceptions of the event handler batches are passed to are caught.
+     */
+    @Test
+    public void eventHandlerExceptionsAreCaught() throws Exception {
+        batchEventHandler = new BatchEventHandler(new EventHandler() {
+            @Override
+            public void dispatchEvent(LogEvent logEvent) throws Exception {
+                throw new Exception("dispatch failed");
+            }
+        }, 1, 1, TimeUnit.HOURS);
+
+        batchEventHandler.dispatchEvent(impression(validProjectConfigV4(), "user1"));
+        assertEquals(0, batchEventHandler.getPendingSnapshotCount());
+    }
+
+    /**
+     * Verify that a batch size of less than one snapshot is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize() throws Exception {
+        new BatchEventHandler(recordingEventHandler, 0, 1, TimeUnit.SECONDS);
+    }
+
+    private LogEvent impression(ProjectConfig projectConfig, String userId) {
+        return impression(projectConfig, userId, Collections.<String, String>emptyMap());
+    }
+
+    private LogEvent impression(ProjectConfig projectConfig, String userId, Map<String, ?> attributes) {
+        Experiment experiment = projectConfig.getExperiments().get(0);
+        return eventFactory.createImpressionEvent(projectConfig, experiment, experiment.getVariations().get(0),
+                userId, attributes);
+    }
+
+    private static final class RecordingEventHandler implements EventHandler {
+        private final List<LogEvent> events = Collections.synchronizedList(new ArrayList<LogEvent>());
+
+        @Override
+        public void dispatchEvent(LogEvent logEvent) {
+            events.add(logEvent);
+        }
+    }
+}
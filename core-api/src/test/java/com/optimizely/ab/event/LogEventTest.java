@@ -0,0 +1,67 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.event.internal.EventFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfigV4;
+import static com.optimizely.ab.config.ValidProjectConfigV4.ATTRIBUTE_HOUSE_KEY;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link LogEvent}.
+ */
+public class LogEventTest {
+
+    /**
+     * Verify that the body written to a stream is the UTF-8 encoding of the body string.
+     */
+    @Test
+    public void writeBodyMatchesGetBody() throws Exception {
+        ProjectConfig projectConfig = validProjectConfigV4();
+        Experiment experiment = projectConfig.getExperiments().get(0);
+        LogEvent logEvent = new EventFactory().createImpressionEvent(projectConfig, experiment,
+                experiment.getVariations().get(0), "user\u00e9",
+                Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, "Gryffindor \u2603"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        logEvent.writeBody(out);
+
+        assertEquals(logEvent.getBody(), new String(out.toByteArray(), "UTF-8"));
+    }
+
+    /**
+     * Verify that nothing is written for an event without a batch.
+     */
+    @Test
+    public void writeBodyWithoutEventBatch() throws Exception {
+        LogEvent logEvent = new LogEvent(LogEvent.RequestMethod.GET, "http://localhost",
+                Collections.<String, String>emptyMap(), null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        logEvent.writeBody(out);
+
+        assertEquals("", logEvent.getBody());
+        assertEquals(0, out.size());
+    }
+}
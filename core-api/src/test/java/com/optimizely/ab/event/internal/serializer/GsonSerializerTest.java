@@ -24,7 +24,9 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversion;
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversionJson;
@@ -36,6 +38,7 @@ import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.ge
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpressionWithSessionIdJson;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 public class GsonSerializerTest {
@@ -84,4 +87,18 @@ public class GsonSerializerTest {
 
         assertThat(actual, is(expected));
     }
+
+    @Test
+    public void serializeToStreamAndWriter() throws IOException {
+        EventBatch conversion = generateConversion();
+        String expected = serializer.serialize(conversion);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(conversion, out);
+        assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+
+        StringWriter writer = new StringWriter();
+        serializer.serialize(conversion, writer);
+        assertEquals(expected, writer.toString());
+    }
 }
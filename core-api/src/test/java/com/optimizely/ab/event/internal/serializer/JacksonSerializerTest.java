@@ -23,7 +23,9 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversion;
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversionJson;
@@ -35,6 +37,8 @@ import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.ge
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpressionWithSessionIdJson;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
 public class JacksonSerializerTest {
@@ -84,5 +88,31 @@ public class JacksonSerializerTest {
 
         assertThat(actual, is(expected));
     }
-}
 
+    @Test
+    public void serializeToStreamAndWriter() throws IOException {
+        EventBatch conversion = generateConversion();
+        String expected = serializer.serialize(conversion);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(conversion, out);
+        assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+
+        StringWriter writer = new StringWriter();
+        serializer.serialize(conversion, writer);
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void serializeToStreamDoesNotCloseIt() throws IOException {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        serializer.serialize(generateImpression(), out);
+        assertFalse(closed[0]);
+    }
+}
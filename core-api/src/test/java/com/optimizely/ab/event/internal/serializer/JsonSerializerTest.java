@@ -22,7 +22,9 @@ import org.json.JSONObject;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversion;
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversionJson;
@@ -33,6 +35,7 @@ import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.ge
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpressionWithSessionId;
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpressionWithSessionIdJson;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class JsonSerializerTest {
@@ -78,4 +81,18 @@ public class JsonSerializerTest {
 
         assertTrue(actual.similar(expected));
     }
+
+    @Test
+    public void serializeToStreamAndWriter() throws IOException {
+        EventBatch conversion = generateConversion();
+        String expected = serializer.serialize(conversion);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(conversion, out);
+        assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+
+        StringWriter writer = new StringWriter();
+        serializer.serialize(conversion, writer);
+        assertEquals(expected, writer.toString());
+    }
 }
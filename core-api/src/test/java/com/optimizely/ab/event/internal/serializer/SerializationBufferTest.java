@@ -0,0 +1,114 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event.internal.serializer;
+
+import com.optimizely.ab.event.internal.payload.EventBatch;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpression;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link SerializationBuffer}.
+ */
+public class SerializationBufferTest {
+
+    private static final int ITERATIONS = 2000;
+
+    /**
+     * Verify that payloads are serialized one after another into a reset buffer through the same writer.
+     */
+    @Test
+    public void reusesWriter() throws Exception {
+        EventBatch impression = generateImpression();
+        SerializationBuffer buffer = new SerializationBuffer(16);
+
+        for (Serializer serializer : serializers()) {
+            serializer.serialize(impression, buffer);
+            assertEquals(serializer.serialize(impression), buffer.toString("UTF-8"));
+            buffer.reset();
+        }
+        assertSame(buffer.getWriter(), SerializationBuffer.writerOf(buffer));
+    }
+
+    /**
+     * Verify that serializing a single visitor's event into a reused buffer allocates no more than serializing it
+     * into a string, for every serializer writing to streams.
+     */
+    @Test
+    public void singleVisitorAllocatesNoMoreThanString() throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        EventBatch impression = generateImpression();
+        SerializationBuffer buffer = new SerializationBuffer(4096);
+        long threadId = Thread.currentThread().getId();
+        for (Serializer serializer : new Serializer[] {
+                new GsonSerializer(), new JacksonSerializer(), new JsonSimpleSerializer() }) {
+            // warm up both paths first, so neither is measured while being loaded or compiled
+            allocatedPerString(serializer, impression, allocationBean, threadId);
+            allocatedPerBuffer(serializer, impression, buffer, allocationBean, threadId);
+
+            long perString = allocatedPerString(serializer, impression, allocationBean, threadId);
+            long perBuffer = allocatedPerBuffer(serializer, impression, buffer, allocationBean, threadId);
+            assertTrue(serializer.getClass().getSimpleName() + " allocated " + perBuffer + " bytes into a buffer and "
+                    + perString + " bytes into a string", perBuffer <= perString);
+        }
+    }
+
+    private static long allocatedPerString(Serializer serializer, EventBatch payload,
+                                           com.sun.management.ThreadMXBean allocationBean, long threadId) {
+        long length = 0;
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            length += serializer.serialize(payload).length();
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(length > 0);
+        return allocated / ITERATIONS;
+    }
+
+    private static long allocatedPerBuffer(Serializer serializer, EventBatch payload, SerializationBuffer buffer,
+                                           com.sun.management.ThreadMXBean allocationBean, long threadId)
+            throws IOException {
+        long length = 0;
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.serialize(payload, buffer);
+            length += buffer.size();
+            buffer.reset();
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(length > 0);
+        return allocated / ITERATIONS;
+    }
+
+    private static Serializer[] serializers() {
+        return new Serializer[] {
+                new GsonSerializer(), new JacksonSerializer(), new JsonSerializer(), new JsonSimpleSerializer() };
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of dispatching POST events to a local stand-in for the event endpoint with an
+ * {@link AsyncEventHandler}, with and without compression, for events of a single visitor and for batches of visitors.
+ * <p>
+ * Each operation dispatches {@link #EVENTS_PER_OP} events and waits for the stand-in to have received them, the bytes
+ * counter is the number of request body bytes sent per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class AsyncEventHandlerBenchmark {
+
+    private static final int EVENTS_PER_OP = 100;
+
+    @Param({"-1", "1024"})
+    private int compressionThreshold;
+
+    @Param({"1", "50"})
+    private int visitorsPerEvent;
+
+    private StandInEventEndpoint endpoint;
+    private AsyncEventHandler eventHandler;
+    private final List<LogEvent> events = new ArrayList<LogEvent>();
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        endpoint = new StandInEventEndpoint();
+        eventHandler = new AsyncEventHandler(EVENTS_PER_OP, 2, 200, 20, 5000, compressionThreshold);
+
+        for (int i = 0; i < EVENTS_PER_OP; i++) {
+            List<String> visitorIds = new ArrayList<String>(visitorsPerEvent);
+            for (int j = 0; j < visitorsPerEvent; j++) {
+                visitorIds.add("visitor" + (i * visitorsPerEvent + j));
+            }
+            events.add(endpoint.createImpressionEvent(visitorIds));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        eventHandler.shutdownAndAwaitTermination(10, TimeUnit.SECONDS);
+        endpoint.stop();
+    }
+
+    @Benchmark
+    public void dispatchEvents(Bytes bytes) throws Exception {
+        long receivedBytes = endpoint.getReceivedBytes();
+        for (LogEvent event : events) {
+            eventHandler.dispatchEvent(event);
+        }
+
+        endpoint.awaitRequests(EVENTS_PER_OP);
+        bytes.bytes += endpoint.getReceivedBytes() - receivedBytes;
+    }
+}
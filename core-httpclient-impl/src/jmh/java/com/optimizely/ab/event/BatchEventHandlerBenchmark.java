@@ -0,0 +1,102 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of delivering impressions of distinct visitors to a local stand-in for the event endpoint through an
+ * {@link AsyncEventHandler}, on its own and behind a {@link BatchEventHandler}. A batch size of 1 dispatches every
+ * event as its own request.
+ * <p>
+ * Each operation dispatches {@link #EVENTS_PER_OP} events and waits for the stand-in to have received all of the
+ * requests they were sent in, the requests counter is the number of requests per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class BatchEventHandlerBenchmark {
+
+    private static final int EVENTS_PER_OP = 1000;
+
+    @Param({"1", "10", "50"})
+    private int batchSize;
+
+    private StandInEventEndpoint endpoint;
+    private AsyncEventHandler asyncEventHandler;
+    private EventHandler eventHandler;
+    private long visitorCount;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Requests {
+        public long requests;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        endpoint = new StandInEventEndpoint();
+        asyncEventHandler = new AsyncEventHandler(EVENTS_PER_OP, 2);
+        eventHandler = batchSize == 1
+                ? asyncEventHandler
+                : new BatchEventHandler(asyncEventHandler, batchSize, 1, TimeUnit.MINUTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (eventHandler instanceof BatchEventHandler) {
+            ((BatchEventHandler) eventHandler).close();
+        }
+        asyncEventHandler.shutdownAndAwaitTermination(10, TimeUnit.SECONDS);
+        endpoint.stop();
+    }
+
+    @Benchmark
+    public void deliverEvents(Requests requests) throws Exception {
+        for (int i = 0; i < EVENTS_PER_OP; i++) {
+            eventHandler.dispatchEvent(
+                    endpoint.createImpressionEvent(Collections.singletonList("visitor" + visitorCount++)));
+        }
+
+        int expectedRequests = (EVENTS_PER_OP + batchSize - 1) / batchSize;
+        if (eventHandler instanceof BatchEventHandler) {
+            ((BatchEventHandler) eventHandler).flush();
+        }
+        endpoint.awaitRequests(expectedRequests);
+        requests.requests += expectedRequests;
+    }
+}
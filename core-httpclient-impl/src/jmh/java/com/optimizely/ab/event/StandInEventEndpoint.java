@@ -0,0 +1,137 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.internal.payload.Attribute;
+import com.optimizely.ab.event.internal.payload.Decision;
+import com.optimizely.ab.event.internal.payload.Event;
+import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.event.internal.payload.Snapshot;
+import com.optimizely.ab.event.internal.payload.Visitor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the event endpoint, that reads every request body as it's sent and answers with no content.
+ */
+final class StandInEventEndpoint {
+
+    private final HttpServer server;
+    private final Semaphore receivedRequests = new Semaphore(0);
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    StandInEventEndpoint() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/events", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream body = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                long count = 0;
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    count += read;
+                }
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+                receivedBytes.addAndGet(count);
+                receivedRequests.release();
+            }
+        });
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/events";
+    }
+
+    void awaitRequests(int count) throws InterruptedException {
+        receivedRequests.acquire(count);
+    }
+
+    /**
+     * @return the number of request body bytes received so far, as they were sent
+     */
+    long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Creates an impression event with a visitor for each of the given ids.
+     */
+    LogEvent createImpressionEvent(List<String> visitorIds) {
+        List<Visitor> visitors = new ArrayList<Visitor>(visitorIds.size());
+        for (String visitorId : visitorIds) {
+            Decision decision = new Decision.Builder()
+                    .setCampaignId("7719770039")
+                    .setExperimentId("7716830082")
+                    .setVariationId("7722370027")
+                    .setIsCampaignHoldback(false)
+                    .build();
+
+            Event event = new Event.Builder()
+                    .setTimestamp(System.currentTimeMillis())
+                    .setUuid(UUID.randomUUID().toString())
+                    .setEntityId("7719770039")
+                    .setKey("campaign_activated")
+                    .setType("campaign_activated")
+                    .build();
+
+            Snapshot snapshot = new Snapshot.Builder()
+                    .setDecisions(Collections.singletonList(decision))
+                    .setEvents(Collections.singletonList(event))
+                    .build();
+
+            visitors.add(new Visitor.Builder()
+                    .setVisitorId(visitorId)
+                    .setAttributes(Collections.singletonList(new Attribute.Builder()
+                            .setEntityId("7723280020")
+                            .setKey("browser_type")
+                            .setType(Attribute.CUSTOM_ATTRIBUTE_TYPE)
+                            .setValue("chrome")
+                            .build()))
+                    .setSnapshots(Collections.singletonList(snapshot))
+                    .build());
+        }
+
+        EventBatch eventBatch = new EventBatch.Builder()
+                .setAccountId("6384150144")
+                .setProjectId("7720880029")
+                .setRevision("1")
+                .setAnonymizeIp(true)
+                .setVisitors(visitors)
+                .build();
+
+        return new LogEvent(LogEvent.RequestMethod.POST, getUrl(), Collections.<String, String>emptyMap(),
+                eventBatch);
+    }
+}
@@ -17,6 +17,9 @@
 package com.optimizely.ab;
 
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 /**
  * Provides defaults and utility methods for using {@link org.apache.http.client.HttpClient}.
@@ -34,4 +37,29 @@ public final class HttpClientUtils {
         .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MS)
         .setSocketTimeout(SOCKET_TIMEOUT_MS)
         .build();
+
+    /**
+     * Creates a client backed by a pool of persistent connections, using the {@link #DEFAULT_REQUEST_CONFIG}.
+     * The client asks for gzip compressed responses and decompresses them transparently.
+     *
+     * @param maxTotalConnections the maximum number of connections allowed across all routes
+     * @param maxPerRoute the maximum number of connections allowed for a route
+     * @param validateAfterInactivity period of inactivity in milliseconds after which persistent connections must be
+     *                                re-validated prior to being leased
+     * @return the client
+     */
+    public static CloseableHttpClient createPooledClient(int maxTotalConnections,
+                                                         int maxPerRoute,
+                                                         int validateAfterInactivity) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+
+        return HttpClients.custom()
+            .setDefaultRequestConfig(DEFAULT_REQUEST_CONFIG)
+            .setConnectionManager(connectionManager)
+            .disableCookieManagement()
+            .build();
+    }
 }
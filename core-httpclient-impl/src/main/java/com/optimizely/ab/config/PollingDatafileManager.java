@@ -0,0 +1,394 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.HttpClientUtils;
+import com.optimizely.ab.NamedThreadFactory;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a {@link ProjectConfig} up to date by polling a datafile URL.
+ * <p>
+ * Requests are conditional on the ETag and Last-Modified of the last datafile that was applied, and accept gzip
+ * compressed responses. A datafile is only parsed when it actually changed, and the resulting config is published
+ * atomically to {@link #getConfig()} and to the registered {@link Listener}s, for example:
+ * <pre>
+ *     PollingDatafileManager datafileManager = PollingDatafileManager.builder(datafileUrl)
+ *         .withListener(new PollingDatafileManager.Listener() {
+ *             public void onProjectConfigUpdate(ProjectConfig projectConfig) {
+ *                 optimizely.updateProjectConfig(projectConfig);
+ *             }
+ *         })
+ *         .build();
+ *     datafileManager.start();
+ * </pre>
+ */
+@ThreadSafe
+public class PollingDatafileManager implements Closeable {
+
+    /**
+     * Notified every time a changed datafile has been parsed into a new config.
+     */
+    public interface Listener {
+        void onProjectConfigUpdate(@Nonnull ProjectConfig projectConfig);
+    }
+
+    public static final long DEFAULT_POLLING_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingDatafileManager.class);
+    private static final DatafileResponseHandler DATAFILE_RESPONSE_HANDLER = new DatafileResponseHandler();
+
+    private final String url;
+    private final CloseableHttpClient httpClient;
+    private final boolean ownsHttpClient;
+    private final long pollingIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final List<Listener> listeners;
+
+    private final AtomicReference<ProjectConfig> projectConfig = new AtomicReference<ProjectConfig>();
+    private final CountDownLatch firstConfigLatch = new CountDownLatch(1);
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // conditional request state of the last applied datafile, guarded by pollLock
+    private final Object pollLock = new Object();
+    private String datafile;
+    private String etag;
+    private String lastModified;
+
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile long lastFetchLatencyNanos = -1;
+    private volatile long lastParseLatencyNanos = -1;
+
+    private PollingDatafileManager(@Nonnull String url,
+                                   @Nonnull CloseableHttpClient httpClient,
+                                   boolean ownsHttpClient,
+                                   long pollingIntervalMillis,
+                                   @Nonnull List<Listener> listeners) {
+        this.url = url;
+        this.httpClient = httpClient;
+        this.ownsHttpClient = ownsHttpClient;
+        this.pollingIntervalMillis = pollingIntervalMillis;
+        this.listeners = new CopyOnWriteArrayList<Listener>(listeners);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("optimizely-datafile-manager-thread-%s", true));
+    }
+
+    public static Builder builder(@Nonnull String url) {
+        return new Builder(url);
+    }
+
+    /**
+     * Starts polling in the background, beginning with an immediate fetch. Calls after the first have no effect.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            logger.debug("Polling of {} was already started.", url);
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected exception while polling the datafile", e);
+                }
+            }
+        }, 0, pollingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches the datafile once and publishes a new config if it changed.
+     *
+     * @return whether a new config was published
+     */
+    public boolean poll() {
+        synchronized (pollLock) {
+            HttpGet request = new HttpGet(url);
+            if (etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+
+            long fetchStart = System.nanoTime();
+            DatafileResponse response;
+            try {
+                response = httpClient.execute(request, DATAFILE_RESPONSE_HANDLER);
+            } catch (IOException e) {
+                failureCount.incrementAndGet();
+                logger.warn("Unable to fetch the datafile from {}", url, e);
+                return false;
+            } finally {
+                lastFetchLatencyNanos = System.nanoTime() - fetchStart;
+            }
+            fetchCount.incrementAndGet();
+
+            if (response.datafile == null || response.datafile.equals(datafile)) {
+                notModifiedCount.incrementAndGet();
+                logger.debug("Datafile at {} is unchanged, fetched in {} ms.", url, getLastFetchLatency(TimeUnit.MILLISECONDS));
+                return false;
+            }
+
+            long parseStart = System.nanoTime();
+            ProjectConfig config;
+            try {
+                config = new ProjectConfig.Builder()
+                        .withDatafile(response.datafile)
+                        .withPreviousConfig(projectConfig.get())
+                        .build();
+            } catch (ConfigParseException e) {
+                failureCount.incrementAndGet();
+                logger.error("Unable to parse the datafile fetched from {}", url, e);
+                return false;
+            } finally {
+                lastParseLatencyNanos = System.nanoTime() - parseStart;
+            }
+
+            // only remember the validators of datafiles that were applied, so a bad datafile is fetched again
+            datafile = response.datafile;
+            etag = response.etag;
+            lastModified = response.lastModified;
+
+            projectConfig.set(config);
+            firstConfigLatch.countDown();
+            updateCount.incrementAndGet();
+            logger.info("Updated datafile to revision \"{}\", fetched in {} ms and parsed in {} ms.",
+                    config.getRevision(), getLastFetchLatency(TimeUnit.MILLISECONDS),
+                    getLastParseLatency(TimeUnit.MILLISECONDS));
+
+            for (Listener listener : listeners) {
+                try {
+                    listener.onProjectConfigUpdate(config);
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected exception in datafile listener", e);
+                }
+            }
+
+            return true;
+        }
+    }
+
+    public void addListener(@Nonnull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the latest config, or null if no datafile has been fetched yet
+     */
+    public @Nullable ProjectConfig getConfig() {
+        return projectConfig.get();
+    }
+
+    /**
+     * Waits for the first datafile to be fetched.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return the latest config, or null if none was fetched in time
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public @Nullable ProjectConfig getConfig(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        firstConfigLatch.await(timeout, unit);
+        return projectConfig.get();
+    }
+
+    /**
+     * @return the number of successful requests, including the ones answered with Not Modified
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * @return the number of successful requests that didn't change the datafile
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * @return the number of configs that were published
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    /**
+     * @return the number of requests or datafiles that failed
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return how long the last request took, or -1 if no request was made yet
+     */
+    public long getLastFetchLatency(@Nonnull TimeUnit unit) {
+        long nanos = lastFetchLatencyNanos;
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return how long parsing the last changed datafile took, or -1 if no datafile was parsed yet
+     */
+    public long getLastParseLatency(@Nonnull TimeUnit unit) {
+        long nanos = lastParseLatencyNanos;
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops polling and releases the http client if it was created by this manager.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (ownsHttpClient) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.error("unable to close datafile manager http client", e);
+            }
+        }
+    }
+
+    //======== Helper classes ========//
+
+    private static final class DatafileResponse {
+        private final String datafile;
+        private final String etag;
+        private final String lastModified;
+
+        private DatafileResponse(@Nullable String datafile, @Nullable String etag, @Nullable String lastModified) {
+            this.datafile = datafile;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Handler for the datafile request that reads the datafile, or returns a response without one when the
+     * datafile was not modified.
+     */
+    private static final class DatafileResponseHandler implements ResponseHandler<DatafileResponse> {
+
+        @Override
+        public DatafileResponse handleResponse(HttpResponse response) throws IOException {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(entity);
+                return new DatafileResponse(null, null, null);
+            } else if (status >= 200 && status < 300) {
+                if (entity == null) {
+                    throw new ClientProtocolException("empty response from datafile endpoint");
+                }
+                String datafile = EntityUtils.toString(entity, "UTF-8");
+                return new DatafileResponse(datafile,
+                        headerValue(response, HttpHeaders.ETAG),
+                        headerValue(response, HttpHeaders.LAST_MODIFIED));
+            } else {
+                EntityUtils.consume(entity);
+                throw new ClientProtocolException("unexpected response from datafile endpoint, status: " + status);
+            }
+        }
+
+        private static @CheckForNull String headerValue(HttpResponse response, String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+    }
+
+    /**
+     * {@link PollingDatafileManager} instance builder.
+     * <p>
+     * Unless a client is given, the manager creates its own pooled client through
+     * {@link HttpClientUtils#createPooledClient(int, int, int)}, and closes it along with the manager.
+     */
+    public static class Builder {
+
+        private final String url;
+        private CloseableHttpClient httpClient;
+        private long pollingIntervalMillis = DEFAULT_POLLING_INTERVAL_MS;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+        public Builder(@Nonnull String url) {
+            this.url = url;
+        }
+
+        public Builder withHttpClient(@Nonnull CloseableHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        public Builder withPollingInterval(long interval, @Nonnull TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("polling interval must be > 0");
+            }
+            this.pollingIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public Builder withListener(@Nonnull Listener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        public PollingDatafileManager build() {
+            if (url == null) {
+                throw new IllegalArgumentException("datafile url must be nonnull");
+            }
+
+            boolean ownsHttpClient = httpClient == null;
+            CloseableHttpClient client = ownsHttpClient ? HttpClientUtils.createPooledClient(2, 2, 5000) : httpClient;
+            return new PollingDatafileManager(url, client, ownsHttpClient, pollingIntervalMillis, listeners);
+        }
+    }
+}
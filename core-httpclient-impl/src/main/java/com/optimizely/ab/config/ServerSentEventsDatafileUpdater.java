@@ -0,0 +1,360 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.HttpClientUtils;
+import com.optimizely.ab.NamedThreadFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes datafile updates to a {@link PollingDatafileManager} over a server-sent events stream.
+ * <p>
+ * The updater keeps a long-lived connection to the stream and waits for revision notices, events whose data is the
+ * revision of the latest datafile. A notice for a revision other than the current one makes the datafile manager
+ * fetch and rebuild the config right away, so the manager's own polling can run at a much longer interval. When the
+ * connection drops, the updater reconnects with an exponential backoff.
+ * <p>
+ * The server is expected to send a keep-alive comment at a known interval. A stream that stays silent for several
+ * of those intervals is considered lost and is reconnected, and the backoff is only reset once a stream delivered an
+ * event or stayed up for a full interval, so an endpoint that accepts connections and drops them right away is not
+ * retried in a tight loop.
+ */
+@ThreadSafe
+public class ServerSentEventsDatafileUpdater implements Closeable {
+
+    public static final String DEFAULT_EVENT_NAME = "revision";
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_KEEP_ALIVE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    // the number of keep-alive intervals a stream may stay silent before it's considered lost
+    private static final int KEEP_ALIVE_INTERVALS_PER_READ_TIMEOUT = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerSentEventsDatafileUpdater.class);
+
+    private final String url;
+    private final PollingDatafileManager datafileManager;
+    private final CloseableHttpClient httpClient;
+    private final boolean ownsHttpClient;
+    private final String eventName;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long keepAliveIntervalMillis;
+    private final RequestConfig requestConfig;
+    private final ExecutorService executor;
+
+    private volatile boolean closed;
+    private volatile HttpGet currentRequest;
+    private volatile String lastEventId;
+    // whether the current stream delivered an event, only accessed by the listening thread
+    private boolean receivedEvent;
+
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong noticeCount = new AtomicLong();
+
+    private ServerSentEventsDatafileUpdater(@Nonnull String url,
+                                            @Nonnull PollingDatafileManager datafileManager,
+                                            @Nonnull CloseableHttpClient httpClient,
+                                            boolean ownsHttpClient,
+                                            @Nonnull String eventName,
+                                            long initialBackoffMillis,
+                                            long maxBackoffMillis,
+                                            long keepAliveIntervalMillis) {
+        this.url = url;
+        this.datafileManager = datafileManager;
+        this.httpClient = httpClient;
+        this.ownsHttpClient = ownsHttpClient;
+        this.eventName = eventName;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+        this.requestConfig = RequestConfig.copy(HttpClientUtils.DEFAULT_REQUEST_CONFIG)
+                .setSocketTimeout((int) Math.min(Integer.MAX_VALUE,
+                        keepAliveIntervalMillis * KEEP_ALIVE_INTERVALS_PER_READ_TIMEOUT))
+                .build();
+        this.executor = Executors.newSingleThreadExecutor(
+                new NamedThreadFactory("optimizely-datafile-events-thread-%s", true));
+    }
+
+    public static Builder builder(@Nonnull String url, @Nonnull PollingDatafileManager datafileManager) {
+        return new Builder(url, datafileManager);
+    }
+
+    /**
+     * Connects to the event stream in the background.
+     */
+    public void start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listen();
+            }
+        });
+    }
+
+    /**
+     * @return the number of times the stream was connected
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the number of revision notices received
+     */
+    public long getNoticeCount() {
+        return noticeCount.get();
+    }
+
+    /**
+     * Disconnects from the stream and releases the http client if it was created by this updater. The datafile
+     * manager is left running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        HttpGet request = currentRequest;
+        if (request != null) {
+            request.abort();
+        }
+        executor.shutdownNow();
+        if (ownsHttpClient) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.error("unable to close datafile events http client", e);
+            }
+        }
+    }
+
+    private void listen() {
+        long backoffMillis = initialBackoffMillis;
+        while (!closed) {
+            CloseableHttpResponse response = null;
+            long connectedAt = 0;
+            receivedEvent = false;
+            try {
+                response = connect();
+                connectedAt = System.nanoTime();
+                connectionCount.incrementAndGet();
+                logger.info("Connected to datafile events at {}.", url);
+                read(response.getEntity());
+                logger.info("Datafile events stream at {} was closed by the server.", url);
+            } catch (IOException e) {
+                if (closed) {
+                    break;
+                }
+                logger.warn("Lost connection to datafile events at {}", url, e);
+            } catch (RuntimeException e) {
+                logger.error("Unexpected exception while reading datafile events", e);
+            } finally {
+                if (response != null) {
+                    try {
+                        response.close();
+                    } catch (IOException e) {
+                        logger.debug("unable to close datafile events response", e);
+                    }
+                }
+            }
+
+            if (closed) {
+                break;
+            }
+            if (receivedEvent || (connectedAt != 0
+                    && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectedAt) >= keepAliveIntervalMillis)) {
+                backoffMillis = initialBackoffMillis;
+            }
+            logger.info("Reconnecting to datafile events in {} ms.", backoffMillis);
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+        }
+    }
+
+    private CloseableHttpResponse connect() throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.setConfig(requestConfig);
+        request.setHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        request.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (lastEventId != null) {
+            request.setHeader("Last-Event-ID", lastEventId);
+        }
+        currentRequest = request;
+        if (closed) {
+            throw new IOException("datafile events updater is closed");
+        }
+
+        CloseableHttpResponse response = httpClient.execute(request);
+        int status = response.getStatusLine().getStatusCode();
+        if (status < 200 || status >= 300 || response.getEntity() == null) {
+            response.close();
+            throw new ClientProtocolException("unexpected response from datafile events endpoint, status: " + status);
+        }
+
+        return response;
+    }
+
+    /**
+     * Reads events until the stream ends, following the server-sent events format: lines of fields, with a blank
+     * line dispatching the event and lines starting with a colon being comments.
+     */
+    private void read(@Nonnull HttpEntity entity) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
+        String type = null;
+        StringBuilder data = null;
+        String line;
+        while ((line = reader.readLine()) != null && !closed) {
+            if (line.isEmpty()) {
+                if (data != null) {
+                    dispatch(type == null ? "message" : type, data.toString());
+                }
+                type = null;
+                data = null;
+                continue;
+            }
+            if (line.startsWith(":")) {
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            String field = colon < 0 ? line : line.substring(0, colon);
+            String value = colon < 0 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            if ("event".equals(field)) {
+                type = value;
+            } else if ("data".equals(field)) {
+                data = data == null ? new StringBuilder(value) : data.append('\n').append(value);
+            } else if ("id".equals(field)) {
+                lastEventId = value;
+            }
+        }
+    }
+
+    private void dispatch(@Nonnull String type, @Nonnull String data) {
+        receivedEvent = true;
+        if (!eventName.equals(type)) {
+            return;
+        }
+        noticeCount.incrementAndGet();
+
+        String revision = data.trim();
+        ProjectConfig current = datafileManager.getConfig();
+        if (current != null && !revision.isEmpty() && revision.equals(current.getRevision())) {
+            logger.debug("Already on datafile revision \"{}\".", revision);
+            return;
+        }
+
+        logger.info("Received notice of datafile revision \"{}\", fetching the datafile.", revision);
+        datafileManager.poll();
+    }
+
+    /**
+     * {@link ServerSentEventsDatafileUpdater} instance builder.
+     */
+    public static class Builder {
+
+        private final String url;
+        private final PollingDatafileManager datafileManager;
+        private CloseableHttpClient httpClient;
+        private String eventName = DEFAULT_EVENT_NAME;
+        private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MS;
+        private long keepAliveIntervalMillis = DEFAULT_KEEP_ALIVE_INTERVAL_MS;
+
+        public Builder(@Nonnull String url, @Nonnull PollingDatafileManager datafileManager) {
+            this.url = url;
+            this.datafileManager = datafileManager;
+        }
+
+        public Builder withHttpClient(@Nonnull CloseableHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * @param eventName the type of the events that carry revision notices
+         */
+        public Builder withEventName(@Nonnull String eventName) {
+            this.eventName = eventName;
+            return this;
+        }
+
+        /**
+         * @param initial the delay before the first reconnect, doubled after every failed attempt
+         * @param max the longest delay between reconnects
+         * @param unit the time unit of both delays
+         */
+        public Builder withBackoff(long initial, long max, @Nonnull TimeUnit unit) {
+            if (initial <= 0 || max < initial) {
+                throw new IllegalArgumentException("backoff must be > 0 and max must be >= initial");
+            }
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * @param interval the interval at which the server sends keep-alive comments, a stream that stays silent for
+         *                 three intervals is reconnected
+         * @param unit the time unit of the interval
+         */
+        public Builder withKeepAliveInterval(long interval, @Nonnull TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("keep-alive interval must be > 0");
+            }
+            this.keepAliveIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public ServerSentEventsDatafileUpdater build() {
+            if (url == null || datafileManager == null) {
+                throw new IllegalArgumentException("url and datafile manager must be nonnull");
+            }
+
+            boolean ownsHttpClient = httpClient == null;
+            CloseableHttpClient client = ownsHttpClient ? HttpClientUtils.createPooledClient(1, 1, 5000) : httpClient;
+            return new ServerSentEventsDatafileUpdater(url, datafileManager, client, ownsHttpClient, eventName,
+                    initialBackoffMillis, maxBackoffMillis, keepAliveIntervalMillis);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.optimizely.ab.event;
 import com.optimizely.ab.HttpClientUtils;
 import com.optimizely.ab.NamedThreadFactory;
 import com.optimizely.ab.annotations.VisibleForTesting;
+import com.optimizely.ab.event.internal.serializer.SerializationBuffer;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
@@ -27,28 +28,33 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.CheckForNull;
 
 /**
  * {@link EventHandler} implementation that queues events and has a separate pool of threads responsible
  * for the dispatch.
+ * <p>
+ * POST events are sent with their JSON body, uncompressed by default. When a compression threshold is given, bodies of
+ * at least that size are gzip compressed.
  */
 public class AsyncEventHandler implements EventHandler {
 
@@ -61,17 +67,35 @@ public class AsyncEventHandler implements EventHandler {
     // Defines period of inactivity in milliseconds after which persistent connections must be re-validated prior to being leased to the consumer.
     private int validateAfterInactivity = 5000;
 
+    // Disables compression of request bodies when given as the compression threshold, the default.
+    public static final int NO_COMPRESSION = -1;
+
     private static final Logger logger = LoggerFactory.getLogger(AsyncEventHandler.class);
     private static final ProjectConfigResponseHandler EVENT_RESPONSE_HANDLER = new ProjectConfigResponseHandler();
+    // Bodies are serialized into buffers reused by later dispatches, those grown past this size aren't kept.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
 
     private final CloseableHttpClient httpClient;
     private final ExecutorService workerExecutor;
+    private final int compressionThreshold;
+    // the buffers of finished dispatches, at most as many as were ever dispatched at once
+    private final Queue<BodyBuffers> idleBodyBuffers = new ConcurrentLinkedQueue<BodyBuffers>();
 
     public AsyncEventHandler(int queueCapacity, int numWorkers) {
         this(queueCapacity, numWorkers, 200, 20, 5000);
     }
 
     public AsyncEventHandler(int queueCapacity, int numWorkers, int maxConnections, int connectionsPerRoute, int validateAfter) {
+        this(queueCapacity, numWorkers, maxConnections, connectionsPerRoute, validateAfter, NO_COMPRESSION);
+    }
+
+    /**
+     * @param compressionThreshold the size in bytes from which the bodies of POST requests are gzip compressed, or
+     *                             {@link #NO_COMPRESSION} to send them uncompressed. Only compress when the event
+     *                             endpoint accepts gzip encoded requests.
+     */
+    public AsyncEventHandler(int queueCapacity, int numWorkers, int maxConnections, int connectionsPerRoute,
+                             int validateAfter, int compressionThreshold) {
         if (queueCapacity <= 0) {
             throw new IllegalArgumentException("queue capacity must be > 0");
         }
@@ -79,12 +103,9 @@ public class AsyncEventHandler implements EventHandler {
         this.maxTotalConnections = maxConnections;
         this.maxPerRoute = connectionsPerRoute;
         this.validateAfterInactivity = validateAfter;
+        this.compressionThreshold = compressionThreshold;
 
-      this.httpClient = HttpClients.custom()
-            .setDefaultRequestConfig(HttpClientUtils.DEFAULT_REQUEST_CONFIG)
-                .setConnectionManager(poolingHttpClientConnectionManager())
-            .disableCookieManagement()
-            .build();
+        this.httpClient = HttpClientUtils.createPooledClient(maxTotalConnections, maxPerRoute, validateAfterInactivity);
 
         this.workerExecutor = new ThreadPoolExecutor(numWorkers, numWorkers,
                                                      0L, TimeUnit.MILLISECONDS,
@@ -94,17 +115,14 @@ public class AsyncEventHandler implements EventHandler {
 
     @VisibleForTesting
     public AsyncEventHandler(CloseableHttpClient httpClient, ExecutorService workerExecutor) {
-        this.httpClient = httpClient;
-        this.workerExecutor = workerExecutor;
+        this(httpClient, workerExecutor, NO_COMPRESSION);
     }
 
-    private PoolingHttpClientConnectionManager poolingHttpClientConnectionManager()
-    {
-        PoolingHttpClientConnectionManager poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager();
-        poolingHttpClientConnectionManager.setMaxTotal(maxTotalConnections);
-        poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
-        poolingHttpClientConnectionManager.setValidateAfterInactivity(validateAfterInactivity);
-        return poolingHttpClientConnectionManager;
+    @VisibleForTesting
+    public AsyncEventHandler(CloseableHttpClient httpClient, ExecutorService workerExecutor, int compressionThreshold) {
+        this.httpClient = httpClient;
+        this.workerExecutor = workerExecutor;
+        this.compressionThreshold = compressionThreshold;
     }
 
     @Override
@@ -151,6 +169,7 @@ public class AsyncEventHandler implements EventHandler {
             // Preserve interrupt status
             Thread.currentThread().interrupt();
         } finally {
+            idleBodyBuffers.clear();
             try {
                 httpClient.close();
             } catch (IOException e) {
@@ -176,27 +195,94 @@ public class AsyncEventHandler implements EventHandler {
 
         @Override
         public void run() {
+            BodyBuffers bodyBuffers = idleBodyBuffers.poll();
+            if (bodyBuffers == null) {
+                bodyBuffers = new BodyBuffers();
+            }
             try {
-                HttpGet request = generateRequest(logEvent);
+                HttpRequestBase request = generateRequest(logEvent, bodyBuffers);
                 httpClient.execute(request, EVENT_RESPONSE_HANDLER);
             } catch (IOException e) {
                 logger.error("event dispatch failed", e);
             } catch (URISyntaxException e) {
                 logger.error("unable to parse generated URI", e);
+            } finally {
+                bodyBuffers.release();
+                idleBodyBuffers.offer(bodyBuffers);
             }
         }
 
         /**
-         * Helper method that generates the event request for the given {@link LogEvent}.
+         * Helper method that generates the event request for the given {@link LogEvent}, a POST of its body or a GET
+         * of its request params depending on its request method. The body is serialized straight into the buffers,
+         * which back the request's entity until it has been executed.
          */
-        private HttpGet generateRequest(LogEvent event) throws URISyntaxException {
+        private HttpRequestBase generateRequest(LogEvent event, BodyBuffers bodyBuffers)
+                throws URISyntaxException, IOException {
 
             URIBuilder builder = new URIBuilder(event.getEndpointUrl());
             for (Map.Entry<String, String> param : event.getRequestParams().entrySet()) {
                 builder.addParameter(param.getKey(), param.getValue());
             }
 
-            return new HttpGet(builder.build());
+            if (event.getRequestMethod() != LogEvent.RequestMethod.POST) {
+                return new HttpGet(builder.build());
+            }
+
+            HttpPost request = new HttpPost(builder.build());
+            BodyBuffer body = bodyBuffers.body;
+            event.writeBody(body);
+            if (compressionThreshold >= 0 && body.size() >= compressionThreshold) {
+                BodyBuffer compressed = bodyBuffers.compressed;
+                GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+                try {
+                    body.writeTo(gzipStream);
+                } finally {
+                    gzipStream.close();
+                }
+
+                ByteArrayEntity entity = compressed.toEntity();
+                entity.setContentEncoding("gzip");
+                request.setEntity(entity);
+            } else {
+                request.setEntity(body.toEntity());
+            }
+            return request;
+        }
+    }
+
+    /**
+     * The buffers a dispatch serializes the body of its event into, and compresses it into.
+     */
+    private static final class BodyBuffers {
+        private BodyBuffer body = new BodyBuffer();
+        private BodyBuffer compressed = new BodyBuffer();
+
+        /**
+         * Empties the buffers for the next event, dropping those that grew too large to keep.
+         */
+        void release() {
+            body = body.isRetainable() ? body : new BodyBuffer();
+            compressed = compressed.isRetainable() ? compressed : new BodyBuffer();
+            body.reset();
+            compressed.reset();
+        }
+    }
+
+    private static final class BodyBuffer extends SerializationBuffer {
+        BodyBuffer() {
+            super(4096);
+        }
+
+        boolean isRetainable() {
+            return buf.length <= MAX_RETAINED_BUFFER_SIZE;
+        }
+
+        /**
+         * @return an entity of the buffer's current contents, without copying them
+         */
+        ByteArrayEntity toEntity() {
+            return new ByteArrayEntity(buf, 0, count, ContentType.APPLICATION_JSON);
         }
     }
 
@@ -208,9 +294,9 @@ public class AsyncEventHandler implements EventHandler {
         @Override
         public @CheckForNull Void handleResponse(HttpResponse response) throws IOException {
             int status = response.getStatusLine().getStatusCode();
+            // read the response fully, so the connection goes back to the pool to be reused
+            EntityUtils.consume(response.getEntity());
             if (status >= 200 && status < 300) {
-                // read the response, so we can close the connection
-                response.getEntity();
                 return null;
             } else {
                 throw new ClientProtocolException("unexpected response from event endpoint, status: " + status);
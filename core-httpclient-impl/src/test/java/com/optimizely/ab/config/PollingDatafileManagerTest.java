@@ -0,0 +1,280 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PollingDatafileManager}, against a local http server standing in for the datafile endpoint.
+ */
+public class PollingDatafileManagerTest {
+
+    private HttpServer server;
+    private DatafileHandler handler;
+    private PollingDatafileManager datafileManager;
+    private final List<ProjectConfig> updates = new ArrayList<ProjectConfig>();
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new DatafileHandler();
+        handler.datafile = validConfigJsonV4();
+        handler.etag = "\"v4\"";
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/datafile.json", handler);
+        server.start();
+
+        datafileManager = PollingDatafileManager.builder(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/datafile.json")
+                .withPollingInterval(50, TimeUnit.MILLISECONDS)
+                .withListener(new PollingDatafileManager.Listener() {
+                    @Override
+                    public void onProjectConfigUpdate(ProjectConfig projectConfig) {
+                        synchronized (updates) {
+                            updates.add(projectConfig);
+                        }
+                    }
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        datafileManager.close();
+        server.stop(0);
+    }
+
+    /**
+     * Verify that the first poll publishes the fetched config and reports its latencies.
+     */
+    @Test
+    public void pollPublishesConfig() throws Exception {
+        assertNull(datafileManager.getConfig());
+        assertEquals(-1, datafileManager.getLastFetchLatency(TimeUnit.NANOSECONDS));
+
+        assertTrue(datafileManager.poll());
+
+        assertEquals("1480511547", datafileManager.getConfig().getRevision());
+        assertEquals(1, updates.size());
+        assertSame(datafileManager.getConfig(), updates.get(0));
+        assertEquals(1, datafileManager.getFetchCount());
+        assertEquals(1, datafileManager.getUpdateCount());
+        assertTrue(datafileManager.getLastFetchLatency(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(datafileManager.getLastParseLatency(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    /**
+     * Verify that polls are conditional on the ETag and that an unmodified datafile isn't parsed again.
+     */
+    @Test
+    public void pollSkipsUnmodifiedDatafile() throws Exception {
+        datafileManager.poll();
+        ProjectConfig config = datafileManager.getConfig();
+
+        assertFalse(datafileManager.poll());
+
+        assertEquals("\"v4\"", handler.lastIfNoneMatch);
+        assertEquals(1, handler.notModifiedCount);
+        assertSame(config, datafileManager.getConfig());
+        assertEquals(2, datafileManager.getFetchCount());
+        assertEquals(1, datafileManager.getNotModifiedCount());
+        assertEquals(1, updates.size());
+    }
+
+    /**
+     * Verify that an identical datafile from a server without validators isn't parsed again.
+     */
+    @Test
+    public void pollSkipsIdenticalDatafileWithoutValidators() throws Exception {
+        handler.etag = null;
+        datafileManager.poll();
+        ProjectConfig config = datafileManager.getConfig();
+
+        assertFalse(datafileManager.poll());
+
+        assertNull(handler.lastIfNoneMatch);
+        assertSame(config, datafileManager.getConfig());
+        assertEquals(1, datafileManager.getNotModifiedCount());
+    }
+
+    /**
+     * Verify that a changed datafile is published.
+     */
+    @Test
+    public void pollPublishesChangedDatafile() throws Exception {
+        datafileManager.poll();
+        handler.datafile = validConfigJsonV3();
+        handler.etag = "\"v3\"";
+
+        assertTrue(datafileManager.poll());
+
+        assertEquals("42", datafileManager.getConfig().getRevision());
+        assertEquals(2, updates.size());
+    }
+
+    /**
+     * Verify that the datafile is requested and decoded with gzip compression.
+     */
+    @Test
+    public void pollAcceptsGzip() throws Exception {
+        datafileManager.poll();
+
+        assertTrue(handler.lastAcceptEncoding.contains("gzip"));
+        assertTrue(handler.gzipped);
+        assertNotNull(datafileManager.getConfig());
+    }
+
+    /**
+     * Verify that an invalid datafile keeps the current config and is fetched again unconditionally.
+     */
+    @Test
+    public void pollKeepsConfigWhenDatafileIsInvalid() throws Exception {
+        datafileManager.poll();
+        ProjectConfig config = datafileManager.getConfig();
+        handler.datafile = "{\"version\": ";
+        handler.etag = "\"invalid\"";
+
+        assertFalse(datafileManager.poll());
+        assertFalse(datafileManager.poll());
+
+        assertEquals("\"v4\"", handler.lastIfNoneMatch);
+        assertSame(config, datafileManager.getConfig());
+        assertEquals(2, datafileManager.getFailureCount());
+    }
+
+    /**
+     * Verify that server errors are counted as failures.
+     */
+    @Test
+    public void pollHandlesServerErrors() throws Exception {
+        handler.status = 500;
+
+        assertFalse(datafileManager.poll());
+
+        assertNull(datafileManager.getConfig());
+        assertEquals(1, datafileManager.getFailureCount());
+        assertEquals(0, datafileManager.getFetchCount());
+    }
+
+    /**
+     * Verify that a started manager polls in the background.
+     */
+    @Test
+    public void startPollsOnSchedule() throws Exception {
+        datafileManager.start();
+
+        assertNotNull(datafileManager.getConfig(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (datafileManager.getFetchCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(datafileManager.getFetchCount() >= 3);
+        assertEquals(1, datafileManager.getUpdateCount());
+    }
+
+    /**
+     * Verify that starting a manager again doesn't schedule another poll.
+     */
+    @Test
+    public void startTwiceSchedulesOnePoll() throws Exception {
+        PollingDatafileManager slowManager = PollingDatafileManager.builder(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/datafile.json")
+                .withPollingInterval(1, TimeUnit.HOURS)
+                .build();
+        try {
+            slowManager.start();
+            slowManager.start();
+
+            assertNotNull(slowManager.getConfig(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertEquals(1, slowManager.getFetchCount());
+        } finally {
+            slowManager.close();
+        }
+    }
+
+    private static class DatafileHandler implements HttpHandler {
+        private volatile String datafile;
+        private volatile String etag;
+        private volatile int status = 200;
+
+        private volatile String lastIfNoneMatch;
+        private volatile String lastAcceptEncoding;
+        private volatile boolean gzipped;
+        private volatile int notModifiedCount;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            lastAcceptEncoding = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            try {
+                if (status != 200) {
+                    exchange.sendResponseHeaders(status, -1);
+                    return;
+                }
+                if (etag != null && etag.equals(lastIfNoneMatch)) {
+                    notModifiedCount++;
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+
+                byte[] body = datafile.getBytes("UTF-8");
+                gzipped = lastAcceptEncoding.contains("gzip");
+                if (gzipped) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(body);
+                    gzip.close();
+                    body = compressed.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
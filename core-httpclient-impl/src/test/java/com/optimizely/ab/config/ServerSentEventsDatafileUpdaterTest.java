@@ -0,0 +1,292 @@
+/**
+ *
+ *    Copyright 2018, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV3;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJsonV4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ServerSentEventsDatafileUpdater}, against a local http server standing in for both the datafile
+ * and the event stream endpoints.
+ */
+public class ServerSentEventsDatafileUpdaterTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private volatile String datafile;
+    private final AtomicInteger datafileRequests = new AtomicInteger();
+    private final EventStreamHandler events = new EventStreamHandler();
+    private PollingDatafileManager datafileManager;
+    private ServerSentEventsDatafileUpdater updater;
+
+    @Before
+    public void setUp() throws IOException {
+        datafile = validConfigJsonV4();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/datafile.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                datafileRequests.incrementAndGet();
+                byte[] body = datafile.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.createContext("/events", events);
+        // the event stream blocks its exchange, so serve each one on its own thread
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        datafileManager = PollingDatafileManager.builder(baseUrl() + "/datafile.json")
+                .withPollingInterval(1, TimeUnit.HOURS)
+                .build();
+        updater = ServerSentEventsDatafileUpdater.builder(baseUrl() + "/events", datafileManager)
+                .withBackoff(20, 80, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        updater.close();
+        datafileManager.close();
+        events.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Verify that a notice of a new revision fetches and publishes the datafile.
+     */
+    @Test
+    public void revisionNoticeFetchesDatafile() throws Exception {
+        datafileManager.poll();
+        updater.start();
+        events.awaitConnections(1);
+
+        datafile = validConfigJsonV3();
+        events.send(": keep-alive\n\nevent: other\ndata: 42\n\nid: 7\nevent: revision\ndata: 42\n\n");
+
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return "42".equals(datafileManager.getConfig().getRevision());
+            }
+        });
+        assertEquals(2, datafileRequests.get());
+        assertEquals(1, updater.getNoticeCount());
+    }
+
+    /**
+     * Verify that a notice of the current revision doesn't fetch the datafile.
+     */
+    @Test
+    public void currentRevisionNoticeIsIgnored() throws Exception {
+        datafileManager.poll();
+        updater.start();
+        events.awaitConnections(1);
+
+        events.send("event: revision\ndata: 1480511547\n\n");
+
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return updater.getNoticeCount() == 1;
+            }
+        });
+        assertEquals(1, datafileRequests.get());
+    }
+
+    /**
+     * Verify that the updater reconnects after the stream is closed and backs off exponentially while the endpoint
+     * is unavailable.
+     */
+    @Test
+    public void reconnectsWithExponentialBackoff() throws Exception {
+        events.failures.set(4);
+        updater.start();
+        events.awaitConnections(1);
+
+        // four failed attempts, waiting 20, 40, 80 and 80 ms after each of them
+        List<Long> attempts = events.attempts;
+        assertEquals(5, attempts.size());
+        long[] minimumDelays = { 20, 40, 80, 80 };
+        for (int i = 0; i < minimumDelays.length; i++) {
+            long delay = TimeUnit.NANOSECONDS.toMillis(attempts.get(i + 1) - attempts.get(i));
+            assertTrue("delay " + i + " was " + delay, delay >= minimumDelays[i]);
+        }
+
+        events.disconnect();
+        events.awaitConnections(2);
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return updater.getConnectionCount() == 2;
+            }
+        });
+    }
+
+    /**
+     * Verify that streams dropped right after they were accepted don't reset the backoff.
+     */
+    @Test
+    public void droppedStreamsKeepBackingOff() throws Exception {
+        events.drops.set(3);
+        updater.start();
+        events.awaitConnections(1);
+
+        // three streams dropped without an event, waiting 20, 40 and 80 ms after each of them
+        List<Long> attempts = events.attempts;
+        assertEquals(4, attempts.size());
+        long[] minimumDelays = { 20, 40, 80 };
+        for (int i = 0; i < minimumDelays.length; i++) {
+            long delay = TimeUnit.NANOSECONDS.toMillis(attempts.get(i + 1) - attempts.get(i));
+            assertTrue("delay " + i + " was " + delay, delay >= minimumDelays[i]);
+        }
+    }
+
+    /**
+     * Verify that a stream that stays silent for longer than its keep-alive interval allows is reconnected.
+     */
+    @Test
+    public void silentStreamIsReconnected() throws Exception {
+        updater.close();
+        updater = ServerSentEventsDatafileUpdater.builder(baseUrl() + "/events", datafileManager)
+                .withBackoff(20, 80, TimeUnit.MILLISECONDS)
+                .withKeepAliveInterval(50, TimeUnit.MILLISECONDS)
+                .build();
+        updater.start();
+        events.awaitConnections(1);
+
+        // the stand-in sends nothing after connecting, so the read times out after three intervals
+        events.awaitConnections(2);
+        long silentFor = TimeUnit.NANOSECONDS.toMillis(events.attempts.get(1) - events.attempts.get(0));
+        assertTrue("reconnected after " + silentFor + " ms", silentFor >= 150);
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Serves an event stream that stays open until the test disconnects it, after failing a given number of
+     * connection attempts and dropping a given number of streams right after accepting them.
+     */
+    private static class EventStreamHandler implements HttpHandler {
+        private static final String DISCONNECT = "";
+
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger drops = new AtomicInteger();
+        private final List<Long> attempts = new CopyOnWriteArrayList<Long>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+        private volatile boolean closed;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            attempts.add(System.nanoTime());
+            if (failures.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(": connected\n\n".getBytes("UTF-8"));
+            out.flush();
+            if (drops.getAndDecrement() > 0) {
+                exchange.close();
+                return;
+            }
+            synchronized (this) {
+                connections.incrementAndGet();
+                notifyAll();
+            }
+            try {
+                while (!closed) {
+                    String message = messages.poll(50, TimeUnit.MILLISECONDS);
+                    if (message == DISCONNECT) {
+                        break;
+                    } else if (message != null) {
+                        out.write(message.getBytes("UTF-8"));
+                        out.flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void send(String message) {
+            messages.add(message);
+        }
+
+        private void disconnect() {
+            messages.add(DISCONNECT);
+        }
+
+        private synchronized void awaitConnections(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (connections.get() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("timed out waiting for a connection", remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        private void close() {
+            closed = true;
+        }
+    }
+}
@@ -19,17 +19,32 @@ package com.optimizely.ab.event;
 import com.google.common.util.concurrent.MoreExecutors;
 
 import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.event.internal.payload.Visitor;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -38,6 +53,10 @@ import java.util.concurrent.TimeUnit;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.doThrow;
@@ -129,10 +148,132 @@ public class AsyncEventHandlerTest {
         verify(mockHttpClient).close();
     }
 
+    /**
+     * Verify that POST events are sent with their body, uncompressed by default however large it is.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDispatchPost() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService());
+        char[] revision = new char[4096];
+        Arrays.fill(revision, '1');
+        LogEvent logEvent = createPostLogEvent(new String(revision));
+        eventHandler.dispatchEvent(logEvent);
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient).execute(request.capture(), any(ResponseHandler.class));
+        assertEquals("https://logx.optimizely.com/v1/events", request.getValue().getURI().toString());
+        HttpEntity entity = request.getValue().getEntity();
+        assertNull(entity.getContentEncoding());
+        assertEquals("application/json; charset=UTF-8", entity.getContentType().getValue());
+        assertEquals(logEvent.getBody(), EntityUtils.toString(entity));
+    }
+
+    /**
+     * Verify that POST bodies of at least the compression threshold are gzip compressed.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDispatchPostCompressed() throws Exception {
+        AsyncEventHandler eventHandler =
+                new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService(), 10);
+        LogEvent logEvent = createPostLogEvent();
+        eventHandler.dispatchEvent(logEvent);
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient).execute(request.capture(), any(ResponseHandler.class));
+        HttpEntity entity = request.getValue().getEntity();
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        String body = EntityUtils.toString(new GzipDecompressingEntity(entity), "UTF-8");
+        assertEquals(logEvent.getBody(), body);
+    }
+
+    /**
+     * Verify that POST bodies aren't compressed when compression is disabled.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDispatchPostWithoutCompression() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService(),
+                AsyncEventHandler.NO_COMPRESSION);
+        eventHandler.dispatchEvent(createPostLogEvent());
+
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient).execute(request.capture(), any(ResponseHandler.class));
+        assertNull(request.getValue().getEntity().getContentEncoding());
+    }
+
+    /**
+     * Verify that responses are consumed, whatever their status, which reads the rest of a response from its
+     * connection so the connection can be reused.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testResponsesAreConsumed() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService());
+        eventHandler.dispatchEvent(createPostLogEvent());
+
+        ArgumentCaptor<ResponseHandler> responseHandler = ArgumentCaptor.forClass(ResponseHandler.class);
+        verify(mockHttpClient).execute(any(HttpPost.class), responseHandler.capture());
+
+        ConsumableInputStream content = new ConsumableInputStream();
+        responseHandler.getValue().handleResponse(createResponse(204, content));
+        assertTrue(content.closed);
+
+        content = new ConsumableInputStream();
+        try {
+            responseHandler.getValue().handleResponse(createResponse(500, content));
+            fail();
+        } catch (ClientProtocolException e) {
+            assertTrue(content.closed);
+        }
+    }
+
     //======== Helper methods ========//
 
+    private LogEvent createPostLogEvent() {
+        return createPostLogEvent("1");
+    }
+
+    private LogEvent createPostLogEvent(String revision) {
+        EventBatch eventBatch = new EventBatch.Builder()
+                .setAccountId("12345")
+                .setProjectId("67890")
+                .setRevision(revision)
+                .setVisitors(Collections.<Visitor>emptyList())
+                .build();
+        return new LogEvent(LogEvent.RequestMethod.POST, "https://logx.optimizely.com/v1/events",
+                Collections.<String, String>emptyMap(), eventBatch);
+    }
+
+    private HttpResponse createResponse(int status, InputStream content) {
+        BasicHttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), status, null);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(content);
+        response.setEntity(entity);
+        return response;
+    }
+
     private LogEvent createLogEvent() {Map<String, String> testParams = new HashMap<String, String>();
         testParams.put("test", "params");
         return new LogEvent(LogEvent.RequestMethod.GET, "test_url", testParams, new EventBatch());
     }
+
+    //======== Helper classes ========//
+
+    /**
+     * Response content that records being consumed, closing a connection's content stream reads it to its end.
+     */
+    private static final class ConsumableInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        ConsumableInputStream() {
+            super(new byte[100]);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
 }